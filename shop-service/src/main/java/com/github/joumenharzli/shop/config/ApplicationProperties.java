@@ -173,10 +173,15 @@ public class ApplicationProperties {
     }
   }
 
+  public enum AccessLogFormat {
+    JSON, BINARY
+  }
+
   public static class KafkaProperties {
 
     private List<String> bootstrapServers = Lists.newArrayList();
     private int timeoutMs;
+    private AccessLogFormat accessLogFormat = AccessLogFormat.JSON;
 
     public List<String> getBootstrapServers() {
       return bootstrapServers;
@@ -193,6 +198,14 @@ public class ApplicationProperties {
     public void setTimeoutMs(int timeoutMs) {
       this.timeoutMs = timeoutMs;
     }
+
+    public AccessLogFormat getAccessLogFormat() {
+      return accessLogFormat;
+    }
+
+    public void setAccessLogFormat(AccessLogFormat accessLogFormat) {
+      this.accessLogFormat = accessLogFormat;
+    }
   }
 
   public String getName() {
@@ -27,8 +27,11 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 
+import com.github.joumenharzli.shop.data.ProductAccessLogSerializer;
 import com.google.common.collect.Maps;
 
+import static com.github.joumenharzli.shop.config.ApplicationProperties.AccessLogFormat.BINARY;
+
 /**
  * Kafka Configuration
  *
@@ -58,7 +61,17 @@ public class KafkaConfiguration {
     map.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, applicationProperties.getKafka().getBootstrapServers());
     map.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, applicationProperties.getKafka().getTimeoutMs());
     map.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-    map.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+    map.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, valueSerializer());
     return map;
   }
+
+  /**
+   * The access logs are sent in JSON until all the consumers can read the binary format
+   */
+  private Class<?> valueSerializer() {
+    if (applicationProperties.getKafka().getAccessLogFormat() == BINARY) {
+      return ProductAccessLogSerializer.class;
+    }
+    return JsonSerializer.class;
+  }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.shop.data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Kafka serializer writing the {@link ProductAccessLog} in a compact binary format
+ * <p>
+ * The format is: a magic byte {@code 0xA1}, the version of the format, the access timestamp as
+ * milliseconds since the epoch on 8 bytes, then the user id and the product id each encoded in
+ * UTF-8 and prefixed by its length on 2 unsigned bytes. The magic byte can't start a JSON document
+ * so the consumers can read both formats.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductAccessLogSerializer implements Serializer<ProductAccessLog> {
+
+  public static final byte MAGIC_BYTE = (byte) 0xA1;
+  public static final byte VERSION = 1;
+
+  private static final int MAX_ID_LENGTH = 0xFFFF;
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {
+    /* not needed */
+  }
+
+  @Override
+  public byte[] serialize(String topic, ProductAccessLog data) {
+    if (data == null) {
+      return null;
+    }
+
+    byte[] userId = encodeId("userId", data.getUserId());
+    byte[] productId = encodeId("productId", data.getProductId());
+    long accessTimestamp = Instant.parse(data.getAccessTimestamp()).toEpochMilli();
+
+    return ByteBuffer.allocate(2 + Long.BYTES + 2 + userId.length + 2 + productId.length)
+        .put(MAGIC_BYTE)
+        .put(VERSION)
+        .putLong(accessTimestamp)
+        .putShort((short) userId.length)
+        .put(userId)
+        .putShort((short) productId.length)
+        .put(productId)
+        .array();
+  }
+
+  @Override
+  public void close() {
+    /* not needed */
+  }
+
+  private static byte[] encodeId(String name, String id) {
+    byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > MAX_ID_LENGTH) {
+      throw new SerializationException(String.format("The %s is too long to be serialized", name));
+    }
+    return bytes;
+  }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.shop.data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test for the binary serializer {@link ProductAccessLogSerializer}
+ *
+ * @author Joumen Harzli
+ */
+public class ProductAccessLogSerializerTest {
+
+  private final ProductAccessLogSerializer serializer = new ProductAccessLogSerializer();
+
+  @Test
+  public void testSerialize() {
+    ProductAccessLog productAccessLog = new ProductAccessLog("user1", UUID.randomUUID().toString());
+
+    ByteBuffer buffer = ByteBuffer.wrap(serializer.serialize("topic", productAccessLog));
+
+    assertEquals(ProductAccessLogSerializer.MAGIC_BYTE, buffer.get());
+    assertEquals(ProductAccessLogSerializer.VERSION, buffer.get());
+    assertEquals(Instant.parse(productAccessLog.getAccessTimestamp()).toEpochMilli(), buffer.getLong());
+    assertEquals(productAccessLog.getUserId(), readId(buffer));
+    assertEquals(productAccessLog.getProductId(), readId(buffer));
+    assertEquals(0, buffer.remaining());
+  }
+
+  @Test
+  public void testSerializeNull() {
+    assertNull(serializer.serialize("topic", null));
+  }
+
+  private static String readId(ByteBuffer buffer) {
+    byte[] id = new byte[Short.toUnsignedInt(buffer.getShort())];
+    buffer.get(id);
+    return new String(id, StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.joumenharzli.benchmarks.AccessLogs;
+
+/**
+ * Decoding of the kafka messages by the spout
+ *
+ * @author Joumen Harzli
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProductAccessLogSchemeBenchmark {
+
+  private static final int PAYLOADS_COUNT = 1024;
+
+  @Param({"json", "binary"})
+  public String format;
+
+  private ProductAccessLogScheme scheme;
+  private ByteBuffer[] payloads;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    AccessLogs accessLogs = new AccessLogs(PAYLOADS_COUNT, 42);
+
+    scheme = new ProductAccessLogScheme();
+    payloads = new ByteBuffer[PAYLOADS_COUNT];
+    for (int i = 0; i < PAYLOADS_COUNT; i++) {
+      payloads[i] = ByteBuffer.wrap("binary".equals(format) ? accessLogs.toBinary(i) : accessLogs.toJson(i));
+    }
+  }
+
+  @Benchmark
+  public List<Object> deserialize() {
+    return scheme.deserialize(payloads[index++ & (PAYLOADS_COUNT - 1)]);
+  }
+
+}
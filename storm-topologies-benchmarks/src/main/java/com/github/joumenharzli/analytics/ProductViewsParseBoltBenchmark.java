@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.topology.BasicOutputCollector;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.joumenharzli.benchmarks.AccessLogs;
+import com.github.joumenharzli.benchmarks.FakeOutputCollector;
+import com.github.joumenharzli.benchmarks.FakeTuples;
+
+import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
+
+/**
+ * Validation of the decoded access logs, computation of the day and emission of the values
+ *
+ * @author Joumen Harzli
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProductViewsParseBoltBenchmark {
+
+  private static final int TUPLES_COUNT = 1024;
+
+  private ProductViewsParseBolt bolt;
+  private FakeOutputCollector outputCollector;
+  private BasicOutputCollector collector;
+  private Tuple[] tuples;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    AccessLogs accessLogs = new AccessLogs(TUPLES_COUNT, 42);
+    Fields fields = new Fields(USER_ID, PRODUCT_ID, ACCESS_TIMESTAMP);
+
+    tuples = new Tuple[TUPLES_COUNT];
+    for (int i = 0; i < TUPLES_COUNT; i++) {
+      tuples[i] = FakeTuples.create(WebAnalyticsTopology.KAFKA_SPOUT, fields,
+          accessLogs.getUserId(i), accessLogs.getProductId(i), accessLogs.getAccessTimestamp(i));
+    }
+
+    bolt = new ProductViewsParseBolt();
+    outputCollector = new FakeOutputCollector();
+    collector = new BasicOutputCollector(new OutputCollector(outputCollector));
+  }
+
+  @Benchmark
+  public List<Object> execute() {
+    Tuple tuple = tuples[index++ & (TUPLES_COUNT - 1)];
+
+    collector.setContext(tuple);
+    bolt.execute(tuple, collector);
+    return outputCollector.getLastEmitted();
+  }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.TypeCodec;
+import com.datastax.driver.core.utils.UUIDs;
+import com.github.joumenharzli.benchmarks.AccessLogs;
+import com.github.joumenharzli.benchmarks.FakeTuples;
+import com.github.joumenharzli.sink.ProductViewsSchema;
+import com.github.joumenharzli.utils.CompactId;
+import com.github.joumenharzli.utils.IdDictionary;
+import com.github.joumenharzli.utils.TimestampUtils;
+
+import static com.github.joumenharzli.Configuration.CASSANDRA_ACCESS_LOG_BUCKETS;
+import static com.github.joumenharzli.Configuration.ID_DICTIONARY_CAPACITY;
+import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
+
+/**
+ * Construction of the values written by each bolt
+ * <p>
+ * The statements are prepared on a live cluster so the benchmarks extract the values of the
+ * statement from the tuple like the bolts do, decoding the ids with a dictionary, then serialize
+ * them with the codecs used when binding them to the prepared statement
+ *
+ * @author Joumen Harzli
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProductViewsStatementsBenchmark {
+
+  private static final int TUPLES_COUNT = 1024;
+  private static final ProtocolVersion PROTOCOL_VERSION = ProtocolVersion.V4;
+
+  private ProductViewsCountBolt countBolt;
+  private ProductViewsCountByTimestampBolt countByTimestampBolt;
+  private ProductViewsCountByUserBolt countByUserBolt;
+  private IdDictionary ids;
+  private Tuple[] tuples;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    AccessLogs accessLogs = new AccessLogs(TUPLES_COUNT, 42);
+    Fields fields = new Fields(USER_ID, PRODUCT_ID, ACCESS_TIMESTAMP, ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS);
+
+    tuples = new Tuple[TUPLES_COUNT];
+    for (int i = 0; i < TUPLES_COUNT; i++) {
+      long accessTimestamp = accessLogs.getAccessTimestamp(i);
+      tuples[i] = FakeTuples.create(WebAnalyticsTopology.PARSE_PRODUCT_VIEWS, fields,
+          CompactId.encode(accessLogs.getUserId(i)), CompactId.encode(accessLogs.getProductId(i)), accessTimestamp,
+          TimestampUtils.truncateToDay(accessTimestamp));
+    }
+
+    countBolt = new ProductViewsCountBolt();
+    countByTimestampBolt = new ProductViewsCountByTimestampBolt();
+    countByUserBolt = new ProductViewsCountByUserBolt();
+    ids = new IdDictionary(ID_DICTIONARY_CAPACITY);
+  }
+
+  /**
+   * Values of the access log inserted by {@link ProductViewsLogBolt}
+   */
+  @Benchmark
+  public void accessLog(Blackhole blackhole) {
+    Tuple tuple = nextTuple();
+    String userId = ids.decode(tuple.getValue(tuple.fieldIndex(USER_ID)));
+    long accessTimestamp = tuple.getLong(tuple.fieldIndex(ACCESS_TIMESTAMP));
+
+    blackhole.consume(TypeCodec.timestamp().serialize(
+        new Date(TimestampUtils.truncateToDay(accessTimestamp)), PROTOCOL_VERSION));
+    blackhole.consume(TypeCodec.cint().serialize(
+        ProductViewsSchema.getAccessLogBucket(userId, CASSANDRA_ACCESS_LOG_BUCKETS), PROTOCOL_VERSION));
+    blackhole.consume(TypeCodec.timestamp().serialize(new Date(accessTimestamp), PROTOCOL_VERSION));
+    blackhole.consume(TypeCodec.uuid().serialize(UUIDs.random(), PROTOCOL_VERSION));
+    blackhole.consume(TypeCodec.varchar().serialize(userId, PROTOCOL_VERSION));
+    blackhole.consume(TypeCodec.varchar().serialize(ids.decode(tuple.getValue(tuple.fieldIndex(PRODUCT_ID))),
+        PROTOCOL_VERSION));
+  }
+
+  /**
+   * Key and values of the increment of {@link ProductViewsCountBolt}
+   */
+  @Benchmark
+  public void incrementTotal(Blackhole blackhole) {
+    List<Object> counterKey = countBolt.getCounterKey(nextTuple());
+
+    blackhole.consume(TypeCodec.counter().serialize(1L, PROTOCOL_VERSION));
+    blackhole.consume(TypeCodec.varchar().serialize(ids.decode(counterKey.get(0)), PROTOCOL_VERSION));
+  }
+
+  /**
+   * Key and values of the increment of {@link ProductViewsCountByTimestampBolt}
+   */
+  @Benchmark
+  public void incrementByDay(Blackhole blackhole) {
+    List<Object> counterKey = countByTimestampBolt.getCounterKey(nextTuple());
+
+    blackhole.consume(TypeCodec.counter().serialize(1L, PROTOCOL_VERSION));
+    blackhole.consume(TypeCodec.varchar().serialize(ids.decode(counterKey.get(0)), PROTOCOL_VERSION));
+    blackhole.consume(TypeCodec.timestamp().serialize(new Date((Long) counterKey.get(1)), PROTOCOL_VERSION));
+  }
+
+  /**
+   * Key and values of the increment of {@link ProductViewsCountByUserBolt}
+   */
+  @Benchmark
+  public void incrementByUser(Blackhole blackhole) {
+    List<Object> counterKey = countByUserBolt.getCounterKey(nextTuple());
+
+    blackhole.consume(TypeCodec.counter().serialize(1L, PROTOCOL_VERSION));
+    blackhole.consume(TypeCodec.varchar().serialize(ids.decode(counterKey.get(1)), PROTOCOL_VERSION));
+    blackhole.consume(TypeCodec.timestamp().serialize(new Date((Long) counterKey.get(2)), PROTOCOL_VERSION));
+    blackhole.consume(TypeCodec.varchar().serialize(ids.decode(counterKey.get(0)), PROTOCOL_VERSION));
+  }
+
+  private Tuple nextTuple() {
+    return tuples[index++ & (TUPLES_COUNT - 1)];
+  }
+
+}
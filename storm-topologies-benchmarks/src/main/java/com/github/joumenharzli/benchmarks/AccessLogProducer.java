@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.benchmarks;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Producer of synthetic access logs in the binary format
+ * <p>
+ * The products are drawn from a Zipf distribution and the users uniformly. The access timestamp
+ * is the time of the production so the latency of the whole pipeline can be derived from it.
+ *
+ * @author Joumen Harzli
+ */
+public class AccessLogProducer implements Runnable, AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AccessLogProducer.class);
+
+  private static final int PACING_BATCH_SIZE = 100;
+
+  private final KafkaProducer<String, byte[]> producer;
+  private final String topic;
+  private final String[] productIds;
+  private final String[] userIds;
+  private final ZipfianGenerator products;
+  private final Random random;
+  private final long eventsPerSecond;
+  private final LongAdder produced = new LongAdder();
+
+  private volatile boolean running = true;
+
+  /**
+   * @param bootstrapServers addresses of the kafka brokers
+   * @param topic            topic receiving the access logs
+   * @param productsCount    number of distinct products
+   * @param usersCount       number of distinct users
+   * @param zipfExponent     exponent of the popularity of the products
+   * @param eventsPerSecond  target rate of the access logs or 0 to produce as fast as possible
+   */
+  public AccessLogProducer(String bootstrapServers, String topic, int productsCount, int usersCount,
+                           double zipfExponent, long eventsPerSecond) {
+    Properties properties = new Properties();
+    properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+    properties.put(ProducerConfig.ACKS_CONFIG, "1");
+    properties.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+    properties.put(ProducerConfig.BATCH_SIZE_CONFIG, 64 * 1024);
+
+    this.producer = new KafkaProducer<>(properties, new StringSerializer(), new ByteArraySerializer());
+    this.topic = topic;
+    this.random = new Random(42);
+    this.productIds = randomIds(productsCount, random);
+    this.userIds = randomIds(usersCount, random);
+    this.products = new ZipfianGenerator(productsCount, zipfExponent, random);
+    this.eventsPerSecond = eventsPerSecond;
+  }
+
+  /**
+   * Produce a first access log and wait for it so the topic exists before the topology starts
+   *
+   * @throws ExecutionException   if the access log cannot be produced
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void createTopic() throws ExecutionException, InterruptedException {
+    producer.send(nextAccessLog()).get();
+    produced.increment();
+  }
+
+  @Override
+  public void run() {
+    long startNanos = System.nanoTime();
+    long sent = 0;
+
+    while (running) {
+      producer.send(nextAccessLog());
+      produced.increment();
+      sent++;
+
+      if (eventsPerSecond > 0 && sent % PACING_BATCH_SIZE == 0) {
+        pace(startNanos, sent);
+      }
+    }
+  }
+
+  /**
+   * Wait until the time of the sent access logs at the target rate is reached
+   */
+  private void pace(long startNanos, long sent) {
+    long aheadNanos = sent * TimeUnit.SECONDS.toNanos(1) / eventsPerSecond - (System.nanoTime() - startNanos);
+    if (aheadNanos <= 0) {
+      return;
+    }
+
+    try {
+      TimeUnit.NANOSECONDS.sleep(aheadNanos);
+    } catch (InterruptedException e) {
+      LOGGER.warn("Interrupted while pacing the access logs");
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+  }
+
+  private ProducerRecord<String, byte[]> nextAccessLog() {
+    String productId = productIds[products.next()];
+    String userId = userIds[random.nextInt(userIds.length)];
+    return new ProducerRecord<>(topic, AccessLogs.toBinary(userId, productId, System.currentTimeMillis()));
+  }
+
+  public long getProducedCount() {
+    return produced.sum();
+  }
+
+  public void stop() {
+    running = false;
+  }
+
+  @Override
+  public void close() {
+    stop();
+    producer.close();
+  }
+
+  private static String[] randomIds(int count, Random random) {
+    String[] ids = new String[count];
+    for (int i = 0; i < count; i++) {
+      ids[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+    return ids;
+  }
+
+}
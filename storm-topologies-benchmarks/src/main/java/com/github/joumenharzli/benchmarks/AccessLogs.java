@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Random;
+import java.util.UUID;
+
+import com.github.joumenharzli.analytics.ProductAccessLogScheme;
+
+/**
+ * Synthetic access logs shaped like the ones published by the shop service
+ * <p>
+ * The ids are UUIDs like the ids of the shop service and the timestamps are spread over a month
+ *
+ * @author Joumen Harzli
+ */
+public final class AccessLogs {
+
+  private static final long FIRST_ACCESS_TIMESTAMP = Instant.parse("2018-01-01T00:00:00Z").toEpochMilli();
+  private static final long ACCESS_TIMESTAMPS_RANGE = 31L * 86_400_000L;
+
+  private final String[] userIds;
+  private final String[] productIds;
+  private final long[] accessTimestamps;
+
+  /**
+   * @param count number of access logs to generate
+   * @param seed  seed of the generator so the runs are comparable
+   */
+  public AccessLogs(int count, long seed) {
+    Random random = new Random(seed);
+
+    this.userIds = new String[count];
+    this.productIds = new String[count];
+    this.accessTimestamps = new long[count];
+
+    for (int i = 0; i < count; i++) {
+      userIds[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+      productIds[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+      accessTimestamps[i] = FIRST_ACCESS_TIMESTAMP + (long) (random.nextDouble() * ACCESS_TIMESTAMPS_RANGE);
+    }
+  }
+
+  public int size() {
+    return userIds.length;
+  }
+
+  public String getUserId(int index) {
+    return userIds[index];
+  }
+
+  public String getProductId(int index) {
+    return productIds[index];
+  }
+
+  public long getAccessTimestamp(int index) {
+    return accessTimestamps[index];
+  }
+
+  /**
+   * @return the access log encoded in JSON as the shop service does with the ISO-8601 timestamp
+   */
+  public byte[] toJson(int index) {
+    return String.format("{\"userId\":\"%s\",\"productId\":\"%s\",\"accessTimestamp\":\"%s\"}",
+        userIds[index], productIds[index], Instant.ofEpochMilli(accessTimestamps[index]))
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return the access log encoded in the binary format of {@link ProductAccessLogScheme}
+   */
+  public byte[] toBinary(int index) {
+    return toBinary(userIds[index], productIds[index], accessTimestamps[index]);
+  }
+
+  /**
+   * @param userId          id of the user
+   * @param productId       id of the product
+   * @param accessTimestamp access timestamp in milliseconds since the epoch
+   * @return the access log encoded in the binary format of {@link ProductAccessLogScheme}
+   */
+  public static byte[] toBinary(String userId, String productId, long accessTimestamp) {
+    byte[] userIdBytes = userId.getBytes(StandardCharsets.UTF_8);
+    byte[] productIdBytes = productId.getBytes(StandardCharsets.UTF_8);
+
+    return ByteBuffer.allocate(2 + Long.BYTES + 2 + userIdBytes.length + 2 + productIdBytes.length)
+        .put(ProductAccessLogScheme.BINARY_FORMAT_MAGIC_BYTE)
+        .put(ProductAccessLogScheme.BINARY_FORMAT_VERSION)
+        .putLong(accessTimestamp)
+        .putShort((short) userIdBytes.length)
+        .put(userIdBytes)
+        .putShort((short) productIdBytes.length)
+        .put(productIdBytes)
+        .array();
+  }
+
+}
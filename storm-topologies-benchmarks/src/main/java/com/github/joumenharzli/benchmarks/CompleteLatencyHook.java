@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.benchmarks;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.storm.hooks.BaseTaskHook;
+import org.apache.storm.hooks.info.SpoutAckInfo;
+import org.apache.storm.hooks.info.SpoutFailInfo;
+
+/**
+ * Task hook recording the acked and failed tuples of the spouts with their complete latency
+ * <p>
+ * The topology runs in the process of the benchmark so the hook instances of the tasks share
+ * static counters. The complete latency is only known for the sampled tuples so the topology
+ * must sample all of them with {@code topology.stats.sample.rate} set to 1.
+ *
+ * @author Joumen Harzli
+ */
+public class CompleteLatencyHook extends BaseTaskHook {
+
+  /* The tuples that timeout are failed after the message timeout */
+  private static final int MAX_LATENCY_MS = 120_000;
+
+  private static final LatencyHistogram COMPLETE_LATENCIES = new LatencyHistogram(MAX_LATENCY_MS);
+  private static final LongAdder ACKED = new LongAdder();
+  private static final LongAdder FAILED = new LongAdder();
+
+  @Override
+  public void spoutAck(SpoutAckInfo info) {
+    ACKED.increment();
+    if (info.completeLatencyMs != null) {
+      COMPLETE_LATENCIES.record(info.completeLatencyMs);
+    }
+  }
+
+  @Override
+  public void spoutFail(SpoutFailInfo info) {
+    FAILED.increment();
+  }
+
+  public static LatencyHistogram getCompleteLatencies() {
+    return COMPLETE_LATENCIES;
+  }
+
+  public static long getAckedCount() {
+    return ACKED.sum();
+  }
+
+  public static long getFailedCount() {
+    return FAILED.sum();
+  }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaServerStartable;
+
+/**
+ * Single kafka broker and its zookeeper running in the process, the data is stored in a
+ * temporary directory deleted when the broker is closed
+ *
+ * @author Joumen Harzli
+ */
+public final class EmbeddedKafka implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddedKafka.class);
+
+  private static final String HOST = "127.0.0.1";
+  private static final int ZOOKEEPER_TICK_TIME_MS = 500;
+  private static final int ZOOKEEPER_MAX_CONNECTIONS = 100;
+
+  private final Path dataDirectory;
+  private final ServerCnxnFactory zookeeper;
+  private final KafkaServerStartable broker;
+  private final String bootstrapServers;
+
+  private EmbeddedKafka(Path dataDirectory, ServerCnxnFactory zookeeper, KafkaServerStartable broker,
+                        String bootstrapServers) {
+    this.dataDirectory = dataDirectory;
+    this.zookeeper = zookeeper;
+    this.broker = broker;
+    this.bootstrapServers = bootstrapServers;
+  }
+
+  /**
+   * Start zookeeper then the broker on free ports
+   *
+   * @param partitions number of partitions of the created topics
+   * @return the started broker
+   * @throws IOException          if the data directory or the ports cannot be created
+   * @throws InterruptedException if interrupted while starting zookeeper
+   */
+  public static EmbeddedKafka start(int partitions) throws IOException, InterruptedException {
+    Path dataDirectory = Files.createTempDirectory("embedded-kafka");
+
+    ZooKeeperServer zooKeeperServer = new ZooKeeperServer(dataDirectory.resolve("zookeeper").toFile(),
+        dataDirectory.resolve("zookeeper").toFile(), ZOOKEEPER_TICK_TIME_MS);
+    ServerCnxnFactory zookeeper = ServerCnxnFactory.createFactory(new InetSocketAddress(HOST, 0), ZOOKEEPER_MAX_CONNECTIONS);
+    zookeeper.startup(zooKeeperServer);
+
+    String bootstrapServers = HOST + ":" + findFreePort();
+
+    Properties brokerProperties = new Properties();
+    brokerProperties.setProperty("broker.id", "0");
+    brokerProperties.setProperty("zookeeper.connect", HOST + ":" + zookeeper.getLocalPort());
+    brokerProperties.setProperty("listeners", "PLAINTEXT://" + bootstrapServers);
+    brokerProperties.setProperty("log.dirs", dataDirectory.resolve("kafka").toString());
+    brokerProperties.setProperty("num.partitions", Integer.toString(partitions));
+    brokerProperties.setProperty("auto.create.topics.enable", "true");
+    brokerProperties.setProperty("offsets.topic.replication.factor", "1");
+    brokerProperties.setProperty("offsets.topic.num.partitions", "1");
+    brokerProperties.setProperty("group.initial.rebalance.delay.ms", "0");
+
+    KafkaServerStartable broker = new KafkaServerStartable(new KafkaConfig(brokerProperties));
+    broker.startup();
+
+    LOGGER.info("Started an embedded kafka broker on {}", bootstrapServers);
+
+    return new EmbeddedKafka(dataDirectory, zookeeper, broker, bootstrapServers);
+  }
+
+  public String getBootstrapServers() {
+    return bootstrapServers;
+  }
+
+  @Override
+  public void close() throws IOException {
+    broker.shutdown();
+    broker.awaitShutdown();
+    zookeeper.shutdown();
+
+    try (Stream<Path> paths = Files.walk(dataDirectory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  private static int findFreePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.benchmarks;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.storm.task.IOutputCollector;
+import org.apache.storm.tuple.Tuple;
+
+/**
+ * Output collector keeping only the last emitted values
+ * <p>
+ * The benchmarks return the last emitted values so the emission is not eliminated by the JIT
+ *
+ * @author Joumen Harzli
+ */
+public class FakeOutputCollector implements IOutputCollector {
+
+  private List<Object> lastEmitted;
+  private long emittedCount;
+
+  @Override
+  public List<Integer> emit(String streamId, Collection<Tuple> anchors, List<Object> tuple) {
+    lastEmitted = tuple;
+    emittedCount++;
+    return Collections.emptyList();
+  }
+
+  @Override
+  public void emitDirect(int taskId, String streamId, Collection<Tuple> anchors, List<Object> tuple) {
+    lastEmitted = tuple;
+    emittedCount++;
+  }
+
+  @Override
+  public void ack(Tuple input) {
+    /* not needed */
+  }
+
+  @Override
+  public void fail(Tuple input) {
+    /* not needed */
+  }
+
+  @Override
+  public void resetTimeout(Tuple input) {
+    /* not needed */
+  }
+
+  @Override
+  public void reportError(Throwable error) {
+    /* not needed */
+  }
+
+  public List<Object> getLastEmitted() {
+    return lastEmitted;
+  }
+
+  public long getEmittedCount() {
+    return emittedCount;
+  }
+
+}
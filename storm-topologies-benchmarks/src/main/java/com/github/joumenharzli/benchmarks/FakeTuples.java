@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.benchmarks;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.storm.generated.StormTopology;
+import org.apache.storm.task.GeneralTopologyContext;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.utils.Utils;
+
+/**
+ * Tuples created without a running topology
+ * <p>
+ * The tuples are backed by a minimal topology context holding only the output fields of their
+ * source component so the field lookups cost the same as in a worker
+ *
+ * @author Joumen Harzli
+ */
+public final class FakeTuples {
+
+  private static final int SOURCE_TASK_ID = 1;
+
+  private FakeTuples() {
+  }
+
+  /**
+   * @param sourceComponentId id of the component emitting the tuple
+   * @param fields            output fields of the component
+   * @param values            values of the tuple in the same order as the fields
+   * @return a tuple of the default stream
+   */
+  public static Tuple create(String sourceComponentId, Fields fields, Object... values) {
+    Map<Integer, String> taskToComponent = new HashMap<>();
+    taskToComponent.put(SOURCE_TASK_ID, sourceComponentId);
+
+    Map<String, Map<String, Fields>> componentToStreamToFields = new HashMap<>();
+    componentToStreamToFields.put(sourceComponentId, Collections.singletonMap(Utils.DEFAULT_STREAM_ID, fields));
+
+    GeneralTopologyContext context = new GeneralTopologyContext(new StormTopology(), new HashMap<>(),
+        taskToComponent, Collections.singletonMap(sourceComponentId, Collections.singletonList(SOURCE_TASK_ID)),
+        componentToStreamToFields, "benchmark");
+
+    return new TupleImpl(context, Arrays.asList(values), SOURCE_TASK_ID, Utils.DEFAULT_STREAM_ID);
+  }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.benchmarks;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.storm.grouping.PartialKeyGrouping;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.TopologyProfile;
+
+import static com.github.joumenharzli.Configuration.*;
+import static com.github.joumenharzli.analytics.WebAnalyticsTopology.COUNT_PRODUCT_VIEWS;
+import static com.github.joumenharzli.benchmarks.TopologyThroughputBenchmark.*;
+
+/**
+ * Load balance of the groupings of the bolts counting by product on a skewed stream
+ * <p>
+ * The products of a synthetic stream are drawn from a Zipf distribution and routed to the tasks
+ * of the {@code count_product_views} bolt by the fields grouping and by the partial key grouping
+ * of storm. For each grouping the share of the views received by the busiest task, its load
+ * relative to the mean load and the counters written by flush are reported: the busiest task
+ * bounds the throughput of the bolt while the partial key grouping may write a key from two tasks.
+ * <p>
+ * The arguments are the same as the {@link TopologyThroughputBenchmark}, for example
+ * {@code web.analytics.parallelism.count_product_views=8 web.analytics.benchmark.zipf.exponent=1.2}.
+ *
+ * @author Joumen Harzli
+ */
+public final class GroupingSkewBenchmark {
+
+  public static final String EVENTS_CONFIG = "web.analytics.benchmark.events";
+  public static final int EVENTS = 5_000_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(GroupingSkewBenchmark.class);
+
+  private static final long SEED = 42;
+
+  private GroupingSkewBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    TopologyProfile profile = TopologyProfile.load(args);
+
+    int tasks = profile.getParallelism(COUNT_PRODUCT_VIEWS);
+    int events = profile.getInt(EVENTS_CONFIG, EVENTS);
+    int products = profile.getInt(PRODUCTS_CONFIG, PRODUCTS);
+    double zipfExponent = Double.parseDouble(profile.getString(ZIPF_EXPONENT_CONFIG, ZIPF_EXPONENT));
+    /* Each task flushes once it holds the maximum of pending tuples */
+    int flushEvents = tasks * profile.getInt(COUNTER_MAX_PENDING_TUPLES_CONFIG, COUNTER_MAX_PENDING_TUPLES);
+
+    Validate.isTrue(tasks > 1, "The count_product_views bolt must have more than one task");
+    Validate.isTrue(events > 0, "The number of events must be positive");
+
+    String[] productIds = new String[products];
+    Random random = new Random(SEED);
+    for (int i = 0; i < products; i++) {
+      productIds[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    LOGGER.info("Routing {} views of {} products with a Zipf exponent of {} to {} tasks",
+        events, products, zipfExponent, tasks);
+
+    run(COUNTER_GROUPING_FIELDS, fieldsGrouping(tasks), productIds, zipfExponent, tasks, events, flushEvents);
+    run(COUNTER_GROUPING_PARTIAL_KEY, partialKeyGrouping(tasks), productIds, zipfExponent, tasks, events, flushEvents);
+  }
+
+  private static void run(String grouping, ToIntFunction<String> router, String[] productIds, double zipfExponent,
+                          int tasks, int events, int flushEvents) {
+    ZipfianGenerator generator = new ZipfianGenerator(productIds.length, zipfExponent, new Random(SEED));
+
+    long[] loads = new long[tasks];
+    List<Set<String>> pendingCounters = IntStream.range(0, tasks)
+        .mapToObj(task -> new HashSet<String>())
+        .collect(Collectors.toList());
+    long writtenCounters = 0;
+
+    for (int i = 0; i < events; i++) {
+      String productId = productIds[generator.next()];
+      int task = router.applyAsInt(productId);
+
+      loads[task]++;
+      pendingCounters.get(task).add(productId);
+
+      if ((i + 1) % flushEvents == 0 || i + 1 == events) {
+        for (Set<String> counters : pendingCounters) {
+          writtenCounters += counters.size();
+          counters.clear();
+        }
+      }
+    }
+
+    long maxLoad = Arrays.stream(loads).max().getAsLong();
+    double meanLoad = (double) events / tasks;
+
+    LOGGER.info("{}: busiest task {}% of the views, imbalance {}, {} counters written by {} views, loads {}",
+        grouping, String.format("%.1f", 100.0 * maxLoad / events), String.format("%.2f", maxLoad / meanLoad),
+        String.format("%.1f", (double) writtenCounters * flushEvents / events), flushEvents, Arrays.toString(loads));
+  }
+
+  /**
+   * @return the task index chosen like the fields grouping of storm, from the hash of the key
+   */
+  private static ToIntFunction<String> fieldsGrouping(int tasks) {
+    return productId -> Math.floorMod(Arrays.deepHashCode(new Object[]{productId}), tasks);
+  }
+
+  /**
+   * @return the task index chosen by the partial key grouping of storm, keyed by the first value
+   */
+  private static ToIntFunction<String> partialKeyGrouping(int tasks) {
+    List<Integer> targetTasks = IntStream.range(0, tasks).boxed().collect(Collectors.toList());
+    PartialKeyGrouping grouping = new PartialKeyGrouping();
+    grouping.prepare(null, null, targetTasks);
+
+    return productId -> grouping.chooseTasks(0, Collections.singletonList(productId)).get(0);
+  }
+
+}
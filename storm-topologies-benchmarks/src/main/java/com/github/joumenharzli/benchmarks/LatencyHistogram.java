@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.benchmarks;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies with a precision of a millisecond
+ * <p>
+ * The latencies above the maximum are counted in the last bucket
+ *
+ * @author Joumen Harzli
+ */
+public class LatencyHistogram {
+
+  private final AtomicLongArray counts;
+
+  /**
+   * @param maxLatencyMs highest latency recorded precisely
+   */
+  public LatencyHistogram(int maxLatencyMs) {
+    this.counts = new AtomicLongArray(maxLatencyMs + 1);
+  }
+
+  /**
+   * @param latencyMs latency to record
+   */
+  public void record(long latencyMs) {
+    counts.incrementAndGet((int) Math.max(0, Math.min(latencyMs, counts.length() - 1)));
+  }
+
+  /**
+   * Take the recorded latencies and reset the histogram
+   *
+   * @return the latencies recorded since the last snapshot
+   */
+  public Snapshot snapshotAndReset() {
+    long[] snapshot = new long[counts.length()];
+    for (int i = 0; i < snapshot.length; i++) {
+      snapshot[i] = counts.getAndSet(i, 0);
+    }
+    return new Snapshot(snapshot);
+  }
+
+  /**
+   * Latencies recorded during a period
+   */
+  public static final class Snapshot {
+
+    private final long[] counts;
+    private final long total;
+
+    private Snapshot(long[] counts) {
+      this.counts = counts;
+
+      long sum = 0;
+      for (long count : counts) {
+        sum += count;
+      }
+      this.total = sum;
+    }
+
+    /**
+     * @return the number of recorded latencies
+     */
+    public long getCount() {
+      return total;
+    }
+
+    /**
+     * @param percentile percentile from 0 to 100
+     * @return the latency in milliseconds below which the percentile of the latencies falls or -1
+     * if nothing is recorded
+     */
+    public long getPercentile(double percentile) {
+      if (total == 0) {
+        return -1;
+      }
+
+      long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+      long seen = 0;
+      for (int latency = 0; latency < counts.length; latency++) {
+        seen += counts[latency];
+        if (seen >= rank) {
+          return latency;
+        }
+      }
+      return counts.length - 1;
+    }
+
+    /**
+     * @return the snapshot merged with another one
+     */
+    public Snapshot merge(Snapshot other) {
+      long[] merged = new long[counts.length];
+      for (int i = 0; i < merged.length; i++) {
+        merged[i] = counts[i] + other.counts[i];
+      }
+      return new Snapshot(merged);
+    }
+
+  }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.storm.Config;
+import org.apache.storm.LocalCluster;
+import org.apache.storm.generated.BoltStats;
+import org.apache.storm.generated.ExecutorStats;
+import org.apache.storm.generated.ExecutorSummary;
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.generated.TopologyInfo;
+import org.apache.storm.generated.TopologySummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.TopologyProfile;
+import com.github.joumenharzli.sink.InMemoryProductViewsSink;
+
+import static com.github.joumenharzli.Configuration.*;
+import static com.github.joumenharzli.analytics.WebAnalyticsTopology.createTopology;
+import static com.github.joumenharzli.analytics.WebAnalyticsTopology.createTopologyConfiguration;
+
+/**
+ * End-to-end throughput benchmark of the web analytics topology
+ * <p>
+ * An embedded kafka broker receives a synthetic stream of access logs which is processed by the
+ * topology running in a {@link LocalCluster} and writing to the in-memory sink, so the benchmark
+ * runs offline. The throughput, the lag, the complete latency percentiles and the capacity of the
+ * bolts are reported periodically and for the whole measurement after the warmup.
+ * <p>
+ * The arguments are the same as the {@link com.github.joumenharzli.App}: profile files and
+ * {@code key=value} properties. The benchmark properties are the {@code *_CONFIG} keys of this
+ * class, for example {@code web.analytics.layout=fused web.analytics.benchmark.events.per.second=50000}.
+ *
+ * @author Joumen Harzli
+ */
+public final class TopologyThroughputBenchmark {
+
+  public static final String DURATION_SECS_CONFIG = "web.analytics.benchmark.duration.secs";
+  public static final int DURATION_SECS = 60;
+  public static final String WARMUP_SECS_CONFIG = "web.analytics.benchmark.warmup.secs";
+  public static final int WARMUP_SECS = 15;
+  public static final String REPORT_INTERVAL_SECS_CONFIG = "web.analytics.benchmark.report.interval.secs";
+  public static final int REPORT_INTERVAL_SECS = 5;
+  /* 0 to produce as fast as possible */
+  public static final String EVENTS_PER_SECOND_CONFIG = "web.analytics.benchmark.events.per.second";
+  public static final long EVENTS_PER_SECOND = 0;
+  public static final String PRODUCTS_CONFIG = "web.analytics.benchmark.products";
+  public static final int PRODUCTS = 10_000;
+  public static final String USERS_CONFIG = "web.analytics.benchmark.users";
+  public static final int USERS = 100_000;
+  public static final String ZIPF_EXPONENT_CONFIG = "web.analytics.benchmark.zipf.exponent";
+  public static final String ZIPF_EXPONENT = "1.0";
+  public static final String KAFKA_PARTITIONS_CONFIG = "web.analytics.benchmark.kafka.partitions";
+  public static final int KAFKA_PARTITIONS = 4;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TopologyThroughputBenchmark.class);
+
+  /* Applied before the arguments so they can be overridden */
+  private static final String[] BENCHMARK_PROFILE = {
+      SINK_CONFIG + "=" + SINK_MEMORY,
+      KAFKA_SPOUT_IMPLEMENTATION_CONFIG + "=consumer"
+  };
+
+  /* Window of the storm statistics used for the capacity */
+  private static final String STATS_WINDOW = "600";
+  private static final int STATS_WINDOW_SECS = 600;
+
+  private TopologyThroughputBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    TopologyProfile settings = TopologyProfile.load(ArrayUtils.addAll(BENCHMARK_PROFILE, args));
+
+    try (EmbeddedKafka kafka = EmbeddedKafka.start(settings.getInt(KAFKA_PARTITIONS_CONFIG, KAFKA_PARTITIONS))) {
+
+      TopologyProfile profile = TopologyProfile.load(ArrayUtils.addAll(ArrayUtils.addAll(BENCHMARK_PROFILE, args),
+          KAFKA_BOOTSTRAP_SERVERS_CONFIG + "=" + kafka.getBootstrapServers()));
+
+      try (AccessLogProducer producer = new AccessLogProducer(kafka.getBootstrapServers(), PRODUCT_ACCESS_TOPIC,
+          profile.getInt(PRODUCTS_CONFIG, PRODUCTS), profile.getInt(USERS_CONFIG, USERS),
+          Double.parseDouble(profile.getString(ZIPF_EXPONENT_CONFIG, ZIPF_EXPONENT)),
+          profile.getLong(EVENTS_PER_SECOND_CONFIG, EVENTS_PER_SECOND))) {
+
+        producer.createTopic();
+        run(profile, producer);
+      }
+
+    }
+  }
+
+  private static void run(TopologyProfile profile, AccessLogProducer producer) throws Exception {
+    Config config = createTopologyConfiguration(profile);
+    config.put(Config.TOPOLOGY_STATS_SAMPLE_RATE, 1.0d);
+    config.put(Config.TOPOLOGY_AUTO_TASK_HOOKS, Collections.singletonList(CompleteLatencyHook.class.getName()));
+
+    LocalCluster cluster = new LocalCluster();
+    cluster.submitTopology(WEB_ANALYTICS_TOPOLOGY_NAME, config, createTopology(profile));
+
+    Thread producerThread = new Thread(producer, "access-log-producer");
+    producerThread.start();
+
+    try {
+      measure(profile, producer, cluster);
+    } finally {
+      producer.stop();
+      producerThread.join();
+      cluster.killTopology(WEB_ANALYTICS_TOPOLOGY_NAME);
+      cluster.shutdown();
+    }
+  }
+
+  private static void measure(TopologyProfile profile, AccessLogProducer producer, LocalCluster cluster)
+      throws Exception {
+    int warmupSecs = profile.getInt(WARMUP_SECS_CONFIG, WARMUP_SECS);
+    int durationSecs = profile.getInt(DURATION_SECS_CONFIG, DURATION_SECS);
+    int reportIntervalSecs = profile.getInt(REPORT_INTERVAL_SECS_CONFIG, REPORT_INTERVAL_SECS);
+
+    Validate.isTrue(durationSecs > 0 && reportIntervalSecs > 0, "The duration and the report interval must be positive");
+
+    LOGGER.info("Warming up for {} seconds", warmupSecs);
+    TimeUnit.SECONDS.sleep(warmupSecs);
+
+    CompleteLatencyHook.getCompleteLatencies().snapshotAndReset();
+    InMemoryProductViewsSink.getInstance().clear();
+
+    LatencyHistogram.Snapshot measuredLatencies = null;
+    long measureStartNanos = System.nanoTime();
+    long measureStartAcked = CompleteLatencyHook.getAckedCount();
+    long previousNanos = measureStartNanos;
+    long previousProduced = producer.getProducedCount();
+    long previousAcked = measureStartAcked;
+
+    LOGGER.info("Measuring for {} seconds", durationSecs);
+
+    while (System.nanoTime() - measureStartNanos < TimeUnit.SECONDS.toNanos(durationSecs)) {
+      TimeUnit.SECONDS.sleep(reportIntervalSecs);
+
+      long nowNanos = System.nanoTime();
+      long produced = producer.getProducedCount();
+      long acked = CompleteLatencyHook.getAckedCount();
+      double elapsedSecs = (nowNanos - previousNanos) / 1e9;
+      LatencyHistogram.Snapshot latencies = CompleteLatencyHook.getCompleteLatencies().snapshotAndReset();
+
+      LOGGER.info("produced {}/s, acked {}/s, failed {}, lag {}, complete latency ms p50 {} p99 {}, {} access logs written",
+          Math.round((produced - previousProduced) / elapsedSecs), Math.round((acked - previousAcked) / elapsedSecs),
+          CompleteLatencyHook.getFailedCount(), produced - acked - CompleteLatencyHook.getFailedCount(),
+          latencies.getPercentile(50), latencies.getPercentile(99),
+          InMemoryProductViewsSink.getInstance().drainAccessLogs());
+
+      measuredLatencies = measuredLatencies == null ? latencies : measuredLatencies.merge(latencies);
+      previousNanos = nowNanos;
+      previousProduced = produced;
+      previousAcked = acked;
+    }
+
+    double measuredSecs = (previousNanos - measureStartNanos) / 1e9;
+
+    LOGGER.info("Sustained throughput: {} tuples/s", Math.round((previousAcked - measureStartAcked) / measuredSecs));
+    LOGGER.info("Complete latency ms: p50 {} p90 {} p99 {} p99.9 {} max {}",
+        measuredLatencies.getPercentile(50), measuredLatencies.getPercentile(90), measuredLatencies.getPercentile(99),
+        measuredLatencies.getPercentile(99.9), measuredLatencies.getPercentile(100));
+    LOGGER.info("Failed tuples: {}", CompleteLatencyHook.getFailedCount());
+    getCapacities(cluster).forEach((component, capacity) ->
+        LOGGER.info("Capacity of {}: {}", component, String.format("%.3f", capacity)));
+  }
+
+  /**
+   * The capacity of a bolt is the fraction of the time its busiest executor spent executing
+   * tuples, a value close to 1 means that the bolt is the bottleneck
+   *
+   * @return the capacity by bolt
+   */
+  private static Map<String, Double> getCapacities(LocalCluster cluster) throws Exception {
+    Map<String, Double> capacities = new TreeMap<>();
+
+    for (ExecutorSummary executor : getTopologyInfo(cluster).get_executors()) {
+      ExecutorStats stats = executor.get_stats();
+      if (stats == null || !stats.get_specific().is_set_bolt() || executor.get_component_id().startsWith("__")) {
+        continue;
+      }
+
+      BoltStats boltStats = stats.get_specific().get_bolt();
+      Map<GlobalStreamId, Long> executed = boltStats.get_executed().get(STATS_WINDOW);
+      Map<GlobalStreamId, Double> executeLatencies = boltStats.get_execute_ms_avg().get(STATS_WINDOW);
+      if (executed == null || executeLatencies == null) {
+        continue;
+      }
+
+      double busyMs = 0;
+      for (Map.Entry<GlobalStreamId, Long> streamExecuted : executed.entrySet()) {
+        Double executeLatency = executeLatencies.get(streamExecuted.getKey());
+        busyMs += executeLatency == null ? 0 : streamExecuted.getValue() * executeLatency;
+      }
+
+      int windowSecs = Math.max(1, Math.min(executor.get_uptime_secs(), STATS_WINDOW_SECS));
+      capacities.merge(executor.get_component_id(), busyMs / (windowSecs * 1000d), Math::max);
+    }
+
+    return capacities;
+  }
+
+  private static TopologyInfo getTopologyInfo(LocalCluster cluster) throws Exception {
+    List<TopologySummary> topologies = cluster.getClusterInfo().get_topologies();
+    for (TopologySummary topology : topologies) {
+      if (WEB_ANALYTICS_TOPOLOGY_NAME.equals(topology.get_name())) {
+        return cluster.getTopologyInfo(topology.get_id());
+      }
+    }
+    throw new IllegalStateException(String.format("The topology %s is not running", WEB_ANALYTICS_TOPOLOGY_NAME));
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Generator of ranks following a Zipf distribution
+ * <p>
+ * The rank {@code k} among {@code n} is drawn with a probability proportional to
+ * {@code 1 / k^exponent}, the cumulative probabilities are computed once so a draw is a binary
+ * search
+ *
+ * @author Joumen Harzli
+ */
+public class ZipfianGenerator {
+
+  private final double[] cumulativeProbabilities;
+  private final Random random;
+
+  /**
+   * @param count    number of ranks
+   * @param exponent exponent of the distribution, 0 for a uniform distribution
+   * @param random   source of the draws
+   */
+  public ZipfianGenerator(int count, double exponent, Random random) {
+    Validate.isTrue(count > 0, "The number of ranks must be positive");
+    Validate.isTrue(exponent >= 0, "The exponent must be positive or zero");
+
+    this.random = random;
+    this.cumulativeProbabilities = new double[count];
+
+    double sum = 0;
+    for (int rank = 1; rank <= count; rank++) {
+      sum += 1 / Math.pow(rank, exponent);
+      cumulativeProbabilities[rank - 1] = sum;
+    }
+    for (int i = 0; i < count; i++) {
+      cumulativeProbabilities[i] /= sum;
+    }
+  }
+
+  /**
+   * @return the drawn rank from 0, the rank 0 being the most frequent
+   */
+  public int next() {
+    int index = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+    int rank = index >= 0 ? index : -index - 1;
+    return Math.min(rank, cumulativeProbabilities.length - 1);
+  }
+
+}
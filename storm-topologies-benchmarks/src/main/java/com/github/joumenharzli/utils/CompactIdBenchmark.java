@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import com.github.joumenharzli.benchmarks.ZipfianGenerator;
+
+import static com.github.joumenharzli.Configuration.ID_DICTIONARY_CAPACITY;
+
+/**
+ * Encoding of the ids by the parse bolt, their serialization between the workers and their
+ * decoding with and without the dictionary of the writers
+ * <p>
+ * The ids are product ids drawn from a Zipf distribution so the dictionary receives the hot
+ * products like the writers do
+ *
+ * @author Joumen Harzli
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompactIdBenchmark {
+
+  private static final int IDS_COUNT = 1024;
+  private static final int PRODUCTS_COUNT = 100_000;
+
+  private String[] ids;
+  private CompactId[] compactIds;
+  private IdDictionary dictionary;
+  private Kryo kryo;
+  private Output output;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    String[] productIds = new String[PRODUCTS_COUNT];
+    for (int i = 0; i < PRODUCTS_COUNT; i++) {
+      productIds[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    ZipfianGenerator products = new ZipfianGenerator(PRODUCTS_COUNT, 1.0, random);
+    ids = new String[IDS_COUNT];
+    compactIds = new CompactId[IDS_COUNT];
+    for (int i = 0; i < IDS_COUNT; i++) {
+      ids[i] = productIds[products.next()];
+      compactIds[i] = CompactId.encode(ids[i]);
+    }
+
+    dictionary = new IdDictionary(ID_DICTIONARY_CAPACITY);
+    kryo = new Kryo();
+    kryo.register(CompactId.class, new CompactId.KryoSerializer());
+    output = new Output(64);
+  }
+
+  @Benchmark
+  public CompactId encode() {
+    return CompactId.encode(ids[nextIndex()]);
+  }
+
+  @Benchmark
+  public String decode() {
+    return compactIds[nextIndex()].toString();
+  }
+
+  @Benchmark
+  public String decodeWithDictionary() {
+    return dictionary.decode(compactIds[nextIndex()]);
+  }
+
+  /**
+   * @return the serialized size of the id, 17 bytes
+   */
+  @Benchmark
+  public int serialize() {
+    output.clear();
+    kryo.writeObject(output, compactIds[nextIndex()]);
+    return output.position();
+  }
+
+  /**
+   * @return the serialized size of the string, 37 bytes
+   */
+  @Benchmark
+  public int serializeString() {
+    output.clear();
+    kryo.writeObject(output, ids[nextIndex()]);
+    return output.position();
+  }
+
+  private int nextIndex() {
+    return index++ & (IDS_COUNT - 1);
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.joumenharzli.benchmarks.AccessLogs;
+
+/**
+ * Day truncation and timestamp parsing compared to the java.time equivalents
+ *
+ * @author Joumen Harzli
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimestampUtilsBenchmark {
+
+  private static final int TIMESTAMPS_COUNT = 1024;
+
+  private long[] timestamps;
+  private char[][] isoTimestamps;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    AccessLogs accessLogs = new AccessLogs(TIMESTAMPS_COUNT, 42);
+
+    timestamps = new long[TIMESTAMPS_COUNT];
+    isoTimestamps = new char[TIMESTAMPS_COUNT][];
+    for (int i = 0; i < TIMESTAMPS_COUNT; i++) {
+      timestamps[i] = accessLogs.getAccessTimestamp(i);
+      isoTimestamps[i] = Instant.ofEpochMilli(timestamps[i]).toString().toCharArray();
+    }
+  }
+
+  @Benchmark
+  public long truncateToDay() {
+    return TimestampUtils.truncateToDay(timestamps[nextIndex()]);
+  }
+
+  @Benchmark
+  public long truncateToDayWithInstant() {
+    return Instant.ofEpochMilli(timestamps[nextIndex()]).truncatedTo(ChronoUnit.DAYS).toEpochMilli();
+  }
+
+  @Benchmark
+  public long parseIsoInstant() {
+    char[] isoTimestamp = isoTimestamps[nextIndex()];
+    return TimestampUtils.parseIsoInstant(isoTimestamp, 0, isoTimestamp.length);
+  }
+
+  @Benchmark
+  public long parseIsoInstantWithInstant() {
+    char[] isoTimestamp = isoTimestamps[nextIndex()];
+    return Instant.parse(new String(isoTimestamp)).toEpochMilli();
+  }
+
+  private int nextIndex() {
+    return index++ & (TIMESTAMPS_COUNT - 1);
+  }
+
+}
@@ -15,11 +15,16 @@
 
 package com.github.joumenharzli;
 
+import org.apache.storm.Config;
 import org.apache.storm.LocalCluster;
+import org.apache.storm.StormSubmitter;
+import org.apache.storm.generated.StormTopology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static com.github.joumenharzli.Configuration.WEB_ANALYTICS_TOPOLOGY_NAME;
+import com.github.joumenharzli.sink.ProductViewsSchema;
+
+import static com.github.joumenharzli.Configuration.*;
 import static com.github.joumenharzli.analytics.WebAnalyticsTopology.createTopology;
 import static com.github.joumenharzli.analytics.WebAnalyticsTopology.createTopologyConfiguration;
 
@@ -35,19 +40,34 @@ public class App {
   /**
    * Creation, Configuration and Submission of the topology
    *
-   * @param args currently no args are needed
+   * @param args paths of the profile files or {@code key=value} properties overriding the profile
    */
   public static void main(String[] args) {
-    LOGGER.info("Submitting {} topology to local storm cluster", WEB_ANALYTICS_TOPOLOGY_NAME);
 
     try {
 
-      LocalCluster cluster = new LocalCluster();
+      TopologyProfile profile = TopologyProfile.load(args);
+
+      Config config = createTopologyConfiguration(profile);
+      StormTopology topology = createTopology(profile);
+
+      if (SINK_CASSANDRA.equals(profile.getString(SINK_CONFIG, SINK))
+          && profile.getBoolean(CASSANDRA_CREATE_SCHEMA_CONFIG, CASSANDRA_CREATE_SCHEMA)) {
+        ProductViewsSchema.create(config);
+      }
+
+      if (profile.getBoolean(LOCAL_MODE_CONFIG, LOCAL_MODE)) {
+
+        LOGGER.info("Submitting {} topology to local storm cluster", WEB_ANALYTICS_TOPOLOGY_NAME);
+        LocalCluster cluster = new LocalCluster();
+        cluster.submitTopology(WEB_ANALYTICS_TOPOLOGY_NAME, config, topology);
+
+      } else {
+
+        LOGGER.info("Submitting {} topology to the storm cluster", WEB_ANALYTICS_TOPOLOGY_NAME);
+        StormSubmitter.submitTopology(WEB_ANALYTICS_TOPOLOGY_NAME, config, topology);
 
-      cluster.submitTopology(
-          WEB_ANALYTICS_TOPOLOGY_NAME,
-          createTopologyConfiguration(),
-          createTopology());
+      }
 
     } catch (Exception e) {
       LOGGER.error("Unable to submit {} topology", WEB_ANALYTICS_TOPOLOGY_NAME, e);
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.storm.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.archive.AccessLogArchiveReader;
+import com.github.joumenharzli.backfill.ProductViewsCounts;
+import com.github.joumenharzli.sink.ProductAccessLog;
+import com.github.joumenharzli.sink.ProductAccessLogReader;
+import com.github.joumenharzli.sink.ProductViewsSchema;
+import com.github.joumenharzli.sink.ProductViewsSink;
+import com.github.joumenharzli.sink.ProductViewsSinks;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static com.github.joumenharzli.Configuration.*;
+import static com.github.joumenharzli.analytics.WebAnalyticsTopology.createTopologyConfiguration;
+
+/**
+ * Entry point rebuilding the counter tables from the raw access logs
+ * <p>
+ * The access logs of the time range are read from the archive or from cassandra and the views
+ * are counted in memory, the absolute count of each counter is then written to the sink of the
+ * profile with a bounded number of writes in flight. The cassandra counters can only be
+ * incremented so their tables must be empty, they are truncated first when
+ * {@code BACKFILL_TRUNCATE_CONFIG} is enabled and the backfill is refused otherwise unless they
+ * are already empty.
+ * <p>
+ * The truncated tables only get back the counts of the range so the truncation is refused unless
+ * the range covers all the access logs of the source and {@code BACKFILL_CONFIRM_CONFIG} is
+ * enabled, the range and the tables are logged before. The topology must be stopped meanwhile
+ * since its increments would be lost by the truncation.
+ *
+ * @author Joumen Harzli
+ */
+public final class Backfill {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(Backfill.class);
+
+  /* the access logs are read from cassandra by hour so the pages of a single read stay small */
+  private static final long CASSANDRA_READ_CHUNK_MILLIS = 3_600_000L;
+
+  private Backfill() {
+  }
+
+  /**
+   * Read, count then write the counters
+   *
+   * @param args paths of the profile files or {@code key=value} properties overriding the profile
+   */
+  public static void main(String[] args) {
+
+    try {
+
+      TopologyProfile profile = TopologyProfile.load(args);
+      Config config = createTopologyConfiguration(profile);
+
+      long start = System.currentTimeMillis();
+      long fromTimestamp = profile.getLong(BACKFILL_FROM_MILLIS_CONFIG, BACKFILL_FROM_MILLIS);
+      long toTimestamp = profile.getLong(BACKFILL_TO_MILLIS_CONFIG, start);
+      String source = profile.getString(BACKFILL_SOURCE_CONFIG, BACKFILL_SOURCE);
+      List<String> counters = Arrays.asList(
+          StringUtils.split(profile.getString(BACKFILL_COUNTERS_CONFIG, BACKFILL_COUNTERS), ", "));
+
+      boolean truncate = profile.getBoolean(BACKFILL_TRUNCATE_CONFIG, BACKFILL_TRUNCATE);
+      if (truncate) {
+        validateTruncation(config, source, fromTimestamp, toTimestamp, start, getTables(counters),
+            profile.getBoolean(BACKFILL_CONFIRM_CONFIG, BACKFILL_CONFIRM));
+      } else if (SINK_CASSANDRA.equals(ProductViewsSinks.getSinkName(config))) {
+        validateEmptyTables(config, getTables(counters));
+      }
+
+      ProductViewsCounts counts = read(source, config, fromTimestamp, toTimestamp);
+      LOGGER.info("Counted {} views in {} counters (total, by day, by user) in {} ms", counts.getCount(),
+          Arrays.toString(counts.getCountersCount()), System.currentTimeMillis() - start);
+
+      if (truncate) {
+        ProductViewsSchema.truncate(config, getTables(counters));
+      }
+
+      start = System.currentTimeMillis();
+      long failures = write(config, counts, counters,
+          profile.getInt(BACKFILL_MAX_IN_FLIGHT_WRITES_CONFIG, BACKFILL_MAX_IN_FLIGHT_WRITES));
+      LOGGER.info("Wrote the counters {} in {} ms with {} failed writes", counters,
+          System.currentTimeMillis() - start, failures);
+
+      if (failures > 0) {
+        System.exit(1);
+      }
+
+    } catch (Exception e) {
+      LOGGER.error("Unable to backfill the counters", e);
+      System.exit(1);
+    }
+
+  }
+
+  /**
+   * Count the views of the access logs of a time range
+   *
+   * @param source        archive or cassandra
+   * @param config        configuration holding the settings of the source
+   * @param fromTimestamp start of the range in milliseconds since the epoch, inclusive
+   * @param toTimestamp   end of the range in milliseconds since the epoch, exclusive
+   * @return the counted views
+   * @throws IOException          if the archive cannot be read
+   * @throws ExecutionException   if the access logs cannot be read from cassandra
+   * @throws InterruptedException if interrupted while reading from cassandra
+   */
+  public static ProductViewsCounts read(String source, Map config, long fromTimestamp, long toTimestamp)
+      throws IOException, ExecutionException, InterruptedException {
+    ProductViewsCounts counts = new ProductViewsCounts();
+
+    switch (source) {
+      case BACKFILL_SOURCE_ARCHIVE:
+        new AccessLogArchiveReader(getArchiveDirectory(config)).read(fromTimestamp, toTimestamp, counts::add);
+        break;
+      case BACKFILL_SOURCE_CASSANDRA:
+        try (ProductAccessLogReader reader = new ProductAccessLogReader(config)) {
+          for (long from = fromTimestamp; from < toTimestamp; from += CASSANDRA_READ_CHUNK_MILLIS) {
+            long to = Math.min(from + CASSANDRA_READ_CHUNK_MILLIS, toTimestamp);
+            List<ProductAccessLog> accessLogs = reader.read(from, to).get();
+            accessLogs.forEach(counts::add);
+          }
+        }
+        break;
+      default:
+        throw new IllegalArgumentException(String.format("Unknown backfill source %s", source));
+    }
+
+    return counts;
+  }
+
+  /**
+   * Write the absolute counts of the selected counters to the sink
+   *
+   * @param config      configuration holding the settings of the sink
+   * @param counts      the counted views
+   * @param counters    the counters to write among total, by_day and by_user
+   * @param maxInFlight maximum of writes in flight
+   * @return the number of failed writes
+   */
+  public static long write(Map config, ProductViewsCounts counts, List<String> counters, int maxInFlight) {
+    try (ProductViewsSink sink = ProductViewsSinks.create(config, "backfill")) {
+      BoundedWrites writes = new BoundedWrites(maxInFlight);
+
+      if (counters.contains(BACKFILL_COUNTERS_TOTAL)) {
+        counts.forEachTotal((productId, views) -> writes.submit(() -> sink.incrementTotal(productId, views)));
+      }
+      if (counters.contains(BACKFILL_COUNTERS_BY_DAY)) {
+        counts.forEachByDay((productId, day, views) -> writes.submit(() -> sink.incrementByDay(productId, day, views)));
+      }
+      if (counters.contains(BACKFILL_COUNTERS_BY_USER)) {
+        counts.forEachByUser((userId, productId, day, views) ->
+            writes.submit(() -> sink.incrementByUser(userId, productId, day, views)));
+      }
+
+      return writes.await();
+    }
+  }
+
+  /**
+   * Refuse the truncation unless the range covers all the access logs of the source and the
+   * truncation is confirmed
+   *
+   * @param startedAt start of the backfill, the source may receive access logs until then
+   */
+  private static void validateTruncation(Map config, String source, long fromTimestamp, long toTimestamp,
+                                         long startedAt, List<String> tables, boolean confirmed) throws IOException {
+    Validate.isTrue(SINK_CASSANDRA.equals(ProductViewsSinks.getSinkName(config)),
+        "Only the cassandra counter tables can be truncated");
+
+    LOGGER.warn("The tables {} will be truncated then rebuilt from the access logs of the {} from {} to {}",
+        tables, source, Instant.ofEpochMilli(fromTimestamp), Instant.ofEpochMilli(toTimestamp));
+
+    boolean covered;
+    switch (source) {
+      case BACKFILL_SOURCE_ARCHIVE:
+        covered = new AccessLogArchiveReader(getArchiveDirectory(config)).isCoveredBy(fromTimestamp, toTimestamp);
+        break;
+      case BACKFILL_SOURCE_CASSANDRA:
+        try (ProductAccessLogReader reader = new ProductAccessLogReader(config)) {
+          covered = fromTimestamp <= reader.readFirstDay() && toTimestamp >= startedAt;
+        }
+        break;
+      default:
+        throw new IllegalArgumentException(String.format("Unknown backfill source %s", source));
+    }
+    Validate.isTrue(covered, "The range from %s to %s does not cover all the access logs of the %s, "
+            + "the counts out of the range would be lost by the truncation", Instant.ofEpochMilli(fromTimestamp),
+        Instant.ofEpochMilli(toTimestamp), source);
+    Validate.isTrue(confirmed, "Set %s=true to confirm the truncation of the tables %s", BACKFILL_CONFIRM_CONFIG, tables);
+  }
+
+  /**
+   * Refuse to increment the cassandra counters unless their tables are empty, the counts would be
+   * added to the stored ones
+   */
+  private static void validateEmptyTables(Map config, List<String> tables) {
+    List<String> nonEmptyTables = ProductViewsSchema.getNonEmptyTables(config, tables);
+    Validate.isTrue(nonEmptyTables.isEmpty(), "The counter tables %s are not empty, the backfill would add its counts "
+        + "to the stored ones. Set %s=true to truncate them first", nonEmptyTables, BACKFILL_TRUNCATE_CONFIG);
+  }
+
+  private static Path getArchiveDirectory(Map config) {
+    Object directory = config.get(ARCHIVE_DIRECTORY_CONFIG);
+    return Paths.get(directory == null ? ARCHIVE_DIRECTORY : directory.toString());
+  }
+
+  private static List<String> getTables(List<String> counters) {
+    List<String> tables = new ArrayList<>();
+    if (counters.contains(BACKFILL_COUNTERS_TOTAL)) {
+      tables.add(ProductViewsSchema.PRODUCTS_VIEWS_TOTAL_TABLE);
+      tables.add(ProductViewsSchema.PRODUCTS_VIEWS_TOTAL_SHARDED_TABLE);
+    }
+    if (counters.contains(BACKFILL_COUNTERS_BY_DAY)) {
+      tables.add(ProductViewsSchema.PRODUCTS_VIEWS_BY_TIMESTAMP_TABLE);
+    }
+    if (counters.contains(BACKFILL_COUNTERS_BY_USER)) {
+      tables.add(ProductViewsSchema.PRODUCTS_VIEWS_BY_USER_TABLE);
+    }
+    return tables;
+  }
+
+  /**
+   * Writes submitted while less than the maximum of writes are in flight
+   */
+  private static final class BoundedWrites {
+
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final AtomicLong failures = new AtomicLong();
+
+    private BoundedWrites(int maxInFlight) {
+      this.maxInFlight = maxInFlight;
+      this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Start a write, blocks while the maximum of writes in flight is reached
+     */
+    private void submit(Supplier<ListenableFuture<?>> write) {
+      inFlight.acquireUninterruptibly();
+
+      ListenableFuture<?> result;
+      try {
+        result = write.get();
+      } catch (RuntimeException e) {
+        result = Futures.immediateFailedFuture(e);
+      }
+
+      Futures.addCallback(result, new FutureCallback<Object>() {
+
+        @Override
+        public void onSuccess(Object result) {
+          inFlight.release();
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          if (failures.getAndIncrement() == 0) {
+            LOGGER.error("Unable to write a counter", t);
+          }
+          inFlight.release();
+        }
+
+      }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Wait for the completion of the writes in flight
+     *
+     * @return the number of failed writes
+     */
+    private long await() {
+      inFlight.acquireUninterruptibly(maxInFlight);
+      inFlight.release(maxInFlight);
+      return failures.get();
+    }
+
+  }
+
+}
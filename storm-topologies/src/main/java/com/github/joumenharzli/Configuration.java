@@ -31,7 +31,205 @@ public final class Configuration {
   public static final String WEB_ANALYTICS_TOPOLOGY_NAME = "web-analytics";
   public static final String WEB_ANALYTICS_KEYSPACE = "web_analytics";
   public static final String PRODUCT_ACCESS_TOPIC = "product-access-topic";
+
+  /* The following values can be overridden by the topology profile with the *_CONFIG keys */
+
+  public static final String LOCAL_MODE_CONFIG = "web.analytics.local.mode";
+  public static final boolean LOCAL_MODE = true;
+
+  public static final String WORKERS_CONFIG = "web.analytics.workers";
   public static final int WEB_ANALYTICS_WORKERS_COUNT = 2;
+  public static final String ACKERS_CONFIG = "web.analytics.ackers";
+  public static final int ACKERS_COUNT = 2;
+  public static final String MAX_SPOUT_PENDING_CONFIG = "web.analytics.max.spout.pending";
+  public static final int MAX_SPOUT_PENDING = 5000;
+  public static final String MESSAGE_TIMEOUT_SECS_CONFIG = "web.analytics.message.timeout.secs";
+  public static final int MESSAGE_TIMEOUT_SECS = 30;
+  public static final String EXECUTOR_RECEIVE_BUFFER_SIZE_CONFIG = "web.analytics.executor.receive.buffer.size";
+  public static final int EXECUTOR_RECEIVE_BUFFER_SIZE = 1024;
+  public static final String EXECUTOR_SEND_BUFFER_SIZE_CONFIG = "web.analytics.executor.send.buffer.size";
+  public static final int EXECUTOR_SEND_BUFFER_SIZE = 1024;
+  /* split for a bolt by table or fused for a single writer bolt */
+  public static final String LAYOUT_CONFIG = "web.analytics.layout";
+  public static final String LAYOUT_SPLIT = "split";
+  public static final String LAYOUT_FUSED = "fused";
+  public static final String LAYOUT = LAYOUT_SPLIT;
+  public static final String PARALLELISM_CONFIG_PREFIX = "web.analytics.parallelism.";
+  public static final int PARALLELISM = 1;
+
+  /* zookeeper for the storm-kafka spout or consumer for the storm-kafka-client spout */
+  public static final String KAFKA_SPOUT_IMPLEMENTATION_CONFIG = "web.analytics.kafka.spout";
+  public static final String KAFKA_SPOUT_IMPLEMENTATION = "zookeeper";
+  public static final String KAFKA_BOOTSTRAP_SERVERS_CONFIG = "web.analytics.kafka.bootstrap.servers";
+  public static final String KAFKA_BOOTSTRAP_SERVERS = "127.0.0.1:9092";
+  public static final String KAFKA_CONSUMER_GROUP_ID = "web-analytics";
+  public static final String KAFKA_MAX_POLL_RECORDS_CONFIG = "web.analytics.kafka.max.poll.records";
+  public static final int KAFKA_MAX_POLL_RECORDS = 2000;
+  public static final String KAFKA_FETCH_MIN_BYTES_CONFIG = "web.analytics.kafka.fetch.min.bytes";
+  public static final int KAFKA_FETCH_MIN_BYTES = 64 * 1024;
+  public static final String KAFKA_FETCH_MAX_WAIT_MS_CONFIG = "web.analytics.kafka.fetch.max.wait.ms";
+  public static final int KAFKA_FETCH_MAX_WAIT_MS = 100;
+  public static final String KAFKA_OFFSET_COMMIT_PERIOD_MS_CONFIG = "web.analytics.kafka.offset.commit.period.ms";
+  public static final long KAFKA_OFFSET_COMMIT_PERIOD_MS = 10_000;
+  public static final String KAFKA_FIRST_POLL_OFFSET_STRATEGY_CONFIG = "web.analytics.kafka.first.poll.offset.strategy";
+  public static final String KAFKA_FIRST_POLL_OFFSET_STRATEGY = "UNCOMMITTED_EARLIEST";
+
+  /* cassandra, memory, file or the class name of a ProductViewsSink */
+  public static final String SINK_CONFIG = "web.analytics.sink";
+  public static final String SINK_CASSANDRA = "cassandra";
+  public static final String SINK_MEMORY = "memory";
+  public static final String SINK_FILE = "file";
+  public static final String SINK = SINK_CASSANDRA;
+  public static final String SINK_FILE_DIRECTORY_CONFIG = "web.analytics.sink.file.directory";
+  public static final String SINK_FILE_DIRECTORY = "web-analytics-views";
+
+  /* sink, archive or both */
+  public static final String ACCESS_LOG_STORAGE_CONFIG = "web.analytics.access.log.storage";
+  public static final String ACCESS_LOG_STORAGE_SINK = "sink";
+  public static final String ACCESS_LOG_STORAGE_ARCHIVE = "archive";
+  public static final String ACCESS_LOG_STORAGE_BOTH = "both";
+  public static final String ACCESS_LOG_STORAGE = ACCESS_LOG_STORAGE_SINK;
+  public static final String ARCHIVE_DIRECTORY_CONFIG = "web.analytics.archive.directory";
+  public static final String ARCHIVE_DIRECTORY = "web-analytics-archive";
+  public static final String ARCHIVE_SEGMENT_ROLL_SECS_CONFIG = "web.analytics.archive.segment.roll.secs";
+  public static final int ARCHIVE_SEGMENT_ROLL_SECS = 3600;
+  public static final String ARCHIVE_SEGMENT_MAX_BYTES_CONFIG = "web.analytics.archive.segment.max.bytes";
+  public static final int ARCHIVE_SEGMENT_MAX_BYTES = 64 * 1024 * 1024;
+  public static final String ARCHIVE_BLOCK_MAX_SIZE_CONFIG = "web.analytics.archive.block.max.size";
+  public static final int ARCHIVE_BLOCK_MAX_SIZE = 4096;
+
+  /* comma separated addresses */
+  public static final String CASSANDRA_CONTACT_POINTS_CONFIG = "web.analytics.cassandra.contact.points";
+  /* blank for the datacenter of the contact points */
+  public static final String CASSANDRA_LOCAL_DATACENTER_CONFIG = "web.analytics.cassandra.local.datacenter";
+  public static final String CASSANDRA_CORE_CONNECTIONS_PER_HOST_CONFIG = "web.analytics.cassandra.core.connections.per.host";
+  public static final int CASSANDRA_CORE_CONNECTIONS_PER_HOST = 1;
+  public static final String CASSANDRA_MAX_CONNECTIONS_PER_HOST_CONFIG = "web.analytics.cassandra.max.connections.per.host";
+  public static final int CASSANDRA_MAX_CONNECTIONS_PER_HOST = 2;
+  public static final String CASSANDRA_MAX_REQUESTS_PER_CONNECTION_CONFIG = "web.analytics.cassandra.max.requests.per.connection";
+  public static final int CASSANDRA_MAX_REQUESTS_PER_CONNECTION = 1024;
+  /* 0 to disable the speculative executions of the idempotent statements */
+  public static final String CASSANDRA_SPECULATIVE_EXECUTION_DELAY_MS_CONFIG = "web.analytics.cassandra.speculative.execution.delay.ms";
+  public static final int CASSANDRA_SPECULATIVE_EXECUTION_DELAY_MS = 0;
+  public static final String CASSANDRA_MAX_SPECULATIVE_EXECUTIONS_CONFIG = "web.analytics.cassandra.max.speculative.executions";
+  public static final int CASSANDRA_MAX_SPECULATIVE_EXECUTIONS = 2;
+  public static final String CASSANDRA_METRICS_BUCKET_SECS_CONFIG = "web.analytics.cassandra.metrics.bucket.secs";
+  public static final int CASSANDRA_METRICS_BUCKET_SECS = 60;
+  public static final String CASSANDRA_MAX_IN_FLIGHT_REQUESTS_CONFIG = "web.analytics.cassandra.max.in.flight.requests";
+  public static final int CASSANDRA_MAX_IN_FLIGHT_REQUESTS = 128;
+  /* the schema is created by the submitter before the submission of the topology */
+  public static final String CASSANDRA_CREATE_SCHEMA_CONFIG = "web.analytics.cassandra.create.schema";
+  public static final boolean CASSANDRA_CREATE_SCHEMA = true;
+  public static final String CASSANDRA_REPLICATION_CONFIG = "web.analytics.cassandra.replication";
+  public static final String CASSANDRA_REPLICATION = "{'class': 'SimpleStrategy', 'replication_factor': 1}";
+  /* must not change once access logs are written */
+  public static final String CASSANDRA_ACCESS_LOG_BUCKETS_CONFIG = "web.analytics.cassandra.access.log.buckets";
+  public static final int CASSANDRA_ACCESS_LOG_BUCKETS = 16;
+
+  /* ids kept decoded by each executor writing to the sink */
+  public static final String ID_DICTIONARY_CAPACITY_CONFIG = "web.analytics.id.dictionary.capacity";
+  public static final int ID_DICTIONARY_CAPACITY = 10_000;
+  public static final String ID_DICTIONARY_METRICS_BUCKET_SECS_CONFIG = "web.analytics.id.dictionary.metrics.bucket.secs";
+  public static final int ID_DICTIONARY_METRICS_BUCKET_SECS = 60;
+
+  public static final String COUNTER_FLUSH_INTERVAL_SECS_CONFIG = "web.analytics.counter.flush.interval.secs";
+  public static final int COUNTER_FLUSH_INTERVAL_SECS = 1;
+  public static final String COUNTER_MAX_PENDING_TUPLES_CONFIG = "web.analytics.counter.max.pending.tuples";
+  public static final int COUNTER_MAX_PENDING_TUPLES = 1000;
+  /* fields to aggregate each key in a single executor or partial_key to split the keys over two executors */
+  public static final String COUNTER_GROUPING_CONFIG = "web.analytics.counter.grouping";
+  public static final String COUNTER_GROUPING_FIELDS = "fields";
+  public static final String COUNTER_GROUPING_PARTIAL_KEY = "partial_key";
+  public static final String COUNTER_GROUPING = COUNTER_GROUPING_FIELDS;
+  /* 1 for a single counter by product, the readers must use the number of shards of the writers */
+  public static final String COUNTER_TOTAL_SHARDS_CONFIG = "web.analytics.counter.shards.products_views_total";
+  public static final int COUNTER_TOTAL_SHARDS = 1;
+  /* views aggregated by a single flush making a counter hot */
+  public static final String COUNTER_HOT_KEY_THRESHOLD_CONFIG = "web.analytics.counter.hot.key.threshold";
+  public static final int COUNTER_HOT_KEY_THRESHOLD = 500;
+  public static final String COUNTER_HOT_KEY_COOLDOWN_SECS_CONFIG = "web.analytics.counter.hot.key.cooldown.secs";
+  public static final int COUNTER_HOT_KEY_COOLDOWN_SECS = 60;
+  /* sketches of the users who viewed each product in a day, a sketch uses up to 2^precision bytes */
+  public static final String UNIQUE_VIEWERS_CONFIG = "web.analytics.unique.viewers";
+  public static final boolean UNIQUE_VIEWERS = false;
+  /* must not change once sketches are written */
+  public static final String UNIQUE_VIEWERS_PRECISION_CONFIG = "web.analytics.unique.viewers.precision";
+  public static final int UNIQUE_VIEWERS_PRECISION = 12;
+  /* views by minute, hour, day and month, the resolution name completes the prefixes */
+  public static final String ROLLUPS_CONFIG = "web.analytics.rollups";
+  public static final boolean ROLLUPS = false;
+  /* shorter than the message timeout, the defaults are those of the resolution */
+  public static final String ROLLUP_FLUSH_INTERVAL_SECS_CONFIG_PREFIX = "web.analytics.rollup.flush.interval.secs.";
+  /* 0 to keep the rollups of the resolution */
+  public static final String ROLLUP_TTL_SECS_CONFIG_PREFIX = "web.analytics.rollup.ttl.secs.";
+  /* exact users who viewed each product in a day as roaring bitmaps of dictionary ids */
+  public static final String AUDIENCE_CONFIG = "web.analytics.audience";
+  public static final boolean AUDIENCE = false;
+  /* user ids kept with their dictionary id by executor */
+  public static final String AUDIENCE_USER_CACHE_CAPACITY_CONFIG = "web.analytics.audience.user.cache.capacity";
+  public static final int AUDIENCE_USER_CACHE_CAPACITY = 100_000;
+  /* dictionary ids reserved by a single update of the sequence */
+  public static final String AUDIENCE_USER_ID_BLOCK_SIZE_CONFIG = "web.analytics.audience.user.id.block.size";
+  public static final int AUDIENCE_USER_ID_BLOCK_SIZE = 1000;
+  /* single row by product with its total, today, last 7 days and unique viewers */
+  public static final String SUMMARY_CONFIG = "web.analytics.summary";
+  public static final boolean SUMMARY = false;
+  /* minimum interval between two writes of the summary of a product */
+  public static final String SUMMARY_REFRESH_INTERVAL_SECS_CONFIG = "web.analytics.summary.refresh.interval.secs";
+  public static final int SUMMARY_REFRESH_INTERVAL_SECS = 30;
+  /* top products of the last 5 minutes, hour and day ranked with sketches of the views */
+  public static final String TRENDS_CONFIG = "web.analytics.trends";
+  public static final boolean TRENDS = true;
+  public static final String TRENDS_TOP_K_CONFIG = "web.analytics.trends.top.k";
+  public static final int TRENDS_TOP_K = 10;
+  /* products tracked by slot of a window, must exceed twice the top k with the partial key grouping */
+  public static final String TRENDS_CANDIDATES_CONFIG = "web.analytics.trends.candidates";
+  public static final int TRENDS_CANDIDATES = 100;
+  public static final String TRENDS_SKETCH_DEPTH_CONFIG = "web.analytics.trends.sketch.depth";
+  public static final int TRENDS_SKETCH_DEPTH = 4;
+  /* a power of two */
+  public static final String TRENDS_SKETCH_WIDTH_CONFIG = "web.analytics.trends.sketch.width";
+  public static final int TRENDS_SKETCH_WIDTH = 1024;
+  public static final String TRENDS_EMIT_INTERVAL_SECS_CONFIG = "web.analytics.trends.emit.interval.secs";
+  public static final int TRENDS_EMIT_INTERVAL_SECS = 10;
+  /* blank to aggregate the counters in memory until the tuples are acked */
+  public static final String COUNTER_JOURNAL_DIRECTORY_CONFIG = "web.analytics.counter.journal.directory";
+  public static final String COUNTER_JOURNAL_DIRECTORY = "";
+  public static final String COUNTER_JOURNAL_SEGMENT_BYTES_CONFIG = "web.analytics.counter.journal.segment.bytes";
+  public static final int COUNTER_JOURNAL_SEGMENT_BYTES = 16 * 1024 * 1024;
+  /* the tuples are acked once their increments are synced, must be shorter than the message timeout */
+  public static final String COUNTER_JOURNAL_SYNC_INTERVAL_SECS_CONFIG = "web.analytics.counter.journal.sync.interval.secs";
+  public static final int COUNTER_JOURNAL_SYNC_INTERVAL_SECS = 1;
+  public static final String COUNTER_JOURNAL_METRICS_BUCKET_SECS_CONFIG = "web.analytics.counter.journal.metrics.bucket.secs";
+  public static final int COUNTER_JOURNAL_METRICS_BUCKET_SECS = 60;
+
+  public static final String BATCH_LINGER_SECS_CONFIG = "web.analytics.batch.linger.secs";
+  public static final int BATCH_LINGER_SECS = 1;
+  public static final String BATCH_MAX_SIZE_CONFIG = "web.analytics.batch.max.size";
+  public static final int BATCH_MAX_SIZE = 100;
+
+  /* archive or cassandra */
+  public static final String BACKFILL_SOURCE_CONFIG = "web.analytics.backfill.source";
+  public static final String BACKFILL_SOURCE_ARCHIVE = "archive";
+  public static final String BACKFILL_SOURCE_CASSANDRA = "cassandra";
+  public static final String BACKFILL_SOURCE = BACKFILL_SOURCE_ARCHIVE;
+  /* epoch milliseconds, the end is exclusive */
+  public static final String BACKFILL_FROM_MILLIS_CONFIG = "web.analytics.backfill.from.millis";
+  public static final long BACKFILL_FROM_MILLIS = 0;
+  public static final String BACKFILL_TO_MILLIS_CONFIG = "web.analytics.backfill.to.millis";
+  /* comma separated among total, by_day and by_user */
+  public static final String BACKFILL_COUNTERS_CONFIG = "web.analytics.backfill.counters";
+  public static final String BACKFILL_COUNTERS_TOTAL = "total";
+  public static final String BACKFILL_COUNTERS_BY_DAY = "by_day";
+  public static final String BACKFILL_COUNTERS_BY_USER = "by_user";
+  public static final String BACKFILL_COUNTERS = "total,by_day,by_user";
+  /* the counters can only be incremented so the cassandra tables must be empty */
+  public static final String BACKFILL_TRUNCATE_CONFIG = "web.analytics.backfill.truncate";
+  public static final boolean BACKFILL_TRUNCATE = false;
+  public static final String BACKFILL_CONFIRM_CONFIG = "web.analytics.backfill.confirm";
+  public static final boolean BACKFILL_CONFIRM = false;
+  public static final String BACKFILL_MAX_IN_FLIGHT_WRITES_CONFIG = "web.analytics.backfill.max.in.flight.writes";
+  public static final int BACKFILL_MAX_IN_FLIGHT_WRITES = 256;
 
   private Configuration() {
   }
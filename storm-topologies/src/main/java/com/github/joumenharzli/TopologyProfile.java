@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.github.joumenharzli.Configuration.PARALLELISM;
+import static com.github.joumenharzli.Configuration.PARALLELISM_CONFIG_PREFIX;
+
+/**
+ * Profile of the topology holding the values that override the {@link Configuration}
+ * <p>
+ * The profile is loaded from the {@code web-analytics.properties} resource, then from the
+ * properties files and the {@code key=value} pairs provided as arguments, each source overriding
+ * the previous ones.
+ *
+ * @author Joumen Harzli
+ */
+public final class TopologyProfile {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TopologyProfile.class);
+
+  private static final String DEFAULT_PROFILE_RESOURCE = "web-analytics.properties";
+
+  private final Properties properties;
+
+  private TopologyProfile(Properties properties) {
+    this.properties = properties;
+  }
+
+  /**
+   * Load the profile
+   *
+   * @param args paths of properties files or {@code key=value} pairs
+   * @return the loaded profile
+   * @throws IOException if a properties file cannot be read
+   */
+  public static TopologyProfile load(String... args) throws IOException {
+    Properties properties = new Properties();
+
+    try (InputStream defaultProfile = TopologyProfile.class.getClassLoader().getResourceAsStream(DEFAULT_PROFILE_RESOURCE)) {
+      if (defaultProfile != null) {
+        properties.load(defaultProfile);
+      }
+    }
+
+    for (String arg : args) {
+      if (arg.contains("=")) {
+        LOGGER.debug("Overriding the profile property {}", arg);
+        properties.setProperty(StringUtils.substringBefore(arg, "=").trim(), StringUtils.substringAfter(arg, "=").trim());
+      } else {
+        LOGGER.debug("Loading the profile from the file {}", arg);
+        try (Reader reader = Files.newBufferedReader(Paths.get(arg), StandardCharsets.UTF_8)) {
+          properties.load(reader);
+        }
+      }
+    }
+
+    return new TopologyProfile(properties);
+  }
+
+  /**
+   * @param key          key of the property
+   * @param defaultValue value returned if the property is not defined
+   * @return the value of the property
+   */
+  public String getString(String key, String defaultValue) {
+    return StringUtils.defaultIfBlank(properties.getProperty(key), defaultValue).trim();
+  }
+
+  /**
+   * @param key          key of the property
+   * @param defaultValue value returned if the property is not defined
+   * @return the value of the property
+   * @throws IllegalArgumentException if the value is not an integer
+   */
+  public int getInt(String key, int defaultValue) {
+    String value = properties.getProperty(key);
+    if (StringUtils.isBlank(value)) {
+      return defaultValue;
+    }
+    Validate.isTrue(StringUtils.isNumeric(value.trim()), "The profile property %s must be a positive integer", key);
+    return Integer.parseInt(value.trim());
+  }
+
+  /**
+   * @param key          key of the property
+   * @param defaultValue value returned if the property is not defined
+   * @return the value of the property
+   * @throws IllegalArgumentException if the value is not an integer
+   */
+  public long getLong(String key, long defaultValue) {
+    String value = properties.getProperty(key);
+    if (StringUtils.isBlank(value)) {
+      return defaultValue;
+    }
+    Validate.isTrue(StringUtils.isNumeric(value.trim()), "The profile property %s must be a positive integer", key);
+    return Long.parseLong(value.trim());
+  }
+
+  /**
+   * @param key          key of the property
+   * @param defaultValue value returned if the property is not defined
+   * @return the value of the property
+   */
+  public boolean getBoolean(String key, boolean defaultValue) {
+    String value = properties.getProperty(key);
+    if (StringUtils.isBlank(value)) {
+      return defaultValue;
+    }
+    return Boolean.parseBoolean(value.trim());
+  }
+
+  /**
+   * @param componentId id of the spout or the bolt
+   * @return the parallelism hint of the component
+   */
+  public int getParallelism(String componentId) {
+    return getInt(PARALLELISM_CONFIG_PREFIX + componentId, PARALLELISM);
+  }
+
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.storm.metric.api.IMetric;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.utils.CompactId;
+
+/**
+ * Memory-mapped journal of the counter deltas aggregated by an executor
+ * <p>
+ * The journal is made of two segments of fixed size. The active segment receives the deltas and
+ * holds one entry per counter key which is updated in place, the sealed segment holds the entries
+ * being written to the sink. Each entry is a status byte, the key prefixed by its length on 2
+ * unsigned bytes and the synced delta on 8 bytes. The status of an entry is written last when it
+ * is appended and is set to flushed once its delta is written, the entry following the last one
+ * is marked by a zero status byte.
+ * <p>
+ * The deltas are added in memory and {@link #sync()} copies them to their entries then forces the
+ * segments to the storage, so the delta of an entry only covers the tuples acked after a sync.
+ * The deltas added since the last sync are skipped when the journal is recovered since their
+ * tuples are replayed by the spout. A crash between the write of a delta to the sink and the sync
+ * of its flushed status still replays the delta.
+ * <p>
+ * The segments are local files of the supervisor host, a task assigned to another host starts
+ * with an empty journal and the pending deltas stay on the previous host until the task returns.
+ *
+ * @author Joumen Harzli
+ */
+final class CounterJournal implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CounterJournal.class);
+
+  private static final byte END = 0;
+  private static final byte PENDING = 'P';
+  private static final byte FLUSHED = 'F';
+
+  private static final byte STRING_VALUE = 'S';
+  private static final byte LONG_VALUE = 'L';
+  private static final byte ID_VALUE = 'I';
+
+  private static final int ENTRY_HEADER_SIZE = 3;
+  private static final int MAX_KEY_SIZE = 0xFFFF;
+
+  private final List<Entry> unsyncedEntries = new ArrayList<>();
+  private final AtomicLong failedWrites = new AtomicLong();
+  private Segment active;
+  private Segment sealed;
+
+  private CounterJournal(Segment active, Segment sealed) {
+    this.active = active;
+    this.sealed = sealed;
+  }
+
+  /**
+   * Open the journal and recover its pending entries
+   *
+   * @param directory   directory of the segments
+   * @param name        name of the journal, unique in the directory
+   * @param segmentSize size of each segment in bytes
+   * @return the opened journal
+   * @throws IOException if a segment cannot be mapped
+   */
+  static CounterJournal open(Path directory, String name, int segmentSize) throws IOException {
+    Validate.isTrue(segmentSize > ENTRY_HEADER_SIZE + Long.BYTES, "The segment size %d is too small", segmentSize);
+
+    Files.createDirectories(directory);
+    Segment first = Segment.open(directory.resolve(name + "-0.journal"), segmentSize);
+    Segment second = Segment.open(directory.resolve(name + "-1.journal"), segmentSize);
+
+    LOGGER.info("Recovered {} pending counter deltas from the journal {} in {}",
+        first.entries.size() + second.entries.size(), name, directory);
+
+    /* the pending entries of the active segment keep aggregating the new deltas while the
+       pending entries of the sealed segment are written by the next flush */
+    if (first.entries.isEmpty()) {
+      first.truncate();
+      return new CounterJournal(first, second);
+    }
+    if (second.entries.isEmpty()) {
+      second.truncate();
+    }
+    return new CounterJournal(second, first);
+  }
+
+  /**
+   * Add a delta to the entry of a counter in the active segment, the delta is journaled by the
+   * next {@link #sync()}
+   *
+   * @param key   values identifying the counter, strings or longs
+   * @param delta value to add to the counter
+   * @return false if the active segment is full
+   */
+  boolean add(List<Object> key, long delta) {
+    Entry entry = active.entries.get(key);
+    if (entry == null) {
+      entry = active.append(key);
+      if (entry == null) {
+        return false;
+      }
+      active.entries.put(key, entry);
+    }
+
+    if (!entry.unsynced) {
+      entry.unsynced = true;
+      unsyncedEntries.add(entry);
+    }
+    entry.delta += delta;
+    return true;
+  }
+
+  /**
+   * Copy the deltas added since the last sync to their entries then force the segments to the
+   * storage, the tuples of the deltas can be acked once this method returns
+   */
+  void sync() {
+    for (Entry entry : unsyncedEntries) {
+      entry.segment.buffer.putLong(entry.deltaPosition, entry.delta);
+      entry.unsynced = false;
+    }
+    unsyncedEntries.clear();
+
+    active.buffer.force();
+    sealed.buffer.force();
+  }
+
+  /**
+   * @return true if deltas were added since the last sync
+   */
+  boolean hasUnsyncedDeltas() {
+    return !unsyncedEntries.isEmpty();
+  }
+
+  /**
+   * @return true if pending entries were recovered or are still to be written
+   */
+  boolean hasPendingEntries() {
+    return !active.entries.isEmpty() || !sealed.entries.isEmpty();
+  }
+
+  /**
+   * @return the number of counters of the active segment
+   */
+  int getActiveCountersCount() {
+    return active.entries.size();
+  }
+
+  /**
+   * Seal the entries to write to the sink, the journal must be synced first so only the deltas of
+   * acked tuples are written
+   * <p>
+   * The pending entries of the sealed segment are returned again if their writes failed,
+   * otherwise the sealed segment is truncated and becomes the active one
+   *
+   * @return the entries to write then to pass to {@link #flushed(Entry)} or {@link #failed(Entry)},
+   * empty if the writes of the sealed entries are still in flight
+   */
+  List<Entry> seal() {
+    Validate.validState(unsyncedEntries.isEmpty(), "The counter journal must be synced before being sealed");
+
+    if (sealed.inFlightEntries.get() > 0) {
+      return Collections.emptyList();
+    }
+
+    sealed.entries.values().removeIf(entry -> entry.flushed);
+
+    if (sealed.entries.isEmpty()) {
+      if (active.entries.isEmpty()) {
+        return Collections.emptyList();
+      }
+
+      sealed.truncate();
+      Segment segment = sealed;
+      sealed = active;
+      active = segment;
+    } else {
+      LOGGER.debug("Retrying the write of {} counter deltas", sealed.entries.size());
+    }
+
+    List<Entry> entries = new ArrayList<>(sealed.entries.values());
+    sealed.inFlightEntries.set(entries.size());
+    return entries;
+  }
+
+  /**
+   * Mark a sealed entry as written, can be called by any thread
+   *
+   * @param entry the written entry
+   */
+  void flushed(Entry entry) {
+    entry.segment.buffer.put(entry.position, FLUSHED);
+    entry.flushed = true;
+    entry.segment.inFlightEntries.decrementAndGet();
+  }
+
+  /**
+   * Keep a sealed entry pending after the failure of its write, can be called by any thread
+   *
+   * @param entry the entry that was not written
+   */
+  void failed(Entry entry) {
+    failedWrites.incrementAndGet();
+    entry.segment.inFlightEntries.decrementAndGet();
+  }
+
+  /**
+   * Force the segments to the storage, the deltas added since the last sync are dropped since
+   * their tuples are not acked
+   */
+  @Override
+  public void close() {
+    active.buffer.force();
+    sealed.buffer.force();
+  }
+
+  private static byte[] encodeKey(List<Object> key) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeByte(key.size());
+      for (Object value : key) {
+        if (value instanceof String) {
+          output.writeByte(STRING_VALUE);
+          output.writeUTF((String) value);
+        } else if (value instanceof Long) {
+          output.writeByte(LONG_VALUE);
+          output.writeLong((Long) value);
+        } else if (value instanceof CompactId) {
+          output.writeByte(ID_VALUE);
+          ((CompactId) value).writeTo(output);
+        } else {
+          throw new IllegalArgumentException("Unsupported counter key value " + value);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return bytes.toByteArray();
+  }
+
+  private static List<Object> decodeKey(byte[] bytes) throws IOException {
+    try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      int size = input.readUnsignedByte();
+      List<Object> key = new ArrayList<>(size);
+
+      for (int i = 0; i < size; i++) {
+        byte type = input.readByte();
+        if (type == STRING_VALUE) {
+          key.add(input.readUTF());
+        } else if (type == ID_VALUE) {
+          key.add(CompactId.readFrom(input));
+        } else {
+          key.add(input.readLong());
+        }
+      }
+
+      return key;
+    }
+  }
+
+  /**
+   * Metric reporting the counters of the active and sealed segments and the failed writes of the
+   * sealed entries since the last report, the failed entries are written again by the next flush
+   */
+  final class Metric implements IMetric {
+
+    static final String NAME = "counter-journal";
+
+    @Override
+    public Object getValueAndReset() {
+      Map<String, Object> value = new LinkedHashMap<>();
+      value.put("activeCounters", active.entries.size());
+      value.put("sealedCounters", sealed.entries.size());
+      value.put("failedWrites", failedWrites.getAndSet(0));
+      return value;
+    }
+
+  }
+
+  /**
+   * Entry of a counter in a segment
+   */
+  static final class Entry {
+
+    private final Segment segment;
+    private final List<Object> key;
+    private final int position;
+    private final int deltaPosition;
+    private long delta;
+    private boolean unsynced;
+    private volatile boolean flushed;
+
+    private Entry(Segment segment, List<Object> key, int position, int deltaPosition, long delta) {
+      this.segment = segment;
+      this.key = key;
+      this.position = position;
+      this.deltaPosition = deltaPosition;
+      this.delta = delta;
+    }
+
+    /**
+     * @return the values identifying the counter
+     */
+    List<Object> getKey() {
+      return key;
+    }
+
+    /**
+     * @return the value to add to the counter
+     */
+    long getDelta() {
+      return delta;
+    }
+
+  }
+
+  /**
+   * Memory-mapped file holding the entries
+   */
+  private static final class Segment {
+
+    private final MappedByteBuffer buffer;
+    private final Map<List<Object>, Entry> entries = new HashMap<>();
+    private final AtomicInteger inFlightEntries = new AtomicInteger();
+    private int writePosition;
+
+    private Segment(MappedByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * Map the file of a segment and read its pending entries
+     */
+    private static Segment open(Path path, int size) throws IOException {
+      try (FileChannel channel = FileChannel.open(path,
+          StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        Segment segment = new Segment(channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        segment.recover();
+        return segment;
+      }
+    }
+
+    private void recover() throws IOException {
+      int position = 0;
+
+      while (position + ENTRY_HEADER_SIZE <= buffer.capacity()) {
+        byte status = buffer.get(position);
+        int keySize = Short.toUnsignedInt(buffer.getShort(position + 1));
+        int deltaPosition = position + ENTRY_HEADER_SIZE + keySize;
+
+        if ((status != PENDING && status != FLUSHED) || deltaPosition + Long.BYTES > buffer.capacity()) {
+          break;
+        }
+
+        /* the entries appended since the last sync hold a zero delta */
+        long delta = buffer.getLong(deltaPosition);
+        if (status == PENDING && delta != 0) {
+          byte[] keyBytes = new byte[keySize];
+          ByteBuffer keyBuffer = buffer.duplicate();
+          keyBuffer.position(position + ENTRY_HEADER_SIZE);
+          keyBuffer.get(keyBytes);
+          List<Object> key = decodeKey(keyBytes);
+          entries.put(key, new Entry(this, key, position, deltaPosition, delta));
+        }
+
+        position = deltaPosition + Long.BYTES;
+      }
+
+      writePosition = position;
+    }
+
+    /**
+     * Append an entry with a zero delta, its status is written last so a partially written entry
+     * is ignored
+     *
+     * @return the appended entry or null if the segment is full
+     */
+    private Entry append(List<Object> key) {
+      byte[] keyBytes = encodeKey(key);
+      Validate.isTrue(keyBytes.length <= MAX_KEY_SIZE, "The counter key %s is too large", key);
+
+      int position = writePosition;
+      int deltaPosition = position + ENTRY_HEADER_SIZE + keyBytes.length;
+      int endPosition = deltaPosition + Long.BYTES;
+      if (endPosition >= buffer.capacity()) {
+        return null;
+      }
+
+      buffer.putShort(position + 1, (short) keyBytes.length);
+      for (int i = 0; i < keyBytes.length; i++) {
+        buffer.put(position + ENTRY_HEADER_SIZE + i, keyBytes[i]);
+      }
+      buffer.putLong(deltaPosition, 0);
+      buffer.put(endPosition, END);
+      buffer.put(position, PENDING);
+
+      writePosition = endPosition;
+      return new Entry(this, key, position, deltaPosition, 0);
+    }
+
+    private void truncate() {
+      buffer.put(0, END);
+      entries.clear();
+      writePosition = 0;
+    }
+
+  }
+
+}
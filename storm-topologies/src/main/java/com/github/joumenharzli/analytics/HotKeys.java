@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Detection of the hot counters of an executor and selection of the shard of their increments
+ * <p>
+ * A counter is hot once a single flush increments it by at least
+ * {@code COUNTER_HOT_KEY_THRESHOLD_CONFIG} and stays hot until no flush reaches the threshold
+ * for {@code COUNTER_HOT_KEY_COOLDOWN_SECS_CONFIG}. The increments of a hot counter rotate over
+ * the shards so the consecutive writes reach different partitions, the other counters are
+ * written to the shard 0. The rotation starts at the index of the task so the executors sharing
+ * a counter do not write the same shard.
+ *
+ * @author Joumen Harzli
+ */
+final class HotKeys {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HotKeys.class);
+
+  private final int shards;
+  private final long threshold;
+  private final long cooldownMillis;
+  private final Map<Object, Long> hotUntil = new HashMap<>();
+  private int nextShard;
+  private long nextExpiration = Long.MAX_VALUE;
+
+  private HotKeys(int shards, long threshold, long cooldownMillis, int taskIndex) {
+    this.shards = shards;
+    this.threshold = threshold;
+    this.cooldownMillis = cooldownMillis;
+    this.nextShard = taskIndex;
+  }
+
+  /**
+   * @param stormConf configuration of the topology
+   * @param taskIndex index of the task among the tasks of the component
+   * @return the hot keys of the total of the product views
+   */
+  static HotKeys forTotal(Map stormConf, int taskIndex) {
+    return new HotKeys(
+        Utils.getInt(stormConf.get(COUNTER_TOTAL_SHARDS_CONFIG), COUNTER_TOTAL_SHARDS),
+        Utils.getInt(stormConf.get(COUNTER_HOT_KEY_THRESHOLD_CONFIG), COUNTER_HOT_KEY_THRESHOLD),
+        Utils.getInt(stormConf.get(COUNTER_HOT_KEY_COOLDOWN_SECS_CONFIG), COUNTER_HOT_KEY_COOLDOWN_SECS) * 1000L,
+        taskIndex);
+  }
+
+  /**
+   * @param key       key of the counter
+   * @param increment aggregated increment of the counter in the flush
+   * @return the shard of the increment
+   */
+  int shardOf(Object key, long increment) {
+    if (shards <= 1) {
+      return 0;
+    }
+
+    long now = System.currentTimeMillis();
+    expire(now);
+
+    if (increment >= threshold) {
+      if (hotUntil.put(key, now + cooldownMillis) == null) {
+        LOGGER.info("The counter {} is hot, its increments are spread over {} shards", key, shards);
+      }
+      nextExpiration = Math.min(nextExpiration, now + cooldownMillis);
+    }
+
+    if (!hotUntil.containsKey(key)) {
+      return 0;
+    }
+    nextShard = (nextShard + 1) % shards;
+    return nextShard;
+  }
+
+  private void expire(long now) {
+    if (now < nextExpiration) {
+      return;
+    }
+
+    hotUntil.values().removeIf(expiration -> expiration <= now);
+    nextExpiration = hotUntil.values().stream().mapToLong(Long::longValue).min().orElse(Long.MAX_VALUE);
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Values aggregated by key until their write to the sink, for the bolts whose sink reads the
+ * stored value of a key then writes it
+ * <p>
+ * A key is written again only once its previous write completed, meanwhile its value keeps
+ * aggregating the new tuples. When the maximum of pending tuples is reached while keys are still
+ * in flight the pending values are not scanned again before a write completes, so a bolt under
+ * backpressure does not flush on each new tuple.
+ * <p>
+ * The values are accessed by the thread of the executor only, the writes complete on any thread.
+ *
+ * @param <V> type of the aggregated values
+ * @author Joumen Harzli
+ */
+final class PendingWrites<V> {
+
+  private final Map<List<Object>, Pending<V>> pendingValues = new HashMap<>();
+  private final Set<List<Object>> inFlightKeys = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean completedSinceFlush = new AtomicBoolean(true);
+  private final int maxPendingTuples;
+  private int pendingTuplesCount;
+
+  /**
+   * @param maxPendingTuples number of pending tuples triggering a flush
+   */
+  PendingWrites(int maxPendingTuples) {
+    this.maxPendingTuples = maxPendingTuples;
+  }
+
+  /**
+   * @param key         values identifying the written row
+   * @param tuplesCount number of tuples aggregated into the value
+   * @param factory     creates the value of a key that is not pending
+   * @return the pending value of the key, to be updated by the caller
+   */
+  V add(List<Object> key, int tuplesCount, Supplier<V> factory) {
+    Pending<V> pending = pendingValues.computeIfAbsent(key, k -> new Pending<>(factory.get()));
+    pending.tuplesCount += tuplesCount;
+    pendingTuplesCount += tuplesCount;
+    return pending.value;
+  }
+
+  /**
+   * @return true if the maximum of pending tuples is reached and a write completed since the last flush
+   */
+  boolean isFull() {
+    return pendingTuplesCount >= maxPendingTuples && completedSinceFlush.get();
+  }
+
+  /**
+   * Write the pending values whose key has no write in flight
+   *
+   * @param writer writes a value and acks its tuples
+   * @return the number of written values
+   */
+  int flush(Writer<V> writer) {
+    completedSinceFlush.set(false);
+
+    Iterator<Map.Entry<List<Object>, Pending<V>>> iterator = pendingValues.entrySet().iterator();
+    int written = 0;
+
+    while (iterator.hasNext()) {
+      Map.Entry<List<Object>, Pending<V>> entry = iterator.next();
+      List<Object> key = entry.getKey();
+
+      if (!inFlightKeys.add(key)) {
+        continue;
+      }
+      iterator.remove();
+      pendingTuplesCount -= entry.getValue().tuplesCount;
+      written++;
+
+      writer.write(key, entry.getValue().value).addListener(() -> {
+        inFlightKeys.remove(key);
+        completedSinceFlush.set(true);
+      }, MoreExecutors.directExecutor());
+    }
+
+    return written;
+  }
+
+  /**
+   * @return the number of keys waiting for their write
+   */
+  int size() {
+    return pendingValues.size();
+  }
+
+  /**
+   * Write of a pending value
+   *
+   * @param <V> type of the value
+   */
+  @FunctionalInterface
+  interface Writer<V> {
+
+    /**
+     * @param key   values identifying the written row
+     * @param value the aggregated value
+     * @return the result of the write
+     */
+    ListenableFuture<?> write(List<Object> key, V value);
+
+  }
+
+  private static final class Pending<V> {
+
+    private final V value;
+    private int tuplesCount;
+
+    private Pending(V value) {
+      this.value = value;
+    }
+
+  }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import org.apache.storm.spout.Scheme;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Values;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.github.joumenharzli.utils.TimestampUtils;
+
+import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
+
+/**
+ * Scheme for decoding the product access logs received from kafka
+ * <p>
+ * Two formats are accepted:
+ * <ul>
+ * <li>the binary format: a magic byte {@code 0xA1}, the version of the format, the access
+ * timestamp as milliseconds since the epoch on 8 bytes, then the user id and the product id each
+ * encoded in UTF-8 and prefixed by its length on 2 unsigned bytes</li>
+ * <li>the JSON format, read with a streaming parser, where the access timestamp is an ISO-8601
+ * instant or milliseconds since the epoch</li>
+ * </ul>
+ * The messages that cannot be decoded are logged and skipped.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductAccessLogScheme implements Scheme {
+
+  public static final byte BINARY_FORMAT_MAGIC_BYTE = (byte) 0xA1;
+  public static final byte BINARY_FORMAT_VERSION = 1;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProductAccessLogScheme.class);
+
+  private final JsonFactory jsonFactory = new JsonFactory();
+
+  /**
+   * @param buffer content of the kafka message
+   * @return the user id, the product id and the access timestamp or null if the message cannot be
+   * decoded
+   */
+  @Override
+  public List<Object> deserialize(ByteBuffer buffer) {
+    try {
+
+      if (buffer.remaining() > 0 && buffer.get(buffer.position()) == BINARY_FORMAT_MAGIC_BYTE) {
+        return decodeBinary(buffer.duplicate());
+      }
+      return decodeJson(buffer);
+
+    } catch (IOException | DateTimeParseException | BufferUnderflowException e) {
+      LOGGER.error("Unable to decode the content received from Kafka", e);
+      return null;
+    }
+  }
+
+  @Override
+  public Fields getOutputFields() {
+    return new Fields(USER_ID, PRODUCT_ID, ACCESS_TIMESTAMP);
+  }
+
+  /**
+   * Decode a message in the binary format
+   *
+   * @param buffer content of the message
+   * @return the decoded values
+   * @throws IOException if the version of the format is not supported
+   */
+  private Values decodeBinary(ByteBuffer buffer) throws IOException {
+    buffer.get();
+
+    byte version = buffer.get();
+    if (version != BINARY_FORMAT_VERSION) {
+      throw new IOException(String.format("Unsupported binary format version %d", version));
+    }
+
+    long accessTimestamp = buffer.getLong();
+    String userId = decodeBinaryString(buffer);
+    String productId = decodeBinaryString(buffer);
+
+    return new Values(userId, productId, accessTimestamp);
+  }
+
+  private static String decodeBinaryString(ByteBuffer buffer) {
+    int length = Short.toUnsignedInt(buffer.getShort());
+    if (length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+
+    if (buffer.hasArray()) {
+      String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+      buffer.position(buffer.position() + length);
+      return value;
+    }
+
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Decode a message in the JSON format with a streaming parser
+   * <p>
+   * The parser is created from a shared factory which recycles its buffers so only the
+   * extracted values are allocated
+   *
+   * @param buffer content of the message
+   * @return the decoded values, the missing values are null
+   * @throws IOException if the content is not valid JSON
+   */
+  private Values decodeJson(ByteBuffer buffer) throws IOException {
+    String userId = null;
+    String productId = null;
+    Long accessTimestamp = null;
+
+    try (JsonParser parser = createJsonParser(buffer)) {
+
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("The content received from Kafka is not a JSON object");
+      }
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String fieldName = parser.getCurrentName();
+        JsonToken valueToken = parser.nextToken();
+
+        if (USER_ID.equals(fieldName)) {
+          userId = parser.getValueAsString();
+        } else if (PRODUCT_ID.equals(fieldName)) {
+          productId = parser.getValueAsString();
+        } else if (ACCESS_TIMESTAMP.equals(fieldName)) {
+          accessTimestamp = parseTimestamp(parser, valueToken);
+        } else {
+          parser.skipChildren();
+        }
+      }
+
+    }
+
+    return new Values(userId, productId, accessTimestamp);
+  }
+
+  private JsonParser createJsonParser(ByteBuffer buffer) throws IOException {
+    if (buffer.hasArray()) {
+      return jsonFactory.createParser(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return jsonFactory.createParser(bytes);
+  }
+
+  /**
+   * Read the timestamp which can be an ISO-8601 instant or milliseconds since the epoch
+   *
+   * @param parser     parser positioned on the timestamp
+   * @param valueToken type of the timestamp
+   * @return the timestamp in milliseconds since the epoch or null if it is missing
+   * @throws IOException if the timestamp cannot be read
+   */
+  private static Long parseTimestamp(JsonParser parser, JsonToken valueToken) throws IOException {
+    if (valueToken == JsonToken.VALUE_NUMBER_INT) {
+      return parser.getLongValue();
+    }
+    if (valueToken == JsonToken.VALUE_STRING && parser.getTextLength() > 0) {
+      return TimestampUtils.parseIsoInstant(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.storm.Config;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.TupleUtils;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import static com.github.joumenharzli.Configuration.*;
+import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
+
+/**
+ * Bolt for keeping the exact set of users who viewed each product in a day
+ * <p>
+ * The user ids are collected by product and day until a tick tuple is received or until
+ * {@code COUNTER_MAX_PENDING_TUPLES_CONFIG} tuples are pending. The users are then merged into the
+ * stored audience bitmaps and the tuples are acked once the merge of their users completes, a
+ * replayed view does not change the stored audience.
+ * <p>
+ * The stored bitmap is read then written so the stream is grouped by product and day and the
+ * users whose previous merge is still in flight are kept with their tuples by the
+ * {@link PendingWrites} until the next flush.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductAudienceBolt extends SinkWriterBolt {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProductAudienceBolt.class);
+
+  private transient PendingWrites<PendingAudience> pendingAudiences;
+
+  @Override
+  public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+    super.prepare(stormConf, context, collector);
+
+    this.pendingAudiences = new PendingWrites<>(Utils.getInt(stormConf.get(COUNTER_MAX_PENDING_TUPLES_CONFIG),
+        COUNTER_MAX_PENDING_TUPLES));
+  }
+
+  @Override
+  public void execute(Tuple input) {
+
+    if (TupleUtils.isTick(input)) {
+      flush();
+      return;
+    }
+
+    Object productId = input.getValue(input.fieldIndex(PRODUCT_ID));
+    long daysMonthYearTimestamp = input.getLong(input.fieldIndex(ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS));
+    Object userId = input.getValue(input.fieldIndex(USER_ID));
+
+    PendingAudience pendingAudience = pendingAudiences.add(Arrays.asList(productId, daysMonthYearTimestamp), 1,
+        PendingAudience::new);
+    pendingAudience.userIds.add(getIds().decode(userId));
+    pendingAudience.tuples.add(input);
+
+    if (pendingAudiences.isFull()) {
+      LOGGER.debug("The maximum of pending tuples is reached");
+      flush();
+    }
+
+  }
+
+  /**
+   * Merge the pending users whose previous merge completed
+   */
+  private void flush() {
+    int merged = pendingAudiences.flush((key, pendingAudience) -> {
+      ListenableFuture<?> result = getSink().mergeAudience(getIds().decode(key.get(0)), (Long) key.get(1),
+          pendingAudience.userIds);
+      ackOnCompletion(result, pendingAudience.tuples);
+      return result;
+    });
+
+    if (merged > 0) {
+      LOGGER.debug("Merging {} audiences, {} audiences wait for their previous merge", merged, pendingAudiences.size());
+    }
+  }
+
+  /**
+   * The tick tuples are used to flush the users periodically
+   */
+  @Override
+  public Map<String, Object> getComponentConfiguration() {
+    Config config = new Config();
+    config.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, COUNTER_FLUSH_INTERVAL_SECS);
+    return config;
+  }
+
+  /**
+   * Users who viewed a product in a day since the last merge with their tuples
+   */
+  private static final class PendingAudience {
+
+    private final Set<String> userIds = new HashSet<>();
+    private final List<Tuple> tuples = new ArrayList<>();
+
+  }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.storm.Config;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.TupleUtils;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.sink.ProductSummaryCounts;
+import com.github.joumenharzli.utils.CompactId;
+import com.github.joumenharzli.utils.TimestampUtils;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import static com.github.joumenharzli.Configuration.*;
+import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
+
+/**
+ * Bolt for keeping the summary row of the viewed products up to date
+ * <p>
+ * The bolt keeps the {@link ProductSummaryCounts} of the products viewed in the day: the counts of
+ * a product are read once from the sink at its first view of the day then the views received are
+ * added to them. At each tick tuple the summaries of the products viewed since the previous tick
+ * are written, so a summary is written at most once by {@code SUMMARY_REFRESH_INTERVAL_SECS_CONFIG}
+ * with a single write. A product whose counts are being read or whose previous write is still in
+ * flight is written at a next tick.
+ * <p>
+ * The counts are dropped when the day changes and read again with the next view, so the views
+ * counted twice or missed while the stored counts are behind the stream are corrected daily. The
+ * tuples are acked once counted, the counts lost by a crash are read again from the sink.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductSummaryBolt extends SinkWriterBolt {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProductSummaryBolt.class);
+
+  private transient Map<Object, ProductCounts> productsCounts;
+  private transient Set<Object> writingProducts;
+  private transient long day;
+  private transient int precision;
+
+  @Override
+  public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+    super.prepare(stormConf, context, collector);
+
+    this.productsCounts = new HashMap<>();
+    this.writingProducts = ConcurrentHashMap.newKeySet();
+    this.day = TimestampUtils.truncateToDay(System.currentTimeMillis());
+    this.precision = Utils.getInt(stormConf.get(UNIQUE_VIEWERS_PRECISION_CONFIG), UNIQUE_VIEWERS_PRECISION);
+  }
+
+  @Override
+  public void execute(Tuple input) {
+
+    if (TupleUtils.isTick(input)) {
+      refresh();
+      return;
+    }
+
+    Object productId = input.getValue(input.fieldIndex(PRODUCT_ID));
+    long accessTimestamp = input.getLong(input.fieldIndex(ACCESS_TIMESTAMP));
+    CompactId userId = (CompactId) input.getValue(input.fieldIndex(USER_ID));
+
+    ProductCounts productCounts = productsCounts.computeIfAbsent(productId, this::readCounts);
+    productCounts.counts.addView(accessTimestamp, userId.hash64());
+    productCounts.viewed = true;
+    ack(Collections.singletonList(input));
+
+  }
+
+  /**
+   * Write the summaries of the products viewed since their previous write, or drop all the counts
+   * when the day changed
+   */
+  private void refresh() {
+    long now = System.currentTimeMillis();
+    long today = TimestampUtils.truncateToDay(now);
+
+    if (today != day) {
+      LOGGER.debug("Dropping the counts of {} products at the change of day", productsCounts.size());
+      productsCounts.clear();
+      day = today;
+      return;
+    }
+
+    Iterator<Map.Entry<Object, ProductCounts>> iterator = productsCounts.entrySet().iterator();
+    int written = 0;
+    int waiting = 0;
+
+    while (iterator.hasNext()) {
+      Map.Entry<Object, ProductCounts> entry = iterator.next();
+      Object productId = entry.getKey();
+      ProductCounts productCounts = entry.getValue();
+
+      if (productCounts.stored != null) {
+        if (!productCounts.stored.isDone()) {
+          waiting++;
+          continue;
+        }
+        if (!mergeStored(productId, productCounts)) {
+          iterator.remove();
+          continue;
+        }
+      }
+
+      if (!productCounts.viewed) {
+        continue;
+      }
+      if (write(productId, productCounts.counts, now)) {
+        productCounts.viewed = false;
+        written++;
+      } else {
+        waiting++;
+      }
+    }
+
+    if (written > 0) {
+      LOGGER.debug("Writing {} summaries, {} viewed products wait for their counts or their previous write", written,
+          waiting);
+    }
+  }
+
+  private ProductCounts readCounts(Object productId) {
+    return new ProductCounts(new ProductSummaryCounts(day, precision),
+        getSink().readSummaryCounts(getIds().decode(productId), day, precision));
+  }
+
+  /**
+   * @return false if the stored counts cannot be read, the counts of the product are then read
+   * again with its next view
+   */
+  private boolean mergeStored(Object productId, ProductCounts productCounts) {
+    try {
+      ProductSummaryCounts stored = Futures.getUnchecked(productCounts.stored);
+      if (stored != null) {
+        productCounts.counts.merge(stored);
+      }
+      productCounts.stored = null;
+      return true;
+    } catch (UncheckedExecutionException e) {
+      LOGGER.error("Unable to read the counts of the product {}, reading them again with its next view", productId,
+          e.getCause());
+      reportError(e.getCause());
+      return false;
+    }
+  }
+
+  /**
+   * @return false if the previous write of the summary of the product is still in flight
+   */
+  private boolean write(Object productId, ProductSummaryCounts counts, long now) {
+    if (!writingProducts.add(productId)) {
+      return false;
+    }
+
+    ListenableFuture<?> result = getSink().writeSummary(counts.toSummary(getIds().decode(productId), now));
+    result.addListener(() -> writingProducts.remove(productId), MoreExecutors.directExecutor());
+    ackOnCompletion(result, Collections.emptyList());
+    return true;
+  }
+
+  /**
+   * The tick tuples are used to write the summaries periodically
+   */
+  @Override
+  public Map<String, Object> getComponentConfiguration() {
+    Config config = new Config();
+    config.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, SUMMARY_REFRESH_INTERVAL_SECS);
+    return config;
+  }
+
+  /**
+   * Counts of a product viewed in the day, added to its stored counts once they are read
+   */
+  private static final class ProductCounts {
+
+    private final ProductSummaryCounts counts;
+    private ListenableFuture<ProductSummaryCounts> stored;
+    private boolean viewed;
+
+    private ProductCounts(ProductSummaryCounts counts, ListenableFuture<ProductSummaryCounts> stored) {
+      this.counts = counts;
+      this.stored = stored;
+    }
+
+  }
+
+}
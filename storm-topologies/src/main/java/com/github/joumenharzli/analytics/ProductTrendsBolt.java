@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.storm.Config;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.topology.base.BaseRichBolt;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.TupleUtils;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.utils.CompactId;
+
+import static com.github.joumenharzli.Configuration.*;
+import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
+
+/**
+ * Bolt for ranking the most viewed products of the views received by an executor
+ * <p>
+ * The views are added to the sliding windows of the last 5 minutes, hour and day and the top
+ * products of each window are emitted to the {@link ProductTrendsMergerBolt} when a tick tuple is
+ * received. The memory of a window is bounded by its sketches whatever the number of products.
+ * <p>
+ * With the partial key grouping the views of a product are split over two executors which rank it
+ * with a part of its views only, so each executor emits twice the top k products to let the merger
+ * sum both parts of the products close to the top.
+ * <p>
+ * The rankings are approximate and recomputed at each tick so the views are acked once added and
+ * the rankings are emitted unanchored, a lost ranking is replaced by the next one.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductTrendsBolt extends BaseRichBolt {
+
+  public static final String WINDOW = "window";
+  public static final String TASK = "task";
+  public static final String PRODUCT_IDS = "productIds";
+  public static final String VIEWS = "views";
+
+  public static final String WINDOW_5_MINUTES = "5m";
+  public static final String WINDOW_1_HOUR = "1h";
+  public static final String WINDOW_24_HOURS = "24h";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProductTrendsBolt.class);
+
+  private static final int PARTIAL_KEY_RANKING_FACTOR = 2;
+
+  private transient OutputCollector collector;
+  private transient List<TrendingWindow> windows;
+  private transient int rankingSize;
+  private transient int taskId;
+
+  @Override
+  public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+    this.collector = collector;
+    this.taskId = context.getThisTaskId();
+    int topK = Utils.getInt(stormConf.get(TRENDS_TOP_K_CONFIG), TRENDS_TOP_K);
+    this.rankingSize = COUNTER_GROUPING_PARTIAL_KEY.equals(stormConf.get(COUNTER_GROUPING_CONFIG))
+        ? PARTIAL_KEY_RANKING_FACTOR * topK : topK;
+
+    int depth = Utils.getInt(stormConf.get(TRENDS_SKETCH_DEPTH_CONFIG), TRENDS_SKETCH_DEPTH);
+    int width = Utils.getInt(stormConf.get(TRENDS_SKETCH_WIDTH_CONFIG), TRENDS_SKETCH_WIDTH);
+    int candidates = Utils.getInt(stormConf.get(TRENDS_CANDIDATES_CONFIG), TRENDS_CANDIDATES);
+
+    this.windows = Arrays.asList(
+        new TrendingWindow(WINDOW_5_MINUTES, TimeUnit.SECONDS.toMillis(30), 10, depth, width, candidates),
+        new TrendingWindow(WINDOW_1_HOUR, TimeUnit.MINUTES.toMillis(5), 12, depth, width, candidates),
+        new TrendingWindow(WINDOW_24_HOURS, TimeUnit.HOURS.toMillis(1), 24, depth, width, candidates));
+  }
+
+  @Override
+  public void execute(Tuple input) {
+
+    if (TupleUtils.isTick(input)) {
+      emitRankings();
+      return;
+    }
+
+    CompactId productId = (CompactId) input.getValue(input.fieldIndex(PRODUCT_ID));
+    long accessTimestamp = input.getLong(input.fieldIndex(ACCESS_TIMESTAMP));
+
+    for (TrendingWindow window : windows) {
+      window.add(productId, accessTimestamp);
+    }
+    collector.ack(input);
+
+  }
+
+  /**
+   * Emit the top products of each window at the current time, an empty ranking replaces the
+   * previous one of the task
+   */
+  private void emitRankings() {
+    long now = System.currentTimeMillis();
+    for (TrendingWindow window : windows) {
+      List<CompactId> productIds = new ArrayList<>(rankingSize);
+      List<Long> views = new ArrayList<>(rankingSize);
+      window.rank(rankingSize, now, productIds, views);
+
+      LOGGER.debug("Emitting the {} top products of the window {}", productIds.size(), window.getName());
+      collector.emit(new Values(window.getName(), taskId, productIds, views));
+    }
+  }
+
+  /**
+   * The tick tuples are used to emit the rankings periodically
+   */
+  @Override
+  public Map<String, Object> getComponentConfiguration() {
+    Config config = new Config();
+    config.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, TRENDS_EMIT_INTERVAL_SECS);
+    return config;
+  }
+
+  @Override
+  public void declareOutputFields(OutputFieldsDeclarer declarer) {
+    declarer.declare(new Fields(WINDOW, TASK, PRODUCT_IDS, VIEWS));
+  }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.storm.Config;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.TupleUtils;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.sink.TrendingProduct;
+import com.github.joumenharzli.utils.CompactId;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static com.github.joumenharzli.Configuration.*;
+import static com.github.joumenharzli.analytics.ProductTrendsBolt.*;
+
+/**
+ * Bolt for merging the rankings of the {@link ProductTrendsBolt} executors into the top products
+ * of each window
+ * <p>
+ * The latest ranking of each executor is kept by window and the rankings are summed by product
+ * when a tick tuple is received, the top products are then written to the sink as a single row by
+ * window. A product split over two executors by the partial key grouping has its views summed
+ * when both executors rank it: they emit twice the top k products in that case, but a product
+ * missing from the ranking of one executor is still ranked with the views of the other only.
+ * <p>
+ * The ranking of an executor that stopped emitting for three intervals is dropped and the row of
+ * a window whose previous write is still in flight is written at the next tick.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductTrendsMergerBolt extends SinkWriterBolt {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProductTrendsMergerBolt.class);
+
+  private static final int EXPIRED_INTERVALS = 3;
+
+  private transient Map<String, Map<Integer, Ranking>> rankings;
+  private transient Set<String> writingWindows;
+  private transient int topK;
+  private transient long expirationMillis;
+
+  @Override
+  public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+    super.prepare(stormConf, context, collector);
+
+    this.rankings = new HashMap<>();
+    this.writingWindows = ConcurrentHashMap.newKeySet();
+    this.topK = Utils.getInt(stormConf.get(TRENDS_TOP_K_CONFIG), TRENDS_TOP_K);
+    this.expirationMillis = EXPIRED_INTERVALS * TimeUnit.SECONDS.toMillis(
+        Utils.getInt(stormConf.get(TRENDS_EMIT_INTERVAL_SECS_CONFIG), TRENDS_EMIT_INTERVAL_SECS));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void execute(Tuple input) {
+
+    if (TupleUtils.isTick(input)) {
+      write();
+      return;
+    }
+
+    String window = input.getString(input.fieldIndex(WINDOW));
+    int task = input.getInteger(input.fieldIndex(TASK));
+    List<CompactId> productIds = (List<CompactId>) input.getValue(input.fieldIndex(PRODUCT_IDS));
+    List<Long> views = (List<Long>) input.getValue(input.fieldIndex(VIEWS));
+
+    rankings.computeIfAbsent(window, key -> new HashMap<>())
+        .put(task, new Ranking(productIds, views, System.currentTimeMillis()));
+    ack(Collections.singletonList(input));
+
+  }
+
+  /**
+   * Write the merged top products of the windows whose previous write completed
+   */
+  private void write() {
+    long now = System.currentTimeMillis();
+
+    rankings.forEach((window, rankingsByTask) -> {
+      rankingsByTask.values().removeIf(ranking -> now - ranking.receivedAt > expirationMillis);
+
+      if (!writingWindows.add(window)) {
+        LOGGER.debug("The previous write of the window {} is still in flight", window);
+        return;
+      }
+
+      List<TrendingProduct> products = merge(rankingsByTask.values());
+      ListenableFuture<?> result = getSink().writeTrendingProducts(window, now, products);
+      result.addListener(() -> writingWindows.remove(window), MoreExecutors.directExecutor());
+      ackOnCompletion(result, Collections.emptyList());
+    });
+  }
+
+  /**
+   * @return the top products of the rankings by descending views
+   */
+  private List<TrendingProduct> merge(Iterable<Ranking> rankingsByTask) {
+    Map<CompactId, Long> views = new HashMap<>();
+    for (Ranking ranking : rankingsByTask) {
+      for (int i = 0; i < ranking.productIds.size(); i++) {
+        views.merge(ranking.productIds.get(i), ranking.views.get(i), Long::sum);
+      }
+    }
+
+    List<TrendingProduct> products = new ArrayList<>(topK);
+    views.entrySet().stream()
+        .sorted(Map.Entry.<CompactId, Long>comparingByValue(Comparator.reverseOrder()))
+        .limit(topK)
+        .forEach(entry -> products.add(new TrendingProduct(getIds().decode(entry.getKey()), entry.getValue())));
+    return products;
+  }
+
+  /**
+   * The tick tuples are used to write the merged rankings periodically
+   */
+  @Override
+  public Map<String, Object> getComponentConfiguration() {
+    Config config = new Config();
+    config.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, TRENDS_EMIT_INTERVAL_SECS);
+    return config;
+  }
+
+  /**
+   * Latest ranking of a window received from an executor
+   */
+  private static final class Ranking {
+
+    private final List<CompactId> productIds;
+    private final List<Long> views;
+    private final long receivedAt;
+
+    private Ranking(List<CompactId> productIds, List<Long> views, long receivedAt) {
+      this.productIds = productIds;
+      this.views = views;
+      this.receivedAt = receivedAt;
+    }
+
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.storm.Config;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.TupleUtils;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.utils.CompactId;
+import com.github.joumenharzli.utils.HyperLogLog;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import static com.github.joumenharzli.Configuration.*;
+import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
+
+/**
+ * Bolt for estimating the number of users who viewed each product in a day
+ * <p>
+ * The hashes of the user ids are added to a HyperLogLog sketch by product and day until a tick
+ * tuple is received or until {@code COUNTER_MAX_PENDING_TUPLES_CONFIG} tuples are pending. The
+ * sketches are then merged into the stored ones and the tuples are acked once the merge of their
+ * sketch completes, a replayed view does not change the stored sketch.
+ * <p>
+ * The stored sketch is read then written so the stream is grouped by product and day and a
+ * sketch whose previous merge is still in flight is kept with its tuples by the
+ * {@link PendingWrites} until the next flush.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductUniqueViewersBolt extends SinkWriterBolt {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProductUniqueViewersBolt.class);
+
+  private transient PendingWrites<PendingSketch> pendingSketches;
+  private transient int precision;
+
+  @Override
+  public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+    super.prepare(stormConf, context, collector);
+
+    this.pendingSketches = new PendingWrites<>(Utils.getInt(stormConf.get(COUNTER_MAX_PENDING_TUPLES_CONFIG),
+        COUNTER_MAX_PENDING_TUPLES));
+    this.precision = Utils.getInt(stormConf.get(UNIQUE_VIEWERS_PRECISION_CONFIG), UNIQUE_VIEWERS_PRECISION);
+  }
+
+  @Override
+  public void execute(Tuple input) {
+
+    if (TupleUtils.isTick(input)) {
+      flush();
+      return;
+    }
+
+    Object productId = input.getValue(input.fieldIndex(PRODUCT_ID));
+    long daysMonthYearTimestamp = input.getLong(input.fieldIndex(ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS));
+    CompactId userId = (CompactId) input.getValue(input.fieldIndex(USER_ID));
+
+    PendingSketch pendingSketch = pendingSketches.add(Arrays.asList(productId, daysMonthYearTimestamp), 1,
+        () -> new PendingSketch(precision));
+    pendingSketch.sketch.add(userId.hash64());
+    pendingSketch.tuples.add(input);
+
+    if (pendingSketches.isFull()) {
+      LOGGER.debug("The maximum of pending tuples is reached");
+      flush();
+    }
+
+  }
+
+  /**
+   * Merge the pending sketches whose previous merge completed
+   */
+  private void flush() {
+    int merged = pendingSketches.flush((key, pendingSketch) -> {
+      ListenableFuture<?> result = getSink().mergeUniqueViewers(getIds().decode(key.get(0)), (Long) key.get(1),
+          pendingSketch.sketch);
+      ackOnCompletion(result, pendingSketch.tuples);
+      return result;
+    });
+
+    if (merged > 0) {
+      LOGGER.debug("Merging {} sketches, {} sketches wait for their previous merge", merged, pendingSketches.size());
+    }
+  }
+
+  /**
+   * The tick tuples are used to flush the sketches periodically
+   */
+  @Override
+  public Map<String, Object> getComponentConfiguration() {
+    Config config = new Config();
+    config.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, COUNTER_FLUSH_INTERVAL_SECS);
+    return config;
+  }
+
+  /**
+   * Sketch of the views received since the last merge of a product and day with their tuples
+   */
+  private static final class PendingSketch {
+
+    private final HyperLogLog sketch;
+    private final List<Tuple> tuples = new ArrayList<>();
+
+    private PendingSketch(int precision) {
+      this.sketch = new HyperLogLog(precision);
+    }
+
+  }
+
+}
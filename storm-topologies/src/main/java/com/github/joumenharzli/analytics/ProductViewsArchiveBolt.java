@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.topology.base.BaseRichBolt;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.TupleUtils;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.archive.AccessLogArchiveWriter;
+import com.github.joumenharzli.sink.ProductAccessLog;
+import com.github.joumenharzli.utils.IdDictionary;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Bolt for archiving the product views to the compressed segments of the local disk
+ * <p>
+ * The tuples are buffered until a tick tuple is received or until
+ * {@code ARCHIVE_BLOCK_MAX_SIZE_CONFIG} tuples are pending, they are then written as a block of the
+ * segment of the task and acked once the block is forced to the disk. The segment is rolled on
+ * the tick tuples once it is older than {@code ARCHIVE_SEGMENT_ROLL_SECS_CONFIG}.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductViewsArchiveBolt extends BaseRichBolt {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProductViewsArchiveBolt.class);
+
+  private transient OutputCollector collector;
+  private transient AccessLogArchiveWriter archive;
+  private transient IdDictionary ids;
+  private transient List<Tuple> pendingTuples;
+  private transient int maxBlockSize;
+
+  @Override
+  public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+    this.collector = collector;
+    this.maxBlockSize = Utils.getInt(stormConf.get(ARCHIVE_BLOCK_MAX_SIZE_CONFIG), ARCHIVE_BLOCK_MAX_SIZE);
+    this.pendingTuples = new ArrayList<>(maxBlockSize);
+    this.ids = IdDictionary.create(stormConf, context);
+
+    String directory = (String) stormConf.get(ARCHIVE_DIRECTORY_CONFIG);
+    String name = context.getThisComponentId() + "-" + context.getThisTaskId();
+    long rollIntervalMillis = Utils.getInt(stormConf.get(ARCHIVE_SEGMENT_ROLL_SECS_CONFIG), ARCHIVE_SEGMENT_ROLL_SECS) * 1000L;
+    long maxSegmentBytes = Utils.getInt(stormConf.get(ARCHIVE_SEGMENT_MAX_BYTES_CONFIG), ARCHIVE_SEGMENT_MAX_BYTES);
+
+    try {
+      this.archive = new AccessLogArchiveWriter(Paths.get(directory == null ? ARCHIVE_DIRECTORY : directory), name,
+          rollIntervalMillis, maxSegmentBytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to open the archive " + name, e);
+    }
+  }
+
+  @Override
+  public void execute(Tuple input) {
+
+    if (TupleUtils.isTick(input)) {
+      flush();
+      rollIfExpired();
+      return;
+    }
+
+    pendingTuples.add(input);
+
+    if (pendingTuples.size() >= maxBlockSize) {
+      LOGGER.debug("The maximum block size {} is reached", maxBlockSize);
+      flush();
+    }
+
+  }
+
+  /**
+   * Write the pending tuples as a block then ack them
+   */
+  private void flush() {
+    if (pendingTuples.isEmpty()) {
+      return;
+    }
+
+    List<ProductAccessLog> accessLogs = new ArrayList<>(pendingTuples.size());
+    for (Tuple tuple : pendingTuples) {
+      accessLogs.add(ProductViewsLogBolt.toAccessLog(tuple, ids));
+    }
+
+    try {
+      archive.append(accessLogs);
+      pendingTuples.forEach(collector::ack);
+    } catch (IOException e) {
+      LOGGER.error("Unable to archive {} tuples", pendingTuples.size(), e);
+      collector.reportError(e);
+      pendingTuples.forEach(collector::fail);
+    }
+
+    pendingTuples = new ArrayList<>(maxBlockSize);
+  }
+
+  private void rollIfExpired() {
+    try {
+      archive.rollIfExpired();
+    } catch (IOException e) {
+      LOGGER.error("Unable to roll the archive segment", e);
+      collector.reportError(e);
+    }
+  }
+
+  @Override
+  public void cleanup() {
+    try {
+      archive.close();
+    } catch (IOException e) {
+      LOGGER.error("Unable to close the archive", e);
+    }
+  }
+
+  @Override
+  public void declareOutputFields(OutputFieldsDeclarer declarer) {
+    /* not needed */
+  }
+
+}
@@ -15,41 +15,46 @@
 
 package com.github.joumenharzli.analytics;
 
-import org.apache.storm.topology.BasicOutputCollector;
-import org.apache.storm.topology.OutputFieldsDeclarer;
-import org.apache.storm.topology.base.BaseBasicBolt;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
 import org.apache.storm.tuple.Tuple;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import com.github.joumenharzli.utils.CassandraUtils;
+import com.google.common.util.concurrent.ListenableFuture;
 
-import static com.github.joumenharzli.Configuration.WEB_ANALYTICS_KEYSPACE;
 import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
 
 /**
  * Bolt for counting the product views
+ * <p>
+ * The increments of the hot products are spread over the shards of their total
  *
  * @author Joumen Harzli
  */
-public class ProductViewsCountBolt extends BaseBasicBolt {
+public class ProductViewsCountBolt extends SinkCounterBolt {
 
-  private static final Logger LOGGER = LoggerFactory.getLogger(ProductViewsCountBolt.class);
+  private transient HotKeys hotKeys;
 
   @Override
-  public void execute(Tuple input, BasicOutputCollector collector) {
-    LOGGER.debug("Counting the total of the product views");
-
-    String productId = input.getString(input.fieldIndex(PRODUCT_ID));
+  public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+    super.prepare(stormConf, context, collector);
 
-    CassandraUtils.execute(WEB_ANALYTICS_KEYSPACE,
-        String.format("update products_views_total set count=count+1 where productId='%s'", productId));
+    this.hotKeys = HotKeys.forTotal(stormConf, context.getThisTaskIndex());
+  }
 
+  @Override
+  protected List<Object> getCounterKey(Tuple input) {
+    return Collections.singletonList(input.getValue(input.fieldIndex(PRODUCT_ID)));
   }
 
   @Override
-  public void declareOutputFields(OutputFieldsDeclarer declarer) {
-    /* not needed */
+  protected ListenableFuture<?> increment(List<Object> counterKey, long increment) {
+    String productId = getIds().decode(counterKey.get(0));
+
+    return getSink().incrementTotal(productId, hotKeys.shardOf(counterKey.get(0), increment), increment);
   }
 
 }
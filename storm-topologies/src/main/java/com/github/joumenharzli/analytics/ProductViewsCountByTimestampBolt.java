@@ -15,16 +15,13 @@
 
 package com.github.joumenharzli.analytics;
 
-import org.apache.storm.topology.BasicOutputCollector;
-import org.apache.storm.topology.OutputFieldsDeclarer;
-import org.apache.storm.topology.base.BaseBasicBolt;
+import java.util.Arrays;
+import java.util.List;
+
 import org.apache.storm.tuple.Tuple;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import com.github.joumenharzli.utils.CassandraUtils;
+import com.google.common.util.concurrent.ListenableFuture;
 
-import static com.github.joumenharzli.Configuration.WEB_ANALYTICS_KEYSPACE;
 import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS;
 import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.PRODUCT_ID;
 
@@ -33,26 +30,21 @@ import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.PROD
  *
  * @author Joumen Harzli
  */
-public class ProductViewsCountByTimestampBolt extends BaseBasicBolt {
-
-  private static final Logger LOGGER = LoggerFactory.getLogger(ProductViewsCountByTimestampBolt.class);
+public class ProductViewsCountByTimestampBolt extends SinkCounterBolt {
 
   @Override
-  public void execute(Tuple input, BasicOutputCollector collector) {
-    LOGGER.debug("Counting the total of the product views by timestamp");
-
-    String productId = input.getString(input.fieldIndex(PRODUCT_ID));
-    String daysMonthYearTimestamp = input.getString(input.fieldIndex(ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS));
-
-    CassandraUtils.execute(WEB_ANALYTICS_KEYSPACE,
-        String.format("update products_views_by_timestamp set count=count+1 where productId='%s' and timestamp='%s'",
-            productId, daysMonthYearTimestamp));
-
+  protected List<Object> getCounterKey(Tuple input) {
+    return Arrays.asList(
+        input.getValue(input.fieldIndex(PRODUCT_ID)),
+        input.getLong(input.fieldIndex(ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS)));
   }
 
   @Override
-  public void declareOutputFields(OutputFieldsDeclarer declarer) {
-    /* not needed */
+  protected ListenableFuture<?> increment(List<Object> counterKey, long increment) {
+    String productId = getIds().decode(counterKey.get(0));
+    long daysMonthYearTimestamp = (Long) counterKey.get(1);
+
+    return getSink().incrementByDay(productId, daysMonthYearTimestamp, increment);
   }
 
 }
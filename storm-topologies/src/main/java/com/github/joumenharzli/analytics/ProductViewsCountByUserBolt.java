@@ -15,16 +15,13 @@
 
 package com.github.joumenharzli.analytics;
 
-import org.apache.storm.topology.BasicOutputCollector;
-import org.apache.storm.topology.OutputFieldsDeclarer;
-import org.apache.storm.topology.base.BaseBasicBolt;
+import java.util.Arrays;
+import java.util.List;
+
 import org.apache.storm.tuple.Tuple;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import com.github.joumenharzli.utils.CassandraUtils;
+import com.google.common.util.concurrent.ListenableFuture;
 
-import static com.github.joumenharzli.Configuration.WEB_ANALYTICS_KEYSPACE;
 import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
 
 /**
@@ -32,27 +29,23 @@ import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
  *
  * @author Joumen Harzli
  */
-public class ProductViewsCountByUserBolt extends BaseBasicBolt {
-
-  private static final Logger LOGGER = LoggerFactory.getLogger(ProductViewsCountByUserBolt.class);
+public class ProductViewsCountByUserBolt extends SinkCounterBolt {
 
   @Override
-  public void execute(Tuple input, BasicOutputCollector collector) {
-    LOGGER.debug("Counting the total of the product views by user and timestamp");
-
-    String userId = input.getString(input.fieldIndex(USER_ID));
-    String productId = input.getString(input.fieldIndex(PRODUCT_ID));
-    String daysMonthYearTimestamp = input.getString(input.fieldIndex(ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS));
-
-    CassandraUtils.execute(WEB_ANALYTICS_KEYSPACE,
-        String.format("update products_views_by_user set count=count+1 where productid='%s' and timestamp='%s' and userid='%s'",
-            productId, daysMonthYearTimestamp, userId));
-
+  protected List<Object> getCounterKey(Tuple input) {
+    return Arrays.asList(
+        input.getValue(input.fieldIndex(USER_ID)),
+        input.getValue(input.fieldIndex(PRODUCT_ID)),
+        input.getLong(input.fieldIndex(ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS)));
   }
 
   @Override
-  public void declareOutputFields(OutputFieldsDeclarer declarer) {
-    /* not needed */
+  protected ListenableFuture<?> increment(List<Object> counterKey, long increment) {
+    String userId = getIds().decode(counterKey.get(0));
+    String productId = getIds().decode(counterKey.get(1));
+    long daysMonthYearTimestamp = (Long) counterKey.get(2);
+
+    return getSink().incrementByUser(userId, productId, daysMonthYearTimestamp, increment);
   }
 
 }
@@ -15,16 +15,17 @@
 
 package com.github.joumenharzli.analytics;
 
-import org.apache.storm.topology.BasicOutputCollector;
-import org.apache.storm.topology.OutputFieldsDeclarer;
-import org.apache.storm.topology.base.BaseBasicBolt;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.storm.tuple.Tuple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.joumenharzli.utils.CassandraUtils;
+import com.github.joumenharzli.sink.ProductAccessLog;
+import com.github.joumenharzli.utils.IdDictionary;
+import com.google.common.util.concurrent.ListenableFuture;
 
-import static com.github.joumenharzli.Configuration.WEB_ANALYTICS_KEYSPACE;
 import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
 
 /**
@@ -32,27 +33,28 @@ import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
  *
  * @author Joumen Harzli
  */
-public class ProductViewsLogBolt extends BaseBasicBolt {
+public class ProductViewsLogBolt extends SinkBatchWriterBolt {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ProductViewsLogBolt.class);
 
   @Override
-  public void execute(Tuple input, BasicOutputCollector collector) {
-    LOGGER.debug("Saving the product views");
-
-    String userId = input.getString(input.fieldIndex(USER_ID));
-    String productId = input.getString(input.fieldIndex(PRODUCT_ID));
-    String accessTimestamp = input.getString(input.fieldIndex(ACCESS_TIMESTAMP));
+  protected ListenableFuture<?> write(List<Tuple> tuples) {
+    LOGGER.debug("Saving {} product views", tuples.size());
 
-    CassandraUtils.execute(WEB_ANALYTICS_KEYSPACE,
-        String.format("insert into products_access_log(id,userId,productId,timestamp) Values (uuid(),'%s','%s','%s')",
-            userId, productId, accessTimestamp));
+    List<ProductAccessLog> accessLogs = new ArrayList<>(tuples.size());
+    for (Tuple input : tuples) {
+      accessLogs.add(toAccessLog(input, getIds()));
+    }
 
+    return getSink().appendAccessLogs(accessLogs);
   }
 
-  @Override
-  public void declareOutputFields(OutputFieldsDeclarer declarer) {
-    /* not needed */
+  static ProductAccessLog toAccessLog(Tuple input, IdDictionary ids) {
+    String userId = ids.decode(input.getValue(input.fieldIndex(USER_ID)));
+    String productId = ids.decode(input.getValue(input.fieldIndex(PRODUCT_ID)));
+    long accessTimestamp = input.getLong(input.fieldIndex(ACCESS_TIMESTAMP));
+
+    return new ProductAccessLog(userId, productId, accessTimestamp);
   }
 
 }
@@ -15,10 +15,6 @@
 
 package com.github.joumenharzli.analytics;
 
-import java.io.IOException;
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
-
 import org.apache.commons.lang3.StringUtils;
 import org.apache.storm.topology.BasicOutputCollector;
 import org.apache.storm.topology.FailedException;
@@ -30,13 +26,18 @@ import org.apache.storm.tuple.Values;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.joumenharzli.utils.CompactId;
+import com.github.joumenharzli.utils.TimestampUtils;
 
 import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
 
 /**
  * Bolt for parsing the received product views from kafka
+ * <p>
+ * The content of the messages is decoded by the {@link ProductAccessLogScheme} of the spout, the
+ * bolt validates the decoded values and computes the day of the access. The timestamps are
+ * emitted as milliseconds since the epoch and the ids as {@link CompactId} which are decoded by
+ * the bolts writing to the sink.
  *
  * @author Joumen Harzli
  */
@@ -44,59 +45,28 @@ public class ProductViewsParseBolt extends BaseBasicBolt {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ProductViewsParseBolt.class);
 
-  private final ObjectMapper objectMapper = new ObjectMapper();
-
   /**
-   * Parse the received {@code String} content from the kafka spout and emit the extracted
-   * values
+   * Validate the values decoded from the kafka message and emit them with the day of the access
    */
   @Override
   public void execute(Tuple input, BasicOutputCollector collector) {
     LOGGER.debug("Parsing the received content from Kafka");
 
-    String jsonContent = input.getString(0);
-    validateReceivedContent(jsonContent);
-
-    try {
-
-      Values values = parseReceivedContentValues(jsonContent);
-      collector.emit(values);
-
-    } catch (IOException e) {
-      LOGGER.error("Unable to parse the content received from Kafka {}", e);
-      throw new FailedException("Unable to parse the content received from Kafka", e);
-    }
-
-  }
-
-  /**
-   * Parse the received content
-   *
-   * @param jsonContent the received content from Kafka
-   * @return the extracted values
-   * @throws IOException if the provided cannot be parsed
-   */
-  private Values parseReceivedContentValues(String jsonContent) throws IOException {
-
-    JsonNode node = objectMapper.readValue(jsonContent, JsonNode.class);
-
-    String userId = node.get(USER_ID).asText();
-    String productId = node.get(PRODUCT_ID).asText();
-    String accessTimestamp = node.get(ACCESS_TIMESTAMP).asText();
-
-    String daysMonthYearTimestamp = Instant.parse(accessTimestamp)
-        .truncatedTo(ChronoUnit.DAYS)
-        .toString();
+    String userId = input.getStringByField(USER_ID);
+    String productId = input.getStringByField(PRODUCT_ID);
+    Long accessTimestamp = input.getLongByField(ACCESS_TIMESTAMP);
 
     validateValue(USER_ID, userId);
     validateValue(PRODUCT_ID, productId);
     validateValue(ACCESS_TIMESTAMP, accessTimestamp);
-    validateValue(ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS, daysMonthYearTimestamp);
 
-    Values values = new Values(userId, productId, accessTimestamp, daysMonthYearTimestamp);
+    long daysMonthYearTimestamp = TimestampUtils.truncateToDay(accessTimestamp);
 
-    LOGGER.trace("The parsed values are: ", values);
-    return values;
+    Values values = new Values(CompactId.encode(userId), CompactId.encode(productId), accessTimestamp,
+        daysMonthYearTimestamp);
+
+    LOGGER.trace("The parsed values are: {}", values);
+    collector.emit(values);
   }
 
   /**
@@ -108,31 +78,33 @@ public class ProductViewsParseBolt extends BaseBasicBolt {
   }
 
   /**
-   * Validate that the received content is valid
+   * Validate that the value is not null or blank
    *
-   * @param jsonContent the received content from Kafka
+   * @param valueName    name of the value
+   * @param valueContent content of the value
+   * @throws FailedException if the value is not valid
    */
-  private void validateReceivedContent(String jsonContent) {
-    LOGGER.trace("The received content is {}", jsonContent);
+  private void validateValue(String valueName, String valueContent) {
 
-    if (StringUtils.isEmpty(jsonContent)) {
-      LOGGER.error("Blank or null content received from Kafka");
-      throw new FailedException("Blank or null content received from Kafka");
+    if (StringUtils.isEmpty(valueContent)) {
+      LOGGER.error("{} is Blank or null", valueName);
+      throw new FailedException(String.format("%s is Blank or null", valueName));
     }
+
   }
 
   /**
-   * Validate that the value is not null or blank
+   * Validate that the value is not null
    *
    * @param valueName    name of the value
    * @param valueContent content of the value
    * @throws FailedException if the value is not valid
    */
-  private void validateValue(String valueName, String valueContent) {
+  private void validateValue(String valueName, Long valueContent) {
 
-    if (StringUtils.isEmpty(valueContent)) {
-      LOGGER.error("{} is Blank or null", valueName);
-      throw new FailedException(String.format("%s is Blank or null", valueName));
+    if (valueContent == null) {
+      LOGGER.error("{} is null", valueName);
+      throw new FailedException(String.format("%s is null", valueName));
     }
 
   }
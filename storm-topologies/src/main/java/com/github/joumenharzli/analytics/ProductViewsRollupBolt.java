@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.storm.Config;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.TupleUtils;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.sink.RollupResolution;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static com.github.joumenharzli.Configuration.*;
+import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
+
+/**
+ * Bolt for counting the product views by minute, hour, day and month in a single pass
+ * <p>
+ * Each view is added to the period of its access in the rollups of every resolution, the rollups
+ * are aggregated in memory by product and period and the rollups of a resolution are written at
+ * its own flush interval, or when {@code COUNTER_MAX_PENDING_TUPLES_CONFIG} tuples are pending in
+ * the resolution. A tuple is acked once its views are written in all the resolutions, so the
+ * flush intervals must be shorter than the message timeout.
+ * <p>
+ * The stored count of a period is read then written so the stream is grouped by product and a
+ * rollup whose previous write is still in flight is kept with its tuples by the
+ * {@link PendingWrites} until the next flush.
+ * <p>
+ * A rollup whose write fails is added again to the pending rollups of its resolution instead of
+ * failing its tuples, a replay would count them again in the resolutions already written. Only the
+ * tuples older than the message timeout, which are replayed by the spout anyway, are dropped.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductViewsRollupBolt extends SinkWriterBolt {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProductViewsRollupBolt.class);
+
+  private static final RollupResolution[] RESOLUTIONS = RollupResolution.values();
+  private static final int TICK_FREQ_SECS = 1;
+
+  private transient Map<RollupResolution, PendingWrites<List<PendingTuple>>> pendingRollups;
+  private transient Map<RollupResolution, Long> flushIntervalsMillis;
+  private transient Map<RollupResolution, Long> nextFlushesMillis;
+  private transient Queue<FailedRollup> failedRollups;
+  private transient long messageTimeoutMillis;
+
+  @Override
+  public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+    super.prepare(stormConf, context, collector);
+
+    int maxPendingTuples = Utils.getInt(stormConf.get(COUNTER_MAX_PENDING_TUPLES_CONFIG),
+        COUNTER_MAX_PENDING_TUPLES);
+
+    this.pendingRollups = new EnumMap<>(RollupResolution.class);
+    this.flushIntervalsMillis = new EnumMap<>(RollupResolution.class);
+    this.nextFlushesMillis = new EnumMap<>(RollupResolution.class);
+    this.failedRollups = new ConcurrentLinkedQueue<>();
+    this.messageTimeoutMillis = TimeUnit.SECONDS.toMillis(Utils.getInt(stormConf.get(Config.TOPOLOGY_MESSAGE_TIMEOUT_SECS),
+        MESSAGE_TIMEOUT_SECS));
+
+    long now = System.currentTimeMillis();
+    for (RollupResolution resolution : RESOLUTIONS) {
+      long flushIntervalMillis = TimeUnit.SECONDS.toMillis(resolution.getFlushIntervalSecs(stormConf));
+      pendingRollups.put(resolution, new PendingWrites<>(maxPendingTuples));
+      flushIntervalsMillis.put(resolution, flushIntervalMillis);
+      nextFlushesMillis.put(resolution, now + flushIntervalMillis);
+    }
+  }
+
+  @Override
+  public void execute(Tuple input) {
+
+    if (TupleUtils.isTick(input)) {
+      retryFailed();
+      flushElapsed();
+      return;
+    }
+
+    Object productId = input.getValue(input.fieldIndex(PRODUCT_ID));
+    long accessTimestamp = input.getLong(input.fieldIndex(ACCESS_TIMESTAMP));
+    PendingTuple pendingTuple = new PendingTuple(input);
+
+    for (RollupResolution resolution : RESOLUTIONS) {
+      List<Object> key = Arrays.asList(productId, resolution.truncate(accessTimestamp));
+      pendingRollups.get(resolution).add(key, 1, ArrayList::new).add(pendingTuple);
+    }
+
+    for (RollupResolution resolution : RESOLUTIONS) {
+      if (pendingRollups.get(resolution).isFull()) {
+        LOGGER.debug("The maximum of pending tuples is reached in the rollups by {}", resolution.getName());
+        flush(resolution);
+      }
+    }
+
+  }
+
+  /**
+   * Add the failed rollups to the pending rollups, without the tuples already replayed by the spout
+   */
+  private void retryFailed() {
+    long expiredBefore = System.currentTimeMillis() - messageTimeoutMillis;
+    FailedRollup failedRollup;
+
+    while ((failedRollup = failedRollups.poll()) != null) {
+      List<PendingTuple> live = new ArrayList<>();
+      List<Tuple> expired = new ArrayList<>();
+
+      for (PendingTuple pendingTuple : failedRollup.tuples) {
+        if (pendingTuple.receivedAt >= expiredBefore) {
+          live.add(pendingTuple);
+        } else if (pendingTuple.expired.compareAndSet(false, true)) {
+          expired.add(pendingTuple.tuple);
+        }
+      }
+
+      if (!live.isEmpty()) {
+        pendingRollups.get(failedRollup.resolution).add(failedRollup.key, live.size(), ArrayList::new).addAll(live);
+      }
+      if (!expired.isEmpty()) {
+        LOGGER.warn("Dropping {} tuples of a rollup by {} older than the message timeout", expired.size(),
+            failedRollup.resolution.getName());
+        fail(expired, new IllegalStateException("The rollup was not written before the message timeout"));
+      }
+    }
+  }
+
+  /**
+   * Write the rollups of the resolutions whose flush interval elapsed
+   */
+  private void flushElapsed() {
+    long now = System.currentTimeMillis();
+
+    for (RollupResolution resolution : RESOLUTIONS) {
+      if (now >= nextFlushesMillis.get(resolution)) {
+        flush(resolution);
+        nextFlushesMillis.put(resolution, now + flushIntervalsMillis.get(resolution));
+      }
+    }
+  }
+
+  /**
+   * Write the pending rollups of the resolution whose previous write completed
+   */
+  private void flush(RollupResolution resolution) {
+    PendingWrites<List<PendingTuple>> pending = pendingRollups.get(resolution);
+
+    int written = pending.flush((key, tuples) -> {
+      ListenableFuture<?> result = getSink().addRollup(resolution, getIds().decode(key.get(0)), (Long) key.get(1),
+          tuples.size());
+      ackOnAllWrites(result, resolution, key, tuples);
+      return result;
+    });
+
+    if (written > 0) {
+      LOGGER.debug("Writing {} rollups by {}, {} rollups wait for their previous write", written,
+          resolution.getName(), pending.size());
+    }
+  }
+
+  /**
+   * Ack the tuples written in all the resolutions, the rollup is retried when its write fails
+   */
+  private void ackOnAllWrites(ListenableFuture<?> result, RollupResolution resolution, List<Object> key,
+                              List<PendingTuple> pendingTuples) {
+    Futures.addCallback(result, new FutureCallback<Object>() {
+
+      @Override
+      public void onSuccess(Object result) {
+        List<Tuple> written = new ArrayList<>();
+        for (PendingTuple pendingTuple : pendingTuples) {
+          if (pendingTuple.remainingWrites.decrementAndGet() == 0 && !pendingTuple.expired.get()) {
+            written.add(pendingTuple.tuple);
+          }
+        }
+        ack(written);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOGGER.error("Unable to write a rollup by {} of {} tuples, retrying at the next tick", resolution.getName(),
+            pendingTuples.size(), t);
+        failedRollups.add(new FailedRollup(resolution, key, pendingTuples));
+        reportError(t);
+      }
+
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * The tick tuples are used to check the flush intervals of the resolutions and retry the failed rollups
+   */
+  @Override
+  public Map<String, Object> getComponentConfiguration() {
+    Config config = new Config();
+    config.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, TICK_FREQ_SECS);
+    return config;
+  }
+
+  /**
+   * Tuple waiting for the writes of its views in all the resolutions
+   */
+  private static final class PendingTuple {
+
+    private final Tuple tuple;
+    private final long receivedAt = System.currentTimeMillis();
+    private final AtomicInteger remainingWrites = new AtomicInteger(RESOLUTIONS.length);
+    private final AtomicBoolean expired = new AtomicBoolean();
+
+    private PendingTuple(Tuple tuple) {
+      this.tuple = tuple;
+    }
+
+  }
+
+  /**
+   * Rollup of a resolution whose write failed, waiting to be added again to the pending rollups
+   */
+  private static final class FailedRollup {
+
+    private final RollupResolution resolution;
+    private final List<Object> key;
+    private final List<PendingTuple> tuples;
+
+    private FailedRollup(RollupResolution resolution, List<Object> key, List<PendingTuple> tuples) {
+      this.resolution = resolution;
+      this.key = key;
+      this.tuples = tuples;
+    }
+
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.storm.Config;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.TupleUtils;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.sink.ProductAccessLog;
+import com.github.joumenharzli.sink.ProductViewsSink;
+import com.github.joumenharzli.utils.IdDictionary;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import static com.github.joumenharzli.Configuration.*;
+import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
+
+/**
+ * Bolt for logging and counting the product views in a single executor
+ * <p>
+ * It replaces the log bolt and the three counting bolts: the access logs are buffered and the
+ * counters are aggregated in memory until a tick tuple is received or until
+ * {@code COUNTER_MAX_PENDING_TUPLES_CONFIG} tuples are pending. The access logs grouped by
+ * partition and the aggregated counters are then written together and the tuples are acked once
+ * all the writes complete.
+ * <p>
+ * The access logs are not written to the sink when they are only archived and the increments of
+ * the hot products are spread over the shards of their total.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductViewsWriterBolt extends SinkWriterBolt {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProductViewsWriterBolt.class);
+
+  private transient List<Tuple> pendingTuples;
+  private transient List<ProductAccessLog> pendingAccessLogs;
+  private transient Map<Object, Long> totalIncrements;
+  private transient Map<List<Object>, Long> dayIncrements;
+  private transient Map<List<Object>, Long> userIncrements;
+  private transient int maxPendingTuples;
+  private transient boolean writeAccessLogs;
+  private transient HotKeys hotKeys;
+
+  @Override
+  public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+    super.prepare(stormConf, context, collector);
+
+    this.maxPendingTuples = Utils.getInt(stormConf.get(COUNTER_MAX_PENDING_TUPLES_CONFIG),
+        COUNTER_MAX_PENDING_TUPLES);
+    this.writeAccessLogs = !ACCESS_LOG_STORAGE_ARCHIVE.equals(stormConf.get(ACCESS_LOG_STORAGE_CONFIG));
+    this.hotKeys = HotKeys.forTotal(stormConf, context.getThisTaskIndex());
+    reset();
+  }
+
+  @Override
+  public void execute(Tuple input) {
+
+    if (TupleUtils.isTick(input)) {
+      flush();
+      return;
+    }
+
+    Object userId = input.getValue(input.fieldIndex(USER_ID));
+    Object productId = input.getValue(input.fieldIndex(PRODUCT_ID));
+    long accessTimestamp = input.getLong(input.fieldIndex(ACCESS_TIMESTAMP));
+    long daysMonthYearTimestamp = input.getLong(input.fieldIndex(ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS));
+
+    if (writeAccessLogs) {
+      pendingAccessLogs.add(new ProductAccessLog(getIds().decode(userId), getIds().decode(productId), accessTimestamp));
+    }
+    totalIncrements.merge(productId, 1L, Long::sum);
+    dayIncrements.merge(Arrays.asList(productId, daysMonthYearTimestamp), 1L, Long::sum);
+    userIncrements.merge(Arrays.asList(userId, productId, daysMonthYearTimestamp), 1L, Long::sum);
+    pendingTuples.add(input);
+
+    if (pendingTuples.size() >= maxPendingTuples) {
+      LOGGER.debug("The maximum of pending tuples {} is reached", maxPendingTuples);
+      flush();
+    }
+
+  }
+
+  /**
+   * Write the pending access logs and the aggregated counters then reset them
+   */
+  private void flush() {
+    if (pendingTuples.isEmpty()) {
+      return;
+    }
+
+    ProductViewsSink sink = getSink();
+    List<ListenableFuture<?>> results = new ArrayList<>();
+
+    if (!pendingAccessLogs.isEmpty()) {
+      results.add(sink.appendAccessLogs(pendingAccessLogs));
+    }
+    IdDictionary ids = getIds();
+    totalIncrements.forEach((productId, increment) -> results.add(
+        sink.incrementTotal(ids.decode(productId), hotKeys.shardOf(productId, increment), increment)));
+    dayIncrements.forEach((key, increment) ->
+        results.add(sink.incrementByDay(ids.decode(key.get(0)), (Long) key.get(1), increment)));
+    userIncrements.forEach((key, increment) -> results.add(
+        sink.incrementByUser(ids.decode(key.get(0)), ids.decode(key.get(1)), (Long) key.get(2), increment)));
+
+    LOGGER.debug("Flushing {} tuples with {} writes", pendingTuples.size(), results.size());
+
+    ackOnCompletion(results, pendingTuples);
+    reset();
+  }
+
+  private void reset() {
+    pendingTuples = new ArrayList<>(maxPendingTuples);
+    pendingAccessLogs = new ArrayList<>(maxPendingTuples);
+    totalIncrements = new HashMap<>();
+    dayIncrements = new HashMap<>();
+    userIncrements = new HashMap<>();
+  }
+
+  /**
+   * The tick tuples are used to flush the pending writes periodically
+   */
+  @Override
+  public Map<String, Object> getComponentConfiguration() {
+    Config config = new Config();
+    config.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, COUNTER_FLUSH_INTERVAL_SECS);
+    return config;
+  }
+
+}
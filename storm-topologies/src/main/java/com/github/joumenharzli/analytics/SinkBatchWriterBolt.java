@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.storm.Config;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.TupleUtils;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Base bolt for writing rows to the sink in batches
+ * <p>
+ * The tuples are buffered until a tick tuple is received or until {@code BATCH_MAX_SIZE_CONFIG}
+ * tuples are pending. The buffered tuples are then written together and acked once the whole
+ * batch is written.
+ *
+ * @author Joumen Harzli
+ */
+public abstract class SinkBatchWriterBolt extends SinkWriterBolt {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SinkBatchWriterBolt.class);
+
+  private transient List<Tuple> pendingTuples;
+  private transient int maxBatchSize;
+
+  @Override
+  public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+    super.prepare(stormConf, context, collector);
+
+    this.maxBatchSize = Utils.getInt(stormConf.get(BATCH_MAX_SIZE_CONFIG), BATCH_MAX_SIZE);
+    this.pendingTuples = new ArrayList<>(maxBatchSize);
+  }
+
+  @Override
+  public void execute(Tuple input) {
+
+    if (TupleUtils.isTick(input)) {
+      flush();
+      return;
+    }
+
+    pendingTuples.add(input);
+
+    if (pendingTuples.size() >= maxBatchSize) {
+      LOGGER.debug("The maximum batch size {} is reached", maxBatchSize);
+      flush();
+    }
+
+  }
+
+  /**
+   * Write the pending tuples
+   */
+  private void flush() {
+    if (pendingTuples.isEmpty()) {
+      return;
+    }
+
+    LOGGER.debug("Flushing {} tuples", pendingTuples.size());
+
+    ackOnCompletion(write(pendingTuples), pendingTuples);
+
+    pendingTuples = new ArrayList<>(maxBatchSize);
+  }
+
+  /**
+   * The tick tuples are used to flush the pending tuples after the linger time
+   */
+  @Override
+  public Map<String, Object> getComponentConfiguration() {
+    Config config = new Config();
+    config.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, BATCH_LINGER_SECS);
+    return config;
+  }
+
+  /**
+   * @param tuples tuples to write
+   * @return the result of the write in the sink
+   */
+  protected abstract ListenableFuture<?> write(List<Tuple> tuples);
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.storm.Config;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.TupleUtils;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Base bolt for incrementing the counters of the sink
+ * <p>
+ * The increments are aggregated in memory by counter key and each key is written once with
+ * the sum of its increments when a tick tuple is received or when the number of pending tuples
+ * reaches {@code COUNTER_MAX_PENDING_TUPLES_CONFIG}. The tuples are acked after the write of
+ * their counter.
+ * <p>
+ * When {@code COUNTER_JOURNAL_DIRECTORY_CONFIG} is set the increments are aggregated in a
+ * {@link CounterJournal} of the task instead. The tick tuples are received every
+ * {@code COUNTER_JOURNAL_SYNC_INTERVAL_SECS_CONFIG}, each tick syncs the journal to the storage
+ * then acks the tuples of the synced increments, and the journal is written to the sink every
+ * {@code COUNTER_FLUSH_INTERVAL_SECS_CONFIG} which is no longer bounded by the message timeout.
+ * The deltas left pending by a crash are written as soon as the task is prepared again on the
+ * same host, and the tuples are failed when the journal is full so they are replayed later.
+ *
+ * @author Joumen Harzli
+ */
+public abstract class SinkCounterBolt extends SinkWriterBolt {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SinkCounterBolt.class);
+
+  private transient Map<List<Object>, List<Tuple>> pendingIncrements;
+  private transient int pendingTuplesCount;
+  private transient int maxPendingTuples;
+  private transient CounterJournal journal;
+  private transient List<Tuple> unsyncedTuples;
+  private transient long journalFlushIntervalNanos;
+  private transient long lastJournalFlushNanos;
+
+  @Override
+  public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+    super.prepare(stormConf, context, collector);
+
+    this.pendingIncrements = new HashMap<>();
+    this.maxPendingTuples = Utils.getInt(stormConf.get(COUNTER_MAX_PENDING_TUPLES_CONFIG),
+        COUNTER_MAX_PENDING_TUPLES);
+
+    String journalDirectory = (String) stormConf.get(COUNTER_JOURNAL_DIRECTORY_CONFIG);
+    if (StringUtils.isNotBlank(journalDirectory)) {
+      String journalName = context.getThisComponentId() + "-" + context.getThisTaskId();
+      int segmentSize = Utils.getInt(stormConf.get(COUNTER_JOURNAL_SEGMENT_BYTES_CONFIG), COUNTER_JOURNAL_SEGMENT_BYTES);
+      try {
+        this.journal = CounterJournal.open(Paths.get(journalDirectory), journalName, segmentSize);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Unable to open the counter journal " + journalName, e);
+      }
+      this.unsyncedTuples = new ArrayList<>();
+      this.journalFlushIntervalNanos = TimeUnit.SECONDS.toNanos(
+          Utils.getInt(stormConf.get(COUNTER_FLUSH_INTERVAL_SECS_CONFIG), COUNTER_FLUSH_INTERVAL_SECS));
+      this.lastJournalFlushNanos = System.nanoTime();
+
+      context.registerMetric(CounterJournal.Metric.NAME, journal.new Metric(),
+          Utils.getInt(stormConf.get(COUNTER_JOURNAL_METRICS_BUCKET_SECS_CONFIG), COUNTER_JOURNAL_METRICS_BUCKET_SECS));
+
+      if (journal.hasPendingEntries()) {
+        flush();
+      }
+    }
+  }
+
+  @Override
+  public void execute(Tuple input) {
+
+    if (TupleUtils.isTick(input)) {
+      if (journal == null) {
+        flush();
+      } else {
+        syncJournal();
+        if (System.nanoTime() - lastJournalFlushNanos >= journalFlushIntervalNanos) {
+          flush();
+        }
+      }
+      return;
+    }
+
+    if (journal != null) {
+      journal(input);
+      return;
+    }
+
+    pendingIncrements.computeIfAbsent(getCounterKey(input), key -> new ArrayList<>()).add(input);
+    pendingTuplesCount++;
+
+    if (pendingTuplesCount >= maxPendingTuples) {
+      LOGGER.debug("The maximum of pending tuples {} is reached", maxPendingTuples);
+      flush();
+    }
+
+  }
+
+  /**
+   * Add the increment of the tuple to the journal, the tuple is acked by the next sync
+   */
+  private void journal(Tuple input) {
+    if (!journal.add(getCounterKey(input), 1)) {
+      LOGGER.warn("The counter journal is full, failing the tuple");
+      fail(Collections.singletonList(input), new IllegalStateException("The counter journal is full"));
+      return;
+    }
+    unsyncedTuples.add(input);
+
+    if (unsyncedTuples.size() >= maxPendingTuples) {
+      LOGGER.debug("The maximum of unsynced tuples {} is reached", maxPendingTuples);
+      syncJournal();
+    }
+    if (journal.getActiveCountersCount() >= maxPendingTuples) {
+      LOGGER.debug("The maximum of pending counters {} is reached", maxPendingTuples);
+      flush();
+    }
+  }
+
+  /**
+   * Force the journal to the storage then ack the tuples of the synced increments
+   */
+  private void syncJournal() {
+    if (!journal.hasUnsyncedDeltas()) {
+      return;
+    }
+
+    journal.sync();
+    ack(unsyncedTuples);
+    unsyncedTuples = new ArrayList<>();
+  }
+
+  /**
+   * Write the sealed entries of the journal, each entry is marked as flushed once written and the
+   * entries which failed are kept pending and written again by the next flush
+   */
+  private void flushJournal() {
+    syncJournal();
+    lastJournalFlushNanos = System.nanoTime();
+
+    List<CounterJournal.Entry> entries = journal.seal();
+    if (entries.isEmpty()) {
+      return;
+    }
+
+    LOGGER.debug("Flushing {} journaled counters", entries.size());
+
+    for (CounterJournal.Entry entry : entries) {
+      Futures.addCallback(increment(entry.getKey(), entry.getDelta()), new FutureCallback<Object>() {
+
+        @Override
+        public void onSuccess(Object result) {
+          journal.flushed(entry);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          LOGGER.error("Unable to write the journaled counter {}, retrying with the next flush", entry.getKey(), t);
+          journal.failed(entry);
+          reportError(t);
+        }
+
+      }, MoreExecutors.directExecutor());
+    }
+  }
+
+  /**
+   * Write the aggregated increments then reset them
+   */
+  private void flush() {
+    if (journal != null) {
+      flushJournal();
+      return;
+    }
+
+    if (pendingIncrements.isEmpty()) {
+      return;
+    }
+
+    LOGGER.debug("Flushing {} counters aggregated from {} tuples", pendingIncrements.size(), pendingTuplesCount);
+
+    pendingIncrements.forEach((key, tuples) -> ackOnCompletion(increment(key, tuples.size()), tuples));
+
+    pendingIncrements = new HashMap<>();
+    pendingTuplesCount = 0;
+  }
+
+  @Override
+  public void cleanup() {
+    if (journal != null) {
+      /* the unsynced tuples are not acked so their deltas are dropped and replayed by the spout */
+      journal.close();
+    }
+    super.cleanup();
+  }
+
+  /**
+   * The tick tuples are used to flush the aggregated increments periodically
+   */
+  @Override
+  public Map<String, Object> getComponentConfiguration() {
+    Config config = new Config();
+    config.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, COUNTER_FLUSH_INTERVAL_SECS);
+    return config;
+  }
+
+  /**
+   * @param input received tuple
+   * @return the values identifying the counter that will be incremented by the tuple
+   */
+  protected abstract List<Object> getCounterKey(Tuple input);
+
+  /**
+   * @param counterKey the values identifying the counter
+   * @param increment  value to add to the counter
+   * @return the result of the increment in the sink
+   */
+  protected abstract ListenableFuture<?> increment(List<Object> counterKey, long increment);
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.topology.base.BaseRichBolt;
+import org.apache.storm.tuple.Tuple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.sink.ProductViewsSink;
+import com.github.joumenharzli.sink.ProductViewsSinks;
+import com.github.joumenharzli.utils.IdDictionary;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Base bolt for writing the product views to the sink of the topology
+ * <p>
+ * The sink is selected by the {@code SINK_CONFIG} of the topology configuration and the tuples
+ * are acked or failed once the asynchronous writes of the sink complete. The ids of the tuples are
+ * decoded with the {@link IdDictionary} of the executor.
+ *
+ * @author Joumen Harzli
+ */
+public abstract class SinkWriterBolt extends BaseRichBolt {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SinkWriterBolt.class);
+
+  private transient OutputCollector collector;
+  private transient ProductViewsSink sink;
+  private transient IdDictionary ids;
+
+  @Override
+  public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+    this.collector = collector;
+    this.sink = ProductViewsSinks.create(stormConf, context);
+    this.ids = IdDictionary.create(stormConf, context);
+
+    LOGGER.debug("Writing the product views of {} to {}", context.getThisComponentId(), sink.getClass().getSimpleName());
+  }
+
+  /**
+   * @return the sink of the executor
+   */
+  protected ProductViewsSink getSink() {
+    return sink;
+  }
+
+  /**
+   * @return the dictionary decoding the ids of the tuples
+   */
+  protected IdDictionary getIds() {
+    return ids;
+  }
+
+  @Override
+  public void cleanup() {
+    sink.close();
+  }
+
+  /**
+   * Ack the tuples once the write succeeds or fail them otherwise
+   *
+   * @param result  result of the write
+   * @param anchors tuples that will be acked or failed with the write
+   */
+  protected void ackOnCompletion(ListenableFuture<?> result, List<Tuple> anchors) {
+    Futures.addCallback(result, new FutureCallback<Object>() {
+
+      @Override
+      public void onSuccess(Object result) {
+        ack(anchors);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOGGER.error("Unable to write {} tuples", anchors.size(), t);
+        fail(anchors, t);
+      }
+
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Ack the tuples once all the writes succeed or fail them otherwise
+   *
+   * @param results results of the writes
+   * @param anchors tuples that will be acked or failed with the writes
+   */
+  protected void ackOnCompletion(List<ListenableFuture<?>> results, List<Tuple> anchors) {
+    ackOnCompletion(Futures.allAsList(results), anchors);
+  }
+
+  /**
+   * Ack the tuples, the collector is shared with the threads of the sink so the access is synchronized
+   *
+   * @param tuples tuples to ack
+   */
+  protected void ack(List<Tuple> tuples) {
+    synchronized (collector) {
+      tuples.forEach(collector::ack);
+    }
+  }
+
+  /**
+   * Fail the tuples and report the error, the collector is shared with the threads of the sink so
+   * the access is synchronized
+   *
+   * @param tuples tuples to fail
+   * @param cause  cause of the failure
+   */
+  protected void fail(List<Tuple> tuples, Throwable cause) {
+    synchronized (collector) {
+      collector.reportError(cause);
+      tuples.forEach(collector::fail);
+    }
+  }
+
+  /**
+   * Report an error which is not tied to tuples, the collector is shared with the threads of the
+   * sink so the access is synchronized
+   *
+   * @param cause the error
+   */
+  protected void reportError(Throwable cause) {
+    synchronized (collector) {
+      collector.reportError(cause);
+    }
+  }
+
+  @Override
+  public void declareOutputFields(OutputFieldsDeclarer declarer) {
+    /* not needed */
+  }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.joumenharzli.utils.CompactId;
+import com.github.joumenharzli.utils.CountMinSketch;
+import com.github.joumenharzli.utils.SpaceSaving;
+
+/**
+ * Sliding window of the views of the products received by an executor
+ * <p>
+ * The window is a ring of slots covering consecutive periods of the access timestamps, each slot
+ * holding a Count-Min sketch of the views of all the products and a Space-Saving summary of its
+ * most viewed products. A slot is reset when a view of a newer period reaches it and the views
+ * older than the window are ignored, so the window follows the event time of the stream. The
+ * window is ranked at a time of the executor and ends with the latest of the period of this time
+ * and the latest period viewed, so the views of a stream that stopped expire with the window.
+ * <p>
+ * The ranking scores the candidates of the slots by the sum of their estimated views, a product
+ * viewed a little in each slot is ranked even if it is the top of none of them.
+ *
+ * @author Joumen Harzli
+ */
+final class TrendingWindow {
+
+  private final String name;
+  private final long slotMillis;
+  private final long[] slotStarts;
+  private final CountMinSketch[] sketches;
+  private final List<SpaceSaving<CompactId>> candidates;
+  private long latestSlotStart = Long.MIN_VALUE;
+
+  /**
+   * @param name       name of the window
+   * @param slotMillis duration of a slot in milliseconds
+   * @param slots      number of slots of the window
+   * @param depth      depth of the sketches
+   * @param width      width of the sketches, a power of two
+   * @param capacity   candidates tracked by slot
+   */
+  TrendingWindow(String name, long slotMillis, int slots, int depth, int width, int capacity) {
+    this.name = name;
+    this.slotMillis = slotMillis;
+    this.slotStarts = new long[slots];
+    this.sketches = new CountMinSketch[slots];
+    this.candidates = new ArrayList<>(slots);
+
+    for (int slot = 0; slot < slots; slot++) {
+      slotStarts[slot] = Long.MIN_VALUE;
+      sketches[slot] = new CountMinSketch(depth, width);
+      candidates.add(new SpaceSaving<>(capacity));
+    }
+  }
+
+  String getName() {
+    return name;
+  }
+
+  /**
+   * @param productId       id of the product
+   * @param accessTimestamp access timestamp of the view in milliseconds since the epoch
+   */
+  void add(CompactId productId, long accessTimestamp) {
+    long slotStart = accessTimestamp - Math.floorMod(accessTimestamp, slotMillis);
+    int slot = (int) Math.floorMod(slotStart / slotMillis, (long) slotStarts.length);
+
+    if (slotStarts[slot] > slotStart) {
+      /* the slot already holds a newer period, the view is older than the window */
+      return;
+    }
+    if (slotStarts[slot] < slotStart) {
+      slotStarts[slot] = slotStart;
+      sketches[slot].clear();
+      candidates.get(slot).clear();
+    }
+    latestSlotStart = Math.max(latestSlotStart, slotStart);
+
+    sketches[slot].add(productId.hash64(), 1);
+    candidates.get(slot).add(productId, 1);
+  }
+
+  /**
+   * @param k          maximum number of ranked products
+   * @param now        time of the ranking in milliseconds since the epoch
+   * @param productIds receives the ids of the most viewed products by descending views
+   * @param views      receives the estimated views of the ranked products
+   */
+  void rank(int k, long now, List<CompactId> productIds, List<Long> views) {
+    long endSlotStart = Math.max(latestSlotStart, now - Math.floorMod(now, slotMillis));
+    List<Integer> liveSlots = new ArrayList<>(slotStarts.length);
+    for (int slot = 0; slot < slotStarts.length; slot++) {
+      if (isLive(slot, endSlotStart)) {
+        liveSlots.add(slot);
+      }
+    }
+
+    Map<CompactId, Long> scores = new HashMap<>();
+    for (int slot : liveSlots) {
+      for (CompactId productId : candidates.get(slot).getKeys()) {
+        scores.computeIfAbsent(productId, key -> estimate(key, liveSlots));
+      }
+    }
+
+    scores.entrySet().stream()
+        .sorted(Map.Entry.<CompactId, Long>comparingByValue(Comparator.reverseOrder()))
+        .limit(k)
+        .forEach(score -> {
+          productIds.add(score.getKey());
+          views.add(score.getValue());
+        });
+  }
+
+  /**
+   * A slot is live if it holds a period of the window ending with the period of the specified start
+   */
+  private boolean isLive(int slot, long endSlotStart) {
+    return slotStarts[slot] != Long.MIN_VALUE
+        && slotStarts[slot] > endSlotStart - slotStarts.length * slotMillis;
+  }
+
+  private long estimate(CompactId productId, List<Integer> liveSlots) {
+    long hash = productId.hash64();
+    long views = 0;
+    for (int slot : liveSlots) {
+      views += sketches[slot].estimate(hash);
+    }
+    return views;
+  }
+
+}
@@ -15,13 +15,22 @@
 
 package com.github.joumenharzli.analytics;
 
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
 import org.apache.storm.Config;
 import org.apache.storm.generated.StormTopology;
+import org.apache.storm.topology.BoltDeclarer;
 import org.apache.storm.topology.TopologyBuilder;
+import org.apache.storm.tuple.Fields;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.joumenharzli.TopologyProfile;
+import com.github.joumenharzli.sink.RollupResolution;
+import com.github.joumenharzli.utils.CompactId;
+
 import static com.github.joumenharzli.Configuration.*;
+import static com.github.joumenharzli.analytics.ProductAccessTopicConstants.*;
 import static com.github.joumenharzli.utils.KafkaSpoutUtils.createKafkaSpout;
 
 /**
@@ -31,42 +40,265 @@ import static com.github.joumenharzli.utils.KafkaSpoutUtils.createKafkaSpout;
  */
 public final class WebAnalyticsTopology {
 
+  public static final String KAFKA_SPOUT = "kafka_spout";
+  public static final String PARSE_PRODUCT_VIEWS = "parse_product_views";
+  public static final String LOG_PRODUCT_VIEWS = "log_product_views";
+  public static final String COUNT_PRODUCT_VIEWS = "count_product_views";
+  public static final String COUNT_PRODUCT_VIEWS_BY_TIMESTAMP = "count_product_views_by_timestamp";
+  public static final String COUNT_PRODUCT_VIEWS_BY_USER = "count_product_views_by_user";
+  public static final String WRITE_PRODUCT_VIEWS = "write_product_views";
+  public static final String ARCHIVE_PRODUCT_VIEWS = "archive_product_views";
+  public static final String COUNT_UNIQUE_VIEWERS = "count_unique_viewers";
+  public static final String COUNT_PRODUCT_AUDIENCE = "count_product_audience";
+  public static final String COUNT_PRODUCT_VIEWS_ROLLUPS = "count_product_views_rollups";
+  public static final String SUMMARIZE_PRODUCT_VIEWS = "summarize_product_views";
+  public static final String RANK_PRODUCT_TRENDS = "rank_product_trends";
+  public static final String MERGE_PRODUCT_TRENDS = "merge_product_trends";
+
   private static final Logger LOGGER = LoggerFactory.getLogger(WebAnalyticsTopology.class);
 
   private WebAnalyticsTopology() {
   }
 
   /**
-   * The received stream from kafka is parsed then processed in parallel
+   * The received stream from kafka is parsed then written by a bolt for each table or by a
+   * single fused bolt depending on the {@code LAYOUT_CONFIG} of the profile
    *
+   * @param profile profile holding the layout and the parallelism of the components
    * @return a web analytics topology
    */
-  public static StormTopology createTopology() {
+  public static StormTopology createTopology(TopologyProfile profile) {
     LOGGER.debug("Creating a new web analytics topology");
 
     TopologyBuilder topology = new TopologyBuilder();
 
-    topology.setSpout("kafka_spout", createKafkaSpout(PRODUCT_ACCESS_TOPIC));
-    topology.setBolt("parse_product_views", new ProductViewsParseBolt()).shuffleGrouping("kafka_spout");
+    int counterFlushIntervalSecs = profile.getInt(COUNTER_FLUSH_INTERVAL_SECS_CONFIG, COUNTER_FLUSH_INTERVAL_SECS);
+    int batchLingerSecs = profile.getInt(BATCH_LINGER_SECS_CONFIG, BATCH_LINGER_SECS);
+
+    topology.setSpout(KAFKA_SPOUT, createKafkaSpout(PRODUCT_ACCESS_TOPIC, profile),
+        profile.getParallelism(KAFKA_SPOUT));
+    topology.setBolt(PARSE_PRODUCT_VIEWS, new ProductViewsParseBolt(), profile.getParallelism(PARSE_PRODUCT_VIEWS))
+        .shuffleGrouping(KAFKA_SPOUT);
+
+    if (LAYOUT_FUSED.equals(profile.getString(LAYOUT_CONFIG, LAYOUT))) {
+      setFusedWriterBolt(topology, profile, counterFlushIntervalSecs);
+    } else {
+      setWriterBolts(topology, profile, counterFlushIntervalSecs, batchLingerSecs);
+    }
+
+    if (!ACCESS_LOG_STORAGE_SINK.equals(profile.getString(ACCESS_LOG_STORAGE_CONFIG, ACCESS_LOG_STORAGE))) {
+      topology.setBolt(ARCHIVE_PRODUCT_VIEWS, new ProductViewsArchiveBolt(), profile.getParallelism(ARCHIVE_PRODUCT_VIEWS))
+          .shuffleGrouping(PARSE_PRODUCT_VIEWS)
+          .addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, batchLingerSecs);
+    }
+
+    /* The sketch of a product and day is read then written so it must be merged by a single executor */
+    if (profile.getBoolean(UNIQUE_VIEWERS_CONFIG, UNIQUE_VIEWERS)) {
+      topology.setBolt(COUNT_UNIQUE_VIEWERS, new ProductUniqueViewersBolt(), profile.getParallelism(COUNT_UNIQUE_VIEWERS))
+          .fieldsGrouping(PARSE_PRODUCT_VIEWS, new Fields(PRODUCT_ID, ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS))
+          .addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, counterFlushIntervalSecs);
+    }
+
+    /* The audience of a product and day is read then written so it must be merged by a single executor */
+    if (profile.getBoolean(AUDIENCE_CONFIG, AUDIENCE)) {
+      topology.setBolt(COUNT_PRODUCT_AUDIENCE, new ProductAudienceBolt(), profile.getParallelism(COUNT_PRODUCT_AUDIENCE))
+          .fieldsGrouping(PARSE_PRODUCT_VIEWS, new Fields(PRODUCT_ID, ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS))
+          .addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, counterFlushIntervalSecs);
+    }
+
+    /* The rollups of a product are read then written so they must be written by a single executor */
+    if (profile.getBoolean(ROLLUPS_CONFIG, ROLLUPS)) {
+      validateRollupFlushIntervals(profile);
+      topology.setBolt(COUNT_PRODUCT_VIEWS_ROLLUPS, new ProductViewsRollupBolt(),
+          profile.getParallelism(COUNT_PRODUCT_VIEWS_ROLLUPS))
+          .fieldsGrouping(PARSE_PRODUCT_VIEWS, new Fields(PRODUCT_ID));
+    }
+
+    /* The summary of a product is refreshed by a single executor so it is written once by interval */
+    if (profile.getBoolean(SUMMARY_CONFIG, SUMMARY)) {
+      topology.setBolt(SUMMARIZE_PRODUCT_VIEWS, new ProductSummaryBolt(), profile.getParallelism(SUMMARIZE_PRODUCT_VIEWS))
+          .fieldsGrouping(PARSE_PRODUCT_VIEWS, new Fields(PRODUCT_ID))
+          .addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS,
+              profile.getInt(SUMMARY_REFRESH_INTERVAL_SECS_CONFIG, SUMMARY_REFRESH_INTERVAL_SECS));
+    }
 
-    topology.setBolt("log_product_views", new ProductViewsLogBolt()).shuffleGrouping("parse_product_views");
-    topology.setBolt("count_product_views", new ProductViewsCountBolt()).shuffleGrouping("parse_product_views");
-    topology.setBolt("count_product_views_by_timestamp", new ProductViewsCountByTimestampBolt()).shuffleGrouping("parse_product_views");
-    topology.setBolt("count_product_views_by_user", new ProductViewsCountByUserBolt()).shuffleGrouping("parse_product_views");
+    /* Each executor ranks the products it receives and a single executor merges the rankings */
+    if (profile.getBoolean(TRENDS_CONFIG, TRENDS)) {
+      int trendsEmitIntervalSecs = profile.getInt(TRENDS_EMIT_INTERVAL_SECS_CONFIG, TRENDS_EMIT_INTERVAL_SECS);
+      groupByKey(topology.setBolt(RANK_PRODUCT_TRENDS, new ProductTrendsBolt(),
+          profile.getParallelism(RANK_PRODUCT_TRENDS)), profile, new Fields(PRODUCT_ID))
+          .addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, trendsEmitIntervalSecs);
+      topology.setBolt(MERGE_PRODUCT_TRENDS, new ProductTrendsMergerBolt(), 1)
+          .globalGrouping(RANK_PRODUCT_TRENDS)
+          .addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, trendsEmitIntervalSecs);
+    }
 
     return topology.createTopology();
 
   }
 
   /**
+   * The tuples are acked once written in all the resolutions so each flush interval must leave
+   * time for the write before the message timeout
+   */
+  private static void validateRollupFlushIntervals(TopologyProfile profile) {
+    int messageTimeoutSecs = profile.getInt(MESSAGE_TIMEOUT_SECS_CONFIG, MESSAGE_TIMEOUT_SECS);
+    for (RollupResolution resolution : RollupResolution.values()) {
+      int flushIntervalSecs = profile.getInt(resolution.getFlushIntervalSecsConfig(), resolution.getFlushIntervalSecs());
+      Validate.isTrue(flushIntervalSecs < messageTimeoutSecs,
+          "The flush interval of the %s rollups must be shorter than the message timeout", resolution.getName());
+    }
+  }
+
+  /**
+   * A single bolt writes the access logs and the counters, the stream is grouped by product so
+   * the counters of a product are aggregated by one or two executors
+   */
+  private static void setFusedWriterBolt(TopologyBuilder topology, TopologyProfile profile,
+                                         int counterFlushIntervalSecs) {
+    groupByKey(topology.setBolt(WRITE_PRODUCT_VIEWS, new ProductViewsWriterBolt(),
+        profile.getParallelism(WRITE_PRODUCT_VIEWS)), profile, new Fields(PRODUCT_ID))
+        .addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, counterFlushIntervalSecs);
+  }
+
+  /**
+   * A bolt writes the access logs unless they are only archived and a bolt writes each counter table
+   */
+  private static void setWriterBolts(TopologyBuilder topology, TopologyProfile profile,
+                                     int counterFlushIntervalSecs, int batchLingerSecs) {
+    if (!ACCESS_LOG_STORAGE_ARCHIVE.equals(profile.getString(ACCESS_LOG_STORAGE_CONFIG, ACCESS_LOG_STORAGE))) {
+      topology.setBolt(LOG_PRODUCT_VIEWS, new ProductViewsLogBolt(), profile.getParallelism(LOG_PRODUCT_VIEWS))
+          .shuffleGrouping(PARSE_PRODUCT_VIEWS)
+          .addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, batchLingerSecs);
+    }
+
+    int counterTickSecs = getCounterTickSecs(profile, counterFlushIntervalSecs);
+
+    /* The counters are aggregated by key so the views of a key must reach one or two executors */
+    groupByKey(topology.setBolt(COUNT_PRODUCT_VIEWS, new ProductViewsCountBolt(),
+        profile.getParallelism(COUNT_PRODUCT_VIEWS)), profile, new Fields(PRODUCT_ID))
+        .addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, counterTickSecs);
+    groupByKey(topology.setBolt(COUNT_PRODUCT_VIEWS_BY_TIMESTAMP, new ProductViewsCountByTimestampBolt(),
+        profile.getParallelism(COUNT_PRODUCT_VIEWS_BY_TIMESTAMP)), profile,
+        new Fields(PRODUCT_ID, ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS))
+        .addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, counterTickSecs);
+    /* The user is part of the key so the views of a hot product are already spread */
+    topology.setBolt(COUNT_PRODUCT_VIEWS_BY_USER, new ProductViewsCountByUserBolt(),
+        profile.getParallelism(COUNT_PRODUCT_VIEWS_BY_USER))
+        .fieldsGrouping(PARSE_PRODUCT_VIEWS, new Fields(USER_ID, PRODUCT_ID, ACCESS_TIMESTAMP_WITHOUT_HOURS_MINUTES_SECONDS))
+        .addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, counterTickSecs);
+  }
+
+  /**
+   * The counting bolts flush on each tick unless their counters are journaled, the ticks then sync
+   * the journals and ack the tuples so they must come before the message timeout
+   */
+  private static int getCounterTickSecs(TopologyProfile profile, int counterFlushIntervalSecs) {
+    if (StringUtils.isBlank(profile.getString(COUNTER_JOURNAL_DIRECTORY_CONFIG, COUNTER_JOURNAL_DIRECTORY))) {
+      return counterFlushIntervalSecs;
+    }
+
+    int syncIntervalSecs = profile.getInt(COUNTER_JOURNAL_SYNC_INTERVAL_SECS_CONFIG, COUNTER_JOURNAL_SYNC_INTERVAL_SECS);
+    Validate.isTrue(syncIntervalSecs < profile.getInt(MESSAGE_TIMEOUT_SECS_CONFIG, MESSAGE_TIMEOUT_SECS),
+        "The sync interval of the counter journals must be shorter than the message timeout");
+    return syncIntervalSecs;
+  }
+
+  /**
+   * Group the views of a key with the {@code COUNTER_GROUPING_CONFIG} of the profile
+   * <p>
+   * The fields grouping sends all the views of a key to the same executor so a hot product
+   * overloads its executor. The partial key grouping sends them to the least loaded of two
+   * executors: the counters stay exact since the executors write increments but a key may be
+   * written by both executors on each flush.
+   */
+  private static BoltDeclarer groupByKey(BoltDeclarer bolt, TopologyProfile profile, Fields key) {
+    if (COUNTER_GROUPING_PARTIAL_KEY.equals(profile.getString(COUNTER_GROUPING_CONFIG, COUNTER_GROUPING))) {
+      return bolt.partialKeyGrouping(PARSE_PRODUCT_VIEWS, key);
+    }
+    return bolt.fieldsGrouping(PARSE_PRODUCT_VIEWS, key);
+  }
+
+  /**
+   * @param profile profile holding the worker layout and the settings of the bolts
    * @return the configuration of the topology
    */
-  public static Config createTopologyConfiguration() {
+  public static Config createTopologyConfiguration(TopologyProfile profile) {
     Config config = new Config();
     config.setDebug(ENABLE_DEBUGGING);
-    config.setMaxTaskParallelism(WEB_ANALYTICS_WORKERS_COUNT);
+
+    config.setNumWorkers(profile.getInt(WORKERS_CONFIG, WEB_ANALYTICS_WORKERS_COUNT));
+    config.setNumAckers(profile.getInt(ACKERS_CONFIG, ACKERS_COUNT));
+    config.setMaxSpoutPending(profile.getInt(MAX_SPOUT_PENDING_CONFIG, MAX_SPOUT_PENDING));
+    config.setMessageTimeoutSecs(profile.getInt(MESSAGE_TIMEOUT_SECS_CONFIG, MESSAGE_TIMEOUT_SECS));
+    config.put(Config.TOPOLOGY_EXECUTOR_RECEIVE_BUFFER_SIZE,
+        profile.getInt(EXECUTOR_RECEIVE_BUFFER_SIZE_CONFIG, EXECUTOR_RECEIVE_BUFFER_SIZE));
+    config.put(Config.TOPOLOGY_EXECUTOR_SEND_BUFFER_SIZE,
+        profile.getInt(EXECUTOR_SEND_BUFFER_SIZE_CONFIG, EXECUTOR_SEND_BUFFER_SIZE));
+    config.registerSerialization(CompactId.class, CompactId.KryoSerializer.class);
+
+    config.put(SINK_CONFIG, profile.getString(SINK_CONFIG, SINK));
+    config.put(SINK_FILE_DIRECTORY_CONFIG, profile.getString(SINK_FILE_DIRECTORY_CONFIG, SINK_FILE_DIRECTORY));
+    config.put(ACCESS_LOG_STORAGE_CONFIG, profile.getString(ACCESS_LOG_STORAGE_CONFIG, ACCESS_LOG_STORAGE));
+    config.put(ARCHIVE_DIRECTORY_CONFIG, profile.getString(ARCHIVE_DIRECTORY_CONFIG, ARCHIVE_DIRECTORY));
+    config.put(ARCHIVE_SEGMENT_ROLL_SECS_CONFIG, profile.getInt(ARCHIVE_SEGMENT_ROLL_SECS_CONFIG, ARCHIVE_SEGMENT_ROLL_SECS));
+    config.put(ARCHIVE_SEGMENT_MAX_BYTES_CONFIG, profile.getInt(ARCHIVE_SEGMENT_MAX_BYTES_CONFIG, ARCHIVE_SEGMENT_MAX_BYTES));
+    config.put(ARCHIVE_BLOCK_MAX_SIZE_CONFIG, profile.getInt(ARCHIVE_BLOCK_MAX_SIZE_CONFIG, ARCHIVE_BLOCK_MAX_SIZE));
+    config.put(CASSANDRA_CONTACT_POINTS_CONFIG, profile.getString(CASSANDRA_CONTACT_POINTS_CONFIG, CASSANDRA_CLUSTER_ADDRESS));
+    config.put(CASSANDRA_LOCAL_DATACENTER_CONFIG, profile.getString(CASSANDRA_LOCAL_DATACENTER_CONFIG, ""));
+    config.put(CASSANDRA_CORE_CONNECTIONS_PER_HOST_CONFIG,
+        profile.getInt(CASSANDRA_CORE_CONNECTIONS_PER_HOST_CONFIG, CASSANDRA_CORE_CONNECTIONS_PER_HOST));
+    config.put(CASSANDRA_MAX_CONNECTIONS_PER_HOST_CONFIG,
+        profile.getInt(CASSANDRA_MAX_CONNECTIONS_PER_HOST_CONFIG, CASSANDRA_MAX_CONNECTIONS_PER_HOST));
+    config.put(CASSANDRA_MAX_REQUESTS_PER_CONNECTION_CONFIG,
+        profile.getInt(CASSANDRA_MAX_REQUESTS_PER_CONNECTION_CONFIG, CASSANDRA_MAX_REQUESTS_PER_CONNECTION));
+    config.put(CASSANDRA_SPECULATIVE_EXECUTION_DELAY_MS_CONFIG,
+        profile.getInt(CASSANDRA_SPECULATIVE_EXECUTION_DELAY_MS_CONFIG, CASSANDRA_SPECULATIVE_EXECUTION_DELAY_MS));
+    config.put(CASSANDRA_MAX_SPECULATIVE_EXECUTIONS_CONFIG,
+        profile.getInt(CASSANDRA_MAX_SPECULATIVE_EXECUTIONS_CONFIG, CASSANDRA_MAX_SPECULATIVE_EXECUTIONS));
+    config.put(CASSANDRA_METRICS_BUCKET_SECS_CONFIG,
+        profile.getInt(CASSANDRA_METRICS_BUCKET_SECS_CONFIG, CASSANDRA_METRICS_BUCKET_SECS));
+    config.put(CASSANDRA_MAX_IN_FLIGHT_REQUESTS_CONFIG,
+        profile.getInt(CASSANDRA_MAX_IN_FLIGHT_REQUESTS_CONFIG, CASSANDRA_MAX_IN_FLIGHT_REQUESTS));
+    config.put(CASSANDRA_REPLICATION_CONFIG, profile.getString(CASSANDRA_REPLICATION_CONFIG, CASSANDRA_REPLICATION));
+    config.put(CASSANDRA_ACCESS_LOG_BUCKETS_CONFIG,
+        profile.getInt(CASSANDRA_ACCESS_LOG_BUCKETS_CONFIG, CASSANDRA_ACCESS_LOG_BUCKETS));
+    config.put(ID_DICTIONARY_CAPACITY_CONFIG, profile.getInt(ID_DICTIONARY_CAPACITY_CONFIG, ID_DICTIONARY_CAPACITY));
+    config.put(ID_DICTIONARY_METRICS_BUCKET_SECS_CONFIG,
+        profile.getInt(ID_DICTIONARY_METRICS_BUCKET_SECS_CONFIG, ID_DICTIONARY_METRICS_BUCKET_SECS));
+    config.put(COUNTER_FLUSH_INTERVAL_SECS_CONFIG,
+        profile.getInt(COUNTER_FLUSH_INTERVAL_SECS_CONFIG, COUNTER_FLUSH_INTERVAL_SECS));
+    config.put(COUNTER_MAX_PENDING_TUPLES_CONFIG,
+        profile.getInt(COUNTER_MAX_PENDING_TUPLES_CONFIG, COUNTER_MAX_PENDING_TUPLES));
+    config.put(COUNTER_TOTAL_SHARDS_CONFIG, profile.getInt(COUNTER_TOTAL_SHARDS_CONFIG, COUNTER_TOTAL_SHARDS));
+    config.put(COUNTER_HOT_KEY_THRESHOLD_CONFIG, profile.getInt(COUNTER_HOT_KEY_THRESHOLD_CONFIG, COUNTER_HOT_KEY_THRESHOLD));
+    config.put(COUNTER_HOT_KEY_COOLDOWN_SECS_CONFIG,
+        profile.getInt(COUNTER_HOT_KEY_COOLDOWN_SECS_CONFIG, COUNTER_HOT_KEY_COOLDOWN_SECS));
+    config.put(UNIQUE_VIEWERS_PRECISION_CONFIG, profile.getInt(UNIQUE_VIEWERS_PRECISION_CONFIG, UNIQUE_VIEWERS_PRECISION));
+    config.put(AUDIENCE_USER_CACHE_CAPACITY_CONFIG,
+        profile.getInt(AUDIENCE_USER_CACHE_CAPACITY_CONFIG, AUDIENCE_USER_CACHE_CAPACITY));
+    config.put(AUDIENCE_USER_ID_BLOCK_SIZE_CONFIG,
+        profile.getInt(AUDIENCE_USER_ID_BLOCK_SIZE_CONFIG, AUDIENCE_USER_ID_BLOCK_SIZE));
+    for (RollupResolution resolution : RollupResolution.values()) {
+      config.put(resolution.getFlushIntervalSecsConfig(),
+          profile.getInt(resolution.getFlushIntervalSecsConfig(), resolution.getFlushIntervalSecs()));
+      config.put(resolution.getTtlSecsConfig(), profile.getInt(resolution.getTtlSecsConfig(), resolution.getTtlSecs()));
+    }
+    config.put(COUNTER_GROUPING_CONFIG, profile.getString(COUNTER_GROUPING_CONFIG, COUNTER_GROUPING));
+    config.put(TRENDS_TOP_K_CONFIG, profile.getInt(TRENDS_TOP_K_CONFIG, TRENDS_TOP_K));
+    config.put(TRENDS_CANDIDATES_CONFIG, profile.getInt(TRENDS_CANDIDATES_CONFIG, TRENDS_CANDIDATES));
+    config.put(TRENDS_SKETCH_DEPTH_CONFIG, profile.getInt(TRENDS_SKETCH_DEPTH_CONFIG, TRENDS_SKETCH_DEPTH));
+    config.put(TRENDS_SKETCH_WIDTH_CONFIG, profile.getInt(TRENDS_SKETCH_WIDTH_CONFIG, TRENDS_SKETCH_WIDTH));
+    config.put(TRENDS_EMIT_INTERVAL_SECS_CONFIG,
+        profile.getInt(TRENDS_EMIT_INTERVAL_SECS_CONFIG, TRENDS_EMIT_INTERVAL_SECS));
+    config.put(COUNTER_JOURNAL_DIRECTORY_CONFIG, profile.getString(COUNTER_JOURNAL_DIRECTORY_CONFIG, COUNTER_JOURNAL_DIRECTORY));
+    config.put(COUNTER_JOURNAL_SEGMENT_BYTES_CONFIG,
+        profile.getInt(COUNTER_JOURNAL_SEGMENT_BYTES_CONFIG, COUNTER_JOURNAL_SEGMENT_BYTES));
+    config.put(COUNTER_JOURNAL_METRICS_BUCKET_SECS_CONFIG,
+        profile.getInt(COUNTER_JOURNAL_METRICS_BUCKET_SECS_CONFIG, COUNTER_JOURNAL_METRICS_BUCKET_SECS));
+    config.put(BATCH_MAX_SIZE_CONFIG, profile.getInt(BATCH_MAX_SIZE_CONFIG, BATCH_MAX_SIZE));
+
     return config;
   }
 
-
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.archive;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.sink.ProductAccessLog;
+
+import static com.github.joumenharzli.archive.AccessLogSegments.SEGMENT_EXTENSION;
+
+/**
+ * Reader of the access logs of the complete segments of an archive directory
+ * <p>
+ * The segments out of the requested time range are skipped using their footer, the others are
+ * read one after the other by order of their oldest access log. The access logs are streamed in
+ * the order they were written within each segment, they are not sorted across segments.
+ *
+ * @author Joumen Harzli
+ */
+public class AccessLogArchiveReader {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AccessLogArchiveReader.class);
+
+  private final Path directory;
+
+  /**
+   * @param directory directory of the segments
+   */
+  public AccessLogArchiveReader(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Stream the access logs of a time range
+   *
+   * @param fromTimestamp start of the range in milliseconds since the epoch, inclusive
+   * @param toTimestamp   end of the range in milliseconds since the epoch, exclusive
+   * @param consumer      consumer of the access logs of the range
+   * @return the number of segments read
+   * @throws IOException if a segment cannot be read
+   */
+  public int read(long fromTimestamp, long toTimestamp, Consumer<ProductAccessLog> consumer) throws IOException {
+    List<AccessLogSegmentReader> segments = new ArrayList<>();
+
+    try {
+      try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*" + SEGMENT_EXTENSION)) {
+        for (Path path : paths) {
+          AccessLogSegmentReader segment = new AccessLogSegmentReader(path);
+          if (segment.overlaps(fromTimestamp, toTimestamp)) {
+            segments.add(segment);
+          } else {
+            segment.close();
+          }
+        }
+      }
+
+      segments.sort(Comparator.comparingLong(AccessLogSegmentReader::getMinTimestamp));
+      LOGGER.debug("Reading the access logs from {} to {} in {} segments", fromTimestamp, toTimestamp, segments.size());
+
+      for (AccessLogSegmentReader segment : segments) {
+        segment.read(fromTimestamp, toTimestamp, consumer);
+      }
+      return segments.size();
+
+    } finally {
+      for (AccessLogSegmentReader segment : segments) {
+        segment.close();
+      }
+    }
+  }
+
+  /**
+   * @param fromTimestamp start of the range in milliseconds since the epoch, inclusive
+   * @param toTimestamp   end of the range in milliseconds since the epoch, exclusive
+   * @return true if all the access logs of the archive are in the range, only the footers of the
+   * segments are read
+   * @throws IOException if a segment cannot be read
+   */
+  public boolean isCoveredBy(long fromTimestamp, long toTimestamp) throws IOException {
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*" + SEGMENT_EXTENSION)) {
+      for (Path path : paths) {
+        try (AccessLogSegmentReader segment = new AccessLogSegmentReader(path)) {
+          if (segment.getCount() > 0
+              && (segment.getMinTimestamp() < fromTimestamp || segment.getMaxTimestamp() >= toTimestamp)) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.sink.ProductAccessLog;
+
+import static com.github.joumenharzli.archive.AccessLogSegments.OPEN_SEGMENT_EXTENSION;
+
+/**
+ * Writer of the access logs to rolling segments of the archive
+ * <p>
+ * The segments of a writer are named after the writer, its creation time and a sequence number.
+ * A segment is rolled when its size exceeds the maximum size or when it is older than the roll
+ * interval, the segments left open by a previous writer of the same name are completed when the
+ * writer is created. A segment whose failed block cannot be removed is rolled with its complete
+ * blocks and the next append starts a new segment. Each writer must have a unique name in the
+ * directory.
+ *
+ * @author Joumen Harzli
+ */
+public class AccessLogArchiveWriter implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AccessLogArchiveWriter.class);
+
+  private final Path directory;
+  private final String name;
+  private final long rollIntervalMillis;
+  private final long maxSegmentBytes;
+  private AccessLogSegmentWriter segment;
+  private int sequence;
+
+  /**
+   * @param directory          directory of the segments
+   * @param name               name of the writer, unique in the directory
+   * @param rollIntervalMillis maximum age of a segment in milliseconds
+   * @param maxSegmentBytes    maximum size of a segment in bytes
+   * @throws IOException if the directory cannot be created or an open segment cannot be completed
+   */
+  public AccessLogArchiveWriter(Path directory, String name, long rollIntervalMillis, long maxSegmentBytes)
+      throws IOException {
+    Validate.notBlank(name, "The name of the archive writer cannot be null/blank");
+    Validate.isTrue(rollIntervalMillis > 0, "The roll interval must be positive");
+    Validate.isTrue(maxSegmentBytes > 0, "The maximum size of a segment must be positive");
+
+    this.directory = directory;
+    this.name = name;
+    this.rollIntervalMillis = rollIntervalMillis;
+    this.maxSegmentBytes = maxSegmentBytes;
+
+    Files.createDirectories(directory);
+    try (DirectoryStream<Path> openSegments = Files.newDirectoryStream(directory, name + "-*" + OPEN_SEGMENT_EXTENSION)) {
+      for (Path openSegment : openSegments) {
+        AccessLogSegmentWriter.recover(openSegment);
+      }
+    }
+  }
+
+  /**
+   * Append the access logs as a block of the current segment, the segment is rolled once it
+   * exceeds the maximum size
+   *
+   * @param accessLogs access logs to archive
+   * @throws IOException if the access logs cannot be written
+   */
+  public void append(List<ProductAccessLog> accessLogs) throws IOException {
+    if (segment == null) {
+      long now = System.currentTimeMillis();
+      Path openPath = directory.resolve(String.format("%s-%d-%d%s", name, now, sequence++, OPEN_SEGMENT_EXTENSION));
+      LOGGER.debug("Creating the segment {}", openPath);
+      segment = AccessLogSegmentWriter.create(openPath, now);
+    }
+
+    try {
+      segment.append(accessLogs);
+    } catch (IOException e) {
+      if (segment.isFailed()) {
+        LOGGER.warn("Rolling the failed segment of {}", name);
+        rollQuietly();
+      }
+      throw e;
+    }
+
+    if (segment.getSize() >= maxSegmentBytes) {
+      roll();
+    }
+  }
+
+  /**
+   * Roll the current segment if it is older than the roll interval
+   *
+   * @throws IOException if the segment cannot be completed
+   */
+  public void rollIfExpired() throws IOException {
+    if (segment != null && System.currentTimeMillis() - segment.getCreatedAt() >= rollIntervalMillis) {
+      roll();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    roll();
+  }
+
+  private void rollQuietly() {
+    try {
+      roll();
+    } catch (IOException e) {
+      LOGGER.error("Unable to complete the failed segment of {}, it is completed by the next writer of the same name",
+          name, e);
+    }
+  }
+
+  private void roll() throws IOException {
+    if (segment == null) {
+      return;
+    }
+
+    LOGGER.debug("Rolling the segment of {} holding {} bytes", name, segment.getSize());
+    try {
+      segment.close();
+    } finally {
+      segment = null;
+    }
+  }
+
+}
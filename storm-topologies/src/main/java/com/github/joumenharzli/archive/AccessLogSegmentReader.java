@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.Inflater;
+
+import com.github.joumenharzli.sink.ProductAccessLog;
+
+import static com.github.joumenharzli.archive.AccessLogSegments.*;
+
+/**
+ * Reader of a complete segment of the access logs archive
+ * <p>
+ * The time range of the segment and of its blocks is read from the footer when the segment is
+ * opened, the blocks are then read sequentially one at a time.
+ *
+ * @author Joumen Harzli
+ */
+public class AccessLogSegmentReader implements Closeable {
+
+  private final Path path;
+  private final FileChannel channel;
+  private final List<BlockIndex> blocks;
+  private final long minTimestamp;
+  private final long maxTimestamp;
+  private final long count;
+
+  /**
+   * @param path path of a complete segment
+   * @throws IOException if the segment cannot be read or is not complete
+   */
+  public AccessLogSegmentReader(Path path) throws IOException {
+    this.path = path;
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+    try {
+      readHeader(channel);
+      this.blocks = readFooter(channel);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+
+    this.minTimestamp = blocks.stream().mapToLong(BlockIndex::getMinTimestamp).min().orElse(Long.MAX_VALUE);
+    this.maxTimestamp = blocks.stream().mapToLong(BlockIndex::getMaxTimestamp).max().orElse(Long.MIN_VALUE);
+    this.count = blocks.stream().mapToLong(BlockIndex::getCount).sum();
+  }
+
+  /**
+   * Stream the access logs of a time range in the order they were written
+   * <p>
+   * The blocks out of the range are not decoded, only their new ids are read
+   *
+   * @param fromTimestamp start of the range in milliseconds since the epoch, inclusive
+   * @param toTimestamp   end of the range in milliseconds since the epoch, exclusive
+   * @param consumer      consumer of the access logs of the range
+   * @throws IOException if a block cannot be read
+   */
+  public void read(long fromTimestamp, long toTimestamp, Consumer<ProductAccessLog> consumer) throws IOException {
+    if (!overlaps(fromTimestamp, toTimestamp)) {
+      return;
+    }
+
+    List<String> users = new ArrayList<>();
+    List<String> products = new ArrayList<>();
+    Inflater inflater = new Inflater();
+
+    try {
+      for (BlockIndex block : blocks) {
+        RawBlock rawBlock = readBlock(channel, block.getOffset(), inflater);
+
+        if (block.getMaxTimestamp() < fromTimestamp || block.getMinTimestamp() >= toTimestamp) {
+          skipBlock(rawBlock.getContent(), users, products);
+          continue;
+        }
+
+        decodeBlock(rawBlock.getContent(), users, products, accessLog -> {
+          if (accessLog.getAccessTimestamp() >= fromTimestamp && accessLog.getAccessTimestamp() < toTimestamp) {
+            consumer.accept(accessLog);
+          }
+        });
+      }
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * @param fromTimestamp start of the range in milliseconds since the epoch, inclusive
+   * @param toTimestamp   end of the range in milliseconds since the epoch, exclusive
+   * @return true if the segment may hold access logs of the range
+   */
+  public boolean overlaps(long fromTimestamp, long toTimestamp) {
+    return count > 0 && maxTimestamp >= fromTimestamp && minTimestamp < toTimestamp;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public long getMinTimestamp() {
+    return minTimestamp;
+  }
+
+  public long getMaxTimestamp() {
+    return maxTimestamp;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.sink.ProductAccessLog;
+
+import static com.github.joumenharzli.archive.AccessLogSegments.*;
+
+/**
+ * Writer of a segment of the access logs archive
+ * <p>
+ * The segment is written to a file with the {@code .seg.open} extension, each appended batch is
+ * a block forced to the storage before the append returns. Closing the segment writes its footer
+ * then renames it with the {@code .seg} extension, a segment left open by a crash is completed by
+ * {@link #recover(Path)}.
+ * <p>
+ * A block that cannot be written is removed from the file and its entries from the dictionaries,
+ * so the next blocks are written after the last complete block. If the block cannot be removed
+ * all the next appends fail and the segment is completed by {@link #recover(Path)} when closed.
+ *
+ * @author Joumen Harzli
+ */
+final class AccessLogSegmentWriter implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AccessLogSegmentWriter.class);
+
+  private final Path openPath;
+  private final FileChannel channel;
+  private final long createdAt;
+  private final Dictionary users = new Dictionary();
+  private final Dictionary products = new Dictionary();
+  private final List<BlockIndex> blocks = new ArrayList<>();
+  private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+  private long size;
+  private IOException failure;
+
+  private AccessLogSegmentWriter(Path openPath, FileChannel channel, long createdAt) {
+    this.openPath = openPath;
+    this.channel = channel;
+    this.createdAt = createdAt;
+  }
+
+  /**
+   * Create a new segment
+   *
+   * @param openPath  path of the segment while it is written, ends with {@code .seg.open}
+   * @param createdAt creation time of the segment in milliseconds since the epoch
+   * @return the writer of the segment
+   * @throws IOException if the segment cannot be created
+   */
+  static AccessLogSegmentWriter create(Path openPath, long createdAt) throws IOException {
+    return create(openPath, createdAt, FileChannel.open(openPath, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.WRITE));
+  }
+
+  /**
+   * @param channel channel of the new segment, opened for writing
+   */
+  static AccessLogSegmentWriter create(Path openPath, long createdAt, FileChannel channel) throws IOException {
+    AccessLogSegmentWriter writer = new AccessLogSegmentWriter(openPath, channel, createdAt);
+    writeFully(channel, writeHeader());
+    writer.size = HEADER_SIZE;
+    return writer;
+  }
+
+  /**
+   * Append the access logs as a new block
+   *
+   * @param accessLogs access logs of the block
+   * @throws IOException if the block cannot be written
+   */
+  void append(List<ProductAccessLog> accessLogs) throws IOException {
+    if (failure != null) {
+      throw new IOException(String.format("The segment %s failed on a previous append", openPath), failure);
+    }
+    if (accessLogs.isEmpty()) {
+      return;
+    }
+
+    long minTimestamp = Long.MAX_VALUE;
+    long maxTimestamp = Long.MIN_VALUE;
+    for (ProductAccessLog accessLog : accessLogs) {
+      minTimestamp = Math.min(minTimestamp, accessLog.getAccessTimestamp());
+      maxTimestamp = Math.max(maxTimestamp, accessLog.getAccessTimestamp());
+    }
+
+    int usersCount = users.size();
+    int productsCount = products.size();
+    ByteBuffer block = writeBlock(encodeBlock(accessLogs, users, products), deflater);
+    int blockSize = block.remaining();
+    try {
+      writeFully(channel, block);
+      channel.force(false);
+    } catch (IOException e) {
+      users.truncate(usersCount);
+      products.truncate(productsCount);
+      removeIncompleteBlock();
+      throw e;
+    }
+
+    blocks.add(new BlockIndex(size, accessLogs.size(), minTimestamp, maxTimestamp));
+    size += blockSize;
+  }
+
+  /**
+   * Truncate the segment after its last complete block, the next appends fail if it cannot be
+   * truncated
+   */
+  private void removeIncompleteBlock() {
+    try {
+      channel.truncate(size);
+      channel.position(size);
+    } catch (IOException e) {
+      LOGGER.error("Unable to remove an incomplete block of the segment {}, the next appends will fail", openPath, e);
+      failure = e;
+    }
+  }
+
+  /**
+   * @return the size of the segment in bytes
+   */
+  long getSize() {
+    return size;
+  }
+
+  /**
+   * @return the creation time of the segment in milliseconds since the epoch
+   */
+  long getCreatedAt() {
+    return createdAt;
+  }
+
+  /**
+   * @return true if an incomplete block could not be removed, the segment must be closed
+   */
+  boolean isFailed() {
+    return failure != null;
+  }
+
+  /**
+   * Write the footer and rename the segment, an empty segment is deleted
+   */
+  @Override
+  public void close() throws IOException {
+    deflater.end();
+    if (failure != null) {
+      channel.close();
+      recover(openPath);
+      return;
+    }
+    try {
+      if (!blocks.isEmpty()) {
+        writeFully(channel, writeFooter(blocks, size));
+        channel.force(false);
+      }
+    } finally {
+      channel.close();
+    }
+    complete(openPath, !blocks.isEmpty());
+  }
+
+  /**
+   * Complete a segment left open by a crash, the blocks after the last valid one are truncated
+   *
+   * @param openPath path of the open segment
+   * @throws IOException if the segment cannot be read or completed
+   */
+  static void recover(Path openPath) throws IOException {
+    List<BlockIndex> blocks = new ArrayList<>();
+    long offset = HEADER_SIZE;
+
+    try (FileChannel channel = FileChannel.open(openPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      readHeader(channel);
+
+      Inflater inflater = new Inflater();
+      List<String> users = new ArrayList<>();
+      List<String> products = new ArrayList<>();
+      try {
+        while (offset < channel.size()) {
+          RawBlock block = readBlock(channel, offset, inflater);
+          long[] stats = {0, Long.MAX_VALUE, Long.MIN_VALUE};
+          decodeBlock(block.getContent(), users, products, accessLog -> {
+            stats[0]++;
+            stats[1] = Math.min(stats[1], accessLog.getAccessTimestamp());
+            stats[2] = Math.max(stats[2], accessLog.getAccessTimestamp());
+          });
+          blocks.add(new BlockIndex(offset, (int) stats[0], stats[1], stats[2]));
+          offset += block.getSize();
+        }
+      } catch (IOException | RuntimeException e) {
+        LOGGER.warn("Truncating the segment {} after its last valid block at the offset {}", openPath, offset, e);
+      } finally {
+        inflater.end();
+      }
+
+      channel.truncate(offset);
+      if (!blocks.isEmpty()) {
+        channel.position(offset);
+        writeFully(channel, writeFooter(blocks, offset));
+        channel.force(false);
+      }
+    }
+
+    LOGGER.info("Recovered {} blocks of the segment {}", blocks.size(), openPath);
+    complete(openPath, !blocks.isEmpty());
+  }
+
+  private static void complete(Path openPath, boolean hasBlocks) throws IOException {
+    if (!hasBlocks) {
+      Files.delete(openPath);
+      return;
+    }
+
+    String fileName = openPath.getFileName().toString();
+    Path path = openPath.resolveSibling(StringUtils.removeEnd(fileName, OPEN_SEGMENT_EXTENSION) + SEGMENT_EXTENSION);
+    Files.move(openPath, path, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+}
@@ -0,0 +1,462 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.github.joumenharzli.sink.ProductAccessLog;
+
+/**
+ * Format of the segment files of the access logs archive
+ * <p>
+ * A segment starts with a header made of a magic number and the version of the format, followed
+ * by blocks then by a footer. Each block holds the columns of a batch of access logs compressed
+ * with deflate: the user ids and the product ids are indexes in dictionaries of the segment whose
+ * new entries are stored by the block introducing them, the timestamps are delta-encoded. The
+ * numbers are stored as variable length integers, the signed ones in zigzag encoding.
+ * <p>
+ * The footer indexes the offset, the number of access logs and the time range of each block and
+ * the segment ends with the offset of the footer and the magic number.
+ *
+ * @author Joumen Harzli
+ */
+final class AccessLogSegments {
+
+  static final String SEGMENT_EXTENSION = ".seg";
+  static final String OPEN_SEGMENT_EXTENSION = ".seg.open";
+
+  static final int MAGIC = 0x57414C53;
+  static final byte VERSION = 1;
+  static final int HEADER_SIZE = Integer.BYTES + 1;
+
+  static final byte BLOCK_MARKER = 'B';
+  /* marker, uncompressed size, compressed size and checksum of the compressed bytes */
+  static final int BLOCK_HEADER_SIZE = 1 + 3 * Integer.BYTES;
+
+  static final byte FOOTER_MARKER = 'F';
+  static final int BLOCK_INDEX_ENTRY_SIZE = 3 * Long.BYTES + Integer.BYTES;
+  static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+  private AccessLogSegments() {
+  }
+
+  /**
+   * Encode the columns of a block, the new ids are added to the dictionaries
+   *
+   * @param accessLogs  access logs of the block
+   * @param users       dictionary of the user ids of the segment
+   * @param products    dictionary of the product ids of the segment
+   * @return the uncompressed content of the block
+   */
+  static byte[] encodeBlock(List<ProductAccessLog> accessLogs, Dictionary users, Dictionary products) {
+    int usersCount = users.size();
+    int productsCount = products.size();
+
+    int[] userIndexes = new int[accessLogs.size()];
+    int[] productIndexes = new int[accessLogs.size()];
+    for (int i = 0; i < accessLogs.size(); i++) {
+      userIndexes[i] = users.indexOf(accessLogs.get(i).getUserId());
+      productIndexes[i] = products.indexOf(accessLogs.get(i).getProductId());
+    }
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream(accessLogs.size() * 8);
+    writeVarLong(output, accessLogs.size());
+    writeNewEntries(output, users, usersCount);
+    writeNewEntries(output, products, productsCount);
+
+    for (int userIndex : userIndexes) {
+      writeVarLong(output, userIndex);
+    }
+    for (int productIndex : productIndexes) {
+      writeVarLong(output, productIndex);
+    }
+
+    long previousTimestamp = 0;
+    for (ProductAccessLog accessLog : accessLogs) {
+      writeVarLong(output, zigzag(accessLog.getAccessTimestamp() - previousTimestamp));
+      previousTimestamp = accessLog.getAccessTimestamp();
+    }
+
+    return output.toByteArray();
+  }
+
+  /**
+   * Decode the columns of a block, the new ids are added to the dictionaries
+   *
+   * @param block     uncompressed content of the block
+   * @param users     user ids of the segment read from the previous blocks
+   * @param products  product ids of the segment read from the previous blocks
+   * @param consumer  consumer of the access logs of the block
+   */
+  static void decodeBlock(ByteBuffer block, List<String> users, List<String> products,
+                          Consumer<ProductAccessLog> consumer) {
+    int count = (int) readVarLong(block);
+    readNewEntries(block, users);
+    readNewEntries(block, products);
+
+    int[] userIndexes = new int[count];
+    for (int i = 0; i < count; i++) {
+      userIndexes[i] = (int) readVarLong(block);
+    }
+    int[] productIndexes = new int[count];
+    for (int i = 0; i < count; i++) {
+      productIndexes[i] = (int) readVarLong(block);
+    }
+
+    long timestamp = 0;
+    for (int i = 0; i < count; i++) {
+      timestamp += unzigzag(readVarLong(block));
+      consumer.accept(new ProductAccessLog(users.get(userIndexes[i]), products.get(productIndexes[i]), timestamp));
+    }
+  }
+
+  /**
+   * Read the new entries of the dictionaries of a block without decoding its columns
+   *
+   * @param block    uncompressed content of the block
+   * @param users    user ids of the segment read from the previous blocks
+   * @param products product ids of the segment read from the previous blocks
+   */
+  static void skipBlock(ByteBuffer block, List<String> users, List<String> products) {
+    readVarLong(block);
+    readNewEntries(block, users);
+    readNewEntries(block, products);
+  }
+
+  /**
+   * Compress a block and prefix it with its header
+   *
+   * @param block    uncompressed content of the block
+   * @param deflater deflater reused by the writer
+   * @return the block as written in the segment
+   */
+  static ByteBuffer writeBlock(byte[] block, Deflater deflater) {
+    byte[] compressed = compress(block, deflater);
+    CRC32 checksum = new CRC32();
+    checksum.update(compressed);
+
+    ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER_SIZE + compressed.length);
+    buffer.put(BLOCK_MARKER).putInt(block.length).putInt(compressed.length).putInt((int) checksum.getValue());
+    buffer.put(compressed);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Read and decompress the block at an offset of a segment
+   *
+   * @param channel  channel of the segment
+   * @param offset   offset of the block
+   * @param inflater inflater reused by the reader
+   * @return the uncompressed content of the block
+   * @throws IOException if the block is truncated or corrupted
+   */
+  static RawBlock readBlock(FileChannel channel, long offset, Inflater inflater) throws IOException {
+    ByteBuffer header = readFully(channel, offset, BLOCK_HEADER_SIZE);
+    if (header.get() != BLOCK_MARKER) {
+      throw new IOException("No block at the offset " + offset);
+    }
+    int uncompressedSize = header.getInt();
+    int compressedSize = header.getInt();
+    int expectedChecksum = header.getInt();
+    if (uncompressedSize < 0 || compressedSize < 0 || offset + BLOCK_HEADER_SIZE + compressedSize > channel.size()) {
+      throw new EOFException("The block at the offset " + offset + " is truncated");
+    }
+
+    byte[] compressed = readFully(channel, offset + BLOCK_HEADER_SIZE, compressedSize).array();
+    CRC32 checksum = new CRC32();
+    checksum.update(compressed);
+    if ((int) checksum.getValue() != expectedChecksum) {
+      throw new IOException("The block at the offset " + offset + " is corrupted");
+    }
+
+    try {
+      return new RawBlock(decompress(compressed, uncompressedSize, inflater), BLOCK_HEADER_SIZE + compressedSize);
+    } catch (DataFormatException e) {
+      throw new IOException("The block at the offset " + offset + " cannot be decompressed", e);
+    }
+  }
+
+  /**
+   * @param blocks       index of the blocks
+   * @param footerOffset offset of the footer in the segment
+   * @return the footer and the trailer of the segment
+   */
+  static ByteBuffer writeFooter(List<BlockIndex> blocks, long footerOffset) {
+    ByteBuffer buffer = ByteBuffer.allocate(1 + Integer.BYTES + blocks.size() * BLOCK_INDEX_ENTRY_SIZE + TRAILER_SIZE);
+    buffer.put(FOOTER_MARKER).putInt(blocks.size());
+    for (BlockIndex block : blocks) {
+      buffer.putLong(block.getOffset()).putInt(block.getCount())
+          .putLong(block.getMinTimestamp()).putLong(block.getMaxTimestamp());
+    }
+    buffer.putLong(footerOffset).putInt(MAGIC);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * @param channel channel of a complete segment
+   * @return the index of the blocks of the segment
+   * @throws IOException if the segment has no valid footer
+   */
+  static List<BlockIndex> readFooter(FileChannel channel) throws IOException {
+    long size = channel.size();
+    if (size < HEADER_SIZE + TRAILER_SIZE) {
+      throw new IOException("The segment is too small to be complete");
+    }
+
+    ByteBuffer trailer = readFully(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+    long footerOffset = trailer.getLong();
+    if (trailer.getInt() != MAGIC || footerOffset < HEADER_SIZE || footerOffset > size - TRAILER_SIZE) {
+      throw new IOException("The segment has no valid footer");
+    }
+
+    ByteBuffer footer = readFully(channel, footerOffset, (int) (size - TRAILER_SIZE - footerOffset));
+    if (footer.get() != FOOTER_MARKER) {
+      throw new IOException("The segment has no valid footer");
+    }
+
+    int count = footer.getInt();
+    List<BlockIndex> blocks = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      blocks.add(new BlockIndex(footer.getLong(), footer.getInt(), footer.getLong(), footer.getLong()));
+    }
+    return blocks;
+  }
+
+  /**
+   * @param channel channel of a segment
+   * @throws IOException if the segment does not start with a valid header
+   */
+  static void readHeader(FileChannel channel) throws IOException {
+    ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+    if (header.getInt() != MAGIC) {
+      throw new IOException("The file is not a segment of the access logs archive");
+    }
+    byte version = header.get();
+    if (version != VERSION) {
+      throw new IOException(String.format("Unsupported segment format version %d", version));
+    }
+  }
+
+  static ByteBuffer writeHeader() {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+    buffer.putInt(MAGIC).put(VERSION);
+    buffer.flip();
+    return buffer;
+  }
+
+  static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static ByteBuffer readFully(FileChannel channel, long offset, int size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of the segment at the offset " + (offset + buffer.position()));
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static byte[] compress(byte[] bytes, Deflater deflater) {
+    deflater.reset();
+    deflater.setInput(bytes);
+    deflater.finish();
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 2 + 64);
+    byte[] buffer = new byte[8192];
+    while (!deflater.finished()) {
+      output.write(buffer, 0, deflater.deflate(buffer));
+    }
+    return output.toByteArray();
+  }
+
+  private static byte[] decompress(byte[] bytes, int uncompressedSize, Inflater inflater) throws DataFormatException {
+    inflater.reset();
+    inflater.setInput(bytes);
+
+    byte[] output = new byte[uncompressedSize];
+    int size = 0;
+    while (size < uncompressedSize && !inflater.finished()) {
+      int inflated = inflater.inflate(output, size, uncompressedSize - size);
+      if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+        throw new DataFormatException("The block is truncated");
+      }
+      size += inflated;
+    }
+    return output;
+  }
+
+  private static void writeNewEntries(ByteArrayOutputStream output, Dictionary dictionary, int from) {
+    writeVarLong(output, dictionary.size() - from);
+    for (int i = from; i < dictionary.size(); i++) {
+      byte[] bytes = dictionary.get(i).getBytes(StandardCharsets.UTF_8);
+      writeVarLong(output, bytes.length);
+      output.write(bytes, 0, bytes.length);
+    }
+  }
+
+  private static void readNewEntries(ByteBuffer block, List<String> dictionary) {
+    long count = readVarLong(block);
+    for (long i = 0; i < count; i++) {
+      int length = (int) readVarLong(block);
+      dictionary.add(new String(block.array(), block.arrayOffset() + block.position(), length, StandardCharsets.UTF_8));
+      block.position(block.position() + length);
+    }
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream output, long value) {
+    while ((value & ~0x7FL) != 0) {
+      output.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    output.write((int) value);
+  }
+
+  private static long readVarLong(ByteBuffer input) {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte current = input.get();
+      value |= (long) (current & 0x7F) << shift;
+      if (current >= 0) {
+        return value;
+      }
+    }
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Ids of a segment by order of appearance
+   */
+  static final class Dictionary {
+
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    int indexOf(String value) {
+      return indexes.computeIfAbsent(value, key -> {
+        values.add(key);
+        return values.size() - 1;
+      });
+    }
+
+    String get(int index) {
+      return values.get(index);
+    }
+
+    int size() {
+      return values.size();
+    }
+
+    /**
+     * Remove the entries added after the dictionary had the specified size
+     */
+    void truncate(int size) {
+      while (values.size() > size) {
+        indexes.remove(values.remove(values.size() - 1));
+      }
+    }
+
+  }
+
+  /**
+   * Uncompressed block read from a segment
+   */
+  static final class RawBlock {
+
+    private final byte[] content;
+    private final int size;
+
+    private RawBlock(byte[] content, int size) {
+      this.content = content;
+      this.size = size;
+    }
+
+    ByteBuffer getContent() {
+      return ByteBuffer.wrap(content);
+    }
+
+    /**
+     * @return the size of the block in the segment
+     */
+    int getSize() {
+      return size;
+    }
+
+  }
+
+  /**
+   * Entry of the footer indexing a block
+   */
+  static final class BlockIndex {
+
+    private final long offset;
+    private final int count;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+
+    BlockIndex(long offset, int count, long minTimestamp, long maxTimestamp) {
+      this.offset = offset;
+      this.count = count;
+      this.minTimestamp = minTimestamp;
+      this.maxTimestamp = maxTimestamp;
+    }
+
+    long getOffset() {
+      return offset;
+    }
+
+    int getCount() {
+      return count;
+    }
+
+    long getMinTimestamp() {
+      return minTimestamp;
+    }
+
+    long getMaxTimestamp() {
+      return maxTimestamp;
+    }
+
+  }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.backfill;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.joumenharzli.sink.ProductAccessLog;
+import com.github.joumenharzli.utils.LongLongHashMap;
+
+import static com.github.joumenharzli.utils.TimestampUtils.MILLIS_PER_DAY;
+
+/**
+ * Counters of the product views aggregated in memory
+ * <p>
+ * The user ids and the product ids are replaced by their index in dictionaries so the counters
+ * are primitive maps whose keys pack the indexes and the number of the day: the product for the
+ * total, the product and the day for the views by day and the pair of the user and the product
+ * and the day for the views by user.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductViewsCounts {
+
+  private static final int EXPECTED_PRODUCTS = 1 << 12;
+  private static final int EXPECTED_PAIRS = 1 << 16;
+
+  private final Dictionary users = new Dictionary();
+  private final Dictionary products = new Dictionary();
+  private final LongLongHashMap pairs = new LongLongHashMap(EXPECTED_PAIRS);
+  private int[] pairUsers = new int[EXPECTED_PAIRS];
+  private int[] pairProducts = new int[EXPECTED_PAIRS];
+
+  private final LongLongHashMap total = new LongLongHashMap(EXPECTED_PRODUCTS);
+  private final LongLongHashMap byDay = new LongLongHashMap(EXPECTED_PRODUCTS);
+  private final LongLongHashMap byUser = new LongLongHashMap(EXPECTED_PAIRS);
+  private long count;
+
+  /**
+   * Count a view in every counter
+   *
+   * @param accessLog the access log of the view
+   */
+  public void add(ProductAccessLog accessLog) {
+    int user = users.indexOf(accessLog.getUserId());
+    int product = products.indexOf(accessLog.getProductId());
+    long day = Math.floorDiv(accessLog.getAccessTimestamp(), MILLIS_PER_DAY);
+
+    total.addTo(product, 1);
+    byDay.addTo(pack(product, day), 1);
+    byUser.addTo(pack(pairOf(user, product), day), 1);
+    count++;
+  }
+
+  /**
+   * @param consumer consumer of the total of the views by product
+   */
+  public void forEachTotal(TotalConsumer consumer) {
+    total.forEach((product, views) -> consumer.accept(products.get((int) product), views));
+  }
+
+  /**
+   * @param consumer consumer of the views by product and day
+   */
+  public void forEachByDay(DayConsumer consumer) {
+    byDay.forEach((key, views) ->
+        consumer.accept(products.get(high(key)), low(key) * MILLIS_PER_DAY, views));
+  }
+
+  /**
+   * @param consumer consumer of the views by user, product and day
+   */
+  public void forEachByUser(UserConsumer consumer) {
+    byUser.forEach((key, views) -> {
+      int pair = high(key);
+      consumer.accept(users.get(pairUsers[pair]), products.get(pairProducts[pair]), low(key) * MILLIS_PER_DAY, views);
+    });
+  }
+
+  /**
+   * @return the number of counted views
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return the number of counters by table: total, by day and by user
+   */
+  public int[] getCountersCount() {
+    return new int[]{total.size(), byDay.size(), byUser.size()};
+  }
+
+  private int pairOf(int user, int product) {
+    long key = pack(user, product);
+    long pair = pairs.get(key, -1);
+    if (pair >= 0) {
+      return (int) pair;
+    }
+
+    pair = pairs.size();
+    if (pair == pairUsers.length) {
+      pairUsers = Arrays.copyOf(pairUsers, pairUsers.length << 1);
+      pairProducts = Arrays.copyOf(pairProducts, pairProducts.length << 1);
+    }
+    pairUsers[(int) pair] = user;
+    pairProducts[(int) pair] = product;
+    pairs.put(key, pair);
+    return (int) pair;
+  }
+
+  private static long pack(long high, long low) {
+    return high << 32 | (low & 0xFFFFFFFFL);
+  }
+
+  private static int high(long key) {
+    return (int) (key >>> 32);
+  }
+
+  private static int low(long key) {
+    return (int) key;
+  }
+
+  /**
+   * Ids by order of appearance
+   */
+  private static final class Dictionary {
+
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    int indexOf(String value) {
+      return indexes.computeIfAbsent(value, key -> {
+        values.add(key);
+        return values.size() - 1;
+      });
+    }
+
+    String get(int index) {
+      return values.get(index);
+    }
+
+  }
+
+  /**
+   * Consumer of the total of the views of a product
+   */
+  @FunctionalInterface
+  public interface TotalConsumer {
+    void accept(String productId, long views);
+  }
+
+  /**
+   * Consumer of the views of a product in a day
+   */
+  @FunctionalInterface
+  public interface DayConsumer {
+    void accept(String productId, long day, long views);
+  }
+
+  /**
+   * Consumer of the views of a product by a user in a day
+   */
+  @FunctionalInterface
+  public interface UserConsumer {
+    void accept(String userId, String productId, long day, long views);
+  }
+
+}
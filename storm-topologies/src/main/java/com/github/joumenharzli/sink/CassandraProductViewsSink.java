@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+import org.apache.storm.utils.Utils;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.github.joumenharzli.utils.CassandraUtils;
+import com.github.joumenharzli.utils.HyperLogLog;
+import com.github.joumenharzli.utils.RoaringBitmaps;
+import com.github.joumenharzli.utils.TimestampUtils;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Sink writing the product views to cassandra
+ * <p>
+ * The access logs are written to the bucket of their user in the day of the access, the access
+ * logs of the same partition are sent together as an unlogged batch and the number
+ * of pending requests of the sink is limited, a write blocks while the limit is reached. The sink
+ * uses the cluster shared by the worker from its creation until it is closed. The sketches of the
+ * unique viewers are merged by reading the stored sketch then writing the union and the rollups are
+ * added by reading the stored count then writing the sum. The counts of the summary of a product
+ * are read from the tables of its views. The audiences are encoded with the {@link CassandraUserDictionary}
+ * of the sink then merged like the sketches.
+ *
+ * @author Joumen Harzli
+ */
+public class CassandraProductViewsSink implements ProductViewsSink {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CassandraProductViewsSink.class);
+
+  private final Semaphore inFlightRequests;
+  private final int accessLogBuckets;
+  private final Map<RollupResolution, Integer> rollupTtlSecs;
+  private final List<Integer> totalShards;
+  private final CassandraUserDictionary userDictionary;
+
+  /**
+   * @param stormConf configuration of the topology holding the settings of the cluster
+   */
+  public CassandraProductViewsSink(Map stormConf) {
+    this.inFlightRequests = new Semaphore(Utils.getInt(stormConf.get(CASSANDRA_MAX_IN_FLIGHT_REQUESTS_CONFIG),
+        CASSANDRA_MAX_IN_FLIGHT_REQUESTS));
+    this.accessLogBuckets = ProductViewsSchema.getAccessLogBuckets(stormConf);
+    this.rollupTtlSecs = new EnumMap<>(RollupResolution.class);
+    for (RollupResolution resolution : RollupResolution.values()) {
+      rollupTtlSecs.put(resolution, resolution.getTtlSecs(stormConf));
+    }
+    this.totalShards = ProductViewsSchema.getTotalShards(stormConf);
+    this.userDictionary = new CassandraUserDictionary(inFlightRequests,
+        Utils.getInt(stormConf.get(AUDIENCE_USER_CACHE_CAPACITY_CONFIG), AUDIENCE_USER_CACHE_CAPACITY),
+        Utils.getInt(stormConf.get(AUDIENCE_USER_ID_BLOCK_SIZE_CONFIG), AUDIENCE_USER_ID_BLOCK_SIZE));
+    CassandraUtils.open(stormConf);
+  }
+
+  @Override
+  public ListenableFuture<?> appendAccessLogs(List<ProductAccessLog> accessLogs) {
+    List<Statement> statements = new ArrayList<>(accessLogs.size());
+    for (ProductAccessLog accessLog : accessLogs) {
+      int bucket = ProductViewsSchema.getAccessLogBucket(accessLog.getUserId(), accessLogBuckets);
+      statements.add(ProductViewsStatements.insertAccessLog(accessLog.getUserId(), accessLog.getProductId(),
+          accessLog.getAccessTimestamp(), bucket));
+    }
+
+    List<Statement> batches = CassandraUtils.batchByPartition(WEB_ANALYTICS_KEYSPACE, statements);
+
+    List<ListenableFuture<ResultSet>> results = new ArrayList<>(batches.size());
+    for (Statement batch : batches) {
+      results.add(executeAsync(batch));
+    }
+    return Futures.allAsList(results);
+  }
+
+  @Override
+  public ListenableFuture<?> incrementTotal(String productId, long increment) {
+    return executeAsync(ProductViewsStatements.incrementTotal(productId, increment));
+  }
+
+  /**
+   * The shard 0 is the counter of the unsharded table so the products that were never hot keep a
+   * single counter
+   */
+  @Override
+  public ListenableFuture<?> incrementTotal(String productId, int shard, long increment) {
+    if (shard == 0) {
+      return incrementTotal(productId, increment);
+    }
+    return executeAsync(ProductViewsStatements.incrementTotalShard(productId, shard, increment));
+  }
+
+  @Override
+  public ListenableFuture<?> incrementByDay(String productId, long day, long increment) {
+    return executeAsync(ProductViewsStatements.incrementByDay(productId, day, increment));
+  }
+
+  @Override
+  public ListenableFuture<?> incrementByUser(String userId, String productId, long day, long increment) {
+    return executeAsync(ProductViewsStatements.incrementByUser(userId, productId, day, increment));
+  }
+
+  /**
+   * The read and the write hold a single in flight request so the write is never blocked in the
+   * thread of the driver completing the read
+   */
+  @Override
+  public ListenableFuture<?> mergeUniqueViewers(String productId, long day, HyperLogLog sketch) {
+    if (!acquireInFlightRequest()) {
+      return Futures.immediateFailedFuture(new InterruptedException());
+    }
+
+    ListenableFuture<ResultSet> stored = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+        ProductViewsStatements.selectUniqueViewers(productId, day));
+    ListenableFuture<ResultSet> result = Futures.transformAsync(stored, storedSketch -> {
+      Row row = storedSketch.one();
+      if (row != null && row.getBytes(0) != null) {
+        sketch.merge(HyperLogLog.fromBytes(row.getBytes(0)));
+      }
+      return CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+          ProductViewsStatements.insertUniqueViewers(productId, day, sketch.toBytes()));
+    }, MoreExecutors.directExecutor());
+
+    result.addListener(inFlightRequests::release, MoreExecutors.directExecutor());
+    return result;
+  }
+
+  /**
+   * The users are encoded with the dictionary then the stored bitmap is read and the union is
+   * written, the read and the write hold a single in flight request
+   */
+  @Override
+  public ListenableFuture<?> mergeAudience(String productId, long day, Set<String> userIds) {
+    ListenableFuture<Map<String, Integer>> encoded = userDictionary.encode(userIds);
+    if (!acquireInFlightRequest()) {
+      return Futures.immediateFailedFuture(new InterruptedException());
+    }
+
+    ListenableFuture<ResultSet> result = Futures.transformAsync(encoded, ids -> {
+      RoaringBitmap audience = new RoaringBitmap();
+      ids.values().forEach(audience::add);
+
+      ListenableFuture<ResultSet> stored = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+          ProductViewsStatements.selectAudience(productId, day));
+      return Futures.transformAsync(stored, storedAudience -> {
+        Row row = storedAudience.one();
+        if (row != null && row.getBytes(0) != null) {
+          audience.or(RoaringBitmaps.fromBytes(row.getBytes(0)));
+        }
+        return CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+            ProductViewsStatements.insertAudience(productId, day, RoaringBitmaps.toBytes(audience)));
+      }, MoreExecutors.directExecutor());
+    }, MoreExecutors.directExecutor());
+
+    result.addListener(inFlightRequests::release, MoreExecutors.directExecutor());
+    return result;
+  }
+
+  /**
+   * The stored count is read then written with the time to live of the resolution, the read and
+   * the write hold a single in flight request
+   */
+  @Override
+  public ListenableFuture<?> addRollup(RollupResolution resolution, String productId, long period, long views) {
+    if (!acquireInFlightRequest()) {
+      return Futures.immediateFailedFuture(new InterruptedException());
+    }
+
+    int ttlSecs = rollupTtlSecs.get(resolution);
+    ListenableFuture<ResultSet> stored = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+        ProductViewsStatements.selectRollup(resolution, productId, period));
+    ListenableFuture<ResultSet> result = Futures.transformAsync(stored, storedCount -> {
+      Row row = storedCount.one();
+      long count = row == null ? views : row.getLong(0) + views;
+      return CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+          ProductViewsStatements.insertRollup(resolution, productId, period, count, ttlSecs));
+    }, MoreExecutors.directExecutor());
+
+    result.addListener(inFlightRequests::release, MoreExecutors.directExecutor());
+    return result;
+  }
+
+  /**
+   * The total, the views of the last days and their sketches are read in parallel, the reads hold
+   * a single in flight request
+   */
+  @Override
+  public ListenableFuture<ProductSummaryCounts> readSummaryCounts(String productId, long day, int precision) {
+    if (!acquireInFlightRequest()) {
+      return Futures.immediateFailedFuture(new InterruptedException());
+    }
+
+    long firstDay = day - (ProductSummary.LAST_DAYS - 1) * TimestampUtils.MILLIS_PER_DAY;
+
+    List<ListenableFuture<ResultSet>> totals = new ArrayList<>(2);
+    totals.add(CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE, ProductViewsStatements.selectTotal(productId)));
+    if (!totalShards.isEmpty()) {
+      totals.add(CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+          ProductViewsStatements.selectTotalShards(productId, totalShards)));
+    }
+    ListenableFuture<List<ResultSet>> total = Futures.allAsList(totals);
+    ListenableFuture<ResultSet> days = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+        ProductViewsStatements.selectByDays(productId, firstDay, day));
+    ListenableFuture<ResultSet> sketches = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+        ProductViewsStatements.selectUniqueViewers(productId, firstDay, day));
+
+    ListenableFuture<ProductSummaryCounts> result = Futures.transform(Futures.allAsList(total, days, sketches),
+        (List<Object> reads) -> toCounts(day, precision, Futures.getUnchecked(total), Futures.getUnchecked(days),
+            Futures.getUnchecked(sketches)), MoreExecutors.directExecutor());
+
+    result.addListener(inFlightRequests::release, MoreExecutors.directExecutor());
+    return result;
+  }
+
+  @Override
+  public ListenableFuture<?> writeSummary(ProductSummary summary) {
+    return executeAsync(ProductViewsStatements.insertSummary(summary));
+  }
+
+  @Override
+  public ListenableFuture<?> writeTrendingProducts(String window, long timestamp, List<TrendingProduct> products) {
+    List<String> productIds = new ArrayList<>(products.size());
+    List<Long> views = new ArrayList<>(products.size());
+    for (TrendingProduct product : products) {
+      productIds.add(product.getProductId());
+      views.add(product.getViews());
+    }
+    return executeAsync(ProductViewsStatements.insertTrendingProducts(window, timestamp, productIds, views));
+  }
+
+  @Override
+  public void close() {
+    CassandraUtils.close();
+  }
+
+  private static ProductSummaryCounts toCounts(long day, int precision, List<ResultSet> totals, ResultSet days,
+                                               ResultSet sketches) {
+    ProductSummaryCounts counts = new ProductSummaryCounts(day, precision);
+    for (ResultSet shards : totals) {
+      for (Row row : shards) {
+        counts.addTotal(row.getLong(0));
+      }
+    }
+    for (Row row : days) {
+      counts.addViews(row.getTimestamp(1).getTime(), row.getLong(0));
+    }
+    for (Row row : sketches) {
+      counts.addViewers(row.getTimestamp(1).getTime(), HyperLogLog.fromBytes(row.getBytes(0)));
+    }
+    return counts;
+  }
+
+  /**
+   * Execute the statement asynchronously, blocks while the maximum of in flight requests is reached
+   */
+  private ListenableFuture<ResultSet> executeAsync(Statement statement) {
+    if (!acquireInFlightRequest()) {
+      return Futures.immediateFailedFuture(new InterruptedException());
+    }
+
+    ResultSetFuture result = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE, statement);
+    result.addListener(inFlightRequests::release, MoreExecutors.directExecutor());
+    return result;
+  }
+
+  /**
+   * @return false if interrupted while waiting for an available request
+   */
+  private boolean acquireInFlightRequest() {
+    try {
+      inFlightRequests.acquire();
+      return true;
+    } catch (InterruptedException e) {
+      LOGGER.warn("Interrupted while waiting for an available cassandra request");
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.github.joumenharzli.utils.CassandraUtils;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import static com.github.joumenharzli.Configuration.WEB_ANALYTICS_KEYSPACE;
+
+/**
+ * Dictionary assigning a dense int id to each user so the audiences are stored as Roaring bitmaps
+ * <p>
+ * A user keeps the id assigned by the first executor that encoded it: the ids are read from the
+ * dictionary and a missing user is assigned an id of the block of the executor by a lightweight
+ * transaction, an executor that loses the transaction takes the id of the winner and reuses its
+ * own id. The blocks are reserved in the sequence of the dictionary by a compare and set, so the
+ * ids of an executor are consecutive and their bitmaps compress to runs. The next block is
+ * reserved asynchronously once half of the current block is claimed, so the executor waits for a
+ * reservation only when it claims the ids faster than a block is reserved.
+ * <p>
+ * The ids of the recently encoded users are kept by the executor. The missing users are read by
+ * pages of {@value #MAX_USERS_BY_READ} users and the requests of a page, the read and the
+ * assignments of its new users, hold a single in flight request of the sink. The dictionary is
+ * used by the thread of the executor, the requests complete in the threads of the driver.
+ *
+ * @author Joumen Harzli
+ */
+final class CassandraUserDictionary {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CassandraUserDictionary.class);
+
+  private static final String SEQUENCE = "users";
+  private static final int MAX_USERS_BY_READ = 100;
+
+  private final Semaphore inFlightRequests;
+  private final int blockSize;
+  private final Map<String, Integer> ids;
+  private final Queue<Integer> spareIds = new ConcurrentLinkedQueue<>();
+  private int nextId;
+  private int blockEnd;
+  private ListenableFuture<Integer> reservedBlock;
+  private int reservedBlockSize;
+
+  /**
+   * @param inFlightRequests in flight requests of the sink
+   * @param capacity         maximum number of ids kept by the executor
+   * @param blockSize        number of ids reserved at once in the sequence
+   */
+  CassandraUserDictionary(Semaphore inFlightRequests, int capacity, int blockSize) {
+    this.inFlightRequests = inFlightRequests;
+    this.blockSize = blockSize;
+    this.ids = Collections.synchronizedMap(new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+        return size() > capacity;
+      }
+
+    });
+  }
+
+  /**
+   * Encode the users, blocks while the next block is not reserved or while the maximum of in
+   * flight requests is reached
+   *
+   * @param userIds ids of the users
+   * @return a future on the dictionary id of each user
+   */
+  ListenableFuture<Map<String, Integer>> encode(Collection<String> userIds) {
+    Map<String, Integer> encoded = new HashMap<>(userIds.size() * 2);
+    List<String> misses = new ArrayList<>();
+
+    for (String userId : userIds) {
+      Integer id = ids.get(userId);
+      if (id != null) {
+        encoded.put(userId, id);
+      } else {
+        misses.add(userId);
+      }
+    }
+    if (misses.isEmpty()) {
+      return Futures.immediateFuture(encoded);
+    }
+
+    int[] claimedIds;
+    try {
+      claimedIds = claim(misses.size());
+    } catch (UncheckedExecutionException e) {
+      LOGGER.error("Unable to reserve a block of user ids", e.getCause());
+      return Futures.immediateFailedFuture(e.getCause());
+    }
+
+    List<ListenableFuture<Map<String, Integer>>> results = new ArrayList<>();
+    int offset = 0;
+    for (List<String> page : Lists.partition(misses, MAX_USERS_BY_READ)) {
+      if (!acquireInFlightRequest()) {
+        for (int unused = offset; unused < claimedIds.length; unused++) {
+          spareIds.add(claimedIds[unused]);
+        }
+        return Futures.immediateFailedFuture(new InterruptedException());
+      }
+      ListenableFuture<Map<String, Integer>> result = encode(page, claimedIds, offset);
+      result.addListener(inFlightRequests::release, MoreExecutors.directExecutor());
+      results.add(result);
+      offset += page.size();
+    }
+
+    return Futures.transform(Futures.allAsList(results), (List<Map<String, Integer>> pages) -> {
+      for (Map<String, Integer> page : pages) {
+        encoded.putAll(page);
+      }
+      return encoded;
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @return a future on the ids of the users of the page, the claimed ids from the offset are
+   * assigned to the users without id
+   */
+  private ListenableFuture<Map<String, Integer>> encode(List<String> userIds, int[] claimedIds, int offset) {
+    ListenableFuture<ResultSet> stored = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+        ProductViewsStatements.selectUserDictionaryIds(userIds));
+
+    return Futures.transformAsync(stored, (ResultSet storedIds) -> {
+      Map<String, Integer> encoded = new HashMap<>(userIds.size() * 2);
+      for (Row row : storedIds) {
+        encoded.put(row.getString(0), row.getInt(1));
+      }
+
+      List<ListenableFuture<Integer>> inserted = new ArrayList<>();
+      List<String> insertedUserIds = new ArrayList<>();
+      for (int i = 0; i < userIds.size(); i++) {
+        String userId = userIds.get(i);
+        int claimedId = claimedIds[offset + i];
+        Integer id = encoded.get(userId);
+        if (id != null) {
+          assigned(userId, id, claimedId);
+        } else {
+          inserted.add(insert(userId, claimedId));
+          insertedUserIds.add(userId);
+        }
+      }
+
+      return Futures.transform(Futures.allAsList(inserted), (List<Integer> insertedIds) -> {
+        for (int i = 0; i < insertedIds.size(); i++) {
+          encoded.put(insertedUserIds.get(i), insertedIds.get(i));
+        }
+        return encoded;
+      }, MoreExecutors.directExecutor());
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @return a future on the id of the user, the claimed id if no id was assigned by another executor
+   */
+  private ListenableFuture<Integer> insert(String userId, int claimedId) {
+    ListenableFuture<ResultSet> inserted = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+        ProductViewsStatements.insertUserDictionaryId(userId, claimedId));
+
+    return Futures.transformAsync(inserted, (ResultSet insert) -> {
+      if (!insert.wasApplied()) {
+        return Futures.immediateFuture(assigned(userId, insert.one().getInt("id"), claimedId));
+      }
+      ListenableFuture<ResultSet> reverse = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+          ProductViewsStatements.insertUserByDictionaryId(claimedId, userId));
+      return Futures.transform(reverse, (ResultSet written) -> assigned(userId, claimedId, claimedId),
+          MoreExecutors.directExecutor());
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Keep the id of the user and reuse the claimed id if it was not assigned
+   */
+  private int assigned(String userId, int id, int claimedId) {
+    if (id != claimedId) {
+      spareIds.add(claimedId);
+    }
+    ids.put(userId, id);
+    return id;
+  }
+
+  /**
+   * @return the ids that may be assigned, the spare ids first then the ids of the block
+   * @throws UncheckedExecutionException if a block cannot be reserved, the claimed ids are then
+   *                                     spared
+   */
+  private int[] claim(int count) {
+    int[] claimedIds = new int[count];
+    int claimed = 0;
+
+    try {
+      for (; claimed < count; claimed++) {
+        Integer spareId = spareIds.poll();
+        if (spareId != null) {
+          claimedIds[claimed] = spareId;
+          continue;
+        }
+        if (nextId == blockEnd) {
+          takeReservedBlock(count - claimed);
+        }
+        claimedIds[claimed] = nextId++;
+      }
+    } catch (UncheckedExecutionException e) {
+      for (int spared = 0; spared < claimed; spared++) {
+        spareIds.add(claimedIds[spared]);
+      }
+      throw e;
+    }
+
+    if (reservedBlock == null && 2 * (blockEnd - nextId) < blockSize) {
+      reserveNextBlock(blockSize);
+    }
+    return claimedIds;
+  }
+
+  /**
+   * Use the reserved block as the current block, waits for its reservation
+   *
+   * @param missing number of ids missing to the claim
+   */
+  private void takeReservedBlock(int missing) {
+    if (reservedBlock == null) {
+      reserveNextBlock(Math.max(blockSize, missing));
+    }
+
+    ListenableFuture<Integer> block = reservedBlock;
+    reservedBlock = null;
+    nextId = Futures.getUnchecked(block);
+    blockEnd = nextId + reservedBlockSize;
+  }
+
+  private void reserveNextBlock(int size) {
+    reservedBlockSize = size;
+    reservedBlock = reserveBlock(size);
+  }
+
+  /**
+   * Reserve the next ids of the sequence, retried while another executor reserves a block
+   *
+   * @return a future on the first id of the block
+   */
+  private ListenableFuture<Integer> reserveBlock(int size) {
+    ListenableFuture<ResultSet> selected = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+        ProductViewsStatements.selectDictionarySequence(SEQUENCE));
+
+    return Futures.transformAsync(selected, (ResultSet sequence) -> {
+      Row row = sequence.one();
+      if (row == null) {
+        ListenableFuture<ResultSet> inserted = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+            ProductViewsStatements.insertDictionarySequence(SEQUENCE, 0));
+        return Futures.transformAsync(inserted, (ResultSet insert) -> reserveBlock(size),
+            MoreExecutors.directExecutor());
+      }
+
+      int next = row.getInt(0);
+      if (next > Integer.MAX_VALUE - size) {
+        return Futures.immediateFailedFuture(new IllegalStateException("The ids of the user dictionary are exhausted"));
+      }
+
+      ListenableFuture<ResultSet> updated = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+          ProductViewsStatements.updateDictionarySequence(SEQUENCE, next + size, next));
+      return Futures.transformAsync(updated, (ResultSet update) -> {
+        if (!update.wasApplied()) {
+          return reserveBlock(size);
+        }
+        LOGGER.debug("Reserved the user ids from {} to {}", next, next + size);
+        return Futures.immediateFuture(next);
+      }, MoreExecutors.directExecutor());
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @return false if interrupted while waiting for an available request
+   */
+  private boolean acquireInFlightRequest() {
+    try {
+      inFlightRequests.acquire();
+      return true;
+    } catch (InterruptedException e) {
+      LOGGER.warn("Interrupted while waiting for an available cassandra request");
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+}
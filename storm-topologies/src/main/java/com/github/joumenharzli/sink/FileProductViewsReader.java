@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.utils.HyperLogLog;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import static com.github.joumenharzli.sink.FileProductViewsSink.*;
+
+/**
+ * Reader replaying the records of a file written by {@link FileProductViewsSink} into a sink
+ * <p>
+ * The records are written to the sink in the order of the file and each write completes before
+ * the next record is read, so the merges of a product and day are never concurrent. The
+ * consecutive access logs are appended together. A record cut at the end of the file by a crash
+ * of the worker is ignored.
+ *
+ * @author Joumen Harzli
+ */
+public class FileProductViewsReader implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileProductViewsReader.class);
+
+  private static final int MAX_ACCESS_LOGS_BY_WRITE = 1000;
+
+  private final Path file;
+  private final CountingInputStream counting;
+  private final DataInputStream input;
+  private final List<ProductAccessLog> accessLogs = new ArrayList<>();
+
+  /**
+   * @param file file written by a {@link FileProductViewsSink}
+   * @throws IOException if the file cannot be opened
+   */
+  public FileProductViewsReader(Path file) throws IOException {
+    this.file = file;
+    this.counting = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)));
+    this.input = new DataInputStream(counting);
+  }
+
+  /**
+   * @param file file written by a {@link FileProductViewsSink}, it may not exist
+   * @return the length of the complete records at the start of the file
+   * @throws IOException if the file cannot be read
+   */
+  public static long getCompleteLength(Path file) throws IOException {
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    try (FileProductViewsReader reader = new FileProductViewsReader(file)) {
+      return reader.replay(null);
+    }
+  }
+
+  /**
+   * Write the records of the file to a sink
+   *
+   * @param sink sink receiving the records, null to only read them
+   * @return the length of the records read, shorter than the file if it ends with a cut record
+   * @throws IOException if the file cannot be read or a record is not valid
+   * @throws com.google.common.util.concurrent.UncheckedExecutionException if a write of the sink
+   *                                                                       fails
+   */
+  public long replay(ProductViewsSink sink) throws IOException {
+    long length = 0;
+
+    try {
+      int type;
+      while ((type = input.read()) != -1) {
+        readRecord((byte) type, sink);
+        length = counting.getCount();
+      }
+    } catch (EOFException e) {
+      LOGGER.warn("The sink file {} ends with an incomplete record at {}", file, length);
+    }
+
+    flushAccessLogs(sink);
+    return length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    input.close();
+  }
+
+  private void readRecord(byte type, ProductViewsSink sink) throws IOException {
+    if (type == ACCESS_LOG_RECORD) {
+      accessLogs.add(new ProductAccessLog(input.readUTF(), input.readUTF(), input.readLong()));
+      if (accessLogs.size() >= MAX_ACCESS_LOGS_BY_WRITE) {
+        flushAccessLogs(sink);
+      }
+      return;
+    }
+    flushAccessLogs(sink);
+
+    switch (type) {
+      case TOTAL_INCREMENT_RECORD:
+        readTotalIncrement(sink);
+        break;
+      case DAY_INCREMENT_RECORD:
+        readDayIncrement(sink);
+        break;
+      case USER_INCREMENT_RECORD:
+        readUserIncrement(sink);
+        break;
+      case UNIQUE_VIEWERS_RECORD:
+        readUniqueViewers(sink);
+        break;
+      case AUDIENCE_RECORD:
+        readAudience(sink);
+        break;
+      case ROLLUP_RECORD:
+        readRollup(sink);
+        break;
+      case TRENDING_PRODUCTS_RECORD:
+        readTrendingProducts(sink);
+        break;
+      case SUMMARY_RECORD:
+        readSummary(sink);
+        break;
+      default:
+        throw new IOException(String.format("Unknown record type %d in the sink file %s at %d", type, file,
+            counting.getCount() - 1));
+    }
+  }
+
+  private void readTotalIncrement(ProductViewsSink sink) throws IOException {
+    String productId = input.readUTF();
+    long increment = input.readLong();
+    if (sink != null) {
+      await(sink.incrementTotal(productId, increment));
+    }
+  }
+
+  private void readDayIncrement(ProductViewsSink sink) throws IOException {
+    String productId = input.readUTF();
+    long day = input.readLong();
+    long increment = input.readLong();
+    if (sink != null) {
+      await(sink.incrementByDay(productId, day, increment));
+    }
+  }
+
+  private void readUserIncrement(ProductViewsSink sink) throws IOException {
+    String userId = input.readUTF();
+    String productId = input.readUTF();
+    long day = input.readLong();
+    long increment = input.readLong();
+    if (sink != null) {
+      await(sink.incrementByUser(userId, productId, day, increment));
+    }
+  }
+
+  private void readUniqueViewers(ProductViewsSink sink) throws IOException {
+    String productId = input.readUTF();
+    long day = input.readLong();
+    byte[] bytes = new byte[input.readInt()];
+    input.readFully(bytes);
+    if (sink != null) {
+      await(sink.mergeUniqueViewers(productId, day, HyperLogLog.fromBytes(ByteBuffer.wrap(bytes))));
+    }
+  }
+
+  private void readAudience(ProductViewsSink sink) throws IOException {
+    String productId = input.readUTF();
+    long day = input.readLong();
+    int count = input.readInt();
+    Set<String> userIds = new HashSet<>(count * 2);
+    for (int i = 0; i < count; i++) {
+      userIds.add(input.readUTF());
+    }
+    if (sink != null) {
+      await(sink.mergeAudience(productId, day, userIds));
+    }
+  }
+
+  private void readRollup(ProductViewsSink sink) throws IOException {
+    RollupResolution resolution = getResolution(input.readUTF());
+    String productId = input.readUTF();
+    long period = input.readLong();
+    long views = input.readLong();
+    if (sink != null) {
+      await(sink.addRollup(resolution, productId, period, views));
+    }
+  }
+
+  private void readTrendingProducts(ProductViewsSink sink) throws IOException {
+    String window = input.readUTF();
+    long timestamp = input.readLong();
+    int count = input.readInt();
+    List<TrendingProduct> products = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      products.add(new TrendingProduct(input.readUTF(), input.readLong()));
+    }
+    if (sink != null) {
+      await(sink.writeTrendingProducts(window, timestamp, products));
+    }
+  }
+
+  private void readSummary(ProductViewsSink sink) throws IOException {
+    ProductSummary summary = new ProductSummary(input.readUTF(), input.readLong(), input.readLong(), input.readLong(),
+        input.readLong(), input.readLong(), input.readLong(), input.readLong());
+    if (sink != null) {
+      await(sink.writeSummary(summary));
+    }
+  }
+
+  private void flushAccessLogs(ProductViewsSink sink) {
+    if (!accessLogs.isEmpty() && sink != null) {
+      await(sink.appendAccessLogs(new ArrayList<>(accessLogs)));
+    }
+    accessLogs.clear();
+  }
+
+  private RollupResolution getResolution(String name) throws IOException {
+    for (RollupResolution resolution : RollupResolution.values()) {
+      if (resolution.getName().equals(name)) {
+        return resolution;
+      }
+    }
+    throw new IOException(String.format("Unknown rollup resolution %s in the sink file %s", name, file));
+  }
+
+  private static void await(ListenableFuture<?> result) {
+    Futures.getUnchecked(result);
+  }
+
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.utils.HyperLogLog;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Sink appending the product views to a file
+ * <p>
+ * The file is only appended: the access logs are written as they are received and the counters
+ * and the rollups are written as increments, the value of a counter being the sum of its
+ * increments. The sketches of the unique viewers and the audiences are written as received, the
+ * sketch or the audience of a day being the union of its records, and the latest ranking of a
+ * window and the latest summary of a product replace the previous ones. Each record starts with its type followed by its values
+ * written with {@link DataOutputStream}:
+ * <ul>
+ * <li>{@code A}: user id, product id, access timestamp</li>
+ * <li>{@code T}: product id, increment</li>
+ * <li>{@code D}: product id, day, increment</li>
+ * <li>{@code U}: user id, product id, day, increment</li>
+ * <li>{@code V}: product id, day, length of the sketch, serialized sketch</li>
+ * <li>{@code B}: product id, day, number of users, id of each user</li>
+ * <li>{@code O}: resolution, product id, period, views</li>
+ * <li>{@code R}: window, timestamp, number of products, product id and views of each product</li>
+ * <li>{@code S}: product id, day, total, today, last 7 days, unique viewers today, unique viewers
+ * of the last 7 days, update timestamp</li>
+ * </ul>
+ * The records of a write are encoded in memory then appended to the file with a single write
+ * before the write completes. A write that fails is removed from the file and the sink fails all
+ * the next writes, so the file always ends with a complete record. A record cut by a crash of the
+ * worker is removed when the file is opened again. The file is replayed into another sink with
+ * {@link FileProductViewsReader}. The file is not read by the sink so the summaries are computed
+ * from the views received since the start of the worker.
+ *
+ * @author Joumen Harzli
+ */
+public class FileProductViewsSink implements ProductViewsSink {
+
+  public static final byte ACCESS_LOG_RECORD = 'A';
+  public static final byte TOTAL_INCREMENT_RECORD = 'T';
+  public static final byte DAY_INCREMENT_RECORD = 'D';
+  public static final byte USER_INCREMENT_RECORD = 'U';
+  public static final byte UNIQUE_VIEWERS_RECORD = 'V';
+  public static final byte TRENDING_PRODUCTS_RECORD = 'R';
+  public static final byte ROLLUP_RECORD = 'O';
+  public static final byte AUDIENCE_RECORD = 'B';
+  public static final byte SUMMARY_RECORD = 'S';
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileProductViewsSink.class);
+
+  private final Path file;
+  private final FileChannel channel;
+  private final RecordBuffer records = new RecordBuffer();
+  private final DataOutputStream recordsOutput = new DataOutputStream(records);
+  private long size;
+  private IOException failure;
+
+  /**
+   * @param file file receiving the product views, created if it does not exist
+   */
+  public FileProductViewsSink(Path file) {
+    this.file = file;
+
+    try {
+      if (file.getParent() != null) {
+        Files.createDirectories(file.getParent());
+      }
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      this.size = FileProductViewsReader.getCompleteLength(file);
+      if (size < channel.size()) {
+        LOGGER.warn("Removing an incomplete record at the end of the sink file {}", file);
+        channel.truncate(size);
+      }
+      channel.position(size);
+    } catch (IOException e) {
+      throw new UncheckedIOException(String.format("Unable to open the sink file %s", file), e);
+    }
+
+    LOGGER.debug("Appending the product views to {}", file);
+  }
+
+  @Override
+  public ListenableFuture<?> appendAccessLogs(List<ProductAccessLog> accessLogs) {
+    return append(output -> {
+      for (ProductAccessLog accessLog : accessLogs) {
+        output.writeByte(ACCESS_LOG_RECORD);
+        output.writeUTF(accessLog.getUserId());
+        output.writeUTF(accessLog.getProductId());
+        output.writeLong(accessLog.getAccessTimestamp());
+      }
+    });
+  }
+
+  @Override
+  public ListenableFuture<?> incrementTotal(String productId, long increment) {
+    return append(output -> {
+      output.writeByte(TOTAL_INCREMENT_RECORD);
+      output.writeUTF(productId);
+      output.writeLong(increment);
+    });
+  }
+
+  @Override
+  public ListenableFuture<?> incrementByDay(String productId, long day, long increment) {
+    return append(output -> {
+      output.writeByte(DAY_INCREMENT_RECORD);
+      output.writeUTF(productId);
+      output.writeLong(day);
+      output.writeLong(increment);
+    });
+  }
+
+  @Override
+  public ListenableFuture<?> incrementByUser(String userId, String productId, long day, long increment) {
+    return append(output -> {
+      output.writeByte(USER_INCREMENT_RECORD);
+      output.writeUTF(userId);
+      output.writeUTF(productId);
+      output.writeLong(day);
+      output.writeLong(increment);
+    });
+  }
+
+  @Override
+  public ListenableFuture<?> mergeUniqueViewers(String productId, long day, HyperLogLog sketch) {
+    return append(output -> {
+      byte[] bytes = sketch.toBytes();
+      output.writeByte(UNIQUE_VIEWERS_RECORD);
+      output.writeUTF(productId);
+      output.writeLong(day);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    });
+  }
+
+  @Override
+  public ListenableFuture<?> mergeAudience(String productId, long day, Set<String> userIds) {
+    return append(output -> {
+      output.writeByte(AUDIENCE_RECORD);
+      output.writeUTF(productId);
+      output.writeLong(day);
+      output.writeInt(userIds.size());
+      for (String userId : userIds) {
+        output.writeUTF(userId);
+      }
+    });
+  }
+
+  @Override
+  public ListenableFuture<?> addRollup(RollupResolution resolution, String productId, long period, long views) {
+    return append(output -> {
+      output.writeByte(ROLLUP_RECORD);
+      output.writeUTF(resolution.getName());
+      output.writeUTF(productId);
+      output.writeLong(period);
+      output.writeLong(views);
+    });
+  }
+
+  @Override
+  public ListenableFuture<?> writeTrendingProducts(String window, long timestamp, List<TrendingProduct> products) {
+    return append(output -> {
+      output.writeByte(TRENDING_PRODUCTS_RECORD);
+      output.writeUTF(window);
+      output.writeLong(timestamp);
+      output.writeInt(products.size());
+      for (TrendingProduct product : products) {
+        output.writeUTF(product.getProductId());
+        output.writeLong(product.getViews());
+      }
+    });
+  }
+
+  @Override
+  public ListenableFuture<?> writeSummary(ProductSummary summary) {
+    return append(output -> {
+      output.writeByte(SUMMARY_RECORD);
+      output.writeUTF(summary.getProductId());
+      output.writeLong(summary.getDay());
+      output.writeLong(summary.getTotal());
+      output.writeLong(summary.getToday());
+      output.writeLong(summary.getLast7Days());
+      output.writeLong(summary.getUniqueViewersToday());
+      output.writeLong(summary.getUniqueViewersLast7Days());
+      output.writeLong(summary.getUpdatedAt());
+    });
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOGGER.error("Unable to close the sink file {}", file, e);
+    }
+  }
+
+  /**
+   * Encode the records of a write then append them with a single write, the records are removed
+   * from the file if they cannot be fully written
+   */
+  private synchronized ListenableFuture<?> append(RecordWriter writer) {
+    if (failure != null) {
+      return Futures.immediateFailedFuture(
+          new IOException(String.format("The sink file %s failed on a previous write", file), failure));
+    }
+
+    records.reset();
+    try {
+      writer.write(recordsOutput);
+    } catch (IOException e) {
+      LOGGER.error("Unable to encode the records of the sink file {}", file, e);
+      return Futures.immediateFailedFuture(e);
+    }
+
+    ByteBuffer buffer = records.toByteBuffer();
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      size += buffer.limit();
+      return Futures.immediateFuture(null);
+    } catch (IOException e) {
+      LOGGER.error("Unable to append to the sink file {}, the next writes will fail", file, e);
+      failure = e;
+      removeIncompleteRecords();
+      return Futures.immediateFailedFuture(e);
+    }
+  }
+
+  private void removeIncompleteRecords() {
+    try {
+      channel.truncate(size);
+    } catch (IOException e) {
+      LOGGER.error("Unable to remove the incomplete records of the sink file {}, they are removed when it is opened again",
+          file, e);
+    }
+  }
+
+  /**
+   * Encoder of the records of a write
+   */
+  @FunctionalInterface
+  private interface RecordWriter {
+
+    void write(DataOutputStream output) throws IOException;
+
+  }
+
+  /**
+   * Buffer of the encoded records exposing its content without a copy
+   */
+  private static final class RecordBuffer extends ByteArrayOutputStream {
+
+    private RecordBuffer() {
+      super(256);
+    }
+
+    private ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+
+  }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import com.github.joumenharzli.utils.HyperLogLog;
+import com.github.joumenharzli.utils.TimestampUtils;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Sink keeping the product views in the memory of the worker
+ * <p>
+ * The writes complete immediately and never block: the access logs are appended to a lock-free
+ * queue and the counters are {@link LongAdder}s. A single instance is shared by all the executors
+ * of the worker so the sink can stand for cassandra when the topology runs in a
+ * {@link org.apache.storm.LocalCluster}.
+ *
+ * @author Joumen Harzli
+ */
+public final class InMemoryProductViewsSink implements ProductViewsSink {
+
+  private static final InMemoryProductViewsSink INSTANCE = new InMemoryProductViewsSink();
+
+  private static final ListenableFuture<Void> WRITTEN = Futures.immediateFuture(null);
+
+  private final Queue<ProductAccessLog> accessLogs = new ConcurrentLinkedQueue<>();
+  private final ConcurrentMap<String, LongAdder> totalCounters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<List<Object>, LongAdder> dayCounters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<List<Object>, LongAdder> userCounters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<List<Object>, HyperLogLog> uniqueViewers = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Integer> userDictionary = new ConcurrentHashMap<>();
+  private final AtomicInteger nextUserId = new AtomicInteger();
+  private final ConcurrentMap<List<Object>, RoaringBitmap> audiences = new ConcurrentHashMap<>();
+  private final ConcurrentMap<List<Object>, LongAdder> rollups = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, ProductSummary> summaries = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, List<TrendingProduct>> trendingProducts = new ConcurrentHashMap<>();
+
+  private InMemoryProductViewsSink() {
+  }
+
+  /**
+   * @return the sink shared by the executors of the worker
+   */
+  public static InMemoryProductViewsSink getInstance() {
+    return INSTANCE;
+  }
+
+  @Override
+  public ListenableFuture<?> appendAccessLogs(List<ProductAccessLog> accessLogs) {
+    this.accessLogs.addAll(accessLogs);
+    return WRITTEN;
+  }
+
+  @Override
+  public ListenableFuture<?> incrementTotal(String productId, long increment) {
+    totalCounters.computeIfAbsent(productId, key -> new LongAdder()).add(increment);
+    return WRITTEN;
+  }
+
+  @Override
+  public ListenableFuture<?> incrementByDay(String productId, long day, long increment) {
+    dayCounters.computeIfAbsent(Arrays.asList(productId, day), key -> new LongAdder()).add(increment);
+    return WRITTEN;
+  }
+
+  @Override
+  public ListenableFuture<?> incrementByUser(String userId, String productId, long day, long increment) {
+    userCounters.computeIfAbsent(Arrays.asList(userId, productId, day), key -> new LongAdder()).add(increment);
+    return WRITTEN;
+  }
+
+  /**
+   * The stored sketch is merged into the received one which replaces it, so a stored sketch is
+   * never modified once visible to the readers
+   */
+  @Override
+  public ListenableFuture<?> mergeUniqueViewers(String productId, long day, HyperLogLog sketch) {
+    uniqueViewers.merge(Arrays.asList(productId, day), sketch, (stored, received) -> {
+      received.merge(stored);
+      return received;
+    });
+    return WRITTEN;
+  }
+
+  /**
+   * The users are encoded with a dictionary of the worker and, as for the sketches, the stored
+   * bitmap is merged into a new one which replaces it
+   */
+  @Override
+  public ListenableFuture<?> mergeAudience(String productId, long day, Set<String> userIds) {
+    RoaringBitmap audience = new RoaringBitmap();
+    for (String userId : userIds) {
+      audience.add(userDictionary.computeIfAbsent(userId, key -> nextUserId.getAndIncrement()));
+    }
+
+    audiences.merge(Arrays.asList(productId, day), audience, (stored, received) -> {
+      received.or(stored);
+      return received;
+    });
+    return WRITTEN;
+  }
+
+  /**
+   * The rollups never expire in memory
+   */
+  @Override
+  public ListenableFuture<?> addRollup(RollupResolution resolution, String productId, long period, long views) {
+    rollups.computeIfAbsent(Arrays.asList(resolution, productId, period), key -> new LongAdder()).add(views);
+    return WRITTEN;
+  }
+
+  /**
+   * The stored sketches are replaced on each merge, never updated, so they are read without lock
+   */
+  @Override
+  public ListenableFuture<ProductSummaryCounts> readSummaryCounts(String productId, long day, int precision) {
+    ProductSummaryCounts counts = new ProductSummaryCounts(day, precision);
+    counts.addTotal(getTotal(productId));
+
+    for (int i = 0; i < ProductSummary.LAST_DAYS; i++) {
+      long lastDay = day - i * TimestampUtils.MILLIS_PER_DAY;
+      counts.addViews(lastDay, getByDay(productId, lastDay));
+
+      HyperLogLog sketch = uniqueViewers.get(Arrays.asList(productId, lastDay));
+      if (sketch != null) {
+        counts.addViewers(lastDay, sketch);
+      }
+    }
+
+    return Futures.immediateFuture(counts);
+  }
+
+  @Override
+  public ListenableFuture<?> writeSummary(ProductSummary summary) {
+    summaries.put(summary.getProductId(), summary);
+    return WRITTEN;
+  }
+
+  @Override
+  public ListenableFuture<?> writeTrendingProducts(String window, long timestamp, List<TrendingProduct> products) {
+    trendingProducts.put(window, Collections.unmodifiableList(new ArrayList<>(products)));
+    return WRITTEN;
+  }
+
+  /**
+   * @return a snapshot of the appended access logs
+   */
+  public Collection<ProductAccessLog> getAccessLogs() {
+    return Collections.unmodifiableList(new ArrayList<>(accessLogs));
+  }
+
+  /**
+   * @param productId id of the product
+   * @return the total of the product views
+   */
+  public long getTotal(String productId) {
+    return sum(totalCounters.get(productId));
+  }
+
+  /**
+   * @param productId id of the product
+   * @param day       start of the day in milliseconds since the epoch
+   * @return the product views of the day
+   */
+  public long getByDay(String productId, long day) {
+    return sum(dayCounters.get(Arrays.asList(productId, day)));
+  }
+
+  /**
+   * @param userId    id of the user
+   * @param productId id of the product
+   * @param day       start of the day in milliseconds since the epoch
+   * @return the product views of the user in the day
+   */
+  public long getByUser(String userId, String productId, long day) {
+    return sum(userCounters.get(Arrays.asList(userId, productId, day)));
+  }
+
+  /**
+   * @param productId id of the product
+   * @param day       start of the day in milliseconds since the epoch
+   * @return the estimated number of users who viewed the product in the day
+   */
+  public long getUniqueViewers(String productId, long day) {
+    HyperLogLog sketch = uniqueViewers.get(Arrays.asList(productId, day));
+    return sketch == null ? 0 : sketch.estimate();
+  }
+
+  /**
+   * @param resolution resolution of the rollup
+   * @param productId  id of the product
+   * @param period     start of the period in milliseconds since the epoch
+   * @return the product views of the period
+   */
+  public long getRollup(RollupResolution resolution, String productId, long period) {
+    return sum(rollups.get(Arrays.asList(resolution, productId, period)));
+  }
+
+  /**
+   * @param productId id of the product
+   * @return the latest summary of the product, null if it was never summarized
+   */
+  public ProductSummary getSummary(String productId) {
+    return summaries.get(productId);
+  }
+
+  /**
+   * @param productIds ids of the products
+   * @param day        start of the day in milliseconds since the epoch
+   * @return the number of users who viewed all the products in the day
+   */
+  public long getAudienceIntersection(Collection<String> productIds, long day) {
+    RoaringBitmap intersection = null;
+    for (String productId : productIds) {
+      RoaringBitmap audience = audiences.getOrDefault(Arrays.asList(productId, day), new RoaringBitmap());
+      intersection = intersection == null ? audience.clone() : RoaringBitmap.and(intersection, audience);
+    }
+    return intersection == null ? 0 : intersection.getLongCardinality();
+  }
+
+  /**
+   * @param window name of the window
+   * @return the top products of the window by descending views, empty if it was never ranked
+   */
+  public List<TrendingProduct> getTrendingProducts(String window) {
+    return trendingProducts.getOrDefault(window, Collections.emptyList());
+  }
+
+  /**
+   * Drain the appended access logs so the memory used by a long run stays bounded
+   *
+   * @return the number of drained access logs
+   */
+  public long drainAccessLogs() {
+    long drained = 0;
+    while (accessLogs.poll() != null) {
+      drained++;
+    }
+    return drained;
+  }
+
+  /**
+   * Remove all the access logs and the counters
+   */
+  public void clear() {
+    accessLogs.clear();
+    totalCounters.clear();
+    dayCounters.clear();
+    userCounters.clear();
+    uniqueViewers.clear();
+    userDictionary.clear();
+    audiences.clear();
+    rollups.clear();
+    summaries.clear();
+    trendingProducts.clear();
+  }
+
+  private static long sum(LongAdder counter) {
+    return counter == null ? 0 : counter.sum();
+  }
+
+}
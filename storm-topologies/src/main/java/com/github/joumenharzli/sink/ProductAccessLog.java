@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+/**
+ * Access of a user to a product
+ *
+ * @author Joumen Harzli
+ */
+public class ProductAccessLog {
+
+  private final String userId;
+  private final String productId;
+  private final long accessTimestamp;
+
+  /**
+   * @param userId          id of the user
+   * @param productId       id of the product
+   * @param accessTimestamp access timestamp in milliseconds since the epoch
+   */
+  public ProductAccessLog(String userId, String productId, long accessTimestamp) {
+    this.userId = userId;
+    this.productId = productId;
+    this.accessTimestamp = accessTimestamp;
+  }
+
+  public String getUserId() {
+    return userId;
+  }
+
+  public String getProductId() {
+    return productId;
+  }
+
+  public long getAccessTimestamp() {
+    return accessTimestamp;
+  }
+
+  @Override
+  public String toString() {
+    return "ProductAccessLog{" +
+        "userId='" + userId + '\'' +
+        ", productId='" + productId + '\'' +
+        ", accessTimestamp=" + accessTimestamp +
+        '}';
+  }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.github.joumenharzli.utils.CassandraUtils;
+import com.github.joumenharzli.utils.TimestampUtils;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Reader of the access logs of a time range
+ * <p>
+ * The partitions of the days of the range are read in parallel, each partition is paged
+ * asynchronously and the number of partitions read at the same time is limited, a read blocks
+ * while the limit is reached. The reader uses the cluster shared by the worker from its creation
+ * until it is closed.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductAccessLogReader implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProductAccessLogReader.class);
+
+  private final Semaphore inFlightRequests;
+  private final int accessLogBuckets;
+
+  /**
+   * @param stormConf configuration of the topology holding the settings of the cluster and the
+   *                  number of buckets used by the writers
+   */
+  public ProductAccessLogReader(Map stormConf) {
+    this.inFlightRequests = new Semaphore(Utils.getInt(stormConf.get(CASSANDRA_MAX_IN_FLIGHT_REQUESTS_CONFIG),
+        CASSANDRA_MAX_IN_FLIGHT_REQUESTS));
+    this.accessLogBuckets = ProductViewsSchema.getAccessLogBuckets(stormConf);
+    CassandraUtils.open(stormConf);
+  }
+
+  /**
+   * Read the access logs of a time range from the buckets of its days
+   *
+   * @param fromTimestamp start of the range in milliseconds since the epoch, inclusive
+   * @param toTimestamp   end of the range in milliseconds since the epoch, exclusive
+   * @return a future on the access logs ordered by access timestamp
+   */
+  public ListenableFuture<List<ProductAccessLog>> read(long fromTimestamp, long toTimestamp) {
+    Validate.isTrue(fromTimestamp <= toTimestamp, "The start of the range must not be after its end");
+
+    List<ListenableFuture<List<ProductAccessLog>>> partitions = new ArrayList<>();
+
+    for (long day = TimestampUtils.truncateToDay(fromTimestamp); day < toTimestamp; day += TimestampUtils.MILLIS_PER_DAY) {
+      for (int bucket = 0; bucket < accessLogBuckets; bucket++) {
+        partitions.add(readPartition(ProductViewsStatements.selectAccessLogs(day, bucket, fromTimestamp, toTimestamp)));
+      }
+    }
+
+    LOGGER.debug("Reading the access logs from {} to {} in {} partitions", fromTimestamp, toTimestamp, partitions.size());
+
+    return Futures.transform(Futures.allAsList(partitions), ProductAccessLogReader::merge,
+        MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Find the first day holding access logs, all the partitions of the table are listed so it is
+   * meant for the tools
+   *
+   * @return the start of the first day in milliseconds since the epoch or {@link Long#MAX_VALUE}
+   * if there is no access log
+   */
+  public long readFirstDay() {
+    long firstDay = Long.MAX_VALUE;
+    ResultSet partitions = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+        ProductViewsStatements.selectAccessLogPartitions()).getUninterruptibly();
+    for (Row partition : partitions) {
+      firstDay = Math.min(firstDay, partition.getTimestamp(0).getTime());
+    }
+    return firstDay;
+  }
+
+  @Override
+  public void close() {
+    CassandraUtils.close();
+  }
+
+  /**
+   * Read all the pages of a partition, blocks while the maximum of in flight partitions is reached
+   */
+  private ListenableFuture<List<ProductAccessLog>> readPartition(Statement statement) {
+    try {
+      inFlightRequests.acquire();
+    } catch (InterruptedException e) {
+      LOGGER.warn("Interrupted while waiting for an available cassandra request");
+      Thread.currentThread().interrupt();
+      return Futures.immediateFailedFuture(e);
+    }
+
+    ResultSetFuture resultSet = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE, statement);
+    ListenableFuture<List<ProductAccessLog>> accessLogs = Futures.transformAsync(resultSet,
+        page -> readPages(page, new ArrayList<>()), MoreExecutors.directExecutor());
+    accessLogs.addListener(inFlightRequests::release, MoreExecutors.directExecutor());
+    return accessLogs;
+  }
+
+  /**
+   * Add the rows of the fetched page then fetch the next page if any
+   */
+  private static ListenableFuture<List<ProductAccessLog>> readPages(ResultSet resultSet, List<ProductAccessLog> accessLogs) {
+    for (int remaining = resultSet.getAvailableWithoutFetching(); remaining > 0; remaining--) {
+      Row row = resultSet.one();
+      accessLogs.add(new ProductAccessLog(row.getString(0), row.getString(1), row.getTimestamp(2).getTime()));
+    }
+
+    if (resultSet.isFullyFetched()) {
+      return Futures.immediateFuture(accessLogs);
+    }
+    return Futures.transformAsync(resultSet.fetchMoreResults(), page -> readPages(page, accessLogs),
+        MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Merge the partitions, each partition is already ordered by access timestamp
+   */
+  private static List<ProductAccessLog> merge(List<List<ProductAccessLog>> partitions) {
+    List<ProductAccessLog> accessLogs = new ArrayList<>();
+    partitions.forEach(accessLogs::addAll);
+    accessLogs.sort(Comparator.comparingLong(ProductAccessLog::getAccessTimestamp));
+    return accessLogs;
+  }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.storm.utils.Utils;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.github.joumenharzli.utils.CassandraUtils;
+import com.github.joumenharzli.utils.RoaringBitmaps;
+import com.github.joumenharzli.utils.TimestampUtils;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Reader of the exact audiences of the products
+ * <p>
+ * The audience of a product in a range of days is the union of the bitmaps of its days read from
+ * the partition of the product, the audiences of several products are read in parallel then
+ * combined in memory so the cardinality of a union or an intersection is exact. The users of an
+ * audience are decoded with the reverse dictionary, a user whose id was assigned by an executor
+ * that crashed before writing the reverse entry is skipped, the users are decoded by pages of
+ * {@value #MAX_USERS_BY_READ} ids.
+ * <p>
+ * The reader uses the cluster shared by the worker from its creation until it is closed and, like
+ * the sink, limits its in flight requests: a read blocks while the limit is reached.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductAudienceReader implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProductAudienceReader.class);
+
+  private static final int MAX_USERS_BY_READ = 100;
+
+  private final Semaphore inFlightRequests;
+
+  /**
+   * @param stormConf configuration of the topology holding the settings of the cluster
+   */
+  public ProductAudienceReader(Map stormConf) {
+    this.inFlightRequests = new Semaphore(Utils.getInt(stormConf.get(CASSANDRA_MAX_IN_FLIGHT_REQUESTS_CONFIG),
+        CASSANDRA_MAX_IN_FLIGHT_REQUESTS));
+    CassandraUtils.open(stormConf);
+  }
+
+  /**
+   * @param productId id of the product
+   * @param from      a time of the first day in milliseconds since the epoch
+   * @param to        a time of the last day in milliseconds since the epoch, inclusive
+   * @return a future on the dictionary ids of the users who viewed the product in the days
+   */
+  public ListenableFuture<RoaringBitmap> read(String productId, long from, long to) {
+    Validate.isTrue(from <= to, "The start of the range must not be after its end");
+
+    ListenableFuture<ResultSet> result = executeAsync(ProductViewsStatements.selectAudience(productId,
+        TimestampUtils.truncateToDay(from), TimestampUtils.truncateToDay(to)));
+
+    return Futures.transform(result, ProductAudienceReader::unionOf, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @param productIds ids of the products, like the products of a shop
+   * @param from       a time of the first day in milliseconds since the epoch
+   * @param to         a time of the last day in milliseconds since the epoch, inclusive
+   * @return a future on the users who viewed any of the products in the days
+   */
+  public ListenableFuture<RoaringBitmap> union(Collection<String> productIds, long from, long to) {
+    return Futures.transform(readAll(productIds, from, to),
+        (List<RoaringBitmap> audiences) -> FastAggregation.or(audiences.iterator()), MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @param productIds ids of the products
+   * @param from       a time of the first day in milliseconds since the epoch
+   * @param to         a time of the last day in milliseconds since the epoch, inclusive
+   * @return a future on the users who viewed all the products in the days
+   */
+  public ListenableFuture<RoaringBitmap> intersection(Collection<String> productIds, long from, long to) {
+    return Futures.transform(readAll(productIds, from, to),
+        (List<RoaringBitmap> audiences) -> FastAggregation.and(audiences.iterator()), MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @param audience dictionary ids of the users
+   * @param limit    maximum number of users to decode
+   * @return a future on the ids of the first users of the audience
+   */
+  public ListenableFuture<List<String>> readUserIds(RoaringBitmap audience, int limit) {
+    List<Integer> ids = new ArrayList<>(Math.min(limit, audience.getCardinality()));
+    PeekableIntIterator iterator = audience.getIntIterator();
+    while (iterator.hasNext() && ids.size() < limit) {
+      ids.add(iterator.next());
+    }
+
+    List<ListenableFuture<ResultSet>> results = new ArrayList<>();
+    for (List<Integer> page : Lists.partition(ids, MAX_USERS_BY_READ)) {
+      results.add(executeAsync(ProductViewsStatements.selectUsersByDictionaryIds(page)));
+    }
+
+    return Futures.transform(Futures.allAsList(results), (List<ResultSet> users) -> toUserIds(ids, users),
+        MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public void close() {
+    CassandraUtils.close();
+  }
+
+  private ListenableFuture<List<RoaringBitmap>> readAll(Collection<String> productIds, long from, long to) {
+    Validate.notEmpty(productIds, "The products must not be empty");
+
+    List<ListenableFuture<RoaringBitmap>> audiences = new ArrayList<>(productIds.size());
+    for (String productId : productIds) {
+      audiences.add(read(productId, from, to));
+    }
+    return Futures.allAsList(audiences);
+  }
+
+  private static RoaringBitmap unionOf(ResultSet bitmaps) {
+    RoaringBitmap union = new RoaringBitmap();
+    for (Row row : bitmaps) {
+      union.or(RoaringBitmaps.fromBytes(row.getBytes(0)));
+    }
+    return union;
+  }
+
+  /**
+   * @return the users in the order of their ids, the rows of a page are not ordered by id
+   */
+  private static List<String> toUserIds(List<Integer> ids, List<ResultSet> users) {
+    Map<Integer, String> userIdsById = new HashMap<>(ids.size() * 2);
+    for (ResultSet page : users) {
+      for (Row row : page) {
+        userIdsById.put(row.getInt(0), row.getString(1));
+      }
+    }
+
+    List<String> userIds = new ArrayList<>(userIdsById.size());
+    for (Integer id : ids) {
+      String userId = userIdsById.get(id);
+      if (userId != null) {
+        userIds.add(userId);
+      }
+    }
+    return userIds;
+  }
+
+  /**
+   * Execute the statement asynchronously, blocks while the maximum of in flight requests is reached
+   */
+  private ListenableFuture<ResultSet> executeAsync(Statement statement) {
+    try {
+      inFlightRequests.acquire();
+    } catch (InterruptedException e) {
+      LOGGER.warn("Interrupted while waiting for an available cassandra request");
+      Thread.currentThread().interrupt();
+      return Futures.immediateFailedFuture(e);
+    }
+
+    ListenableFuture<ResultSet> result = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE, statement);
+    result.addListener(inFlightRequests::release, MoreExecutors.directExecutor());
+    return result;
+  }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+/**
+ * Summary of the views of a product read by a product page with a single request
+ * <p>
+ * The views of today and of the last 7 days, today included, are those of the day of the summary
+ * in UTC. The unique viewers are estimated from the sketches of the days.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductSummary {
+
+  public static final int LAST_DAYS = 7;
+
+  private final String productId;
+  private final long day;
+  private final long total;
+  private final long today;
+  private final long last7Days;
+  private final long uniqueViewersToday;
+  private final long uniqueViewersLast7Days;
+  private final long updatedAt;
+
+  /**
+   * @param productId              id of the product
+   * @param day                    start of the day of the summary in milliseconds since the epoch
+   * @param total                  total of the product views
+   * @param today                  product views of the day
+   * @param last7Days              product views of the last 7 days
+   * @param uniqueViewersToday     estimated number of users who viewed the product in the day
+   * @param uniqueViewersLast7Days estimated number of users who viewed the product in the last 7 days
+   * @param updatedAt              time of the summary in milliseconds since the epoch
+   */
+  public ProductSummary(String productId, long day, long total, long today, long last7Days, long uniqueViewersToday,
+                        long uniqueViewersLast7Days, long updatedAt) {
+    this.productId = productId;
+    this.day = day;
+    this.total = total;
+    this.today = today;
+    this.last7Days = last7Days;
+    this.uniqueViewersToday = uniqueViewersToday;
+    this.uniqueViewersLast7Days = uniqueViewersLast7Days;
+    this.updatedAt = updatedAt;
+  }
+
+  public String getProductId() {
+    return productId;
+  }
+
+  public long getDay() {
+    return day;
+  }
+
+  public long getTotal() {
+    return total;
+  }
+
+  public long getToday() {
+    return today;
+  }
+
+  public long getLast7Days() {
+    return last7Days;
+  }
+
+  public long getUniqueViewersToday() {
+    return uniqueViewersToday;
+  }
+
+  public long getUniqueViewersLast7Days() {
+    return uniqueViewersLast7Days;
+  }
+
+  public long getUpdatedAt() {
+    return updatedAt;
+  }
+
+  @Override
+  public String toString() {
+    return "ProductSummary{" +
+        "productId='" + productId + '\'' +
+        ", day=" + day +
+        ", total=" + total +
+        ", today=" + today +
+        ", last7Days=" + last7Days +
+        ", uniqueViewersToday=" + uniqueViewersToday +
+        ", uniqueViewersLast7Days=" + uniqueViewersLast7Days +
+        ", updatedAt=" + updatedAt +
+        '}';
+  }
+
+}
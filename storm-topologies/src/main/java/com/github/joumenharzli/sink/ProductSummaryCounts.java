@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import org.apache.commons.lang3.Validate;
+
+import com.github.joumenharzli.utils.HyperLogLog;
+import com.github.joumenharzli.utils.TimestampUtils;
+
+/**
+ * Views of a product from which its {@link ProductSummary} is computed
+ * <p>
+ * The counts hold the total of the product views and, for the {@link ProductSummary#LAST_DAYS}
+ * days ending with the day of the counts, the views and the sketch of the viewers of each day.
+ * The views of the days out of this window are only added to the total. The counts are not
+ * thread safe.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductSummaryCounts {
+
+  private final long day;
+  private final int precision;
+  private final long[] views = new long[ProductSummary.LAST_DAYS];
+  private final HyperLogLog[] viewers = new HyperLogLog[ProductSummary.LAST_DAYS];
+  private long total;
+
+  /**
+   * @param day       start of the last day of the counts in milliseconds since the epoch
+   * @param precision precision of the sketches of the viewers
+   */
+  public ProductSummaryCounts(long day, int precision) {
+    this.day = day;
+    this.precision = precision;
+  }
+
+  public long getDay() {
+    return day;
+  }
+
+  /**
+   * @param accessTimestamp access timestamp of the view in milliseconds since the epoch
+   * @param userHash        64 bits hash of the id of the user
+   */
+  public void addView(long accessTimestamp, long userHash) {
+    total++;
+
+    int index = indexOf(TimestampUtils.truncateToDay(accessTimestamp));
+    if (index >= 0) {
+      views[index]++;
+      getViewers(index).add(userHash);
+    }
+  }
+
+  /**
+   * @param views number of views to add to the total
+   */
+  public void addTotal(long views) {
+    total += views;
+  }
+
+  /**
+   * @param day   start of the day in milliseconds since the epoch
+   * @param views number of views of the day, not added to the total
+   */
+  public void addViews(long day, long views) {
+    int index = indexOf(day);
+    if (index >= 0) {
+      this.views[index] += views;
+    }
+  }
+
+  /**
+   * @param day    start of the day in milliseconds since the epoch
+   * @param sketch viewers of the day
+   */
+  public void addViewers(long day, HyperLogLog sketch) {
+    int index = indexOf(day);
+    if (index >= 0) {
+      getViewers(index).merge(sketch);
+    }
+  }
+
+  /**
+   * @param other counts of the same day and precision to add to these counts
+   */
+  public void merge(ProductSummaryCounts other) {
+    Validate.isTrue(other.day == day, "Cannot merge the counts of the day %d into the counts of the day %d",
+        other.day, day);
+
+    total += other.total;
+    for (int index = 0; index < views.length; index++) {
+      views[index] += other.views[index];
+      if (other.viewers[index] != null) {
+        getViewers(index).merge(other.viewers[index]);
+      }
+    }
+  }
+
+  /**
+   * @param productId id of the product
+   * @param timestamp time of the summary in milliseconds since the epoch
+   * @return the summary of the counts
+   */
+  public ProductSummary toSummary(String productId, long timestamp) {
+    long lastDays = 0;
+    HyperLogLog lastDaysViewers = new HyperLogLog(precision);
+
+    for (int index = 0; index < views.length; index++) {
+      lastDays += views[index];
+      if (viewers[index] != null) {
+        lastDaysViewers.merge(viewers[index]);
+      }
+    }
+
+    return new ProductSummary(productId, day, total, views[0], lastDays,
+        viewers[0] == null ? 0 : viewers[0].estimate(), lastDaysViewers.estimate(), timestamp);
+  }
+
+  /**
+   * @return the index of the day in the window, -1 if the day is out of the window
+   */
+  private int indexOf(long day) {
+    long index = (this.day - day) / TimestampUtils.MILLIS_PER_DAY;
+    return day <= this.day && index < views.length ? (int) index : -1;
+  }
+
+  private HyperLogLog getViewers(int index) {
+    if (viewers[index] == null) {
+      viewers[index] = new HyperLogLog(precision);
+    }
+    return viewers[index];
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.util.Map;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.github.joumenharzli.utils.CassandraUtils;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Reader of the summary of a product
+ * <p>
+ * The summary is a single row so it is read with a single request. The reader uses the cluster
+ * shared by the worker from its creation until it is closed.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductSummaryReader implements AutoCloseable {
+
+  /**
+   * @param stormConf configuration of the topology holding the settings of the cluster
+   */
+  public ProductSummaryReader(Map stormConf) {
+    CassandraUtils.open(stormConf);
+  }
+
+  /**
+   * @param productId id of the product
+   * @return a future on the latest summary of the product, null if it was never summarized
+   */
+  public ListenableFuture<ProductSummary> read(String productId) {
+    ListenableFuture<ResultSet> result = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+        ProductViewsStatements.selectSummary(productId));
+
+    return Futures.transform(result, (ResultSet summary) -> toSummary(productId, summary),
+        MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public void close() {
+    CassandraUtils.close();
+  }
+
+  private static ProductSummary toSummary(String productId, ResultSet summary) {
+    Row row = summary.one();
+    if (row == null) {
+      return null;
+    }
+
+    return new ProductSummary(productId, row.getTimestamp(0).getTime(), row.getLong(1), row.getLong(2),
+        row.getLong(3), row.getLong(4), row.getLong(5), row.getTimestamp(6).getTime());
+  }
+
+}
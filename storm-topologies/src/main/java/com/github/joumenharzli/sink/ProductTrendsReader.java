@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.github.joumenharzli.utils.CassandraUtils;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Reader of the trending products of a window
+ * <p>
+ * The ranking of a window is a single row so it is read with a single request. The reader uses
+ * the cluster shared by the worker from its creation until it is closed.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductTrendsReader implements AutoCloseable {
+
+  /**
+   * @param stormConf configuration of the topology holding the settings of the cluster
+   */
+  public ProductTrendsReader(Map stormConf) {
+    CassandraUtils.open(stormConf);
+  }
+
+  /**
+   * @param window name of the window
+   * @return a future on the top products of the window by descending views, empty if the window
+   * was never ranked
+   */
+  public ListenableFuture<List<TrendingProduct>> read(String window) {
+    ListenableFuture<ResultSet> result = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+        ProductViewsStatements.selectTrendingProducts(window));
+
+    return Futures.transform(result, ProductTrendsReader::toTrendingProducts, MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public void close() {
+    CassandraUtils.close();
+  }
+
+  private static List<TrendingProduct> toTrendingProducts(ResultSet ranking) {
+    Row row = ranking.one();
+    if (row == null) {
+      return Collections.emptyList();
+    }
+
+    List<String> productIds = row.getList(0, String.class);
+    List<Long> views = row.getList(1, Long.class);
+
+    List<TrendingProduct> products = new ArrayList<>(productIds.size());
+    for (int i = 0; i < productIds.size(); i++) {
+      products.add(new TrendingProduct(productIds.get(i), views.get(i)));
+    }
+    return products;
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.util.Map;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.storm.utils.Utils;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.github.joumenharzli.utils.CassandraUtils;
+import com.github.joumenharzli.utils.HyperLogLog;
+import com.github.joumenharzli.utils.TimestampUtils;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Reader of the number of users who viewed a product in a range of days
+ * <p>
+ * The sketches of the days are read from the partition of the product and merged so a user who
+ * viewed the product in several days of the range is counted once. The reader uses the cluster
+ * shared by the worker from its creation until it is closed.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductUniqueViewersReader implements AutoCloseable {
+
+  private final int precision;
+
+  /**
+   * @param stormConf configuration of the topology holding the settings of the cluster and the
+   *                  precision of the sketches used by the writers
+   */
+  public ProductUniqueViewersReader(Map stormConf) {
+    this.precision = Utils.getInt(stormConf.get(UNIQUE_VIEWERS_PRECISION_CONFIG), UNIQUE_VIEWERS_PRECISION);
+    CassandraUtils.open(stormConf);
+  }
+
+  /**
+   * @param productId id of the product
+   * @param from      a time of the first day in milliseconds since the epoch
+   * @param to        a time of the last day in milliseconds since the epoch, inclusive
+   * @return a future on the estimated number of users who viewed the product in the days
+   */
+  public ListenableFuture<Long> read(String productId, long from, long to) {
+    return Futures.transform(readSketch(productId, from, to), HyperLogLog::estimate, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @param productId id of the product
+   * @param from      a time of the first day in milliseconds since the epoch
+   * @param to        a time of the last day in milliseconds since the epoch, inclusive
+   * @return a future on the union of the sketches of the days, empty if the product was not viewed
+   */
+  public ListenableFuture<HyperLogLog> readSketch(String productId, long from, long to) {
+    Validate.isTrue(from <= to, "The start of the range must not be after its end");
+
+    ListenableFuture<ResultSet> result = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+        ProductViewsStatements.selectUniqueViewers(productId, TimestampUtils.truncateToDay(from),
+            TimestampUtils.truncateToDay(to)));
+
+    return Futures.transform(result, this::union, MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public void close() {
+    CassandraUtils.close();
+  }
+
+  private HyperLogLog union(ResultSet sketches) {
+    HyperLogLog union = new HyperLogLog(precision);
+    for (Row row : sketches) {
+      union.merge(HyperLogLog.fromBytes(row.getBytes(0)));
+    }
+    return union;
+  }
+
+}
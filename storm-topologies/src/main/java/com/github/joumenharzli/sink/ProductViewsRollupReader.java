@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.Validate;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.github.joumenharzli.utils.CassandraUtils;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Reader of the views of a product by period at a resolution
+ * <p>
+ * The periods of a range are clustered in the partition of the product so they are read with a
+ * single request. The periods expired or without views are missing from the result. The reader
+ * uses the cluster shared by the worker from its creation until it is closed.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductViewsRollupReader implements AutoCloseable {
+
+  /**
+   * @param stormConf configuration of the topology holding the settings of the cluster
+   */
+  public ProductViewsRollupReader(Map stormConf) {
+    CassandraUtils.open(stormConf);
+  }
+
+  /**
+   * @param resolution resolution of the periods
+   * @param productId  id of the product
+   * @param from       a time of the first period in milliseconds since the epoch
+   * @param to         a time of the last period in milliseconds since the epoch, inclusive
+   * @return a future on the views of the product by start of period in ascending order
+   */
+  public ListenableFuture<Map<Long, Long>> read(RollupResolution resolution, String productId, long from, long to) {
+    Validate.isTrue(from <= to, "The start of the range must not be after its end");
+
+    ListenableFuture<ResultSet> result = CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+        ProductViewsStatements.selectRollups(resolution, productId, resolution.truncate(from), resolution.truncate(to)));
+
+    return Futures.transform(result, ProductViewsRollupReader::toViewsByPeriod, MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public void close() {
+    CassandraUtils.close();
+  }
+
+  private static Map<Long, Long> toViewsByPeriod(ResultSet rollups) {
+    Map<Long, Long> views = new LinkedHashMap<>();
+    for (Row row : rollups) {
+      views.put(row.getTimestamp(0).getTime(), row.getLong(1));
+    }
+    return views;
+  }
+
+}
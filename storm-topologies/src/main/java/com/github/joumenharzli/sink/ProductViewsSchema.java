@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.utils.CassandraUtils;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Schema of the web analytics keyspace provisioned before the submission of the topology
+ * <p>
+ * The access logs are partitioned by day and by a bucket derived from the user id then clustered
+ * by timestamp, so a time range is read from the buckets of its days only. The number of buckets
+ * is part of the layout, the readers must use the number of buckets used by the writers.
+ * <p>
+ * The total of a hot product is spread over the partitions of its shards, the shard 0 being the
+ * counter of the unsharded table, and the total is the sum of its shards.
+ * <p>
+ * The users who viewed a product in a day are stored as a HyperLogLog sketch clustered by day in
+ * the partition of the product, so the sketches of a range of days are read from a single partition.
+ * <p>
+ * The rollups of the views of a product are clustered by period in the partition of the product in
+ * a table by resolution, so the periods of a range are read from a single partition. They are
+ * stored as counts rather than counters since the counters cannot expire.
+ * <p>
+ * The trending products of a window are stored as a single row of ranked ids and views replaced at
+ * each ranking, so the top products are read with a single request.
+ * <p>
+ * The users who viewed a product in a day are also stored exactly as a Roaring bitmap of their
+ * dictionary ids, the ids being assigned once by a lightweight transaction from blocks reserved in
+ * the sequence of the dictionary.
+ * <p>
+ * The summary of a product is a single row written from the views counted by the topology, so a
+ * product page reads its views and unique viewers with a single request.
+ *
+ * @author Joumen Harzli
+ */
+public final class ProductViewsSchema {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProductViewsSchema.class);
+
+  private static final String SYSTEM_KEYSPACE = "system";
+
+  private static final String CREATE_KEYSPACE_CQL =
+      "create keyspace if not exists " + WEB_ANALYTICS_KEYSPACE + " with replication = %s";
+
+  private static final String CREATE_ROLLUP_TABLE_CQL =
+      "create table if not exists %s(productId text, period timestamp, count bigint, "
+          + "primary key (productId, period)) with clustering order by (period desc)";
+
+  private static final List<String> CREATE_TABLES_CQL = Arrays.asList(
+      "create table if not exists products_access_log_by_day(day timestamp, bucket int, timestamp timestamp, "
+          + "id uuid, userId text, productId text, primary key ((day, bucket), timestamp, id)) "
+          + "with clustering order by (timestamp asc, id asc)",
+      "create table if not exists products_views_total(productId text primary key, count counter)",
+      "create table if not exists products_views_total_sharded(productId text, shard int, count counter, "
+          + "primary key ((productId, shard)))",
+      "create table if not exists products_views_by_timestamp(productId text, timestamp timestamp, "
+          + "count counter, primary key (productId, timestamp)) with clustering order by (timestamp desc)",
+      "create table if not exists products_views_by_user(productId text, userId text, timestamp timestamp, "
+          + "count counter, primary key (userId, productId, timestamp)) with clustering order by (productId desc)",
+      "create table if not exists products_unique_viewers_by_day(productId text, day timestamp, sketch blob, "
+          + "primary key (productId, day)) with clustering order by (day desc)",
+      "create table if not exists products_trending(window text primary key, timestamp timestamp, "
+          + "productIds list<text>, views list<bigint>)",
+      "create table if not exists products_audience_by_day(productId text, day timestamp, bitmap blob, "
+          + "primary key (productId, day)) with clustering order by (day desc)",
+      "create table if not exists users_dictionary(userId text primary key, id int)",
+      "create table if not exists users_by_dictionary_id(id int primary key, userId text)",
+      "create table if not exists users_dictionary_sequence(name text primary key, next int)",
+      "create table if not exists products_summary(productId text primary key, day timestamp, total bigint, "
+          + "today bigint, last7Days bigint, uniqueViewersToday bigint, uniqueViewersLast7Days bigint, "
+          + "updatedAt timestamp)",
+      "create table if not exists product_recommendations(userId text, productId text, rating double, "
+          + "timestamp timestamp, primary key ((userId, productId), timestamp)) with clustering order by (timestamp desc)");
+
+  public static final String PRODUCTS_VIEWS_TOTAL_TABLE = "products_views_total";
+  public static final String PRODUCTS_VIEWS_TOTAL_SHARDED_TABLE = "products_views_total_sharded";
+  public static final String PRODUCTS_VIEWS_BY_TIMESTAMP_TABLE = "products_views_by_timestamp";
+  public static final String PRODUCTS_VIEWS_BY_USER_TABLE = "products_views_by_user";
+
+  private ProductViewsSchema() {
+  }
+
+  /**
+   * Create the keyspace and the tables that do not exist
+   *
+   * @param stormConf configuration of the topology holding the settings of the cluster
+   */
+  public static void create(Map stormConf) {
+    CassandraUtils.open(stormConf);
+    try {
+
+      String replication = (String) stormConf.get(CASSANDRA_REPLICATION_CONFIG);
+      LOGGER.info("Creating the keyspace {} with the replication {}", WEB_ANALYTICS_KEYSPACE, replication);
+      CassandraUtils.execute(SYSTEM_KEYSPACE, String.format(CREATE_KEYSPACE_CQL, replication));
+
+      for (String cql : CREATE_TABLES_CQL) {
+        CassandraUtils.execute(WEB_ANALYTICS_KEYSPACE, cql);
+      }
+      for (RollupResolution resolution : RollupResolution.values()) {
+        CassandraUtils.execute(WEB_ANALYTICS_KEYSPACE, String.format(CREATE_ROLLUP_TABLE_CQL, resolution.getTable()));
+      }
+
+    } finally {
+      CassandraUtils.close();
+    }
+  }
+
+  /**
+   * Remove all the counters of the tables, the counters can only be incremented so the tables are
+   * truncated before writing absolute counts
+   *
+   * @param stormConf configuration of the topology holding the settings of the cluster
+   * @param tables    names of the counter tables
+   */
+  public static void truncate(Map stormConf, List<String> tables) {
+    CassandraUtils.open(stormConf);
+    try {
+
+      for (String table : tables) {
+        LOGGER.info("Truncating the table {}", table);
+        CassandraUtils.execute(WEB_ANALYTICS_KEYSPACE, "truncate " + table);
+      }
+
+    } finally {
+      CassandraUtils.close();
+    }
+  }
+
+  /**
+   * @param stormConf configuration of the topology holding the settings of the cluster
+   * @param tables    names of the tables
+   * @return the tables holding at least a row, each table is read with a single request
+   */
+  public static List<String> getNonEmptyTables(Map stormConf, List<String> tables) {
+    CassandraUtils.open(stormConf);
+    try {
+
+      List<String> nonEmptyTables = new ArrayList<>();
+      for (String table : tables) {
+        if (CassandraUtils.execute(WEB_ANALYTICS_KEYSPACE, "select * from " + table + " limit 1").one() != null) {
+          nonEmptyTables.add(table);
+        }
+      }
+      return nonEmptyTables;
+
+    } finally {
+      CassandraUtils.close();
+    }
+  }
+
+  /**
+   * @param stormConf configuration of the topology
+   * @return the number of buckets of the access logs of a day
+   */
+  public static int getAccessLogBuckets(Map stormConf) {
+    return Utils.getInt(stormConf.get(CASSANDRA_ACCESS_LOG_BUCKETS_CONFIG), CASSANDRA_ACCESS_LOG_BUCKETS);
+  }
+
+  /**
+   * @param stormConf configuration of the topology
+   * @return the shards of the total of a product stored in the sharded table, empty when the
+   * total is not sharded
+   */
+  public static List<Integer> getTotalShards(Map stormConf) {
+    int shardsCount = Utils.getInt(stormConf.get(COUNTER_TOTAL_SHARDS_CONFIG), COUNTER_TOTAL_SHARDS);
+
+    List<Integer> shards = new ArrayList<>();
+    for (int shard = 1; shard < shardsCount; shard++) {
+      shards.add(shard);
+    }
+    return shards;
+  }
+
+  /**
+   * The hash of the user id is mixed so close ids are spread over the buckets, the
+   * hash of a string is specified by {@link String#hashCode()} so it is the same in every worker
+   *
+   * @param userId  id of the user
+   * @param buckets number of buckets of a day
+   * @return the bucket of the access logs of the user
+   */
+  public static int getAccessLogBucket(String userId, int buckets) {
+    int hash = userId.hashCode() * 0x9E3779B9;
+    return Math.floorMod(hash ^ (hash >>> 16), buckets);
+  }
+
+}
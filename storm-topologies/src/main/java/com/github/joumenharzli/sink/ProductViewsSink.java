@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.util.List;
+import java.util.Set;
+
+import com.github.joumenharzli.utils.HyperLogLog;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Storage of the product views written by the bolts
+ * <p>
+ * The writes are asynchronous: each operation returns a future completed when the write is
+ * done in the storage or failed if the write cannot be done. A sink is created for each executor
+ * by {@link ProductViewsSinks} and closed when the executor is cleaned up.
+ *
+ * @author Joumen Harzli
+ */
+public interface ProductViewsSink extends AutoCloseable {
+
+  /**
+   * @param accessLogs access logs to append
+   * @return a future completed when all the access logs are written
+   */
+  ListenableFuture<?> appendAccessLogs(List<ProductAccessLog> accessLogs);
+
+  /**
+   * @param productId id of the product
+   * @param increment number of views to add
+   * @return a future completed when the total of the product views is incremented
+   */
+  ListenableFuture<?> incrementTotal(String productId, long increment);
+
+  /**
+   * Increment a shard of the total of a hot product, the sinks storing a single counter by product
+   * ignore the shard
+   *
+   * @param productId id of the product
+   * @param shard     shard of the total, 0 for the counter of the product
+   * @param increment number of views to add
+   * @return a future completed when the shard of the total of the product views is incremented
+   */
+  default ListenableFuture<?> incrementTotal(String productId, int shard, long increment) {
+    return incrementTotal(productId, increment);
+  }
+
+  /**
+   * @param productId id of the product
+   * @param day       start of the day in milliseconds since the epoch
+   * @param increment number of views to add
+   * @return a future completed when the product views of the day are incremented
+   */
+  ListenableFuture<?> incrementByDay(String productId, long day, long increment);
+
+  /**
+   * @param userId    id of the user
+   * @param productId id of the product
+   * @param day       start of the day in milliseconds since the epoch
+   * @param increment number of views to add
+   * @return a future completed when the product views of the user in the day are incremented
+   */
+  ListenableFuture<?> incrementByUser(String userId, String productId, long day, long increment);
+
+  /**
+   * Merge a sketch of the users who viewed a product in a day into the stored sketch, the sinks
+   * that do not store the sketches ignore it
+   * <p>
+   * The sketch belongs to the sink once passed. The merges of the same product and day must not be
+   * concurrent since the stored sketch is read then written.
+   *
+   * @param productId id of the product
+   * @param day       start of the day in milliseconds since the epoch
+   * @param sketch    sketch of the hashes of the user ids
+   * @return a future completed when the sketch is merged
+   */
+  default ListenableFuture<?> mergeUniqueViewers(String productId, long day, HyperLogLog sketch) {
+    return Futures.immediateFuture(null);
+  }
+
+  /**
+   * Add users to the exact audience of a product in a day, the sinks that do not store the
+   * audiences ignore them
+   * <p>
+   * The merges of the same product and day must not be concurrent since the stored audience may be
+   * read then written.
+   *
+   * @param productId id of the product
+   * @param day       start of the day in milliseconds since the epoch
+   * @param userIds   ids of the users who viewed the product in the day
+   * @return a future completed when the users are added
+   */
+  default ListenableFuture<?> mergeAudience(String productId, long day, Set<String> userIds) {
+    return Futures.immediateFuture(null);
+  }
+
+  /**
+   * Add views to the rollup of a product in a period, the sinks that do not store the rollups
+   * ignore them
+   * <p>
+   * The adds of the same resolution, product and period must not be concurrent since the stored
+   * count may be read then written.
+   *
+   * @param resolution resolution of the rollup
+   * @param productId  id of the product
+   * @param period     start of the period in milliseconds since the epoch
+   * @param views      number of views to add
+   * @return a future completed when the views are added
+   */
+  default ListenableFuture<?> addRollup(RollupResolution resolution, String productId, long period, long views) {
+    return Futures.immediateFuture(null);
+  }
+
+  /**
+   * Read the stored views from which the summary of a product is computed, the sinks that cannot
+   * read the stored views return null
+   *
+   * @param productId id of the product
+   * @param day       start of the last day of the counts in milliseconds since the epoch
+   * @param precision precision of the sketches of the viewers
+   * @return a future on the stored counts of the product
+   */
+  default ListenableFuture<ProductSummaryCounts> readSummaryCounts(String productId, long day, int precision) {
+    return Futures.immediateFuture(null);
+  }
+
+  /**
+   * @param summary summary replacing the previous summary of the product
+   * @return a future completed when the summary is written
+   */
+  ListenableFuture<?> writeSummary(ProductSummary summary);
+
+  /**
+   * Replace the top products of a window, the sinks that do not store the rankings ignore them
+   *
+   * @param window    name of the window
+   * @param timestamp time of the ranking in milliseconds since the epoch
+   * @param products  top products of the window by descending views
+   * @return a future completed when the ranking is written
+   */
+  default ListenableFuture<?> writeTrendingProducts(String window, long timestamp, List<TrendingProduct> products) {
+    return Futures.immediateFuture(null);
+  }
+
+  /**
+   * Release the resources of the sink
+   */
+  @Override
+  default void close() {
+    /* nothing to release by default */
+  }
+
+}
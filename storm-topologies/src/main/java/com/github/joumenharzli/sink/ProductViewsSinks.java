@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.joumenharzli.utils.CassandraPoolMetric;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Creation of the sink selected by the {@code SINK_CONFIG} of the topology configuration
+ * <p>
+ * The sink is one of {@code cassandra}, {@code memory} and {@code file} or the name of a class
+ * implementing {@link ProductViewsSink} with a public constructor taking the configuration of the
+ * topology. The {@link CassandraPoolMetric} reports the pool of the worker so it is registered by
+ * the first executor of the worker creating a cassandra sink.
+ *
+ * @author Joumen Harzli
+ */
+public final class ProductViewsSinks {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProductViewsSinks.class);
+
+  private static final AtomicBoolean POOL_METRIC_REGISTERED = new AtomicBoolean();
+
+  private ProductViewsSinks() {
+  }
+
+  /**
+   * @param stormConf configuration of the topology
+   * @param context   context of the executor
+   * @return the sink of the executor
+   * @throws IllegalArgumentException if the sink cannot be created
+   */
+  public static ProductViewsSink create(Map stormConf, TopologyContext context) {
+    if (SINK_CASSANDRA.equals(getSinkName(stormConf)) && POOL_METRIC_REGISTERED.compareAndSet(false, true)) {
+      context.registerMetric(CassandraPoolMetric.NAME, new CassandraPoolMetric(),
+          Utils.getInt(stormConf.get(CASSANDRA_METRICS_BUCKET_SECS_CONFIG), CASSANDRA_METRICS_BUCKET_SECS));
+    }
+    return create(stormConf, String.format("%s-%d", context.getThisComponentId(), context.getThisTaskId()));
+  }
+
+  /**
+   * Create a sink outside of a topology
+   *
+   * @param stormConf configuration of the topology
+   * @param name      name of the user of the sink, unique among the users of the file sink
+   * @return the sink
+   * @throws IllegalArgumentException if the sink cannot be created
+   */
+  public static ProductViewsSink create(Map stormConf, String name) {
+    String sinkName = getSinkName(stormConf);
+
+    LOGGER.debug("Creating the {} sink of {}", sinkName, name);
+
+    switch (sinkName) {
+      case SINK_CASSANDRA:
+        return new CassandraProductViewsSink(stormConf);
+      case SINK_MEMORY:
+        return InMemoryProductViewsSink.getInstance();
+      case SINK_FILE:
+        return createFileSink(stormConf, name);
+      default:
+        return createCustomSink(sinkName, stormConf);
+    }
+  }
+
+  /**
+   * @param stormConf configuration of the topology
+   * @return the name of the selected sink
+   */
+  public static String getSinkName(Map stormConf) {
+    Object sink = stormConf.get(SINK_CONFIG);
+    return sink == null ? SINK : sink.toString();
+  }
+
+  /**
+   * Each user appends to its own file so the executors never share a file
+   */
+  private static ProductViewsSink createFileSink(Map stormConf, String name) {
+    Object directory = stormConf.get(SINK_FILE_DIRECTORY_CONFIG);
+    String fileName = name + ".views";
+
+    return new FileProductViewsSink(Paths.get(directory == null ? SINK_FILE_DIRECTORY : directory.toString(), fileName));
+  }
+
+  private static ProductViewsSink createCustomSink(String className, Map stormConf) {
+    try {
+      return Class.forName(className)
+          .asSubclass(ProductViewsSink.class)
+          .getConstructor(Map.class)
+          .newInstance(stormConf);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalArgumentException(String.format("Unknown sink %s", className), e);
+    } catch (ClassCastException | ReflectiveOperationException e) {
+      throw new IllegalArgumentException(String.format("Unable to create the sink %s", className), e);
+    }
+  }
+
+}
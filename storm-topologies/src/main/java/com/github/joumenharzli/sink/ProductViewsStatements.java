@@ -0,0 +1,498 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.utils.UUIDs;
+import com.github.joumenharzli.utils.CassandraUtils;
+import com.github.joumenharzli.utils.TimestampUtils;
+
+import static com.github.joumenharzli.Configuration.WEB_ANALYTICS_KEYSPACE;
+
+/**
+ * Statements writing the product views to cassandra
+ * <p>
+ * The counter updates are not idempotent so they are never executed speculatively. The sketches
+ * and the rollups are read then written by the same executor so both use a quorum, a read sees the
+ * previous write.
+ *
+ * @author Joumen Harzli
+ */
+final class ProductViewsStatements {
+
+  private static final String INSERT_PRODUCT_ACCESS_LOG_CQL =
+      "insert into products_access_log_by_day(day,bucket,timestamp,id,userId,productId) Values (?,?,?,?,?,?)";
+
+  private static final String SELECT_PRODUCT_ACCESS_LOGS_CQL =
+      "select userId,productId,timestamp from products_access_log_by_day "
+          + "where day=? and bucket=? and timestamp>=? and timestamp<?";
+  private static final String SELECT_PRODUCT_ACCESS_LOG_PARTITIONS_CQL =
+      "select distinct day,bucket from products_access_log_by_day";
+
+  private static final String UPDATE_PRODUCT_VIEWS_TOTAL_CQL =
+      "update products_views_total set count=count+? where productId=?";
+
+  private static final String UPDATE_PRODUCT_VIEWS_TOTAL_SHARD_CQL =
+      "update products_views_total_sharded set count=count+? where productId=? and shard=?";
+
+  private static final String SELECT_PRODUCT_VIEWS_TOTAL_CQL =
+      "select count from products_views_total where productId=?";
+
+  private static final String SELECT_PRODUCT_VIEWS_TOTAL_SHARDS_CQL =
+      "select count from products_views_total_sharded where productId=? and shard in ?";
+
+  private static final String UPDATE_PRODUCT_VIEWS_BY_TIMESTAMP_CQL =
+      "update products_views_by_timestamp set count=count+? where productId=? and timestamp=?";
+
+  private static final String SELECT_PRODUCT_VIEWS_BY_TIMESTAMP_RANGE_CQL =
+      "select count,timestamp from products_views_by_timestamp where productId=? and timestamp>=? and timestamp<=?";
+
+  private static final String UPDATE_PRODUCT_VIEWS_BY_USER_CQL =
+      "update products_views_by_user set count=count+? where productid=? and timestamp=? and userid=?";
+
+  private static final String SELECT_PRODUCT_UNIQUE_VIEWERS_CQL =
+      "select sketch from products_unique_viewers_by_day where productId=? and day=?";
+
+  private static final String SELECT_PRODUCT_UNIQUE_VIEWERS_RANGE_CQL =
+      "select sketch,day from products_unique_viewers_by_day where productId=? and day>=? and day<=?";
+
+  private static final String INSERT_PRODUCT_UNIQUE_VIEWERS_CQL =
+      "insert into products_unique_viewers_by_day(productId,day,sketch) Values (?,?,?)";
+
+  private static final String INSERT_PRODUCTS_TRENDING_CQL =
+      "insert into products_trending(window,timestamp,productIds,views) Values (?,?,?,?)";
+
+  private static final String SELECT_PRODUCTS_TRENDING_CQL =
+      "select productIds,views from products_trending where window=?";
+
+  private static final String SELECT_PRODUCT_VIEWS_ROLLUP_CQL =
+      "select count from %s where productId=? and period=?";
+
+  private static final String SELECT_PRODUCT_VIEWS_ROLLUP_RANGE_CQL =
+      "select period,count from %s where productId=? and period>=? and period<=? order by period asc";
+
+  private static final String INSERT_PRODUCT_VIEWS_ROLLUP_CQL =
+      "insert into %s(productId,period,count) Values (?,?,?) using ttl ?";
+
+  private static final String INSERT_PRODUCT_SUMMARY_CQL =
+      "insert into products_summary(productId,day,total,today,last7Days,uniqueViewersToday,uniqueViewersLast7Days,"
+          + "updatedAt) Values (?,?,?,?,?,?,?,?)";
+
+  private static final String SELECT_PRODUCT_SUMMARY_CQL =
+      "select day,total,today,last7Days,uniqueViewersToday,uniqueViewersLast7Days,updatedAt "
+          + "from products_summary where productId=?";
+
+  private static final String SELECT_PRODUCT_AUDIENCE_CQL =
+      "select bitmap from products_audience_by_day where productId=? and day=?";
+
+  private static final String SELECT_PRODUCT_AUDIENCE_RANGE_CQL =
+      "select bitmap from products_audience_by_day where productId=? and day>=? and day<=?";
+
+  private static final String INSERT_PRODUCT_AUDIENCE_CQL =
+      "insert into products_audience_by_day(productId,day,bitmap) Values (?,?,?)";
+
+  private static final String SELECT_USER_DICTIONARY_IDS_CQL =
+      "select userId,id from users_dictionary where userId in ?";
+
+  private static final String INSERT_USER_DICTIONARY_ID_CQL =
+      "insert into users_dictionary(userId,id) Values (?,?) if not exists";
+
+  private static final String SELECT_USERS_BY_DICTIONARY_IDS_CQL =
+      "select id,userId from users_by_dictionary_id where id in ?";
+
+  private static final String INSERT_USER_BY_DICTIONARY_ID_CQL =
+      "insert into users_by_dictionary_id(id,userId) Values (?,?)";
+
+  private static final String SELECT_DICTIONARY_SEQUENCE_CQL =
+      "select next from users_dictionary_sequence where name=?";
+
+  private static final String INSERT_DICTIONARY_SEQUENCE_CQL =
+      "insert into users_dictionary_sequence(name,next) Values (?,?) if not exists";
+
+  private static final String UPDATE_DICTIONARY_SEQUENCE_CQL =
+      "update users_dictionary_sequence set next=? where name=? if next=?";
+
+  private ProductViewsStatements() {
+  }
+
+  /**
+   * The id is generated by the client so the insert is idempotent, it can be executed
+   * speculatively
+   *
+   * @param userId          id of the user
+   * @param productId       id of the product
+   * @param accessTimestamp access timestamp in milliseconds since the epoch
+   * @param bucket          bucket of the user in the day of the access
+   * @return the statement inserting the access log
+   */
+  static Statement insertAccessLog(String userId, String productId, long accessTimestamp, int bucket) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, INSERT_PRODUCT_ACCESS_LOG_CQL,
+        new Date(TimestampUtils.truncateToDay(accessTimestamp)), bucket, new Date(accessTimestamp),
+        UUIDs.random(), userId, productId)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param day           start of the day in milliseconds since the epoch
+   * @param bucket        bucket of the day
+   * @param fromTimestamp start of the range in milliseconds since the epoch, inclusive
+   * @param toTimestamp   end of the range in milliseconds since the epoch, exclusive
+   * @return the statement selecting the access logs of the range in the partition
+   */
+  static Statement selectAccessLogs(long day, int bucket, long fromTimestamp, long toTimestamp) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_PRODUCT_ACCESS_LOGS_CQL,
+        new Date(day), bucket, new Date(fromTimestamp), new Date(toTimestamp))
+        .setIdempotent(true);
+  }
+
+  /**
+   * @return the statement selecting the day and the bucket of all the partitions of the access logs
+   */
+  static Statement selectAccessLogPartitions() {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_PRODUCT_ACCESS_LOG_PARTITIONS_CQL)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param productId id of the product
+   * @param increment number of views to add
+   * @return the statement incrementing the total of the product views
+   */
+  static Statement incrementTotal(String productId, long increment) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, UPDATE_PRODUCT_VIEWS_TOTAL_CQL, increment, productId)
+        .setIdempotent(false);
+  }
+
+  /**
+   * @param productId id of the product
+   * @param shard     shard of the total, strictly positive
+   * @param increment number of views to add
+   * @return the statement incrementing a shard of the total of the product views
+   */
+  static Statement incrementTotalShard(String productId, int shard, long increment) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, UPDATE_PRODUCT_VIEWS_TOTAL_SHARD_CQL, increment, productId, shard)
+        .setIdempotent(false);
+  }
+
+  /**
+   * @param productId id of the product
+   * @return the statement selecting the unsharded total of the product views
+   */
+  static Statement selectTotal(String productId) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_PRODUCT_VIEWS_TOTAL_CQL, productId)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param productId id of the product
+   * @param shards    the shards to select
+   * @return the statement selecting the shards of the total of the product views
+   */
+  static Statement selectTotalShards(String productId, List<Integer> shards) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_PRODUCT_VIEWS_TOTAL_SHARDS_CQL, productId, shards)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param productId id of the product
+   * @param day       start of the day in milliseconds since the epoch
+   * @param increment number of views to add
+   * @return the statement incrementing the product views of the day
+   */
+  static Statement incrementByDay(String productId, long day, long increment) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, UPDATE_PRODUCT_VIEWS_BY_TIMESTAMP_CQL,
+        increment, productId, new Date(day))
+        .setIdempotent(false);
+  }
+
+  /**
+   * @param productId id of the product
+   * @param fromDay   start of the first day in milliseconds since the epoch
+   * @param toDay     start of the last day in milliseconds since the epoch, inclusive
+   * @return the statement selecting the product views of the days of the range with their day
+   */
+  static Statement selectByDays(String productId, long fromDay, long toDay) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_PRODUCT_VIEWS_BY_TIMESTAMP_RANGE_CQL,
+        productId, new Date(fromDay), new Date(toDay))
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param productId id of the product
+   * @param day       start of the day in milliseconds since the epoch
+   * @return the statement selecting the sketch of the users who viewed the product in the day
+   */
+  static Statement selectUniqueViewers(String productId, long day) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_PRODUCT_UNIQUE_VIEWERS_CQL, productId, new Date(day))
+        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param productId id of the product
+   * @param fromDay   start of the first day in milliseconds since the epoch
+   * @param toDay     start of the last day in milliseconds since the epoch, inclusive
+   * @return the statement selecting the sketches of the days of the range with their day
+   */
+  static Statement selectUniqueViewers(String productId, long fromDay, long toDay) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_PRODUCT_UNIQUE_VIEWERS_RANGE_CQL,
+        productId, new Date(fromDay), new Date(toDay))
+        .setIdempotent(true);
+  }
+
+  /**
+   * The sketch replaces the stored one, writing the same sketch twice is idempotent
+   *
+   * @param productId id of the product
+   * @param day       start of the day in milliseconds since the epoch
+   * @param sketch    serialized sketch of the users who viewed the product in the day
+   * @return the statement writing the sketch
+   */
+  static Statement insertUniqueViewers(String productId, long day, byte[] sketch) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, INSERT_PRODUCT_UNIQUE_VIEWERS_CQL,
+        productId, new Date(day), ByteBuffer.wrap(sketch))
+        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param resolution resolution of the rollup
+   * @param productId  id of the product
+   * @param period     start of the period in milliseconds since the epoch
+   * @return the statement selecting the views of the product in the period
+   */
+  static Statement selectRollup(RollupResolution resolution, String productId, long period) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE,
+        String.format(SELECT_PRODUCT_VIEWS_ROLLUP_CQL, resolution.getTable()), productId, new Date(period))
+        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param resolution resolution of the rollup
+   * @param productId  id of the product
+   * @param fromPeriod start of the first period in milliseconds since the epoch
+   * @param toPeriod   start of the last period in milliseconds since the epoch, inclusive
+   * @return the statement selecting the periods of the range with their views
+   */
+  static Statement selectRollups(RollupResolution resolution, String productId, long fromPeriod, long toPeriod) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE,
+        String.format(SELECT_PRODUCT_VIEWS_ROLLUP_RANGE_CQL, resolution.getTable()),
+        productId, new Date(fromPeriod), new Date(toPeriod))
+        .setIdempotent(true);
+  }
+
+  /**
+   * The count replaces the stored one and its time to live restarts, writing the same count twice
+   * is idempotent
+   *
+   * @param resolution resolution of the rollup
+   * @param productId  id of the product
+   * @param period     start of the period in milliseconds since the epoch
+   * @param count      views of the product in the period
+   * @param ttlSecs    time to live of the count in seconds, 0 to keep it
+   * @return the statement writing the views of the product in the period
+   */
+  static Statement insertRollup(RollupResolution resolution, String productId, long period, long count, int ttlSecs) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE,
+        String.format(INSERT_PRODUCT_VIEWS_ROLLUP_CQL, resolution.getTable()), productId, new Date(period), count, ttlSecs)
+        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param productId id of the product
+   * @param day       start of the day in milliseconds since the epoch
+   * @return the statement selecting the bitmap of the users who viewed the product in the day
+   */
+  static Statement selectAudience(String productId, long day) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_PRODUCT_AUDIENCE_CQL, productId, new Date(day))
+        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param productId id of the product
+   * @param fromDay   start of the first day in milliseconds since the epoch
+   * @param toDay     start of the last day in milliseconds since the epoch, inclusive
+   * @return the statement selecting the bitmaps of the days of the range
+   */
+  static Statement selectAudience(String productId, long fromDay, long toDay) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_PRODUCT_AUDIENCE_RANGE_CQL,
+        productId, new Date(fromDay), new Date(toDay))
+        .setIdempotent(true);
+  }
+
+  /**
+   * The bitmap replaces the stored one, writing the same bitmap twice is idempotent
+   *
+   * @param productId id of the product
+   * @param day       start of the day in milliseconds since the epoch
+   * @param bitmap    serialized bitmap of the dictionary ids of the users who viewed the product in the day
+   * @return the statement writing the bitmap
+   */
+  static Statement insertAudience(String productId, long day, byte[] bitmap) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, INSERT_PRODUCT_AUDIENCE_CQL,
+        productId, new Date(day), ByteBuffer.wrap(bitmap))
+        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param userIds ids of the users
+   * @return the statement selecting the users and their dictionary id, the users without id are
+   * not returned
+   */
+  static Statement selectUserDictionaryIds(List<String> userIds) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_USER_DICTIONARY_IDS_CQL, userIds)
+        .setIdempotent(true);
+  }
+
+  /**
+   * The insert is a lightweight transaction so a single id is assigned to a user, the row of
+   * the assigned id is returned when the insert is not applied
+   *
+   * @param userId id of the user
+   * @param id     dictionary id to assign
+   * @return the statement assigning the dictionary id to the user if no id is assigned
+   */
+  static Statement insertUserDictionaryId(String userId, int id) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, INSERT_USER_DICTIONARY_ID_CQL, userId, id)
+        .setSerialConsistencyLevel(ConsistencyLevel.LOCAL_SERIAL)
+        .setIdempotent(false);
+  }
+
+  /**
+   * @param ids dictionary ids of users
+   * @return the statement selecting the dictionary ids and their user, the ids without user are
+   * not returned
+   */
+  static Statement selectUsersByDictionaryIds(List<Integer> ids) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_USERS_BY_DICTIONARY_IDS_CQL, ids)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param id     dictionary id assigned to the user
+   * @param userId id of the user
+   * @return the statement writing the user of the dictionary id
+   */
+  static Statement insertUserByDictionaryId(int id, String userId) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, INSERT_USER_BY_DICTIONARY_ID_CQL, id, userId)
+        .setIdempotent(true);
+  }
+
+  /**
+   * The sequence is read with a serial consistency so it sees the last reservation
+   *
+   * @param name name of the sequence
+   * @return the statement selecting the next free id of the sequence
+   */
+  static Statement selectDictionarySequence(String name) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_DICTIONARY_SEQUENCE_CQL, name)
+        .setConsistencyLevel(ConsistencyLevel.LOCAL_SERIAL)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param name name of the sequence
+   * @param next first free id of the sequence
+   * @return the statement creating the sequence if it does not exist
+   */
+  static Statement insertDictionarySequence(String name, int next) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, INSERT_DICTIONARY_SEQUENCE_CQL, name, next)
+        .setSerialConsistencyLevel(ConsistencyLevel.LOCAL_SERIAL)
+        .setIdempotent(false);
+  }
+
+  /**
+   * @param name     name of the sequence
+   * @param next     next free id of the sequence after the reservation
+   * @param expected next free id read before the reservation
+   * @return the statement reserving the ids if the sequence did not change since it was read
+   */
+  static Statement updateDictionarySequence(String name, int next, int expected) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, UPDATE_DICTIONARY_SEQUENCE_CQL, next, name, expected)
+        .setSerialConsistencyLevel(ConsistencyLevel.LOCAL_SERIAL)
+        .setIdempotent(false);
+  }
+
+  /**
+   * The summary replaces the stored one, writing the same summary twice is idempotent
+   *
+   * @param summary summary of the product
+   * @return the statement writing the summary row of the product
+   */
+  static Statement insertSummary(ProductSummary summary) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, INSERT_PRODUCT_SUMMARY_CQL,
+        summary.getProductId(), new Date(summary.getDay()), summary.getTotal(), summary.getToday(),
+        summary.getLast7Days(), summary.getUniqueViewersToday(), summary.getUniqueViewersLast7Days(),
+        new Date(summary.getUpdatedAt()))
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param productId id of the product
+   * @return the statement selecting the summary row of the product
+   */
+  static Statement selectSummary(String productId) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_PRODUCT_SUMMARY_CQL, productId)
+        .setIdempotent(true);
+  }
+
+  /**
+   * The ranking replaces the stored one of the window, writing the same ranking twice is idempotent
+   *
+   * @param window     name of the window
+   * @param timestamp  time of the ranking in milliseconds since the epoch
+   * @param productIds ids of the top products by descending views
+   * @param views      estimated views of the top products
+   * @return the statement writing the ranking of the window
+   */
+  static Statement insertTrendingProducts(String window, long timestamp, List<String> productIds, List<Long> views) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, INSERT_PRODUCTS_TRENDING_CQL,
+        window, new Date(timestamp), productIds, views)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param window name of the window
+   * @return the statement selecting the ranking of the window
+   */
+  static Statement selectTrendingProducts(String window) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, SELECT_PRODUCTS_TRENDING_CQL, window)
+        .setIdempotent(true);
+  }
+
+  /**
+   * @param userId    id of the user
+   * @param productId id of the product
+   * @param day       start of the day in milliseconds since the epoch
+   * @param increment number of views to add
+   * @return the statement incrementing the product views of the user in the day
+   */
+  static Statement incrementByUser(String userId, String productId, long day, long increment) {
+    return CassandraUtils.bind(WEB_ANALYTICS_KEYSPACE, UPDATE_PRODUCT_VIEWS_BY_USER_CQL,
+        increment, productId, new Date(day), userId)
+        .setIdempotent(false);
+  }
+
+}
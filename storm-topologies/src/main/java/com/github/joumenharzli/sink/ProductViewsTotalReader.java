@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.github.joumenharzli.utils.CassandraUtils;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Reader of the total of the product views merging the shards of the hot products
+ * <p>
+ * The reader uses the cluster shared by the worker from its creation until it is closed.
+ *
+ * @author Joumen Harzli
+ */
+public class ProductViewsTotalReader implements AutoCloseable {
+
+  private final List<Integer> shards;
+
+  /**
+   * @param stormConf configuration of the topology holding the settings of the cluster and the
+   *                  number of shards used by the writers
+   */
+  public ProductViewsTotalReader(Map stormConf) {
+    this.shards = ProductViewsSchema.getTotalShards(stormConf);
+    CassandraUtils.open(stormConf);
+  }
+
+  /**
+   * @param productId id of the product
+   * @return a future on the total of the product views, 0 if the product was never viewed
+   */
+  public ListenableFuture<Long> read(String productId) {
+    List<ListenableFuture<ResultSet>> results = new ArrayList<>(2);
+    results.add(CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE, ProductViewsStatements.selectTotal(productId)));
+    if (!shards.isEmpty()) {
+      results.add(CassandraUtils.executeAsync(WEB_ANALYTICS_KEYSPACE,
+          ProductViewsStatements.selectTotalShards(productId, shards)));
+    }
+
+    return Futures.transform(Futures.allAsList(results), ProductViewsTotalReader::sum, MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public void close() {
+    CassandraUtils.close();
+  }
+
+  private static Long sum(List<ResultSet> results) {
+    long total = 0;
+    for (ResultSet result : results) {
+      for (Row row : result) {
+        total += row.getLong(0);
+      }
+    }
+    return total;
+  }
+
+}
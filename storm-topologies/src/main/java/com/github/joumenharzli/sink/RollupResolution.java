@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.storm.utils.Utils;
+
+import com.github.joumenharzli.utils.TimestampUtils;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Resolutions of the rollups of the product views
+ * <p>
+ * Each resolution has its own table and its own flush interval and time to live, a coarse
+ * resolution is written less often since its periods aggregate more views.
+ *
+ * @author Joumen Harzli
+ */
+public enum RollupResolution {
+
+  MINUTE("minute", 1, TimeUnit.DAYS.toSeconds(7)) {
+    @Override
+    public long truncate(long epochMillis) {
+      return epochMillis - Math.floorMod(epochMillis, TimeUnit.MINUTES.toMillis(1));
+    }
+  },
+
+  HOUR("hour", 5, TimeUnit.DAYS.toSeconds(90)) {
+    @Override
+    public long truncate(long epochMillis) {
+      return epochMillis - Math.floorMod(epochMillis, TimeUnit.HOURS.toMillis(1));
+    }
+  },
+
+  DAY("day", 10, TimeUnit.DAYS.toSeconds(3 * 365)) {
+    @Override
+    public long truncate(long epochMillis) {
+      return TimestampUtils.truncateToDay(epochMillis);
+    }
+  },
+
+  MONTH("month", 20, 0) {
+    @Override
+    public long truncate(long epochMillis) {
+      return TimestampUtils.truncateToMonth(epochMillis);
+    }
+  };
+
+  private final String name;
+  private final int flushIntervalSecs;
+  private final int ttlSecs;
+
+  RollupResolution(String name, int flushIntervalSecs, long ttlSecs) {
+    this.name = name;
+    this.flushIntervalSecs = flushIntervalSecs;
+    this.ttlSecs = (int) ttlSecs;
+  }
+
+  /**
+   * @param epochMillis the timestamp in milliseconds since the epoch
+   * @return the start of the period of the timestamp in milliseconds since the epoch
+   */
+  public abstract long truncate(long epochMillis);
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the table of the rollups of the resolution
+   */
+  public String getTable() {
+    return "products_views_by_" + name;
+  }
+
+  /**
+   * @param stormConf configuration of the topology
+   * @return the interval between the writes of the rollups of the resolution in seconds
+   */
+  public int getFlushIntervalSecs(Map stormConf) {
+    return Utils.getInt(stormConf.get(getFlushIntervalSecsConfig()), flushIntervalSecs);
+  }
+
+  /**
+   * @param stormConf configuration of the topology
+   * @return the time to live of the rollups of the resolution in seconds, 0 to keep them
+   */
+  public int getTtlSecs(Map stormConf) {
+    return Utils.getInt(stormConf.get(getTtlSecsConfig()), ttlSecs);
+  }
+
+  public String getFlushIntervalSecsConfig() {
+    return ROLLUP_FLUSH_INTERVAL_SECS_CONFIG_PREFIX + name;
+  }
+
+  public String getTtlSecsConfig() {
+    return ROLLUP_TTL_SECS_CONFIG_PREFIX + name;
+  }
+
+  public int getFlushIntervalSecs() {
+    return flushIntervalSecs;
+  }
+
+  public int getTtlSecs() {
+    return ttlSecs;
+  }
+
+}
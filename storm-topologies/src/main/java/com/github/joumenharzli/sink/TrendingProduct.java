@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+/**
+ * Product ranked in the top products of a window with its estimated views
+ *
+ * @author Joumen Harzli
+ */
+public class TrendingProduct {
+
+  private final String productId;
+  private final long views;
+
+  /**
+   * @param productId id of the product
+   * @param views     estimated views of the product in the window
+   */
+  public TrendingProduct(String productId, long views) {
+    this.productId = productId;
+    this.views = views;
+  }
+
+  public String getProductId() {
+    return productId;
+  }
+
+  public long getViews() {
+    return views;
+  }
+
+  @Override
+  public String toString() {
+    return "TrendingProduct{" +
+        "productId='" + productId + '\'' +
+        ", views=" + views +
+        '}';
+  }
+
+}
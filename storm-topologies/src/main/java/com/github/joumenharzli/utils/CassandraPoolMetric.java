@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import org.apache.storm.metric.api.IMetric;
+
+/**
+ * Metric reporting the state of the cassandra connection pools of the worker
+ *
+ * @author Joumen Harzli
+ */
+public class CassandraPoolMetric implements IMetric {
+
+  public static final String NAME = "cassandra-pool";
+
+  /**
+   * @return the state of the pools, see {@link CassandraUtils#getPoolState()}
+   */
+  @Override
+  public Object getValueAndReset() {
+    return CassandraUtils.getPoolState();
+  }
+
+}
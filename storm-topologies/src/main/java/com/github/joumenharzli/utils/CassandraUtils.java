@@ -15,21 +15,48 @@
 
 package com.github.joumenharzli.utils;
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.storm.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.Metrics;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.ConstantSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.NoSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
 
-import static com.github.joumenharzli.Configuration.CASSANDRA_CLUSTER_ADDRESS;
+import static com.github.joumenharzli.Configuration.*;
 
 /**
  * Cassandra Utils
+ * <p>
+ * The cluster, its sessions and the prepared statements are shared by the executors of the
+ * worker. The executors writing to cassandra call {@link #open(Map)} when they are prepared and
+ * {@link #close()} when they are cleaned up: the cluster is connected with the settings of the
+ * topology configuration by the first one and closed after the last one, or when the worker shuts
+ * down.
  *
  * @author Joumen Harzli
  */
@@ -37,12 +64,50 @@ public final class CassandraUtils {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(CassandraUtils.class);
 
-  private static Cluster cluster;
-  private static Map<String, Session> sessions = new HashMap<>();
+  private static final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, ConcurrentMap<String, PreparedStatement>> preparedStatements =
+      new ConcurrentHashMap<>();
+
+  private static volatile Cluster cluster;
+  private static Map settings = Collections.emptyMap();
+  private static int openCount;
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(CassandraUtils::closeCluster, "cassandra-shutdown"));
+  }
 
   private CassandraUtils() {
   }
 
+  /**
+   * Register a user of the cluster, the cluster is connected with the provided settings if no
+   * other user is registered
+   *
+   * @param stormConf configuration of the topology holding the settings of the cluster
+   */
+  public static synchronized void open(Map stormConf) {
+    openCount++;
+
+    if (cluster == null) {
+      LOGGER.debug("Opening the cassandra cluster for the first user of the worker");
+      settings = stormConf;
+    }
+  }
+
+  /**
+   * Unregister a user of the cluster, the cluster is closed after its last user
+   */
+  public static void close() {
+    synchronized (CassandraUtils.class) {
+      if (openCount == 0 || --openCount > 0) {
+        return;
+      }
+    }
+
+    LOGGER.debug("Closing the cassandra cluster after its last user");
+    closeCluster();
+  }
+
   /**
    * Execute a query in the specified keyspace
    *
@@ -61,42 +126,178 @@ public final class CassandraUtils {
   }
 
   /**
-   * Get or create session for the provided keyspace
+   * Bind the values to the prepared query and execute it in the specified keyspace
    *
    * @param keySpace name of the keyspace
-   * @return instance of the session
+   * @param cql      query template where the values are marked with {@code ?}
+   * @param values   values to bind in the same order as the markers
+   * @return result of the query
    */
-  private static Session getSession(String keySpace) {
-    if (sessions.containsKey(keySpace)) {
+  public static ResultSet execute(String keySpace, String cql, Object... values) {
+    return getSession(keySpace).execute(bind(keySpace, cql, values));
+  }
 
-      LOGGER.debug("Using a cached session for the keyspace {}", keySpace);
-      return sessions.get(keySpace);
+  /**
+   * Execute a statement asynchronously in the specified keyspace
+   *
+   * @param keySpace  name of the keyspace
+   * @param statement statement to execute
+   * @return a future on the result of the query
+   */
+  public static ResultSetFuture executeAsync(String keySpace, Statement statement) {
+    Validate.notBlank(keySpace, "Cassandra keyspace cannot be null/blank");
+    Validate.notNull(statement, "Cassandra statement cannot be null");
 
-    } else {
+    LOGGER.trace("Executing asynchronously in the keyspace {}: {}", keySpace, statement);
 
-      LOGGER.debug("No cached session was found for the keyspace {}", keySpace);
-      return createSession(keySpace);
+    return getSession(keySpace).executeAsync(statement);
+  }
 
+  /**
+   * Get the routing key of a statement which is the serialized partition key
+   *
+   * @param keySpace  name of the keyspace
+   * @param statement the statement
+   * @return the routing key or null if the partition key of the statement is not known by the client
+   */
+  public static ByteBuffer getRoutingKey(String keySpace, Statement statement) {
+    Validate.notNull(statement, "Cassandra statement cannot be null");
+
+    Cluster sessionCluster = getSession(keySpace).getCluster();
+
+    return statement.getRoutingKey(
+        sessionCluster.getConfiguration().getProtocolOptions().getProtocolVersion(),
+        sessionCluster.getConfiguration().getCodecRegistry());
+  }
+
+  /**
+   * Group the statements by partition, the statements of the same partition are merged in an
+   * unlogged batch
+   *
+   * @param keySpace   name of the keyspace
+   * @param statements statements to group
+   * @return one statement by partition and the statements with an unknown partition
+   */
+  public static List<Statement> batchByPartition(String keySpace, List<Statement> statements) {
+    Map<ByteBuffer, List<Statement>> partitions = new LinkedHashMap<>();
+    List<Statement> batches = new ArrayList<>();
+
+    for (Statement statement : statements) {
+      ByteBuffer routingKey = getRoutingKey(keySpace, statement);
+
+      if (routingKey == null) {
+        batches.add(statement);
+      } else {
+        partitions.computeIfAbsent(routingKey, key -> new ArrayList<>()).add(statement);
+      }
     }
+
+    for (List<Statement> partition : partitions.values()) {
+      if (partition.size() == 1) {
+        batches.add(partition.get(0));
+      } else {
+        batches.add(new BatchStatement(BatchStatement.Type.UNLOGGED).addAll(partition));
+      }
+    }
+
+    return batches;
   }
 
   /**
-   * Open a new cassandra session and cache it
+   * Bind the values to the prepared query of the specified keyspace
    *
-   * @param keySpace keyspace where the queries of session will be created
-   * @return the created session
+   * @param keySpace name of the keyspace
+   * @param cql      query template where the values are marked with {@code ?}
+   * @param values   values to bind in the same order as the markers
+   * @return the bound statement ready to be executed
    */
-  private static synchronized Session createSession(String keySpace) {
+  public static BoundStatement bind(String keySpace, String cql, Object... values) {
+    LOGGER.trace("Binding the values {} to the query in the keyspace {}: {}", values, keySpace, cql);
 
-    /* Can be created by the previous thread */
-    if (sessions.containsKey(keySpace) && !getCluster().isClosed()) {
-      LOGGER.debug("Using the cached session for the keyspace {} created by the previous thread", keySpace);
-      return sessions.get(keySpace);
+    return prepare(keySpace, cql).bind(values);
+  }
+
+  /**
+   * Prepare a query in the specified keyspace or return the cached prepared statement
+   *
+   * @param keySpace name of the keyspace
+   * @param cql      query template where the values are marked with {@code ?}
+   * @return the prepared statement
+   */
+  public static PreparedStatement prepare(String keySpace, String cql) {
+    Validate.notBlank(keySpace, "Cassandra keyspace cannot be null/blank");
+    Validate.notBlank(cql, "Cassandra query cannot be null/blank");
+
+    Session session = getSession(keySpace);
+
+    return preparedStatements
+        .computeIfAbsent(keySpace, key -> new ConcurrentHashMap<>())
+        .computeIfAbsent(cql, key -> {
+          LOGGER.debug("Preparing a new query in the keyspace {}: {}", keySpace, cql);
+          return session.prepare(cql);
+        });
+  }
+
+  /**
+   * State of the connection pools of the worker
+   *
+   * @return the number of connected hosts, open connections, in flight queries, trashed
+   * connections, sent requests and speculative executions
+   */
+  public static Map<String, Long> getPoolState() {
+    Map<String, Long> state = new LinkedHashMap<>();
+    long connectedHosts = 0;
+    long openConnections = 0;
+    long inFlightQueries = 0;
+    long trashedConnections = 0;
+
+    for (Session session : sessions.values()) {
+      Session.State sessionState = session.getState();
+      for (Host host : sessionState.getConnectedHosts()) {
+        connectedHosts++;
+        openConnections += sessionState.getOpenConnections(host);
+        inFlightQueries += sessionState.getInFlightQueries(host);
+        trashedConnections += sessionState.getTrashedConnections(host);
+      }
+    }
+
+    state.put("connectedHosts", connectedHosts);
+    state.put("openConnections", openConnections);
+    state.put("inFlightQueries", inFlightQueries);
+    state.put("trashedConnections", trashedConnections);
+
+    Cluster currentCluster = cluster;
+    Metrics metrics = currentCluster == null ? null : currentCluster.getMetrics();
+    if (metrics != null) {
+      state.put("requests", metrics.getRequestsTimer().getCount());
+      state.put("speculativeExecutions", metrics.getErrorMetrics().getSpeculativeExecutions().getCount());
     }
 
-    LOGGER.debug("Create and cache sessions for the keyspace {}", keySpace);
+    return state;
+  }
+
+  /**
+   * Get or create the session of the provided keyspace, the sessions are created once by keyspace
+   *
+   * @param keySpace name of the keyspace
+   * @return instance of the session
+   */
+  private static Session getSession(String keySpace) {
+    return sessions.computeIfAbsent(keySpace, CassandraUtils::createSession);
+  }
+
+  /**
+   * Open a new cassandra session
+   *
+   * @param keySpace keyspace where the queries of session will be created
+   * @return the created session
+   */
+  private static Session createSession(String keySpace) {
+    LOGGER.debug("Creating the session of the keyspace {}", keySpace);
+
     Session session = getCluster().connect(keySpace);
-    sessions.put(keySpace, session);
+    /* The statements prepared with a previous session are not valid anymore */
+    preparedStatements.remove(keySpace);
     return session;
   }
 
@@ -105,25 +306,88 @@ public final class CassandraUtils {
    *
    * @return instance of the connected cluster
    */
-  private static synchronized Cluster getCluster() {
-    if (cluster == null || cluster.isClosed()) {
-      LOGGER.debug("No available connection to the cluster was found");
-      return connectToCluster();
+  private static Cluster getCluster() {
+    Cluster currentCluster = cluster;
+    if (currentCluster != null) {
+      return currentCluster;
     }
 
-    LOGGER.debug("Using the available connection to the cluster");
-    return cluster;
+    synchronized (CassandraUtils.class) {
+      if (cluster == null) {
+        cluster = connectToCluster(settings);
+      }
+      return cluster;
+    }
   }
 
   /**
    * Connect to the cassandra cluster
+   * <p>
+   * The requests are routed to the replicas of their partition in the local datacenter and the
+   * idempotent statements are sent to another host if the first one is slow to answer
    *
-   * @return instance of the connected cluster
+   * @param stormConf configuration of the topology holding the settings of the cluster
+   * @return instance of the cluster
+   */
+  private static Cluster connectToCluster(Map stormConf) {
+    String contactPoints = getString(stormConf, CASSANDRA_CONTACT_POINTS_CONFIG, CASSANDRA_CLUSTER_ADDRESS);
+    String localDatacenter = getString(stormConf, CASSANDRA_LOCAL_DATACENTER_CONFIG, null);
+
+    LOGGER.debug("Connecting to the cluster with the contact points {}", contactPoints);
+
+    PoolingOptions poolingOptions = new PoolingOptions()
+        .setConnectionsPerHost(HostDistance.LOCAL,
+            Utils.getInt(stormConf.get(CASSANDRA_CORE_CONNECTIONS_PER_HOST_CONFIG), CASSANDRA_CORE_CONNECTIONS_PER_HOST),
+            Utils.getInt(stormConf.get(CASSANDRA_MAX_CONNECTIONS_PER_HOST_CONFIG), CASSANDRA_MAX_CONNECTIONS_PER_HOST))
+        .setMaxRequestsPerConnection(HostDistance.LOCAL,
+            Utils.getInt(stormConf.get(CASSANDRA_MAX_REQUESTS_PER_CONNECTION_CONFIG), CASSANDRA_MAX_REQUESTS_PER_CONNECTION));
+
+    DCAwareRoundRobinPolicy.Builder loadBalancing = DCAwareRoundRobinPolicy.builder();
+    if (StringUtils.isNotBlank(localDatacenter)) {
+      loadBalancing.withLocalDc(localDatacenter);
+    }
+
+    int speculativeExecutionDelayMs = Utils.getInt(stormConf.get(CASSANDRA_SPECULATIVE_EXECUTION_DELAY_MS_CONFIG),
+        CASSANDRA_SPECULATIVE_EXECUTION_DELAY_MS);
+
+    return Cluster.builder()
+        .addContactPoints(StringUtils.stripAll(StringUtils.split(contactPoints, ',')))
+        .withPoolingOptions(poolingOptions)
+        .withLoadBalancingPolicy(new TokenAwarePolicy(loadBalancing.build()))
+        .withSpeculativeExecutionPolicy(speculativeExecutionDelayMs > 0
+            ? new ConstantSpeculativeExecutionPolicy(speculativeExecutionDelayMs,
+            Utils.getInt(stormConf.get(CASSANDRA_MAX_SPECULATIVE_EXECUTIONS_CONFIG), CASSANDRA_MAX_SPECULATIVE_EXECUTIONS))
+            : NoSpeculativeExecutionPolicy.INSTANCE)
+        .build();
+  }
+
+  /**
+   * Close the cluster and forget its sessions and prepared statements
+   * <p>
+   * The maps are cleared outside of the lock because a session being created holds its entry
+   * while waiting for the cluster
    */
-  private static Cluster connectToCluster() {
-    LOGGER.debug("Connecting to the cluster with address {}", CASSANDRA_CLUSTER_ADDRESS);
-    cluster = Cluster.builder().addContactPoint(CASSANDRA_CLUSTER_ADDRESS).build();
-    return cluster;
+  private static void closeCluster() {
+    Cluster closedCluster;
+    synchronized (CassandraUtils.class) {
+      closedCluster = cluster;
+      cluster = null;
+    }
+
+    if (closedCluster == null) {
+      return;
+    }
+
+    LOGGER.debug("Closing the connection to the cluster");
+
+    sessions.clear();
+    preparedStatements.clear();
+    closedCluster.close();
+  }
+
+  private static String getString(Map stormConf, String key, String defaultValue) {
+    Object value = stormConf.get(key);
+    return value == null ? defaultValue : value.toString();
   }
 
 }
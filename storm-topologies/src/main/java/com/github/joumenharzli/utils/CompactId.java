@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.google.common.hash.Hashing;
+
+/**
+ * Compact form of a user id or a product id carried by the tuples
+ * <p>
+ * The ids of the shop service are UUIDs in their canonical form: 36 lower case characters which
+ * are encoded as the two longs of the UUID, so the tuples are serialized on 17 bytes instead of
+ * the string and the hash of the id is computed from the longs. The encoding does not depend on
+ * the worker so any worker decodes the ids of another. The ids of another form are kept as strings
+ * and the decoded id is always equal to the encoded one.
+ *
+ * @author Joumen Harzli
+ */
+public final class CompactId {
+
+  private static final int UUID_LENGTH = 36;
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private static final byte UUID_FORM = 'U';
+  private static final byte STRING_FORM = 'S';
+
+  private final long mostSignificantBits;
+  private final long leastSignificantBits;
+  /* null for a canonical UUID */
+  private final String value;
+
+  private CompactId(long mostSignificantBits, long leastSignificantBits, String value) {
+    this.mostSignificantBits = mostSignificantBits;
+    this.leastSignificantBits = leastSignificantBits;
+    this.value = value;
+  }
+
+  /**
+   * @param id user id or product id
+   * @return the compact form of the id
+   */
+  public static CompactId encode(String id) {
+    if (!isCanonicalUuid(id)) {
+      return new CompactId(0, 0, id);
+    }
+
+    long mostSignificantBits = parseHex(id, 0, 8) << 32 | parseHex(id, 9, 13) << 16 | parseHex(id, 14, 18);
+    long leastSignificantBits = parseHex(id, 19, 23) << 48 | parseHex(id, 24, 36);
+
+    return new CompactId(mostSignificantBits, leastSignificantBits, null);
+  }
+
+  /**
+   * @return true if the id is stored as a UUID
+   */
+  public boolean isUuid() {
+    return value == null;
+  }
+
+  /**
+   * The hash depends only on the decoded id so it is the same in every worker and in every run
+   *
+   * @return a 64 bits hash of the id with uniformly distributed bits, used by the sketches
+   */
+  public long hash64() {
+    if (isUuid()) {
+      return mix(mostSignificantBits ^ mix(leastSignificantBits));
+    }
+    return Hashing.murmur3_128().hashString(value, StandardCharsets.UTF_8).asLong();
+  }
+
+  /**
+   * Write the id, the form is written first so it can be read by {@link #readFrom(DataInput)}
+   *
+   * @param output destination of the id
+   * @throws IOException if the id cannot be written
+   */
+  public void writeTo(DataOutput output) throws IOException {
+    if (isUuid()) {
+      output.writeByte(UUID_FORM);
+      output.writeLong(mostSignificantBits);
+      output.writeLong(leastSignificantBits);
+    } else {
+      output.writeByte(STRING_FORM);
+      output.writeUTF(value);
+    }
+  }
+
+  /**
+   * @param input source of an id written by {@link #writeTo(DataOutput)}
+   * @return the read id
+   * @throws IOException if the id cannot be read
+   */
+  public static CompactId readFrom(DataInput input) throws IOException {
+    if (input.readByte() == UUID_FORM) {
+      return new CompactId(input.readLong(), input.readLong(), null);
+    }
+    return new CompactId(0, 0, input.readUTF());
+  }
+
+  /**
+   * @return the decoded id, a new string is built for each call when the id is a UUID
+   */
+  @Override
+  public String toString() {
+    if (!isUuid()) {
+      return value;
+    }
+
+    char[] chars = new char[UUID_LENGTH];
+    formatHex(chars, 0, 8, mostSignificantBits >>> 32);
+    chars[8] = '-';
+    formatHex(chars, 9, 13, mostSignificantBits >>> 16);
+    chars[13] = '-';
+    formatHex(chars, 14, 18, mostSignificantBits);
+    chars[18] = '-';
+    formatHex(chars, 19, 23, leastSignificantBits >>> 48);
+    chars[23] = '-';
+    formatHex(chars, 24, 36, leastSignificantBits);
+    return new String(chars);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof CompactId)) {
+      return false;
+    }
+    CompactId id = (CompactId) other;
+    return mostSignificantBits == id.mostSignificantBits && leastSignificantBits == id.leastSignificantBits
+        && (value == null ? id.value == null : value.equals(id.value));
+  }
+
+  @Override
+  public int hashCode() {
+    return isUuid() ? Long.hashCode(mostSignificantBits ^ leastSignificantBits) : value.hashCode();
+  }
+
+  /**
+   * Finalization step of murmur3 spreading each bit of the input over the whole hash
+   */
+  private static long mix(long value) {
+    long hash = value;
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  private static boolean isCanonicalUuid(String id) {
+    if (id.length() != UUID_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < UUID_LENGTH; i++) {
+      char c = id.charAt(i);
+      boolean valid = i == 8 || i == 13 || i == 18 || i == 23 ? c == '-' : (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+      if (!valid) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long parseHex(String id, int from, int to) {
+    long value = 0;
+    for (int i = from; i < to; i++) {
+      char c = id.charAt(i);
+      value = value << 4 | (c <= '9' ? c - '0' : c - 'a' + 10);
+    }
+    return value;
+  }
+
+  private static void formatHex(char[] chars, int from, int to, long value) {
+    for (int i = to - 1; i >= from; i--) {
+      chars[i] = HEX_DIGITS[(int) (value & 0xF)];
+      value >>>= 4;
+    }
+  }
+
+  /**
+   * Kryo serializer of the ids carried by the tuples, registered in the topology configuration
+   */
+  public static final class KryoSerializer extends Serializer<CompactId> {
+
+    public KryoSerializer() {
+      super(false, true);
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, CompactId id) {
+      if (id.isUuid()) {
+        output.writeByte(UUID_FORM);
+        output.writeLong(id.mostSignificantBits);
+        output.writeLong(id.leastSignificantBits);
+      } else {
+        output.writeByte(STRING_FORM);
+        output.writeString(id.value);
+      }
+    }
+
+    @Override
+    public CompactId read(Kryo kryo, Input input, Class<CompactId> type) {
+      if (input.readByte() == UUID_FORM) {
+        return new CompactId(input.readLong(), input.readLong(), null);
+      }
+      return new CompactId(0, 0, input.readString());
+    }
+
+  }
+
+}
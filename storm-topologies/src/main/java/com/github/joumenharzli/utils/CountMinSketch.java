@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Count-Min sketch estimating the count of a key from its 64 bits hash
+ * <p>
+ * Each of the {@code depth} rows of {@code width} counters is incremented at a position derived
+ * from the hash and the estimate is the lowest counter of the key, so it never underestimates and
+ * exceeds the count by at most {@code e * total / width} with a probability of
+ * {@code 1 - exp(-depth)}. The sketch is not thread safe.
+ *
+ * @author Joumen Harzli
+ */
+public final class CountMinSketch {
+
+  private final int depth;
+  private final int widthMask;
+  private final long[] counters;
+
+  /**
+   * @param depth number of rows
+   * @param width number of counters by row, a power of two
+   */
+  public CountMinSketch(int depth, int width) {
+    Validate.isTrue(depth > 0, "The depth must be positive");
+    Validate.isTrue(width > 0 && Integer.bitCount(width) == 1, "The width must be a power of two");
+
+    this.depth = depth;
+    this.widthMask = width - 1;
+    this.counters = new long[depth * width];
+  }
+
+  /**
+   * @param hash  64 bits hash of the key
+   * @param count count to add to the key
+   */
+  public void add(long hash, long count) {
+    for (int row = 0; row < depth; row++) {
+      counters[index(row, hash)] += count;
+    }
+  }
+
+  /**
+   * @param hash 64 bits hash of the key
+   * @return the estimated count of the key
+   */
+  public long estimate(long hash) {
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      estimate = Math.min(estimate, counters[index(row, hash)]);
+    }
+    return estimate;
+  }
+
+  /**
+   * Reset all the counts
+   */
+  public void clear() {
+    Arrays.fill(counters, 0);
+  }
+
+  /**
+   * The positions of the rows are derived from the two halves of the hash
+   */
+  private int index(int row, long hash) {
+    int position = (int) hash + row * (int) (hash >>> 32);
+    return row * (widthMask + 1) + (position & widthMask);
+  }
+
+}
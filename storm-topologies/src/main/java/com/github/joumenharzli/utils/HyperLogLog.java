@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.nio.ByteBuffer;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct values from their 64 bits hashes
+ * <p>
+ * The first {@code precision} bits of a hash select one of the {@code 2^precision} registers which
+ * keeps the highest position of the first set bit among the remaining bits. The relative standard
+ * error of the estimate is {@code 1.04 / sqrt(2^precision)}, 1.6% with 4096 registers. Two
+ * sketches of the same precision are merged by keeping the highest value of each register so a
+ * value added twice or a sketch merged twice do not change the estimate.
+ * <p>
+ * A sketch starts sparse, holding only its non zero registers in a small open addressing table,
+ * and becomes dense, a byte by register, once the table would use as much memory. The sketch is
+ * not thread safe.
+ *
+ * @author Joumen Harzli
+ */
+public final class HyperLogLog {
+
+  public static final int MIN_PRECISION = 4;
+  public static final int MAX_PRECISION = 16;
+
+  private static final byte FORMAT_VERSION = 1;
+  private static final byte SPARSE_FORM = 'S';
+  private static final byte DENSE_FORM = 'D';
+
+  private static final int RANK_BITS = 6;
+  private static final int RANK_MASK = (1 << RANK_BITS) - 1;
+  private static final int INITIAL_SPARSE_CAPACITY = 16;
+
+  private final int precision;
+  private final int registersCount;
+  /* null while the sketch is sparse */
+  private byte[] registers;
+  /* (index + 1) << RANK_BITS | rank, 0 for an empty slot */
+  private int[] sparseEntries;
+  private int sparseSize;
+
+  /**
+   * @param precision number of bits of the hash selecting the register, between
+   *                  {@link #MIN_PRECISION} and {@link #MAX_PRECISION}
+   */
+  public HyperLogLog(int precision) {
+    Validate.inclusiveBetween(MIN_PRECISION, MAX_PRECISION, precision,
+        "The precision must be between %d and %d", MIN_PRECISION, MAX_PRECISION);
+
+    this.precision = precision;
+    this.registersCount = 1 << precision;
+    this.sparseEntries = new int[INITIAL_SPARSE_CAPACITY];
+  }
+
+  public int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * @param hash 64 bits hash of the value, the bits must be uniformly distributed
+   */
+  public void add(long hash) {
+    int index = (int) (hash >>> (Long.SIZE - precision));
+    /* the guard bit bounds the rank when the remaining bits are all zero */
+    long remainingBits = hash << precision | 1L << (precision - 1);
+    set(index, Long.numberOfLeadingZeros(remainingBits) + 1);
+  }
+
+  /**
+   * @param other sketch of the same precision whose values are added to this sketch
+   */
+  public void merge(HyperLogLog other) {
+    Validate.isTrue(other.precision == precision, "Cannot merge a sketch of precision %d into a sketch of precision %d",
+        other.precision, precision);
+
+    if (other.registers != null) {
+      for (int index = 0; index < registersCount; index++) {
+        if (other.registers[index] != 0) {
+          set(index, other.registers[index]);
+        }
+      }
+    } else {
+      for (int entry : other.sparseEntries) {
+        if (entry != 0) {
+          set((entry >>> RANK_BITS) - 1, entry & RANK_MASK);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return true if no value was added
+   */
+  public boolean isEmpty() {
+    if (registers == null) {
+      return sparseSize == 0;
+    }
+    for (byte register : registers) {
+      if (register != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The raw estimate is replaced by linear counting for the small cardinalities, no correction is
+   * needed for the large ones with 64 bits hashes
+   *
+   * @return the estimated number of distinct values
+   */
+  public long estimate() {
+    double sum = 0;
+    int zeros;
+
+    if (registers != null) {
+      zeros = 0;
+      for (byte register : registers) {
+        sum += 1.0 / (1L << register);
+        if (register == 0) {
+          zeros++;
+        }
+      }
+    } else {
+      zeros = registersCount - sparseSize;
+      sum = zeros;
+      for (int entry : sparseEntries) {
+        if (entry != 0) {
+          sum += 1.0 / (1L << (entry & RANK_MASK));
+        }
+      }
+    }
+
+    double estimate = alpha() * registersCount * registersCount / sum;
+    if (estimate <= 2.5 * registersCount && zeros > 0) {
+      estimate = registersCount * Math.log((double) registersCount / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  /**
+   * The sparse sketches are written as their entries on 3 bytes and the dense ones as their
+   * registers, both after a header holding the version of the format, the precision and the form
+   *
+   * @return the serialized sketch
+   */
+  public byte[] toBytes() {
+    ByteBuffer buffer;
+
+    if (registers != null) {
+      buffer = ByteBuffer.allocate(3 + registersCount);
+      buffer.put(FORMAT_VERSION).put((byte) precision).put(DENSE_FORM);
+      buffer.put(registers);
+    } else {
+      buffer = ByteBuffer.allocate(3 + 4 + sparseSize * 3);
+      buffer.put(FORMAT_VERSION).put((byte) precision).put(SPARSE_FORM);
+      buffer.putInt(sparseSize);
+      for (int entry : sparseEntries) {
+        if (entry != 0) {
+          buffer.putShort((short) ((entry >>> RANK_BITS) - 1));
+          buffer.put((byte) (entry & RANK_MASK));
+        }
+      }
+    }
+
+    return buffer.array();
+  }
+
+  /**
+   * @param buffer sketch serialized by {@link #toBytes()}, read from its position
+   * @return the deserialized sketch
+   * @throws IllegalArgumentException if the format is not supported
+   */
+  public static HyperLogLog fromBytes(ByteBuffer buffer) {
+    ByteBuffer input = buffer.duplicate();
+
+    byte version = input.get();
+    Validate.isTrue(version == FORMAT_VERSION, "Unsupported sketch format version %d", version);
+
+    HyperLogLog sketch = new HyperLogLog(input.get());
+    byte form = input.get();
+
+    if (form == DENSE_FORM) {
+      sketch.registers = new byte[sketch.registersCount];
+      sketch.sparseEntries = null;
+      input.get(sketch.registers);
+    } else {
+      Validate.isTrue(form == SPARSE_FORM, "Unsupported sketch form %d", form);
+      int size = input.getInt();
+      for (int i = 0; i < size; i++) {
+        int index = Short.toUnsignedInt(input.getShort());
+        sketch.set(index, input.get());
+      }
+    }
+
+    return sketch;
+  }
+
+  private void set(int index, int rank) {
+    if (registers != null) {
+      if (registers[index] < rank) {
+        registers[index] = (byte) rank;
+      }
+      return;
+    }
+
+    int mask = sparseEntries.length - 1;
+    int slot = (index * 0x9E3779B9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(sparseEntries.length));
+    while (sparseEntries[slot] != 0) {
+      int entry = sparseEntries[slot];
+      if ((entry >>> RANK_BITS) - 1 == index) {
+        if ((entry & RANK_MASK) < rank) {
+          sparseEntries[slot] = (index + 1) << RANK_BITS | rank;
+        }
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    sparseEntries[slot] = (index + 1) << RANK_BITS | rank;
+    sparseSize++;
+
+    if (sparseSize * 2 > sparseEntries.length) {
+      /* the table of 4 bytes entries at most half full uses as much memory as the dense registers */
+      if (sparseEntries.length * 2 * Integer.BYTES > registersCount) {
+        toDense();
+      } else {
+        resizeSparse();
+      }
+    }
+  }
+
+  private void resizeSparse() {
+    int[] entries = sparseEntries;
+    sparseEntries = new int[entries.length * 2];
+    sparseSize = 0;
+    for (int entry : entries) {
+      if (entry != 0) {
+        set((entry >>> RANK_BITS) - 1, entry & RANK_MASK);
+      }
+    }
+  }
+
+  private void toDense() {
+    byte[] denseRegisters = new byte[registersCount];
+    for (int entry : sparseEntries) {
+      if (entry != 0) {
+        denseRegisters[(entry >>> RANK_BITS) - 1] = (byte) (entry & RANK_MASK);
+      }
+    }
+    registers = denseRegisters;
+    sparseEntries = null;
+    sparseSize = 0;
+  }
+
+  private double alpha() {
+    switch (registersCount) {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / (1 + 1.079 / registersCount);
+    }
+  }
+
+}
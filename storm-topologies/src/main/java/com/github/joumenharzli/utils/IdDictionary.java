@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.storm.metric.api.IMetric;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.utils.Utils;
+
+import static com.github.joumenharzli.Configuration.*;
+
+/**
+ * Dictionary of the ids decoded by an executor before their write to the sink
+ * <p>
+ * The decoded strings of the most recently used ids are kept so the ids of the hot products are
+ * not built again for each write. The dictionary holds at most {@code ID_DICTIONARY_CAPACITY_CONFIG}
+ * ids and evicts the least recently used one beyond. It is used by the thread of its executor only.
+ *
+ * @author Joumen Harzli
+ */
+public final class IdDictionary {
+
+  private final Map<CompactId, String> decodedIds;
+  private long hits;
+  private long misses;
+
+  /**
+   * @param capacity maximum number of ids, 0 to decode the ids without keeping them
+   */
+  public IdDictionary(int capacity) {
+    this.decodedIds = new LinkedHashMap<CompactId, String>(16, 0.75f, true) {
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<CompactId, String> eldest) {
+        return size() > capacity;
+      }
+
+    };
+  }
+
+  /**
+   * Create the dictionary of an executor and register its metric
+   *
+   * @param stormConf configuration of the topology
+   * @param context   context of the executor
+   * @return the dictionary of the executor
+   */
+  public static IdDictionary create(Map stormConf, TopologyContext context) {
+    IdDictionary dictionary = new IdDictionary(
+        Utils.getInt(stormConf.get(ID_DICTIONARY_CAPACITY_CONFIG), ID_DICTIONARY_CAPACITY));
+
+    context.registerMetric(Metric.NAME, dictionary.new Metric(),
+        Utils.getInt(stormConf.get(ID_DICTIONARY_METRICS_BUCKET_SECS_CONFIG), ID_DICTIONARY_METRICS_BUCKET_SECS));
+
+    return dictionary;
+  }
+
+  /**
+   * @param id a {@link CompactId} or an id which is already a string, like the keys journaled
+   *           before the encoding of the ids
+   * @return the decoded id
+   */
+  public String decode(Object id) {
+    if (id instanceof String) {
+      return (String) id;
+    }
+
+    CompactId compactId = (CompactId) id;
+    if (!compactId.isUuid()) {
+      return compactId.toString();
+    }
+
+    String decodedId = decodedIds.get(compactId);
+    if (decodedId != null) {
+      hits++;
+      return decodedId;
+    }
+
+    misses++;
+    decodedId = compactId.toString();
+    decodedIds.put(compactId, decodedId);
+    return decodedId;
+  }
+
+  /**
+   * Metric reporting the hits, the misses and the hit rate of the dictionary since the last report
+   * and the number of ids it holds
+   */
+  public final class Metric implements IMetric {
+
+    public static final String NAME = "id-dictionary";
+
+    @Override
+    public Object getValueAndReset() {
+      Map<String, Object> value = new LinkedHashMap<>();
+      value.put("hits", hits);
+      value.put("misses", misses);
+      value.put("hitRate", hits + misses == 0 ? 0d : (double) hits / (hits + misses));
+      value.put("size", decodedIds.size());
+
+      hits = 0;
+      misses = 0;
+      return value;
+    }
+
+  }
+
+}
@@ -15,16 +15,29 @@
 
 package com.github.joumenharzli.utils;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+
 import org.apache.commons.lang3.Validate;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.storm.kafka.KafkaSpout;
 import org.apache.storm.kafka.SpoutConfig;
-import org.apache.storm.kafka.StringScheme;
 import org.apache.storm.kafka.ZkHosts;
+import org.apache.storm.kafka.spout.Func;
+import org.apache.storm.kafka.spout.KafkaSpoutConfig;
+import org.apache.storm.spout.Scheme;
 import org.apache.storm.spout.SchemeAsMultiScheme;
+import org.apache.storm.topology.IRichSpout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static com.github.joumenharzli.Configuration.KAFKA_ZOOKEEPER_HOST;
+import com.github.joumenharzli.TopologyProfile;
+import com.github.joumenharzli.analytics.ProductAccessLogScheme;
+
+import static com.github.joumenharzli.Configuration.*;
 
 /**
  * Kafka Spout Utils
@@ -39,7 +52,22 @@ public final class KafkaSpoutUtils {
   }
 
   /**
-   * Create a kafka spout
+   * Create the kafka spout selected by the {@code KAFKA_SPOUT_IMPLEMENTATION_CONFIG} of the profile
+   *
+   * @param topicName name of the topic
+   * @param profile   profile of the topology
+   * @return the created spout
+   */
+  public static IRichSpout createKafkaSpout(String topicName, TopologyProfile profile) {
+    if ("consumer".equals(profile.getString(KAFKA_SPOUT_IMPLEMENTATION_CONFIG, KAFKA_SPOUT_IMPLEMENTATION))) {
+      return createKafkaConsumerSpout(topicName, profile);
+    }
+    return createKafkaSpout(topicName);
+  }
+
+  /**
+   * Create a kafka spout emitting the decoded product access logs, the offsets are stored in
+   * zookeeper
    *
    * @param topicName name of the topic
    * @return the created spout
@@ -52,11 +80,67 @@ public final class KafkaSpoutUtils {
     SpoutConfig kafkaConfig = new SpoutConfig(
         new ZkHosts(KAFKA_ZOOKEEPER_HOST), topicName, "/kafka", "kafkaSpout");
 
-    kafkaConfig.scheme = new SchemeAsMultiScheme(new StringScheme());
+    kafkaConfig.scheme = new SchemeAsMultiScheme(new ProductAccessLogScheme());
 
     return new KafkaSpout(kafkaConfig);
   }
 
-}
+  /**
+   * Create a kafka spout using the kafka consumer api emitting the decoded product access logs,
+   * the offsets are stored in kafka
+   *
+   * @param topicName name of the topic
+   * @param profile   profile holding the settings of the consumer
+   * @return the created spout
+   */
+  public static org.apache.storm.kafka.spout.KafkaSpout<String, byte[]> createKafkaConsumerSpout(String topicName,
+                                                                                               TopologyProfile profile) {
+    Validate.notBlank(topicName, "The name of the kafka topic cannot be null/blank");
+
+    LOGGER.debug("Creating a new kafka consumer spout that will subscribe to the topic {}", topicName);
+
+    ProductAccessLogScheme scheme = new ProductAccessLogScheme();
+
+    String bootstrapServers = profile.getString(KAFKA_BOOTSTRAP_SERVERS_CONFIG, KAFKA_BOOTSTRAP_SERVERS);
+    String firstPollOffsetStrategy = profile.getString(KAFKA_FIRST_POLL_OFFSET_STRATEGY_CONFIG,
+        KAFKA_FIRST_POLL_OFFSET_STRATEGY);
 
+    KafkaSpoutConfig<String, byte[]> kafkaConfig = new KafkaSpoutConfig.Builder<>(bootstrapServers,
+        StringDeserializer.class, ByteArrayDeserializer.class, topicName)
+        .setGroupId(KAFKA_CONSUMER_GROUP_ID)
+        .setProp(ConsumerConfig.MAX_POLL_RECORDS_CONFIG,
+            profile.getInt(KAFKA_MAX_POLL_RECORDS_CONFIG, KAFKA_MAX_POLL_RECORDS))
+        .setProp(ConsumerConfig.FETCH_MIN_BYTES_CONFIG,
+            profile.getInt(KAFKA_FETCH_MIN_BYTES_CONFIG, KAFKA_FETCH_MIN_BYTES))
+        .setProp(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG,
+            profile.getInt(KAFKA_FETCH_MAX_WAIT_MS_CONFIG, KAFKA_FETCH_MAX_WAIT_MS))
+        .setOffsetCommitPeriodMs(profile.getLong(KAFKA_OFFSET_COMMIT_PERIOD_MS_CONFIG, KAFKA_OFFSET_COMMIT_PERIOD_MS))
+        .setFirstPollOffsetStrategy(KafkaSpoutConfig.FirstPollOffsetStrategy.valueOf(firstPollOffsetStrategy))
+        .setRecordTranslator(new SchemeRecordTranslator(scheme), scheme.getOutputFields())
+        .build();
 
+    return new org.apache.storm.kafka.spout.KafkaSpout<>(kafkaConfig);
+  }
+
+  /**
+   * Translate the kafka records to tuples using a scheme
+   */
+  private static final class SchemeRecordTranslator implements Func<ConsumerRecord<String, byte[]>, List<Object>> {
+
+    private final Scheme scheme;
+
+    private SchemeRecordTranslator(Scheme scheme) {
+      this.scheme = scheme;
+    }
+
+    @Override
+    public List<Object> apply(ConsumerRecord<String, byte[]> record) {
+      if (record.value() == null) {
+        return null;
+      }
+      return scheme.deserialize(ByteBuffer.wrap(record.value()));
+    }
+
+  }
+
+}
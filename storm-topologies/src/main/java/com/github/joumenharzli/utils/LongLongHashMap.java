@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Hash map of primitive long keys and values with open addressing and linear probing
+ * <p>
+ * The keys and the values are stored in arrays so no object is allocated by entry, the map is not
+ * thread safe and its entries cannot be removed.
+ *
+ * @author Joumen Harzli
+ */
+public final class LongLongHashMap {
+
+  private static final float LOAD_FACTOR = 0.6f;
+
+  private long[] keys;
+  private long[] values;
+  private boolean[] used;
+  private int size;
+  private int resizeThreshold;
+
+  /**
+   * @param expectedSize number of entries held without resizing
+   */
+  public LongLongHashMap(int expectedSize) {
+    Validate.isTrue(expectedSize >= 0, "The expected size cannot be negative");
+    allocate(Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1);
+  }
+
+  /**
+   * @param key          the key
+   * @param defaultValue value returned if the key is not mapped
+   * @return the value of the key
+   */
+  public long get(long key, long defaultValue) {
+    int slot = findSlot(key);
+    return used[slot] ? values[slot] : defaultValue;
+  }
+
+  /**
+   * @param key   the key
+   * @param value the new value of the key
+   */
+  public void put(long key, long value) {
+    int slot = findSlot(key);
+    if (!used[slot]) {
+      insert(slot, key, value);
+      return;
+    }
+    values[slot] = value;
+  }
+
+  /**
+   * Add a delta to the value of a key, a key that is not mapped has the value 0
+   *
+   * @param key   the key
+   * @param delta value to add
+   * @return the new value of the key
+   */
+  public long addTo(long key, long delta) {
+    int slot = findSlot(key);
+    if (!used[slot]) {
+      insert(slot, key, delta);
+      return delta;
+    }
+    values[slot] += delta;
+    return values[slot];
+  }
+
+  /**
+   * @return the number of entries
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param consumer consumer of the entries in no particular order
+   */
+  public void forEach(EntryConsumer consumer) {
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (used[slot]) {
+        consumer.accept(keys[slot], values[slot]);
+      }
+    }
+  }
+
+  private void insert(int slot, long key, long value) {
+    used[slot] = true;
+    keys[slot] = key;
+    values[slot] = value;
+
+    if (++size > resizeThreshold) {
+      resize();
+    }
+  }
+
+  private int findSlot(long key) {
+    int mask = keys.length - 1;
+    int slot = mix(key) & mask;
+    while (used[slot] && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void resize() {
+    long[] oldKeys = keys;
+    long[] oldValues = values;
+    boolean[] oldUsed = used;
+
+    allocate(keys.length << 1);
+    for (int slot = 0; slot < oldKeys.length; slot++) {
+      if (oldUsed[slot]) {
+        int newSlot = findSlot(oldKeys[slot]);
+        used[newSlot] = true;
+        keys[newSlot] = oldKeys[slot];
+        values[newSlot] = oldValues[slot];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    Validate.isTrue(capacity > 0, "The map cannot hold more than %d entries", 1 << 30);
+    keys = new long[capacity];
+    values = new long[capacity];
+    used = new boolean[capacity];
+    resizeThreshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  /**
+   * The packed keys differ by their low or high bits only so the bits are mixed before masking
+   */
+  private static int mix(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+  /**
+   * Consumer of the entries of the map
+   */
+  @FunctionalInterface
+  public interface EntryConsumer {
+
+    /**
+     * @param key   key of the entry
+     * @param value value of the entry
+     */
+    void accept(long key, long value);
+
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Serialization of the Roaring bitmaps stored in cassandra
+ * <p>
+ * The bitmaps are written in the portable format of the Roaring bitmaps after the conversion of
+ * their consecutive values to runs, so a range of ids allocated together takes a few bytes.
+ *
+ * @author Joumen Harzli
+ */
+public final class RoaringBitmaps {
+
+  private RoaringBitmaps() {
+  }
+
+  /**
+   * @param bitmap the bitmap, its containers may be converted to runs
+   * @return the serialized bitmap
+   */
+  public static byte[] toBytes(RoaringBitmap bitmap) {
+    bitmap.runOptimize();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(bitmap.serializedSizeInBytes());
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      bitmap.serialize(output);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to serialize the bitmap", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @param buffer the serialized bitmap, its position is not changed
+   * @return the deserialized bitmap
+   */
+  public static RoaringBitmap fromBytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+
+    RoaringBitmap bitmap = new RoaringBitmap();
+    try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      bitmap.deserialize(input);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to deserialize the bitmap", e);
+    }
+    return bitmap;
+  }
+
+}
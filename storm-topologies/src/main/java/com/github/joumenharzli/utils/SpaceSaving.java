@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Space-Saving summary tracking the most frequent keys of a stream in a bounded number of counters
+ * <p>
+ * A key already tracked has its counter incremented. A new key takes the counter of the least
+ * frequent tracked key when all the counters are used and starts from its count, so every key
+ * whose count exceeds {@code total / capacity} is tracked. The counters form a binary min-heap
+ * indexed by key so an update costs {@code O(log capacity)}. The summary is not thread safe.
+ *
+ * @param <K> type of the keys
+ * @author Joumen Harzli
+ */
+public final class SpaceSaving<K> {
+
+  private final Object[] keys;
+  private final long[] counts;
+  private final Map<K, Integer> positions;
+  private int size;
+
+  /**
+   * @param capacity maximum number of tracked keys
+   */
+  public SpaceSaving(int capacity) {
+    Validate.isTrue(capacity > 0, "The capacity must be positive");
+
+    this.keys = new Object[capacity];
+    this.counts = new long[capacity];
+    this.positions = new HashMap<>(capacity * 2);
+  }
+
+  /**
+   * @param key   the key
+   * @param count count to add to the key
+   */
+  public void add(K key, long count) {
+    Integer position = positions.get(key);
+
+    if (position == null && size < keys.length) {
+      position = size++;
+      keys[position] = key;
+      counts[position] = count;
+      positions.put(key, position);
+      siftUp(position);
+      return;
+    }
+
+    if (position == null) {
+      /* the least frequent key is replaced and its count is inherited */
+      position = 0;
+      positions.remove(keys[0]);
+      keys[0] = key;
+      positions.put(key, 0);
+    }
+
+    counts[position] += count;
+    siftDown(position);
+  }
+
+  /**
+   * @return the tracked keys in no particular order
+   */
+  @SuppressWarnings("unchecked")
+  public List<K> getKeys() {
+    List<K> trackedKeys = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      trackedKeys.add((K) keys[i]);
+    }
+    return trackedKeys;
+  }
+
+  /**
+   * @param key the key
+   * @return the count of the key, an overestimate of its count since it is tracked, 0 if it is not
+   */
+  public long getCount(K key) {
+    Integer position = positions.get(key);
+    return position == null ? 0 : counts[position];
+  }
+
+  /**
+   * Forget all the keys
+   */
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      keys[i] = null;
+    }
+    positions.clear();
+    size = 0;
+  }
+
+  /**
+   * Restore the heap after the insertion of a key at the position
+   */
+  private void siftUp(int position) {
+    int current = position;
+
+    while (current > 0) {
+      int parent = (current - 1) / 2;
+      if (counts[parent] <= counts[current]) {
+        return;
+      }
+      swap(current, parent);
+      current = parent;
+    }
+  }
+
+  /**
+   * Restore the heap after the increase of the count at the position
+   */
+  private void siftDown(int position) {
+    int current = position;
+
+    while (true) {
+      int smallest = current;
+      int left = 2 * current + 1;
+      int right = left + 1;
+
+      if (left < size && counts[left] < counts[smallest]) {
+        smallest = left;
+      }
+      if (right < size && counts[right] < counts[smallest]) {
+        smallest = right;
+      }
+      if (smallest == current) {
+        return;
+      }
+
+      swap(current, smallest);
+      current = smallest;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void swap(int first, int second) {
+    Object key = keys[first];
+    long count = counts[first];
+    keys[first] = keys[second];
+    counts[first] = counts[second];
+    keys[second] = key;
+    counts[second] = count;
+    positions.put((K) keys[first], first);
+    positions.put((K) key, second);
+  }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.time.Instant;
+
+/**
+ * Timestamp Utils working on epoch milliseconds without allocating date objects
+ *
+ * @author Joumen Harzli
+ */
+public final class TimestampUtils {
+
+  public static final long MILLIS_PER_DAY = 86_400_000L;
+
+  private static final int ISO_INSTANT_MIN_LENGTH = "yyyy-MM-ddTHH:mm:ssZ".length();
+
+  private TimestampUtils() {
+  }
+
+  /**
+   * Truncate a timestamp to the start of its day in UTC
+   *
+   * @param epochMillis the timestamp in milliseconds since the epoch
+   * @return the start of the day in milliseconds since the epoch
+   */
+  public static long truncateToDay(long epochMillis) {
+    return epochMillis - Math.floorMod(epochMillis, MILLIS_PER_DAY);
+  }
+
+  /**
+   * Truncate a timestamp to the start of its month in UTC
+   *
+   * @param epochMillis the timestamp in milliseconds since the epoch
+   * @return the start of the month in milliseconds since the epoch
+   */
+  public static long truncateToMonth(long epochMillis) {
+    long days = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+    return (days - dayOfMonth(days) + 1) * MILLIS_PER_DAY;
+  }
+
+  /**
+   * Parse an ISO-8601 UTC instant such as {@code 2018-01-25T10:15:30.123Z}
+   * <p>
+   * The common format produced by {@link Instant#toString()} is parsed in place, any other
+   * format falls back to {@link Instant#parse(CharSequence)}
+   *
+   * @param text   characters containing the instant
+   * @param offset offset of the instant in the characters
+   * @param length length of the instant
+   * @return the instant in milliseconds since the epoch
+   * @throws java.time.format.DateTimeParseException if the instant cannot be parsed
+   */
+  public static long parseIsoInstant(char[] text, int offset, int length) {
+    int end = offset + length;
+
+    if (length < ISO_INSTANT_MIN_LENGTH || text[end - 1] != 'Z'
+        || text[offset + 4] != '-' || text[offset + 7] != '-' || text[offset + 10] != 'T'
+        || text[offset + 13] != ':' || text[offset + 16] != ':') {
+      return Instant.parse(new String(text, offset, length)).toEpochMilli();
+    }
+
+    int year = digits(text, offset, 4);
+    int month = digits(text, offset + 5, 2);
+    int day = digits(text, offset + 8, 2);
+    int hours = digits(text, offset + 11, 2);
+    int minutes = digits(text, offset + 14, 2);
+    int seconds = digits(text, offset + 17, 2);
+    int millis = fractionToMillis(text, offset + 19, end - 1);
+
+    if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+        || hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59 || millis < 0) {
+      return Instant.parse(new String(text, offset, length)).toEpochMilli();
+    }
+
+    return ((daysFromCivil(year, month, day) * 24 + hours) * 60 + minutes) * 60_000L + seconds * 1000L + millis;
+  }
+
+  /**
+   * Number of days since the epoch of a date of the proleptic gregorian calendar
+   *
+   * @param year  the year
+   * @param month the month from 1 to 12
+   * @param day   the day of the month from 1 to 31
+   * @return the number of days since 1970-01-01
+   */
+  public static long daysFromCivil(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = Math.floorDiv(y, 400);
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146_097L + dayOfEra - 719_468L;
+  }
+
+  /**
+   * @param year  the year
+   * @param month the month from 1 to 12
+   * @return the number of days of the month in the proleptic gregorian calendar
+   */
+  public static int lengthOfMonth(int year, int month) {
+    if (month == 2) {
+      return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+    }
+    return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+  }
+
+  /**
+   * Inverse of {@link #daysFromCivil(int, int, int)} reduced to the day of the month
+   *
+   * @param days the number of days since 1970-01-01
+   * @return the day of the month from 1 to 31
+   */
+  private static int dayOfMonth(long days) {
+    long z = days + 719_468L;
+    long era = Math.floorDiv(z, 146_097L);
+    int dayOfEra = (int) (z - era * 146_097L);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int monthFromMarch = (5 * dayOfYear + 2) / 153;
+    return dayOfYear - (153 * monthFromMarch + 2) / 5 + 1;
+  }
+
+  /**
+   * @return the decimal value of the digits or -1 if a character is not a digit
+   */
+  private static int digits(char[] text, int offset, int count) {
+    int value = 0;
+    for (int i = offset; i < offset + count; i++) {
+      int digit = text[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  /**
+   * @return the milliseconds of an optional fraction of second such as {@code .123456} or -1 if it
+   * is not valid
+   */
+  private static int fractionToMillis(char[] text, int offset, int end) {
+    if (offset == end) {
+      return 0;
+    }
+    if (text[offset] != '.' || end - offset < 2) {
+      return -1;
+    }
+
+    int millis = 0;
+    for (int i = offset + 1; i < end; i++) {
+      int digit = text[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      if (i <= offset + 3) {
+        millis = millis * 10 + digit;
+      }
+    }
+    for (int i = end - offset - 1; i < 3; i++) {
+      millis *= 10;
+    }
+    return millis;
+  }
+
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the entries of the {@link CounterJournal} and their recovery
+ *
+ * @author Joumen Harzli
+ */
+public class CounterJournalTest {
+
+  private static final String NAME = "task";
+  private static final int SEGMENT_SIZE = 256;
+
+  private static final List<Object> FIRST_KEY = Arrays.asList("product1", 42L);
+  private static final List<Object> SECOND_KEY = Collections.singletonList("product2");
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("counter-journal-test");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.walk(directory).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+  }
+
+  @Test
+  public void testEntryLayout() throws IOException {
+    try (CounterJournal journal = open()) {
+      assertTrue(journal.add(FIRST_KEY, 2));
+      assertTrue(journal.add(FIRST_KEY, 1));
+      journal.sync();
+    }
+
+    byte[] key = encode(output -> {
+      output.writeByte(2);
+      output.writeByte('S');
+      output.writeUTF("product1");
+      output.writeByte('L');
+      output.writeLong(42L);
+    });
+    ByteBuffer segment = ByteBuffer.wrap(Files.readAllBytes(directory.resolve(NAME + "-0.journal")));
+
+    assertEquals(SEGMENT_SIZE, segment.capacity());
+    assertEquals('P', segment.get());
+    assertEquals(key.length, Short.toUnsignedInt(segment.getShort()));
+    byte[] writtenKey = new byte[key.length];
+    segment.get(writtenKey);
+    assertTrue(Arrays.equals(key, writtenKey));
+    assertEquals(3L, segment.getLong());
+    assertEquals(0, segment.get());
+  }
+
+  @Test
+  public void testSealFlushedAndFailed() throws IOException {
+    try (CounterJournal journal = open()) {
+      journal.add(FIRST_KEY, 2);
+      journal.add(SECOND_KEY, 5);
+      journal.sync();
+
+      List<CounterJournal.Entry> entries = journal.seal();
+      assertEquals(2, entries.size());
+      assertEquals(0, journal.getActiveCountersCount());
+      assertTrue(journal.seal().isEmpty());
+
+      journal.add(FIRST_KEY, 7);
+      journal.sync();
+
+      CounterJournal.Entry first = find(entries, FIRST_KEY);
+      CounterJournal.Entry second = find(entries, SECOND_KEY);
+      journal.flushed(first);
+      journal.failed(second);
+
+      List<CounterJournal.Entry> retried = journal.seal();
+      assertEquals(Collections.singletonList(second), retried);
+      assertEquals(5L, retried.get(0).getDelta());
+      assertEquals(1L, getMetric(journal).get("failedWrites"));
+      assertEquals(0L, getMetric(journal).get("failedWrites"));
+
+      journal.flushed(second);
+      List<CounterJournal.Entry> next = journal.seal();
+      assertEquals(1, next.size());
+      assertEquals(FIRST_KEY, next.get(0).getKey());
+      assertEquals(7L, next.get(0).getDelta());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSealRequiresSync() throws IOException {
+    try (CounterJournal journal = open()) {
+      journal.add(FIRST_KEY, 1);
+      journal.seal();
+    }
+  }
+
+  @Test
+  public void testUnsyncedDeltasAreSkippedOnRecovery() throws IOException {
+    try (CounterJournal journal = open()) {
+      journal.add(FIRST_KEY, 2);
+      journal.sync();
+      journal.add(FIRST_KEY, 3);
+      journal.add(SECOND_KEY, 1);
+    }
+
+    try (CounterJournal journal = open()) {
+      assertTrue(journal.hasPendingEntries());
+
+      List<CounterJournal.Entry> entries = journal.seal();
+      assertEquals(1, entries.size());
+      assertEquals(FIRST_KEY, entries.get(0).getKey());
+      assertEquals(2L, entries.get(0).getDelta());
+    }
+  }
+
+  @Test
+  public void testFlushedEntriesAreNotRecovered() throws IOException {
+    try (CounterJournal journal = open()) {
+      journal.add(FIRST_KEY, 2);
+      journal.add(SECOND_KEY, 1);
+      journal.sync();
+
+      List<CounterJournal.Entry> entries = journal.seal();
+      journal.flushed(find(entries, FIRST_KEY));
+      journal.failed(find(entries, SECOND_KEY));
+      journal.sync();
+    }
+
+    try (CounterJournal journal = open()) {
+      List<CounterJournal.Entry> entries = journal.seal();
+      assertEquals(1, entries.size());
+      assertEquals(SECOND_KEY, entries.get(0).getKey());
+      assertEquals(1L, entries.get(0).getDelta());
+    }
+  }
+
+  @Test
+  public void testTornEntryIsIgnoredOnRecovery() throws IOException {
+    try (CounterJournal journal = open()) {
+      journal.add(FIRST_KEY, 2);
+      journal.sync();
+    }
+    int endPosition = findEnd(Files.readAllBytes(directory.resolve(NAME + "-0.journal")));
+
+    /* an entry interrupted before its status, then an entry whose key overflows the segment */
+    try (RandomAccessFile segment = new RandomAccessFile(directory.resolve(NAME + "-0.journal").toFile(), "rw")) {
+      segment.seek(endPosition + 1);
+      segment.writeShort(4);
+      segment.write(new byte[]{1, 'S', 0, 1});
+    }
+    try (RandomAccessFile segment = new RandomAccessFile(directory.resolve(NAME + "-1.journal").toFile(), "rw")) {
+      segment.writeByte('P');
+      segment.writeShort(SEGMENT_SIZE);
+    }
+
+    try (CounterJournal journal = open()) {
+      List<CounterJournal.Entry> entries = journal.seal();
+      assertEquals(1, entries.size());
+      assertEquals(FIRST_KEY, entries.get(0).getKey());
+      assertEquals(2L, entries.get(0).getDelta());
+
+      journal.add(SECOND_KEY, 4);
+      journal.sync();
+    }
+
+    try (CounterJournal journal = open()) {
+      assertEquals(1, journal.getActiveCountersCount());
+      assertEquals(FIRST_KEY, journal.seal().get(0).getKey());
+    }
+  }
+
+  @Test
+  public void testFullSegment() throws IOException {
+    try (CounterJournal journal = open()) {
+      int added = 0;
+      while (journal.add(Collections.singletonList((long) added), 1)) {
+        added++;
+      }
+
+      assertEquals(SEGMENT_SIZE / 21, added);
+      assertFalse(journal.add(Collections.singletonList((long) added), 1));
+      assertTrue(journal.add(Collections.singletonList(0L), 1));
+    }
+  }
+
+  private CounterJournal open() throws IOException {
+    return CounterJournal.open(directory, NAME, SEGMENT_SIZE);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> getMetric(CounterJournal journal) {
+    return (Map<String, Object>) journal.new Metric().getValueAndReset();
+  }
+
+  private static CounterJournal.Entry find(List<CounterJournal.Entry> entries, List<Object> key) {
+    return entries.stream().filter(entry -> entry.getKey().equals(key)).findFirst()
+        .orElseThrow(() -> new AssertionError("No entry for " + key));
+  }
+
+  private static int findEnd(byte[] segment) {
+    ByteBuffer buffer = ByteBuffer.wrap(segment);
+    int position = 0;
+    while (buffer.get(position) != 0) {
+      position += 3 + Short.toUnsignedInt(buffer.getShort(position + 1)) + Long.BYTES;
+    }
+    return position;
+  }
+
+  private static byte[] encode(KeyWriter writer) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      writer.write(output);
+    }
+    return bytes.toByteArray();
+  }
+
+  @FunctionalInterface
+  private interface KeyWriter {
+    void write(DataOutputStream output) throws IOException;
+  }
+
+}
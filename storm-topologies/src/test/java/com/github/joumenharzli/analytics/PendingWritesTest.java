@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the {@link PendingWrites} of the merging bolts
+ *
+ * @author Joumen Harzli
+ */
+public class PendingWritesTest {
+
+  private static final List<Object> KEY1 = Arrays.asList("product1", 1L);
+  private static final List<Object> KEY2 = Arrays.asList("product2", 1L);
+
+  @Test
+  public void testKeyInFlightIsKeptUntilItsWriteCompletes() {
+    PendingWrites<List<String>> pending = new PendingWrites<>(10);
+    List<SettableFuture<Object>> results = new ArrayList<>();
+    List<List<String>> written = new ArrayList<>();
+
+    pending.add(KEY1, 1, ArrayList::new).add("a");
+    assertEquals(1, pending.flush((key, value) -> write(value, written, results)));
+
+    pending.add(KEY1, 1, ArrayList::new).add("b");
+    pending.add(KEY2, 1, ArrayList::new).add("c");
+    assertEquals(1, pending.flush((key, value) -> write(value, written, results)));
+    assertEquals(1, pending.size());
+
+    results.get(0).set(null);
+    assertEquals(1, pending.flush((key, value) -> write(value, written, results)));
+    assertEquals(0, pending.size());
+    assertEquals(Arrays.asList(Arrays.asList("a"), Arrays.asList("c"), Arrays.asList("b")), written);
+  }
+
+  @Test
+  public void testFullOnlyAfterACompletion() {
+    PendingWrites<List<String>> pending = new PendingWrites<>(2);
+    List<SettableFuture<Object>> results = new ArrayList<>();
+    List<List<String>> written = new ArrayList<>();
+
+    pending.add(KEY1, 1, ArrayList::new).add("a");
+    assertFalse(pending.isFull());
+    pending.add(KEY1, 1, ArrayList::new).add("b");
+    assertTrue(pending.isFull());
+    pending.flush((key, value) -> write(value, written, results));
+
+    pending.add(KEY1, 1, ArrayList::new).add("c");
+    pending.add(KEY1, 1, ArrayList::new).add("d");
+    assertFalse(pending.isFull());
+
+    results.get(0).setException(new IllegalStateException());
+    assertTrue(pending.isFull());
+  }
+
+  private static SettableFuture<Object> write(List<String> value, List<List<String>> written,
+                                              List<SettableFuture<Object>> results) {
+    SettableFuture<Object> result = SettableFuture.create();
+    written.add(value);
+    results.add(result);
+    return result;
+  }
+
+}
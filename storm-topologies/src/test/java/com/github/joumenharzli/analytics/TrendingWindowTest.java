@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.joumenharzli.utils.CompactId;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for the ranking of the {@link TrendingWindow}
+ *
+ * @author Joumen Harzli
+ */
+public class TrendingWindowTest {
+
+  private static final long SLOT_MILLIS = 1000;
+  private static final long START = 1_516_838_400_000L;
+
+  private static final CompactId FIRST = CompactId.encode("product1");
+  private static final CompactId SECOND = CompactId.encode("product2");
+  private static final CompactId THIRD = CompactId.encode("product3");
+
+  @Test
+  public void testRankSumsTheSlots() {
+    TrendingWindow window = newWindow();
+    add(window, FIRST, START, 3);
+    add(window, SECOND, START, 2);
+    add(window, SECOND, START + SLOT_MILLIS, 2);
+    add(window, THIRD, START + 2 * SLOT_MILLIS, 1);
+
+    assertRanking(window, START, 3, Arrays.asList(SECOND, FIRST, THIRD), Arrays.asList(4L, 3L, 1L));
+    assertRanking(window, START, 1, Collections.singletonList(SECOND), Collections.singletonList(4L));
+  }
+
+  @Test
+  public void testSlotRotation() {
+    TrendingWindow window = newWindow();
+    add(window, FIRST, START, 3);
+    add(window, SECOND, START + SLOT_MILLIS, 2);
+
+    /* the period after the window reuses the slot of the first period */
+    add(window, THIRD, START + 3 * SLOT_MILLIS + 10, 1);
+    assertRanking(window, START, 3, Arrays.asList(SECOND, THIRD), Arrays.asList(2L, 1L));
+
+    /* a newer period leaves the slots of the window empty but the slot of the second one */
+    add(window, THIRD, START + 6 * SLOT_MILLIS, 1);
+    assertRanking(window, START, 3, Collections.singletonList(THIRD), Collections.singletonList(1L));
+  }
+
+  @Test
+  public void testLateViewsAreDropped() {
+    TrendingWindow window = newWindow();
+    add(window, FIRST, START + 3 * SLOT_MILLIS, 1);
+
+    /* the slot of this period already holds a newer one */
+    add(window, SECOND, START, 5);
+    assertRanking(window, START, 3, Collections.singletonList(FIRST), Collections.singletonList(1L));
+
+    /* a late view of a period still in the window is counted */
+    add(window, SECOND, START + 2 * SLOT_MILLIS, 2);
+    assertRanking(window, START, 3, Arrays.asList(SECOND, FIRST), Arrays.asList(2L, 1L));
+  }
+
+  @Test
+  public void testViewsExpireWhenTheStreamStops() {
+    TrendingWindow window = newWindow();
+    add(window, FIRST, START, 2);
+    add(window, SECOND, START + SLOT_MILLIS, 1);
+
+    assertRanking(window, START + 2 * SLOT_MILLIS + 10, 3, Arrays.asList(FIRST, SECOND), Arrays.asList(2L, 1L));
+    assertRanking(window, START + 3 * SLOT_MILLIS, 3, Collections.singletonList(SECOND),
+        Collections.singletonList(1L));
+    assertRanking(window, START + 4 * SLOT_MILLIS, 3, Collections.emptyList(), Collections.emptyList());
+  }
+
+  private static TrendingWindow newWindow() {
+    return new TrendingWindow("3s", SLOT_MILLIS, 3, 4, 1024, 10);
+  }
+
+  private static void add(TrendingWindow window, CompactId productId, long accessTimestamp, int views) {
+    for (int i = 0; i < views; i++) {
+      window.add(productId, accessTimestamp);
+    }
+  }
+
+  private static void assertRanking(TrendingWindow window, long now, int k, List<CompactId> expectedIds,
+                                    List<Long> expectedViews) {
+    List<CompactId> productIds = new ArrayList<>();
+    List<Long> views = new ArrayList<>();
+    window.rank(k, now, productIds, views);
+
+    assertEquals(expectedIds, productIds);
+    assertEquals(expectedViews, views);
+  }
+
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.joumenharzli.sink.ProductAccessLog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for the segments of the access logs archive written by {@link AccessLogSegmentWriter} and
+ * {@link AccessLogArchiveWriter} then read by {@link AccessLogSegmentReader} and
+ * {@link AccessLogArchiveReader}
+ *
+ * @author Joumen Harzli
+ */
+public class AccessLogSegmentsTest {
+
+  private static final long HOUR = 3_600_000L;
+  private static final long DAY = 1_516_838_400_000L;
+
+  private static final List<ProductAccessLog> FIRST_BLOCK = Arrays.asList(
+      new ProductAccessLog("user1", "product1", DAY + 20),
+      new ProductAccessLog("user2", "product1", DAY + 10),
+      new ProductAccessLog("user1", "product2", DAY + 30));
+  private static final List<ProductAccessLog> SECOND_BLOCK = Arrays.asList(
+      new ProductAccessLog("user3", "product2", DAY + HOUR),
+      new ProductAccessLog("user1", "product3", DAY + HOUR + 5));
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("archive-test");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.walk(directory).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    Path openPath = directory.resolve("writer-1-0" + AccessLogSegments.OPEN_SEGMENT_EXTENSION);
+    try (AccessLogSegmentWriter writer = AccessLogSegmentWriter.create(openPath, DAY)) {
+      writer.append(FIRST_BLOCK);
+      writer.append(new ArrayList<>());
+      writer.append(SECOND_BLOCK);
+    }
+
+    Path path = directory.resolve("writer-1-0" + AccessLogSegments.SEGMENT_EXTENSION);
+    assertFalse(Files.exists(openPath));
+
+    try (AccessLogSegmentReader reader = new AccessLogSegmentReader(path)) {
+      assertEquals(5, reader.getCount());
+      assertEquals(DAY + 10, reader.getMinTimestamp());
+      assertEquals(DAY + HOUR + 5, reader.getMaxTimestamp());
+
+      List<ProductAccessLog> accessLogs = new ArrayList<>();
+      reader.read(Long.MIN_VALUE, Long.MAX_VALUE, accessLogs::add);
+      assertEquals(toStrings(FIRST_BLOCK, SECOND_BLOCK), toStrings(accessLogs));
+    }
+  }
+
+  @Test
+  public void testEmptySegmentIsDeleted() throws IOException {
+    Path openPath = directory.resolve("writer-1-0" + AccessLogSegments.OPEN_SEGMENT_EXTENSION);
+    AccessLogSegmentWriter.create(openPath, DAY).close();
+
+    assertEquals(0, listFiles().size());
+  }
+
+  @Test
+  public void testTimeRangeSkipsBlocksAndSegments() throws IOException {
+    Path openPath = directory.resolve("writer-1-0" + AccessLogSegments.OPEN_SEGMENT_EXTENSION);
+    try (AccessLogSegmentWriter writer = AccessLogSegmentWriter.create(openPath, DAY)) {
+      writer.append(FIRST_BLOCK);
+      writer.append(SECOND_BLOCK);
+    }
+
+    try (AccessLogSegmentReader reader = new AccessLogSegmentReader(
+        directory.resolve("writer-1-0" + AccessLogSegments.SEGMENT_EXTENSION))) {
+      List<ProductAccessLog> accessLogs = new ArrayList<>();
+
+      reader.read(DAY + HOUR, DAY + 2 * HOUR, accessLogs::add);
+      assertEquals(toStrings(SECOND_BLOCK), toStrings(accessLogs));
+
+      accessLogs.clear();
+      reader.read(DAY + 15, DAY + 30, accessLogs::add);
+      assertEquals(toStrings(FIRST_BLOCK.subList(0, 1)), toStrings(accessLogs));
+
+      assertTrue(reader.overlaps(DAY + HOUR + 5, DAY + 2 * HOUR));
+      assertFalse(reader.overlaps(DAY + HOUR + 6, DAY + 2 * HOUR));
+      assertFalse(reader.overlaps(DAY, DAY + 10));
+    }
+
+    List<ProductAccessLog> accessLogs = new ArrayList<>();
+    assertEquals(0, new AccessLogArchiveReader(directory).read(DAY + 2 * HOUR, DAY + 3 * HOUR, accessLogs::add));
+    assertTrue(accessLogs.isEmpty());
+  }
+
+  @Test
+  public void testRollBySize() throws IOException {
+    try (AccessLogArchiveWriter writer = new AccessLogArchiveWriter(directory, "writer", HOUR, 1)) {
+      writer.append(SECOND_BLOCK);
+      writer.append(FIRST_BLOCK);
+      assertEquals(2, listFiles().size());
+    }
+
+    for (Path path : listFiles()) {
+      assertTrue(path.toString().endsWith(AccessLogSegments.SEGMENT_EXTENSION));
+    }
+
+    List<ProductAccessLog> accessLogs = new ArrayList<>();
+    assertEquals(2, new AccessLogArchiveReader(directory).read(Long.MIN_VALUE, Long.MAX_VALUE, accessLogs::add));
+    assertEquals(toStrings(FIRST_BLOCK, SECOND_BLOCK), toStrings(accessLogs));
+  }
+
+  @Test
+  public void testRollByAge() throws IOException {
+    try (AccessLogArchiveWriter writer = new AccessLogArchiveWriter(directory, "writer", HOUR, Long.MAX_VALUE)) {
+      writer.append(FIRST_BLOCK);
+      writer.rollIfExpired();
+      assertTrue(listFiles().get(0).toString().endsWith(AccessLogSegments.OPEN_SEGMENT_EXTENSION));
+    }
+
+    try (AccessLogArchiveWriter writer = new AccessLogArchiveWriter(directory, "other", 1, Long.MAX_VALUE)) {
+      writer.append(SECOND_BLOCK);
+      sleep(5);
+      writer.rollIfExpired();
+      writer.rollIfExpired();
+    }
+
+    assertEquals(2, listFiles().size());
+  }
+
+  @Test
+  public void testArchiveCoveredByRange() throws IOException {
+    try (AccessLogArchiveWriter writer = new AccessLogArchiveWriter(directory, "writer", HOUR, 1)) {
+      writer.append(FIRST_BLOCK);
+      writer.append(SECOND_BLOCK);
+    }
+
+    AccessLogArchiveReader reader = new AccessLogArchiveReader(directory);
+    assertTrue(reader.isCoveredBy(DAY + 10, DAY + HOUR + 6));
+    assertFalse(reader.isCoveredBy(DAY + 11, DAY + HOUR + 6));
+    assertFalse(reader.isCoveredBy(DAY + 10, DAY + HOUR + 5));
+  }
+
+  @Test
+  public void testRecoverTruncatedOpenSegment() throws IOException {
+    Path openPath = directory.resolve("writer-1-0" + AccessLogSegments.OPEN_SEGMENT_EXTENSION);
+    Path crashedPath = directory.resolve("crashed-1-0" + AccessLogSegments.OPEN_SEGMENT_EXTENSION);
+
+    try (AccessLogSegmentWriter writer = AccessLogSegmentWriter.create(openPath, DAY)) {
+      writer.append(FIRST_BLOCK);
+      writer.append(SECOND_BLOCK);
+      Files.copy(openPath, crashedPath);
+    }
+    Files.delete(directory.resolve("writer-1-0" + AccessLogSegments.SEGMENT_EXTENSION));
+
+    /* the crash cut the last block */
+    try (FileChannel channel = FileChannel.open(crashedPath, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 3);
+    }
+
+    new AccessLogArchiveWriter(directory, "crashed", HOUR, Long.MAX_VALUE).close();
+
+    assertFalse(Files.exists(crashedPath));
+    try (AccessLogSegmentReader reader = new AccessLogSegmentReader(
+        directory.resolve("crashed-1-0" + AccessLogSegments.SEGMENT_EXTENSION))) {
+      assertEquals(FIRST_BLOCK.size(), reader.getCount());
+
+      List<ProductAccessLog> accessLogs = new ArrayList<>();
+      reader.read(Long.MIN_VALUE, Long.MAX_VALUE, accessLogs::add);
+      assertEquals(toStrings(FIRST_BLOCK), toStrings(accessLogs));
+    }
+  }
+
+  @Test
+  public void testRecoverOpenSegmentWithoutBlocks() throws IOException {
+    Path openPath = directory.resolve("writer-1-0" + AccessLogSegments.OPEN_SEGMENT_EXTENSION);
+    try (FileChannel channel = FileChannel.open(openPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      AccessLogSegments.writeFully(channel, AccessLogSegments.writeHeader());
+    }
+
+    AccessLogSegmentWriter.recover(openPath);
+
+    assertEquals(0, listFiles().size());
+  }
+
+  @Test
+  public void testFailedBlockIsRemoved() throws IOException {
+    Path openPath = directory.resolve("writer-1-0" + AccessLogSegments.OPEN_SEGMENT_EXTENSION);
+    FailingChannel channel = new FailingChannel(openPath);
+    List<ProductAccessLog> thirdBlock = Arrays.asList(new ProductAccessLog("user3", "product3", DAY + 2 * HOUR));
+
+    try (AccessLogSegmentWriter writer = AccessLogSegmentWriter.create(openPath, DAY, channel)) {
+      writer.append(FIRST_BLOCK);
+      long size = writer.getSize();
+
+      channel.failWrites = true;
+      try {
+        writer.append(SECOND_BLOCK);
+        fail("The append should fail");
+      } catch (IOException e) {
+        assertFalse(writer.isFailed());
+      }
+      assertEquals(size, Files.size(openPath));
+
+      channel.failWrites = false;
+      writer.append(thirdBlock);
+    }
+
+    try (AccessLogSegmentReader reader = new AccessLogSegmentReader(
+        directory.resolve("writer-1-0" + AccessLogSegments.SEGMENT_EXTENSION))) {
+      List<ProductAccessLog> accessLogs = new ArrayList<>();
+      reader.read(Long.MIN_VALUE, Long.MAX_VALUE, accessLogs::add);
+      assertEquals(toStrings(FIRST_BLOCK, thirdBlock), toStrings(accessLogs));
+    }
+  }
+
+  @Test
+  public void testSegmentIsRecoveredWhenTheFailedBlockCannotBeRemoved() throws IOException {
+    Path openPath = directory.resolve("writer-1-0" + AccessLogSegments.OPEN_SEGMENT_EXTENSION);
+    FailingChannel channel = new FailingChannel(openPath);
+
+    AccessLogSegmentWriter writer = AccessLogSegmentWriter.create(openPath, DAY, channel);
+    writer.append(FIRST_BLOCK);
+
+    channel.failWrites = true;
+    channel.failTruncates = true;
+    for (int i = 0; i < 2; i++) {
+      try {
+        writer.append(SECOND_BLOCK);
+        fail("The append should fail");
+      } catch (IOException e) {
+        assertTrue(writer.isFailed());
+      }
+    }
+    writer.close();
+
+    try (AccessLogSegmentReader reader = new AccessLogSegmentReader(
+        directory.resolve("writer-1-0" + AccessLogSegments.SEGMENT_EXTENSION))) {
+      List<ProductAccessLog> accessLogs = new ArrayList<>();
+      reader.read(Long.MIN_VALUE, Long.MAX_VALUE, accessLogs::add);
+      assertEquals(toStrings(FIRST_BLOCK), toStrings(accessLogs));
+    }
+  }
+
+  @SafeVarargs
+  private static List<String> toStrings(List<ProductAccessLog>... blocks) {
+    return Arrays.stream(blocks).flatMap(List::stream).map(ProductAccessLog::toString).collect(Collectors.toList());
+  }
+
+  private List<Path> listFiles() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+      paths.forEach(files::add);
+    }
+    return files;
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Channel of a segment whose writes fail after writing half of the buffer
+   */
+  private static final class FailingChannel extends FileChannel {
+
+    private final FileChannel channel;
+    private boolean failWrites;
+    private boolean failTruncates;
+
+    private FailingChannel(Path path) throws IOException {
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      if (!failWrites) {
+        return channel.write(src);
+      }
+      ByteBuffer half = src.duplicate();
+      half.limit(src.position() + src.remaining() / 2);
+      channel.write(half);
+      throw new IOException("Write failure");
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+      if (failTruncates) {
+        throw new IOException("Truncate failure");
+      }
+      channel.truncate(size);
+      return this;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      return channel.read(dst);
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+      return channel.read(dsts, offset, length);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+      return channel.write(srcs, offset, length);
+    }
+
+    @Override
+    public long position() throws IOException {
+      return channel.position();
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+      channel.position(newPosition);
+      return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+      return channel.size();
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+      channel.force(metaData);
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+      return channel.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+      return channel.transferFrom(src, position, count);
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+      return channel.read(dst, position);
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+      return channel.write(src, position);
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+      return channel.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+      return channel.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+      return channel.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+      channel.close();
+    }
+
+  }
+
+}
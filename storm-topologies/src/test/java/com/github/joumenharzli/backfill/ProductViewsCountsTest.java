@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.backfill;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.github.joumenharzli.sink.ProductAccessLog;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test for the views counted by {@link ProductViewsCounts}
+ *
+ * @author Joumen Harzli
+ */
+public class ProductViewsCountsTest {
+
+  private static final long DAY = 1_516_838_400_000L;
+  private static final long MILLIS_PER_DAY = 86_400_000L;
+
+  @Test
+  public void testCounters() {
+    ProductViewsCounts counts = new ProductViewsCounts();
+    counts.add(new ProductAccessLog("user1", "product1", DAY + 1));
+    counts.add(new ProductAccessLog("user1", "product1", DAY + 2));
+    counts.add(new ProductAccessLog("user2", "product1", DAY + MILLIS_PER_DAY));
+    counts.add(new ProductAccessLog("user1", "product2", DAY + MILLIS_PER_DAY + 1));
+    /* a view before the epoch has a negative day */
+    counts.add(new ProductAccessLog("user2", "product2", -1));
+
+    assertEquals(5, counts.getCount());
+    assertArrayEquals(new int[]{2, 4, 4}, counts.getCountersCount());
+
+    Map<String, Long> total = new HashMap<>();
+    counts.forEachTotal((productId, views) -> assertNull(total.put(productId, views)));
+    assertEquals(3L, (long) total.get("product1"));
+    assertEquals(2L, (long) total.get("product2"));
+
+    Map<String, Long> byDay = new HashMap<>();
+    counts.forEachByDay((productId, day, views) -> assertNull(byDay.put(productId + "/" + day, views)));
+    assertEquals(4, byDay.size());
+    assertEquals(2L, (long) byDay.get("product1/" + DAY));
+    assertEquals(1L, (long) byDay.get("product1/" + (DAY + MILLIS_PER_DAY)));
+    assertEquals(1L, (long) byDay.get("product2/" + (DAY + MILLIS_PER_DAY)));
+    assertEquals(1L, (long) byDay.get("product2/" + -MILLIS_PER_DAY));
+
+    Map<String, Long> byUser = new HashMap<>();
+    counts.forEachByUser((userId, productId, day, views) ->
+        assertNull(byUser.put(userId + "/" + productId + "/" + day, views)));
+    assertEquals(2L, (long) byUser.get("user1/product1/" + DAY));
+    assertEquals(1L, (long) byUser.get("user2/product1/" + (DAY + MILLIS_PER_DAY)));
+    assertEquals(1L, (long) byUser.get("user2/product2/" + -MILLIS_PER_DAY));
+  }
+
+  @Test
+  public void testManyPairs() {
+    ProductViewsCounts counts = new ProductViewsCounts();
+    int users = 70_000;
+
+    for (int user = 0; user < users; user++) {
+      counts.add(new ProductAccessLog("user" + user, "product" + (user % 3), DAY + user));
+      counts.add(new ProductAccessLog("user" + user, "product" + (user % 3), DAY + user));
+    }
+
+    assertArrayEquals(new int[]{3, 3, users}, counts.getCountersCount());
+
+    long[] views = new long[1];
+    counts.forEachByUser((userId, productId, day, count) -> {
+      assertEquals("product" + (Integer.parseInt(userId.substring(4)) % 3), productId);
+      assertEquals(DAY, day);
+      assertEquals(2L, count);
+      views[0] += count;
+    });
+    assertEquals(2L * users, views[0]);
+  }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.joumenharzli.utils.HyperLogLog;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for the records of the {@link FileProductViewsSink} replayed by the
+ * {@link FileProductViewsReader}
+ *
+ * @author Joumen Harzli
+ */
+public class FileProductViewsSinkTest {
+
+  private static final long DAY = 1_516_838_400_000L;
+
+  private final InMemoryProductViewsSink replayed = InMemoryProductViewsSink.getInstance();
+
+  private Path directory;
+  private Path file;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("file-sink-test");
+    file = directory.resolve("task.views");
+    replayed.clear();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    replayed.clear();
+    Files.walk(directory).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+  }
+
+  @Test
+  public void testReplay() throws Exception {
+    HyperLogLog sketch = new HyperLogLog(12);
+    sketch.add(0x1234_5678_9ABC_DEF0L);
+    sketch.add(0xF0E1_D2C3_B4A5_9687L);
+
+    try (FileProductViewsSink sink = new FileProductViewsSink(file)) {
+      assertDone(sink.appendAccessLogs(Arrays.asList(new ProductAccessLog("user1", "product1", DAY + 1),
+          new ProductAccessLog("user2", "product1", DAY + 2))));
+      assertDone(sink.incrementTotal("product1", 2));
+      assertDone(sink.incrementTotal("product1", 3));
+      assertDone(sink.incrementByDay("product1", DAY, 5));
+      assertDone(sink.incrementByUser("user1", "product1", DAY, 4));
+      assertDone(sink.mergeUniqueViewers("product1", DAY, sketch));
+      assertDone(sink.mergeAudience("product1", DAY, new HashSet<>(Arrays.asList("user1", "user2"))));
+      assertDone(sink.mergeAudience("product2", DAY, Collections.singleton("user2")));
+      assertDone(sink.addRollup(RollupResolution.HOUR, "product1", DAY, 7));
+      assertDone(sink.writeTrendingProducts("hour", DAY, Collections.singletonList(new TrendingProduct("product1", 5))));
+      assertDone(sink.writeSummary(new ProductSummary("product1", DAY, 5, 5, 9, 2, 3, DAY + 10)));
+    }
+
+    try (FileProductViewsReader reader = new FileProductViewsReader(file)) {
+      assertEquals(Files.size(file), reader.replay(replayed));
+    }
+
+    assertEquals(2, replayed.getAccessLogs().size());
+    assertEquals(5, replayed.getTotal("product1"));
+    assertEquals(5, replayed.getByDay("product1", DAY));
+    assertEquals(4, replayed.getByUser("user1", "product1", DAY));
+    assertEquals(2, replayed.getUniqueViewers("product1", DAY));
+    assertEquals(1, replayed.getAudienceIntersection(Arrays.asList("product1", "product2"), DAY));
+    assertEquals(7, replayed.getRollup(RollupResolution.HOUR, "product1", DAY));
+    assertEquals("product1", replayed.getTrendingProducts("hour").get(0).getProductId());
+    assertEquals(9, replayed.getSummary("product1").getLast7Days());
+    assertEquals(DAY + 10, replayed.getSummary("product1").getUpdatedAt());
+  }
+
+  @Test
+  public void testIncompleteRecordIsRemovedOnOpen() throws Exception {
+    try (FileProductViewsSink sink = new FileProductViewsSink(file)) {
+      assertDone(sink.incrementTotal("product1", 2));
+    }
+    long complete = Files.size(file);
+    Files.write(file, new byte[]{FileProductViewsSink.TOTAL_INCREMENT_RECORD, 0, 8, 'p'}, StandardOpenOption.APPEND);
+
+    assertEquals(complete, FileProductViewsReader.getCompleteLength(file));
+
+    try (FileProductViewsSink sink = new FileProductViewsSink(file)) {
+      assertEquals(complete, Files.size(file));
+      assertDone(sink.incrementTotal("product1", 3));
+    }
+
+    try (FileProductViewsReader reader = new FileProductViewsReader(file)) {
+      assertEquals(Files.size(file), reader.replay(replayed));
+    }
+    assertEquals(5, replayed.getTotal("product1"));
+  }
+
+  @Test
+  public void testCutRecordIsIgnoredByTheReader() throws Exception {
+    try (FileProductViewsSink sink = new FileProductViewsSink(file)) {
+      assertDone(sink.appendAccessLogs(Collections.singletonList(new ProductAccessLog("user1", "product1", DAY))));
+    }
+    long complete = Files.size(file);
+    Files.write(file, new byte[]{FileProductViewsSink.ACCESS_LOG_RECORD, 0, 5, 'u'}, StandardOpenOption.APPEND);
+
+    try (FileProductViewsReader reader = new FileProductViewsReader(file)) {
+      assertEquals(complete, reader.replay(replayed));
+    }
+    assertEquals(1, replayed.getAccessLogs().size());
+  }
+
+  @Test
+  public void testWritesFailAfterAnIoError() throws Exception {
+    FileProductViewsSink sink = new FileProductViewsSink(file);
+    assertDone(sink.incrementTotal("product1", 2));
+    sink.close();
+
+    assertFailed(sink.incrementTotal("product1", 3));
+    assertFailed(sink.incrementByDay("product1", DAY, 3));
+    assertEquals(FileProductViewsReader.getCompleteLength(file), Files.size(file));
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownRecord() throws Exception {
+    Files.write(file, new byte[]{'?', 0, 0});
+
+    try (FileProductViewsReader reader = new FileProductViewsReader(file)) {
+      reader.replay(replayed);
+    }
+  }
+
+  private static void assertDone(ListenableFuture<?> result) throws Exception {
+    assertTrue(result.isDone());
+    result.get();
+  }
+
+  private static void assertFailed(ListenableFuture<?> result) {
+    assertTrue(result.isDone());
+    try {
+      result.get();
+      fail("The write should fail");
+    } catch (Exception e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+  }
+
+}
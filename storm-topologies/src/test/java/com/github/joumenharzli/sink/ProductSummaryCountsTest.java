@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.sink;
+
+import org.junit.Test;
+
+import com.github.joumenharzli.utils.HyperLogLog;
+import com.github.joumenharzli.utils.TimestampUtils;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for the {@link ProductSummaryCounts} of the last days of a product
+ *
+ * @author Joumen Harzli
+ */
+public class ProductSummaryCountsTest {
+
+  private static final long DAY = 1_516_838_400_000L;
+  private static final long YESTERDAY = DAY - TimestampUtils.MILLIS_PER_DAY;
+  private static final int PRECISION = 12;
+
+  @Test
+  public void testViewsOutOfTheWindowAreOnlyAddedToTheTotal() {
+    ProductSummaryCounts counts = new ProductSummaryCounts(DAY, PRECISION);
+    counts.addView(DAY + 1, 0x1234_5678_9ABC_DEF0L);
+    counts.addView(YESTERDAY + 1, 0xF0E1_D2C3_B4A5_9687L);
+    counts.addView(DAY - ProductSummary.LAST_DAYS * TimestampUtils.MILLIS_PER_DAY, 0x0F1E_2D3C_4B5A_6978L);
+    counts.addView(DAY + TimestampUtils.MILLIS_PER_DAY, 0x7A6B_5C4D_3E2F_1A0BL);
+
+    ProductSummary summary = counts.toSummary("product1", DAY + 10);
+    assertEquals(DAY, summary.getDay());
+    assertEquals(4, summary.getTotal());
+    assertEquals(1, summary.getToday());
+    assertEquals(2, summary.getLast7Days());
+    assertEquals(1, summary.getUniqueViewersToday());
+    assertEquals(2, summary.getUniqueViewersLast7Days());
+    assertEquals(DAY + 10, summary.getUpdatedAt());
+  }
+
+  @Test
+  public void testStoredCountsAreMerged() {
+    HyperLogLog sketch = new HyperLogLog(PRECISION);
+    sketch.add(0x1234_5678_9ABC_DEF0L);
+    sketch.add(0xF0E1_D2C3_B4A5_9687L);
+
+    ProductSummaryCounts stored = new ProductSummaryCounts(DAY, PRECISION);
+    stored.addTotal(10);
+    stored.addViews(DAY, 3);
+    stored.addViews(YESTERDAY, 4);
+    stored.addViewers(DAY, sketch);
+
+    ProductSummaryCounts counts = new ProductSummaryCounts(DAY, PRECISION);
+    counts.addView(DAY + 1, 0x1234_5678_9ABC_DEF0L);
+    counts.merge(stored);
+
+    ProductSummary summary = counts.toSummary("product1", DAY);
+    assertEquals(11, summary.getTotal());
+    assertEquals(4, summary.getToday());
+    assertEquals(8, summary.getLast7Days());
+    assertEquals(2, summary.getUniqueViewersToday());
+    assertEquals(2, summary.getUniqueViewersLast7Days());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCountsOfAnotherDayAreNotMerged() {
+    new ProductSummaryCounts(DAY, PRECISION).merge(new ProductSummaryCounts(YESTERDAY, PRECISION));
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the encoding of the ids by {@link CompactId}
+ *
+ * @author Joumen Harzli
+ */
+public class CompactIdTest {
+
+  private static final String UUID_ID = "0f8fad5b-d9cb-469f-a165-70867728950e";
+
+  @Test
+  public void testUuidRoundTrip() {
+    for (int i = 0; i < 1000; i++) {
+      String id = UUID.randomUUID().toString();
+      CompactId compactId = CompactId.encode(id);
+
+      assertTrue(compactId.isUuid());
+      assertEquals(id, compactId.toString());
+      assertEquals(compactId, CompactId.encode(id));
+      assertEquals(compactId.hashCode(), CompactId.encode(id).hashCode());
+    }
+    assertEquals("ffffffff-ffff-ffff-ffff-ffffffffffff", CompactId.encode("ffffffff-ffff-ffff-ffff-ffffffffffff").toString());
+    assertEquals("00000000-0000-0000-0000-000000000000", CompactId.encode("00000000-0000-0000-0000-000000000000").toString());
+  }
+
+  @Test
+  public void testNonUuidRoundTrip() {
+    for (String id : new String[]{"", "product1", UUID_ID.toUpperCase(), UUID_ID.replace('-', '_'),
+        UUID_ID + "0", "0f8fad5b-d9cb-469f-a165-70867728950g"}) {
+      CompactId compactId = CompactId.encode(id);
+
+      assertFalse(id, compactId.isUuid());
+      assertEquals(id, compactId.toString());
+      assertEquals(compactId, CompactId.encode(id));
+    }
+    assertNotEquals(CompactId.encode(UUID_ID), CompactId.encode(UUID_ID.toUpperCase()));
+  }
+
+  @Test
+  public void testHash64DependsOnTheIdOnly() {
+    assertEquals(CompactId.encode(UUID_ID).hash64(), CompactId.encode(UUID_ID).hash64());
+    assertEquals(CompactId.encode("product1").hash64(), CompactId.encode("product1").hash64());
+    assertNotEquals(CompactId.encode(UUID_ID).hash64(),
+        CompactId.encode("0f8fad5b-d9cb-469f-a165-70867728950f").hash64());
+  }
+
+  @Test
+  public void testDataRoundTrip() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      CompactId.encode(UUID_ID).writeTo(output);
+      CompactId.encode("product1").writeTo(output);
+    }
+
+    assertEquals(17 + 1 + 2 + "product1".length(), bytes.size());
+    try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      assertEquals(UUID_ID, CompactId.readFrom(input).toString());
+      assertEquals("product1", CompactId.readFrom(input).toString());
+    }
+  }
+
+  @Test
+  public void testKryoRoundTrip() {
+    /* storm disables the references of its kryo instances */
+    Kryo kryo = new Kryo();
+    kryo.setReferences(false);
+    kryo.register(CompactId.class, new CompactId.KryoSerializer());
+
+    Output output = new Output(64);
+    kryo.writeObject(output, CompactId.encode(UUID_ID));
+    assertEquals(17, output.position());
+    kryo.writeObject(output, CompactId.encode("product1"));
+
+    Input input = new Input(output.toBytes());
+    CompactId uuid = kryo.readObject(input, CompactId.class);
+    CompactId string = kryo.readObject(input, CompactId.class);
+
+    assertTrue(uuid.isUuid());
+    assertEquals(CompactId.encode(UUID_ID), uuid);
+    assertFalse(string.isUuid());
+    assertEquals("product1", string.toString());
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the {@link CountMinSketch}
+ *
+ * @author Joumen Harzli
+ */
+public class CountMinSketchTest {
+
+  @Test
+  public void testExactWithoutCollisions() {
+    CountMinSketch sketch = new CountMinSketch(4, 1024);
+    long first = CompactId.encode("product1").hash64();
+    long second = CompactId.encode("product2").hash64();
+
+    sketch.add(first, 3);
+    sketch.add(first, 2);
+    sketch.add(second, 7);
+
+    assertEquals(5, sketch.estimate(first));
+    assertEquals(7, sketch.estimate(second));
+    assertEquals(0, sketch.estimate(CompactId.encode("product3").hash64()));
+
+    sketch.clear();
+    assertEquals(0, sketch.estimate(first));
+  }
+
+  @Test
+  public void testEstimatesNeverUnderCount() {
+    int depth = 4;
+    int width = 256;
+    int keys = 5000;
+    CountMinSketch sketch = new CountMinSketch(depth, width);
+    long[] counts = new long[keys];
+    Random random = new Random(42);
+
+    long total = 0;
+    for (int i = 0; i < 100_000; i++) {
+      /* a skewed stream where the small keys are the most viewed */
+      int key = (int) Math.min(keys - 1, Math.abs(random.nextGaussian()) * keys / 8);
+      sketch.add(hash(key), 1);
+      counts[key]++;
+      total++;
+    }
+
+    long overCount = 0;
+    for (int key = 0; key < keys; key++) {
+      long estimate = sketch.estimate(hash(key));
+      assertTrue(estimate >= counts[key]);
+      overCount += estimate - counts[key];
+    }
+    /* the expected over count of a key is at most total / width for each row */
+    assertTrue(overCount / keys <= total / width);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWidthMustBeAPowerOfTwo() {
+    new CountMinSketch(4, 1000);
+  }
+
+  private static long hash(int key) {
+    return CompactId.encode("product" + key).hash64();
+  }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the {@link HyperLogLog} sketches
+ *
+ * @author Joumen Harzli
+ */
+public class HyperLogLogTest {
+
+  private static final int PRECISION = 12;
+  /* three times the relative standard error of 1.6% with 4096 registers */
+  private static final double ERROR_BOUND = 3 * 1.04 / 64;
+
+  private static final byte SPARSE_FORM = 'S';
+  private static final byte DENSE_FORM = 'D';
+
+  @Test
+  public void testEmptySketch() {
+    HyperLogLog sketch = new HyperLogLog(PRECISION);
+
+    assertTrue(sketch.isEmpty());
+    assertEquals(0, sketch.estimate());
+    assertTrue(HyperLogLog.fromBytes(ByteBuffer.wrap(sketch.toBytes())).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPrecision() {
+    new HyperLogLog(HyperLogLog.MAX_PRECISION + 1);
+  }
+
+  @Test
+  public void testSparseToDense() {
+    HyperLogLog sketch = new HyperLogLog(PRECISION);
+
+    addRange(sketch, 0, 100);
+    assertEquals(SPARSE_FORM, getForm(sketch));
+    assertWithinBound(100, sketch.estimate());
+
+    addRange(sketch, 100, 2000);
+    assertEquals(DENSE_FORM, getForm(sketch));
+    assertEquals(3 + 4096, sketch.toBytes().length);
+    assertWithinBound(2000, sketch.estimate());
+
+    /* the values already added do not change the registers */
+    byte[] registers = sketch.toBytes();
+    addRange(sketch, 0, 2000);
+    assertTrue(Arrays.equals(registers, sketch.toBytes()));
+  }
+
+  @Test
+  public void testMerge() {
+    HyperLogLog sparse = new HyperLogLog(PRECISION);
+    addRange(sparse, 0, 200);
+    HyperLogLog dense = new HyperLogLog(PRECISION);
+    addRange(dense, 100, 20_000);
+    HyperLogLog all = new HyperLogLog(PRECISION);
+    addRange(all, 0, 20_000);
+
+    HyperLogLog denseIntoSparse = new HyperLogLog(PRECISION);
+    denseIntoSparse.merge(sparse);
+    denseIntoSparse.merge(dense);
+    HyperLogLog sparseIntoDense = HyperLogLog.fromBytes(ByteBuffer.wrap(dense.toBytes()));
+    sparseIntoDense.merge(sparse);
+    sparseIntoDense.merge(sparse);
+
+    assertTrue(Arrays.equals(all.toBytes(), denseIntoSparse.toBytes()));
+    assertTrue(Arrays.equals(all.toBytes(), sparseIntoDense.toBytes()));
+    assertWithinBound(20_000, sparseIntoDense.estimate());
+
+    HyperLogLog sparseIntoSparse = new HyperLogLog(PRECISION);
+    addRange(sparseIntoSparse, 150, 300);
+    sparseIntoSparse.merge(sparse);
+    assertEquals(SPARSE_FORM, getForm(sparseIntoSparse));
+    assertWithinBound(300, sparseIntoSparse.estimate());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeOtherPrecision() {
+    new HyperLogLog(PRECISION).merge(new HyperLogLog(PRECISION + 1));
+  }
+
+  @Test
+  public void testSerialization() {
+    HyperLogLog sparse = new HyperLogLog(PRECISION);
+    addRange(sparse, 0, 50);
+    byte[] sparseBytes = sparse.toBytes();
+
+    assertEquals(1, sparseBytes[0]);
+    assertEquals(PRECISION, sparseBytes[1]);
+    assertEquals(SPARSE_FORM, sparseBytes[2]);
+    assertEquals(3 + 4 + 3 * ByteBuffer.wrap(sparseBytes, 3, 4).getInt(), sparseBytes.length);
+
+    /* the sketch is read from the position of the buffer */
+    ByteBuffer buffer = ByteBuffer.allocate(sparseBytes.length + 2);
+    buffer.put(new byte[2]).put(sparseBytes).position(2);
+    HyperLogLog readSparse = HyperLogLog.fromBytes(buffer);
+    assertEquals(2, buffer.position());
+    assertEquals(PRECISION, readSparse.getPrecision());
+    assertEquals(sparse.estimate(), readSparse.estimate());
+    assertEquals(SPARSE_FORM, getForm(readSparse));
+
+    HyperLogLog dense = new HyperLogLog(PRECISION);
+    addRange(dense, 0, 5000);
+    HyperLogLog readDense = HyperLogLog.fromBytes(ByteBuffer.wrap(dense.toBytes()));
+    assertTrue(Arrays.equals(dense.toBytes(), readDense.toBytes()));
+    assertEquals(dense.estimate(), readDense.estimate());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedVersion() {
+    byte[] bytes = new HyperLogLog(PRECISION).toBytes();
+    bytes[0] = 2;
+    HyperLogLog.fromBytes(ByteBuffer.wrap(bytes));
+  }
+
+  @Test
+  public void testErrorBound() {
+    for (int cardinality : new int[]{10, 1000, 10_000, 100_000, 1_000_000}) {
+      HyperLogLog sketch = new HyperLogLog(PRECISION);
+      addRange(sketch, cardinality, 2L * cardinality);
+      assertWithinBound(cardinality, sketch.estimate());
+    }
+  }
+
+  private static void addRange(HyperLogLog sketch, long from, long to) {
+    for (long value = from; value < to; value++) {
+      sketch.add(hash(value));
+    }
+  }
+
+  /**
+   * Finalization step of murmur3 so the hashes of consecutive values have uniformly distributed bits
+   */
+  private static long hash(long value) {
+    long hash = value;
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  private static byte getForm(HyperLogLog sketch) {
+    return sketch.toBytes()[2];
+  }
+
+  private static void assertWithinBound(long cardinality, long estimate) {
+    double error = Math.abs(estimate - cardinality) / (double) cardinality;
+    assertFalse(String.format("The estimate %d of %d is off by %.2f%%", estimate, cardinality, error * 100),
+        error > ERROR_BOUND);
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for the ids decoded and kept by the {@link IdDictionary}
+ *
+ * @author Joumen Harzli
+ */
+public class IdDictionaryTest {
+
+  private static final CompactId FIRST = CompactId.encode("0f8fad5b-d9cb-469f-a165-70867728950e");
+  private static final CompactId SECOND = CompactId.encode("7c9e6679-7425-40de-944b-e07fc1f90ae7");
+  private static final CompactId THIRD = CompactId.encode("16fd2706-8baf-433b-82eb-8c7fada847da");
+
+  @Test
+  public void testLeastRecentlyUsedIdIsEvicted() {
+    IdDictionary dictionary = new IdDictionary(2);
+
+    dictionary.decode(FIRST);
+    dictionary.decode(SECOND);
+    dictionary.decode(FIRST);
+    assertMetric(dictionary, 1, 2, 2);
+
+    /* the second id is the least recently used one */
+    assertEquals(THIRD.toString(), dictionary.decode(THIRD));
+    dictionary.decode(FIRST);
+    dictionary.decode(SECOND);
+    assertMetric(dictionary, 1, 2, 2);
+
+    /* the third id was evicted by the second */
+    dictionary.decode(FIRST);
+    dictionary.decode(THIRD);
+    assertMetric(dictionary, 1, 1, 2);
+  }
+
+  @Test
+  public void testDecodeWithoutCapacity() {
+    IdDictionary dictionary = new IdDictionary(0);
+
+    assertEquals(FIRST.toString(), dictionary.decode(FIRST));
+    assertEquals(FIRST.toString(), dictionary.decode(FIRST));
+    assertMetric(dictionary, 0, 2, 0);
+  }
+
+  @Test
+  public void testStringIdsAreNotKept() {
+    IdDictionary dictionary = new IdDictionary(2);
+
+    /* the keys journaled before the encoding of the ids hold strings */
+    assertEquals("product1", dictionary.decode("product1"));
+    assertEquals("product2", dictionary.decode(CompactId.encode("product2")));
+    assertMetric(dictionary, 0, 0, 0);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void assertMetric(IdDictionary dictionary, long hits, long misses, int size) {
+    Map<String, Object> metric = (Map<String, Object>) dictionary.new Metric().getValueAndReset();
+    assertEquals(hits, metric.get("hits"));
+    assertEquals(misses, metric.get("misses"));
+    assertEquals(size, metric.get("size"));
+  }
+
+}
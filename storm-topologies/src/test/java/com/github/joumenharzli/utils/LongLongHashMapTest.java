@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for the {@link LongLongHashMap}
+ *
+ * @author Joumen Harzli
+ */
+public class LongLongHashMapTest {
+
+  @Test
+  public void testPutGetAndAddTo() {
+    LongLongHashMap map = new LongLongHashMap(0);
+
+    assertEquals(-1, map.get(0, -1));
+    map.put(0, 5);
+    map.put(Long.MIN_VALUE, 7);
+    assertEquals(5, map.get(0, -1));
+    assertEquals(7, map.get(Long.MIN_VALUE, -1));
+
+    map.put(0, 6);
+    assertEquals(6, map.get(0, -1));
+    assertEquals(3, map.addTo(-1, 3));
+    assertEquals(5, map.addTo(-1, 2));
+    assertEquals(3, map.size());
+  }
+
+  @Test
+  public void testResizeKeepsTheEntries() {
+    LongLongHashMap map = new LongLongHashMap(0);
+    int count = 100_000;
+
+    /* packed keys differing only by their high bits then only by their low bits */
+    for (int i = 0; i < count; i++) {
+      map.addTo((long) i << 32, i);
+      map.addTo(i, -i);
+    }
+
+    assertEquals(2 * count - 1, map.size());
+    for (int i = 1; i < count; i++) {
+      assertEquals(i, map.get((long) i << 32, Long.MIN_VALUE));
+      assertEquals(-i, map.get(i, Long.MIN_VALUE));
+    }
+  }
+
+  @Test
+  public void testCollisionsMatchAHashMap() {
+    /* an expected size of 16 keeps 32 slots so most of the random keys of the first round collide */
+    LongLongHashMap map = new LongLongHashMap(16);
+    Map<Long, Long> expected = new HashMap<>();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 50_000; i++) {
+      long key = random.nextInt(20_000) * 31L - 100_000;
+      long delta = random.nextInt(10);
+      map.addTo(key, delta);
+      expected.merge(key, delta, Long::sum);
+    }
+
+    assertEquals(expected.size(), map.size());
+    Map<Long, Long> actual = new HashMap<>();
+    map.forEach((key, value) -> assertEquals(null, actual.put(key, value)));
+    assertEquals(expected, actual);
+  }
+
+}
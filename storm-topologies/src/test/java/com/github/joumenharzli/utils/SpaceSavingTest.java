@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the {@link SpaceSaving} summary
+ *
+ * @author Joumen Harzli
+ */
+public class SpaceSavingTest {
+
+  @Test
+  public void testExactBelowCapacity() {
+    SpaceSaving<String> summary = new SpaceSaving<>(3);
+    summary.add("a", 1);
+    summary.add("b", 5);
+    summary.add("a", 2);
+    summary.add("c", 1);
+
+    assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), new HashSet<>(summary.getKeys()));
+    assertEquals(3, summary.getCount("a"));
+    assertEquals(5, summary.getCount("b"));
+    assertEquals(1, summary.getCount("c"));
+    assertEquals(0, summary.getCount("d"));
+  }
+
+  @Test
+  public void testLeastFrequentKeyIsReplaced() {
+    SpaceSaving<String> summary = new SpaceSaving<>(2);
+    summary.add("a", 4);
+    summary.add("b", 2);
+    summary.add("c", 1);
+
+    /* c replaces b and inherits its count */
+    assertEquals(new HashSet<>(Arrays.asList("a", "c")), new HashSet<>(summary.getKeys()));
+    assertEquals(3, summary.getCount("c"));
+    assertEquals(0, summary.getCount("b"));
+
+    summary.add("d", 1);
+    assertEquals(new HashSet<>(Arrays.asList("a", "d")), new HashSet<>(summary.getKeys()));
+    assertEquals(4, summary.getCount("d"));
+  }
+
+  @Test
+  public void testFrequentKeysAreTracked() {
+    int capacity = 20;
+    SpaceSaving<Integer> summary = new SpaceSaving<>(capacity);
+    long[] counts = new long[1000];
+    Random random = new Random(42);
+
+    long total = 0;
+    for (int i = 0; i < 100_000; i++) {
+      int key = random.nextInt(4) == 0 ? random.nextInt(5) : random.nextInt(counts.length);
+      summary.add(key, 1);
+      counts[key]++;
+      total++;
+    }
+
+    for (int key = 0; key < counts.length; key++) {
+      if (counts[key] > total / capacity) {
+        assertTrue("The frequent key " + key + " is not tracked", summary.getKeys().contains(key));
+      }
+      if (summary.getKeys().contains(key)) {
+        assertTrue(summary.getCount(key) >= counts[key]);
+      }
+    }
+    for (int key = 0; key < 5; key++) {
+      assertTrue(summary.getKeys().contains(key));
+    }
+  }
+
+  @Test
+  public void testClear() {
+    SpaceSaving<String> summary = new SpaceSaving<>(2);
+    summary.add("a", 1);
+    summary.clear();
+
+    assertTrue(summary.getKeys().isEmpty());
+    assertEquals(0, summary.getCount("a"));
+    summary.add("b", 1);
+    assertEquals(1, summary.getCount("b"));
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 Joumen Harzli
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.github.joumenharzli.utils;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for the allocation free timestamp parsing of {@link TimestampUtils}
+ *
+ * @author Joumen Harzli
+ */
+public class TimestampUtilsTest {
+
+  @Test
+  public void testParseIsoInstant() {
+    assertParsed("2018-01-25T10:15:30Z");
+    assertParsed("2018-01-25T10:15:30.1Z");
+    assertParsed("2018-01-25T10:15:30.123456789Z");
+    assertParsed("2016-02-29T23:59:59.999Z");
+    assertParsed("1969-12-31T00:00:00Z");
+  }
+
+  @Test
+  public void testParseIsoInstantWithOffset() {
+    char[] text = "{\"t\":\"2018-01-25T10:15:30.123Z\"}".toCharArray();
+
+    assertEquals(Instant.parse("2018-01-25T10:15:30.123Z").toEpochMilli(), TimestampUtils.parseIsoInstant(text, 6, 24));
+  }
+
+  @Test(expected = DateTimeParseException.class)
+  public void testParseIsoInstantDayAfterEndOfMonth() {
+    parse("2017-02-30T10:15:30Z");
+  }
+
+  @Test(expected = DateTimeParseException.class)
+  public void testParseIsoInstantLeapDayOfCommonYear() {
+    parse("2100-02-29T10:15:30Z");
+  }
+
+  @Test(expected = DateTimeParseException.class)
+  public void testParseIsoInstantDayAfterEndOfShortMonth() {
+    parse("2018-04-31T10:15:30Z");
+  }
+
+  @Test
+  public void testLengthOfMonth() {
+    for (int year = 1999; year <= 2101; year++) {
+      for (int month = 1; month <= 12; month++) {
+        assertEquals(YearMonth.of(year, month).lengthOfMonth(), TimestampUtils.lengthOfMonth(year, month));
+      }
+    }
+  }
+
+  @Test
+  public void testTruncate() {
+    long timestamp = Instant.parse("2018-03-25T10:15:30.123Z").toEpochMilli();
+
+    assertEquals(Instant.parse("2018-03-25T00:00:00Z").toEpochMilli(), TimestampUtils.truncateToDay(timestamp));
+    assertEquals(Instant.parse("2018-03-01T00:00:00Z").toEpochMilli(), TimestampUtils.truncateToMonth(timestamp));
+  }
+
+  private static void assertParsed(String instant) {
+    assertEquals(Instant.parse(instant).toEpochMilli(), parse(instant));
+  }
+
+  private static long parse(String instant) {
+    return TimestampUtils.parseIsoInstant(instant.toCharArray(), 0, instant.length());
+  }
+
+}